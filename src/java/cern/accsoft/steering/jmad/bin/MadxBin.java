@@ -37,5 +37,16 @@ public interface MadxBin {
      * @return the process of the running MadX
      * @throws IOException if the execution fails
      */
-    Process execute() throws IOException;
+    default Process execute() throws IOException {
+        return execute(new ProcessLimits());
+    }
+
+    /**
+     * executes MadX within the given operating system limits
+     * 
+     * @param limits the limits for the new process
+     * @return the process of the running MadX
+     * @throws IOException if the execution fails
+     */
+    Process execute(ProcessLimits limits) throws IOException;
 }
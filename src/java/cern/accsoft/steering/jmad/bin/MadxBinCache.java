@@ -0,0 +1,196 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.bin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A directory, in which executables are cached under the CRC-32 and the size of their content, so that they have to
+ * be extracted from the jar only once, even if several JVMs use them. For an executable within a jar, both are taken
+ * from its entry in the jar, so that an executable which is already cached is not read at all. A new executable is
+ * written to a temporary file in the same directory and then atomically renamed to its final name. Therefore other
+ * JVMs either see the complete file or none at all. The content is checked against the CRC while it is extracted; a
+ * cached file is only checked by its size.
+ */
+class MadxBinCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MadxBinCache.class);
+
+    private static final String JAR_PROTOCOL = "jar";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The directory which contains one subdirectory per content key */
+    private final File cacheDir;
+
+    /**
+     * @param cacheDir the directory to use as cache. It is created if it does not exist.
+     */
+    MadxBinCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * provides the executable with the given content from the cache. Only if it is not yet cached (or the cached file
+     * is corrupt), it is written.
+     *
+     * @param resource the location of the content, usually within a jar. If it is not within a local jar, the content
+     *            is read once more to calculate its CRC.
+     * @param name the file name of the executable
+     * @return the cached executable
+     * @throws IOException if the resource or the cache can not be read or the cache can not be written
+     */
+    File install(URL resource, String name) throws IOException {
+        File jar = (JAR_PROTOCOL.equals(resource.getProtocol())) ? localJar(resource) : null;
+        if (jar != null) {
+            String entryName = ((JarURLConnection) resource.openConnection()).getEntryName();
+            try (JarFile jarFile = new JarFile(jar)) {
+                JarEntry entry = jarFile.getJarEntry(entryName);
+                if (entry == null) {
+                    throw new IOException("Entry '" + entryName + "' not found in '" + jar.getAbsolutePath() + "'.");
+                }
+                if ((entry.getCrc() != -1) && (entry.getSize() != -1)) {
+                    return install(() -> jarFile.getInputStream(entry), entry.getCrc(), entry.getSize(), name);
+                }
+            }
+        }
+
+        long crc;
+        long size;
+        try (InputStream in = resource.openStream()) {
+            CRC32 checksum = new CRC32();
+            size = copyAndChecksum(in, null, checksum);
+            crc = checksum.getValue();
+        }
+        return install(resource::openStream, crc, size, name);
+    }
+
+    /**
+     * @return the jar file of the given jar url, {@code null} if it is not a local file
+     */
+    private static File localJar(URL resource) throws IOException {
+        URL jarFileUrl = ((JarURLConnection) resource.openConnection()).getJarFileURL();
+        if (!"file".equals(jarFileUrl.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(jarFileUrl.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            LOGGER.debug("Could not locate jar file of '{}'.", resource, e);
+            return null;
+        }
+    }
+
+    private File install(ResourceSupplier resource, long crc, long size, String name) throws IOException {
+        File dir = new File(cacheDir, String.format("%08x-%d", crc, size));
+        File target = new File(dir, name);
+        if (verifies(target, size)) {
+            LOGGER.debug("Using cached madx binary '{}'.", target.getAbsolutePath());
+            return target;
+        }
+
+        Files.createDirectories(dir.toPath());
+        Path temp = Files.createTempFile(dir.toPath(), name + ".", ".tmp");
+        try {
+            CRC32 checksum = new CRC32();
+            long writtenSize;
+            try (InputStream in = resource.open(); OutputStream out = Files.newOutputStream(temp)) {
+                writtenSize = copyAndChecksum(in, out, checksum);
+            }
+            if ((checksum.getValue() != crc) || (writtenSize != size)) {
+                throw new IOException("The content of the resource changed while extracting it to '" + temp + "'.");
+            }
+            if (!temp.toFile().setExecutable(true)) {
+                throw new IOException("Could not make '" + temp + "' executable.");
+            }
+            moveAtomically(temp, target.toPath());
+        } catch (IOException e) {
+            /* maybe another JVM installed it in the meantime, e.g. while the target was in use on windows */
+            if (verifies(target, size)) {
+                return target;
+            }
+            throw e;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        LOGGER.info("Installed madx binary in cache '{}'.", target.getAbsolutePath());
+        return target;
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            /* can not happen within one directory on any sane file system, but better safe than sorry */
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return true, if the file exists, is executable and has the given size. As the files are only renamed to their
+     *         final name when they are complete, this detects truncated or otherwise replaced files without reading
+     *         them.
+     */
+    private static boolean verifies(File file, long size) {
+        if (!file.isFile() || !file.canExecute()) {
+            return false;
+        }
+        if (file.length() == size) {
+            return true;
+        }
+        LOGGER.warn("Cached madx binary '{}' is corrupt. Replacing it.", file.getAbsolutePath());
+        return false;
+    }
+
+    /**
+     * @return the number of copied bytes
+     */
+    private static long copyAndChecksum(InputStream in, OutputStream out, CRC32 checksum) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            checksum.update(buffer, 0, count);
+            if (out != null) {
+                out.write(buffer, 0, count);
+            }
+            size += count;
+        }
+        return size;
+    }
+
+    /**
+     * Opens the content to cache.
+     */
+    @FunctionalInterface
+    private interface ResourceSupplier {
+        /**
+         * @return a new stream of the content
+         * @throws IOException if the content can not be opened
+         */
+        InputStream open() throws IOException;
+    }
+}
@@ -31,7 +31,11 @@ package cern.accsoft.steering.jmad.bin;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 
+import cern.accsoft.steering.jmad.util.JMadPreferences;
 import cern.accsoft.steering.jmad.util.OsUtil;
 import cern.accsoft.steering.jmad.util.StreamUtil;
 import cern.accsoft.steering.jmad.util.TempFileUtil;
@@ -40,7 +44,9 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Determines the correct version of the madx-executable and provides methods to start its execution. Depending on the
- * operating system the correct executable is extracted to a temporary directory and can be executed from there.
+ * operating system the correct executable is extracted to a temporary directory and can be executed from there. If a
+ * cache path is configured in the preferences, then the executable is extracted there only once and re-used by all
+ * later starts (also of other JVMs), as long as its content matches the one in the jar.
  *
  * @author Kajetan Fuchsberger (kajetan.fuchsberger at cern.ch)
  */
@@ -60,6 +66,11 @@ public class MadxBinImpl implements MadxBin {
      */
     private TempFileUtil fileUtil;
 
+    /**
+     * The preferences, which define the cache directory (injected by spring). Might be null, then no cache is used.
+     */
+    private JMadPreferences preferences;
+
     /**
      * The filename of the executable, which then can be called by a shell
      */
@@ -74,8 +85,42 @@ public class MadxBinImpl implements MadxBin {
     }
 
     @Override
-    public Process execute() throws IOException {
-        return Runtime.getRuntime().exec(getExecutablePath());
+    public Process execute(ProcessLimits limits) throws IOException {
+        boolean linux = OsUtil.isLinux();
+        if (!linux && !limits.isEmpty()) {
+            LOGGER.warn("Process limits are only supported on Linux. Ignoring {}.", limits);
+        }
+        return new ProcessBuilder(command(getExecutablePath(), limits, linux)).start();
+    }
+
+    /**
+     * @param executable the path to the madx executable
+     * @param limits the limits for the process
+     * @param linux true, if the limits shall be applied by the Linux tools
+     * @return the command line, which starts madx within the given limits. Each tool replaces itself by the next one,
+     *         so that the started process finally is madx itself.
+     */
+    static List<String> command(String executable, ProcessLimits limits, boolean linux) {
+        List<String> command = new ArrayList<>();
+        if (linux) {
+            if (limits.getNiceLevel() != null) {
+                command.add("nice");
+                command.add("-n");
+                command.add(limits.getNiceLevel().toString());
+            }
+            if (limits.getCpuAffinity() != null) {
+                command.add("taskset");
+                command.add("-c");
+                command.add(limits.getCpuAffinity());
+            }
+            if (limits.getMemoryLimit() != null) {
+                command.add("prlimit");
+                command.add("--as=" + limits.getMemoryLimit());
+                command.add("--");
+            }
+        }
+        command.add(executable);
+        return command;
     }
 
     /**
@@ -116,6 +161,11 @@ public class MadxBinImpl implements MadxBin {
                     EXTERNAL_MADX_EXECUTABLE_PATH_PROP);
             executablePath = sysPropExecutablePath;
         } else if (resourceName != null) {
+            File cachedFile = installInCache(resourceName, executableName);
+            if (cachedFile != null) {
+                executablePath = cachedFile.getAbsolutePath();
+                return;
+            }
             LOGGER.debug("Extracting madx binary for further use.");
             File file = fileUtil.getOutputFile(executableName);
             StreamUtil.toFile(MadxBinImpl.class.getResourceAsStream(resourceName), file);
@@ -131,7 +181,34 @@ public class MadxBinImpl implements MadxBin {
         }
     }
 
+    /**
+     * @return the executable from the cache or {@code null} if no cache is configured or it can not be used
+     */
+    private File installInCache(String resourceName, String executableName) {
+        String cachePath = (preferences == null) ? null : preferences.getMadxCachePath();
+        if (cachePath == null) {
+            return null;
+        }
+        URL resource = MadxBinImpl.class.getResource(resourceName);
+        if (resource == null) {
+            LOGGER.warn("Resource '{}' not found. Can not use cache '{}' for the madx binary.", resourceName,
+                    cachePath);
+            return null;
+        }
+        try {
+            return new MadxBinCache(new File(cachePath)).install(resource, executableName);
+        } catch (IOException e) {
+            LOGGER.warn("Could not use cache '{}' for the madx binary. Extracting it to the output path.", cachePath,
+                    e);
+            return null;
+        }
+    }
+
     public void setFileUtil(TempFileUtil fileUtil) {
         this.fileUtil = fileUtil;
     }
+
+    public void setPreferences(JMadPreferences preferences) {
+        this.preferences = preferences;
+    }
 }
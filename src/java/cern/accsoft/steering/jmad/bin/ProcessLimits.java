@@ -0,0 +1,85 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.bin;
+
+/**
+ * Operating system limits for a MadX process: the CPUs it may run on, its scheduling priority and the maximum size of
+ * its address space. They are applied through the Linux tools {@code taskset}, {@code nice} and {@code prlimit} and
+ * are ignored on other operating systems. Unset values ({@code null}) do not limit anything.
+ */
+public class ProcessLimits {
+
+    /** the CPUs the process may run on, in the list format of taskset (e.g. "0-3,8") */
+    private String cpuAffinity = null;
+
+    /** the niceness of the process, from -20 (highest priority) to 19 (lowest priority) */
+    private Integer niceLevel = null;
+
+    /** the maximum size of the virtual memory of the process in bytes */
+    private Long memoryLimit = null;
+
+    /**
+     * @return true, if no limit is set at all
+     */
+    public boolean isEmpty() {
+        return (cpuAffinity == null) && (niceLevel == null) && (memoryLimit == null);
+    }
+
+    public String getCpuAffinity() {
+        return cpuAffinity;
+    }
+
+    /**
+     * @param cpuAffinity the CPUs the process may run on, in the list format of taskset (e.g. "0-3,8"). {@code null}
+     *            for all CPUs.
+     */
+    public void setCpuAffinity(String cpuAffinity) {
+        this.cpuAffinity = cpuAffinity;
+    }
+
+    public Integer getNiceLevel() {
+        return niceLevel;
+    }
+
+    /**
+     * @param niceLevel the niceness of the process, from -20 (highest priority) to 19 (lowest priority). Negative
+     *            values usually require special privileges. {@code null} to inherit the one of the JVM.
+     */
+    public void setNiceLevel(Integer niceLevel) {
+        if ((niceLevel != null) && ((niceLevel < -20) || (niceLevel > 19))) {
+            throw new IllegalArgumentException("The nice level must be between -20 and 19, but was " + niceLevel
+                    + ".");
+        }
+        this.niceLevel = niceLevel;
+    }
+
+    public Long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    /**
+     * @param memoryLimit the maximum size of the virtual memory of the process in bytes. MadX fails to allocate more
+     *            memory beyond this and terminates. {@code null} for no limit.
+     */
+    public void setMemoryLimit(Long memoryLimit) {
+        if ((memoryLimit != null) && (memoryLimit <= 0)) {
+            throw new IllegalArgumentException("The memory limit must be positive, but was " + memoryLimit + ".");
+        }
+        this.memoryLimit = memoryLimit;
+    }
+
+    @Override
+    public String toString() {
+        return "ProcessLimits [cpuAffinity=" + cpuAffinity + ", niceLevel=" + niceLevel + ", memoryLimit="
+                + memoryLimit + "]";
+    }
+}
@@ -0,0 +1,129 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.domain.elem;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import cern.accsoft.steering.jmad.JMadConstants;
+
+/**
+ * Assigns dense integer ids to element names, so that results and optics of the same lattice can refer to the names by
+ * id instead of each keeping its own copies of the strings. The dictionary only grows: an id, once assigned, stays
+ * valid for the lifetime of the dictionary. Usually there is one dictionary per model (i.e. per kernel).
+ * <p>
+ * Each distinct spelling of a name gets its own id, so that names are returned exactly as they were added. Since names
+ * in MadX are case insensitive, all spellings of a name additionally share one <em>canonical</em> id (the one of the
+ * spelling which was added first), which is used for lookups.
+ * <p>
+ * This class is thread safe. Looking up known names does not lock.
+ */
+public final class ElementNameDictionary {
+
+    /** the value returned for unknown names */
+    public static final int UNKNOWN = -1;
+
+    /** the id of each spelling */
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    /** the canonical id for each unified name */
+    private final Map<String, Integer> canonicalIds = new ConcurrentHashMap<>();
+
+    /** the names by id. Replaced as a whole when growing, entries are written before their id is published */
+    private volatile String[] names = new String[64];
+
+    /** the canonical id for each id */
+    private volatile int[] canonicalIdsById = new int[64];
+
+    private volatile int size = 0;
+
+    /**
+     * @param name the name of an element
+     * @return the id of exactly this spelling of the name, it is assigned if the name is new
+     */
+    public int id(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        return addName(name);
+    }
+
+    private synchronized int addName(String name) {
+        Integer existing = ids.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        int id = size;
+        if (id == names.length) {
+            canonicalIdsById = Arrays.copyOf(canonicalIdsById, id * 2);
+            names = Arrays.copyOf(names, id * 2);
+        }
+        Integer canonicalId = canonicalIds.putIfAbsent(unify(name), id);
+        canonicalIdsById[id] = (canonicalId == null) ? id : canonicalId;
+        names[id] = name;
+        size = id + 1;
+        ids.put(name, id);
+        return id;
+    }
+
+    /**
+     * finds the canonical id of a name, ignoring its case.
+     *
+     * @param name the name to look up
+     * @return the canonical id of the name or {@link #UNKNOWN} if it was never added
+     */
+    public int find(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return canonicalId(id);
+        }
+        Integer canonicalId = canonicalIds.get(unify(name));
+        return (canonicalId == null) ? UNKNOWN : canonicalId;
+    }
+
+    /**
+     * @param id an id as returned by {@link #id(String)}
+     * @return the name for the id, exactly as it was added
+     */
+    public String name(int id) {
+        return names[checkId(id)];
+    }
+
+    /**
+     * @param id an id as returned by {@link #id(String)}
+     * @return the id of the first spelling of the name, which is shared by all spellings
+     */
+    public int canonicalId(int id) {
+        return canonicalIdsById[checkId(id)];
+    }
+
+    /**
+     * @return the number of ids assigned so far. All ids are smaller than this.
+     */
+    public int size() {
+        return size;
+    }
+
+    private int checkId(int id) {
+        if ((id < 0) || (id >= size)) {
+            throw new IndexOutOfBoundsException("Id " + id + " was not assigned by this dictionary of " + size
+                    + " names.");
+        }
+        return id;
+    }
+
+    private static String unify(String name) {
+        return name.toUpperCase(JMadConstants.DEFAULT_LOCALE);
+    }
+}
@@ -23,12 +23,13 @@
 package cern.accsoft.steering.jmad.domain.optics;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import cern.accsoft.steering.jmad.JMadConstants;
 import cern.accsoft.steering.jmad.domain.elem.Element;
+import cern.accsoft.steering.jmad.domain.elem.ElementNameDictionary;
 import cern.accsoft.steering.jmad.domain.types.enums.JMadPlane;
 import cern.accsoft.steering.jmad.domain.var.enums.JMadTwissVariable;
 import cern.accsoft.steering.jmad.domain.var.enums.MadxTwissVariable;
@@ -45,8 +46,11 @@ import cern.accsoft.steering.jmad.util.ListUtil.Mapper;
  */
 public class OpticImpl implements Optic {
 
-    /** the element indizes by name */
-    private final Map<String, Integer> indizes = new HashMap<String, Integer>();
+    /** the dictionary, which provides the ids of the element names */
+    private final ElementNameDictionary nameDictionary;
+
+    /** the element indizes by the canonical id of their names, -1 for names without point */
+    private int[] indizes = new int[0];
 
     /** all the optics points */
     private final List<OpticPoint> points = new ArrayList<OpticPoint>();
@@ -57,6 +61,20 @@ public class OpticImpl implements Optic {
     /** the names of the optics-points (Elements) */
     private List<String> names = new ArrayList<String>();
 
+    /**
+     * creates an optic with its own dictionary of element names.
+     */
+    public OpticImpl() {
+        this(new ElementNameDictionary());
+    }
+
+    /**
+     * @param nameDictionary the dictionary for the element names, usually the one of the results the optic is made of
+     */
+    public OpticImpl(ElementNameDictionary nameDictionary) {
+        this.nameDictionary = nameDictionary;
+    }
+
     /**
      * adds values for all elements, representing the given variable
      * 
@@ -74,7 +92,13 @@ public class OpticImpl implements Optic {
      */
     public void add(OpticPoint point) {
         points.add(point);
-        indizes.put(unifyKey(point.getName()), points.size() - 1);
+        int id = nameDictionary.canonicalId(nameDictionary.id(point.getName()));
+        if (id >= indizes.length) {
+            int length = indizes.length;
+            indizes = Arrays.copyOf(indizes, Math.max(nameDictionary.size(), 2 * length));
+            Arrays.fill(indizes, length, indizes.length, -1);
+        }
+        indizes[id] = points.size() - 1;
     }
 
     @Override
@@ -84,7 +108,7 @@ public class OpticImpl implements Optic {
 
     @Override
     public OpticPoint getPointByName(String name) {
-        Integer index = indizes.get(unifyKey(name));
+        Integer index = getIndex(name);
         if (index != null) {
             return points.get(index);
         }
@@ -103,17 +127,11 @@ public class OpticImpl implements Optic {
      * @return the index
      */
     private Integer getIndex(String name) {
-        return indizes.get(unifyKey(name));
-    }
-
-    /**
-     * creates a standard key which is used in the maps
-     * 
-     * @param key the key to unify
-     * @return a key in a unified form
-     */
-    private static final String unifyKey(String key) {
-        return key.toUpperCase(JMadConstants.DEFAULT_LOCALE);
+        int id = nameDictionary.find(name);
+        if ((id < 0) || (id >= indizes.length) || (indizes[id] < 0)) {
+            return null;
+        }
+        return indizes[id];
     }
 
     /**
@@ -0,0 +1,258 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.domain.result.tfs;
+
+import static cern.accsoft.steering.jmad.domain.result.tfs.TfsDoubles.parseTfsDouble;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A column of numbers, stored as primitive doubles. The text of each value is kept as well (one byte per character),
+ * because the {@link TfsResult} also provides the values exactly as written by MadX.
+ * <p>
+ * The texts are only converted to numbers on the first access to them, so that columns which are never read cost
+ * nothing but the copy of their text. Concurrent first accesses are safe: the conversion is done by one thread while
+ * the others wait for it, and the converted values are published through a volatile field. Appending is not thread
+ * safe and must be finished before the column is read by other threads.
+ */
+class DoubleColumn extends TfsColumn {
+
+    /** the converted values, null until the first access */
+    private volatile double[] values = null;
+
+    /** the characters of the texts of all rows, one after the other */
+    private byte[] text = new byte[0];
+
+    /** the end of the text of each row within the text array */
+    private int[] textEnds = new int[0];
+
+    private int size = 0;
+
+    /** the first text which is not a number, null if all are valid */
+    private String invalidValue = null;
+
+    @Override
+    void append(String value) {
+        if (size == textEnds.length) {
+            textEnds = Arrays.copyOf(textEnds, grow(textEnds.length));
+        }
+        appendText(value);
+        size++;
+        /* converted again on the next access */
+        values = null;
+    }
+
+    @Override
+    void appendAll(TfsColumn other) {
+        if (!(other instanceof DoubleColumn)) {
+            super.appendAll(other);
+            return;
+        }
+        /* the texts are copied as they are, the offsets are shifted behind the existing texts */
+        DoubleColumn source = (DoubleColumn) other;
+        int newSize = size + source.size;
+        if (newSize > textEnds.length) {
+            textEnds = Arrays.copyOf(textEnds, Math.max(grow(textEnds.length), newSize));
+        }
+        int start = (size == 0) ? 0 : textEnds[size - 1];
+        int length = (source.size == 0) ? 0 : source.textEnds[source.size - 1];
+        if (start + length > text.length) {
+            text = Arrays.copyOf(text, Math.max(grow(text.length), start + length));
+        }
+        System.arraycopy(source.text, 0, text, start, length);
+        for (int row = 0; row < source.size; row++) {
+            textEnds[size + row] = start + source.textEnds[row];
+        }
+        size = newSize;
+        values = null;
+    }
+
+    private void appendText(String value) {
+        int start = (size == 0) ? 0 : textEnds[size - 1];
+        int end = start + value.length();
+        if (end > text.length) {
+            text = Arrays.copyOf(text, Math.max(grow(text.length), end));
+        }
+        /* numbers consist of ASCII characters only, others are not needed exactly as they make the column invalid */
+        for (int i = 0; i < value.length(); i++) {
+            text[start + i] = (byte) value.charAt(i);
+        }
+        textEnds[size] = end;
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    String getString(int row) {
+        int start = (row == 0) ? 0 : textEnds[row - 1];
+        return new String(text, start, textEnds[row] - start, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @param row the index of the row
+     * @return the value of the row, NaN if it is not a number
+     */
+    double getDouble(int row) {
+        return values()[row];
+    }
+
+    /**
+     * converts the column, if this was not done yet.
+     *
+     * @return the first value which is not a number, {@code null} if all are valid
+     */
+    String getInvalidValue() {
+        values();
+        return invalidValue;
+    }
+
+    /**
+     * checks, if all texts are numbers, without converting them. Plain decimal numbers are recognized by a scan of
+     * their characters, only other texts (e.g. "inf" or "NaN") are actually parsed.
+     *
+     * @return the first value which is not a number, {@code null} if all are valid
+     */
+    String findInvalidValue() {
+        if (isConverted()) {
+            return invalidValue;
+        }
+        for (int row = 0; row < size; row++) {
+            int start = (row == 0) ? 0 : textEnds[row - 1];
+            if (isDecimal(text, start, textEnds[row])) {
+                continue;
+            }
+            String value = getString(row);
+            try {
+                parseTfsDouble(value);
+            } catch (NumberFormatException e) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true, if the given characters are a decimal number of the form [+-]digits[.digits][(e|E)[+-]digits],
+     *         where either the integer or the fraction digits may be missing. All of these are accepted by
+     *         {@link Double#parseDouble(String)}.
+     */
+    private static boolean isDecimal(byte[] chars, int start, int end) {
+        int i = start;
+        if ((i < end) && ((chars[i] == '+') || (chars[i] == '-'))) {
+            i++;
+        }
+        int digits = 0;
+        for (; (i < end) && isDigit(chars[i]); i++) {
+            digits++;
+        }
+        if ((i < end) && (chars[i] == '.')) {
+            for (i++; (i < end) && isDigit(chars[i]); i++) {
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if ((i < end) && ((chars[i] == 'e') || (chars[i] == 'E'))) {
+            i++;
+            if ((i < end) && ((chars[i] == '+') || (chars[i] == '-'))) {
+                i++;
+            }
+            int exponentDigits = 0;
+            for (; (i < end) && isDigit(chars[i]); i++) {
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return false;
+            }
+        }
+        return i == end;
+    }
+
+    private static boolean isDigit(byte b) {
+        return (b >= '0') && (b <= '9');
+    }
+
+    /**
+     * @return true, if the texts were already converted to numbers
+     */
+    boolean isConverted() {
+        return values != null;
+    }
+
+    /**
+     * @return the converted values. They are converted by the first caller.
+     */
+    private double[] values() {
+        double[] converted = values;
+        if (converted == null) {
+            synchronized (this) {
+                converted = values;
+                if (converted == null) {
+                    converted = convert();
+                    values = converted;
+                }
+            }
+        }
+        return converted;
+    }
+
+    private double[] convert() {
+        double[] converted = new double[size];
+        invalidValue = null;
+        for (int row = 0; row < size; row++) {
+            String value = getString(row);
+            try {
+                converted[row] = parseTfsDouble(value);
+            } catch (NumberFormatException e) {
+                converted[row] = Double.NaN;
+                if (invalidValue == null) {
+                    invalidValue = value;
+                }
+            }
+        }
+        return converted;
+    }
+
+    @Override
+    void compact() {
+        textEnds = Arrays.copyOf(textEnds, size);
+        text = Arrays.copyOf(text, (size == 0) ? 0 : textEnds[size - 1]);
+    }
+
+    /**
+     * @return a read only view on the values, which boxes them on access
+     */
+    List<Double> doubleView() {
+        return new DoubleView();
+    }
+
+    private class DoubleView extends AbstractList<Double> implements RandomAccess {
+        @Override
+        public Double get(int index) {
+            checkRow(index);
+            return values()[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.domain.result.tfs;
+
+import java.util.Arrays;
+
+import cern.accsoft.steering.jmad.domain.elem.ElementNameDictionary;
+
+/**
+ * The column of the element names. The rows only keep the ids of the names in the dictionary, which is usually shared
+ * by all results of a model, so that the names of a lattice are stored only once, no matter how many results refer to
+ * them.
+ */
+class NameColumn extends TfsColumn {
+
+    private final ElementNameDictionary dictionary;
+
+    /** the id of the name of each row */
+    private int[] ids = new int[0];
+
+    private int size = 0;
+
+    NameColumn(ElementNameDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    void append(String value) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, grow(ids.length));
+        }
+        ids[size++] = dictionary.id(value);
+    }
+
+    @Override
+    void appendAll(TfsColumn other) {
+        if (!(other instanceof NameColumn) || (((NameColumn) other).dictionary != dictionary)) {
+            super.appendAll(other);
+            return;
+        }
+        NameColumn source = (NameColumn) other;
+        if (size + source.size > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(grow(ids.length), size + source.size));
+        }
+        System.arraycopy(source.ids, 0, ids, size, source.size);
+        size += source.size;
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    String getString(int row) {
+        return dictionary.name(ids[row]);
+    }
+
+    /**
+     * @param row the index of the row
+     * @return the canonical id of the name of the row, which is the same for all spellings of the name
+     */
+    int getCanonicalId(int row) {
+        return dictionary.canonicalId(ids[row]);
+    }
+
+    @Override
+    void compact() {
+        ids = Arrays.copyOf(ids, size);
+    }
+}
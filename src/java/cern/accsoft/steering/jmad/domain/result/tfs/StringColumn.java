@@ -0,0 +1,107 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.domain.result.tfs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A column of text values. Each distinct value is stored only once, the rows refer to it by its index in the
+ * dictionary. Columns like the keyword or parent of the elements contain only a handful of distinct values.
+ */
+class StringColumn extends TfsColumn {
+
+    /** the distinct values in the order of their first appearance */
+    private final List<String> dictionary = new ArrayList<>();
+
+    /** the index of each value in the dictionary. Only needed while appending, so it is dropped by compact(). */
+    private Map<String, Integer> codes = new HashMap<>();
+
+    /** the index in the dictionary for each row */
+    private int[] rows = new int[0];
+
+    private int size = 0;
+
+    @Override
+    void append(String value) {
+        int code = code(value);
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, grow(rows.length));
+        }
+        rows[size++] = code;
+    }
+
+    /**
+     * @return the index of the value in the dictionary, it is added if it is not contained yet
+     */
+    private int code(String value) {
+        if (codes == null) {
+            codes = new HashMap<>();
+            for (int i = 0; i < dictionary.size(); i++) {
+                codes.put(dictionary.get(i), i);
+            }
+        }
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(value);
+            codes.put(value, code);
+        }
+        return code;
+    }
+
+    @Override
+    void appendAll(TfsColumn other) {
+        if (!(other instanceof StringColumn)) {
+            super.appendAll(other);
+            return;
+        }
+        /* only the dictionary of the other column is looked up, the rows are translated by the codes */
+        StringColumn source = (StringColumn) other;
+        int[] translation = new int[source.dictionary.size()];
+        for (int i = 0; i < translation.length; i++) {
+            translation[i] = code(source.dictionary.get(i));
+        }
+        if (size + source.size > rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(grow(rows.length), size + source.size));
+        }
+        for (int row = 0; row < source.size; row++) {
+            rows[size++] = translation[source.rows[row]];
+        }
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    String getString(int row) {
+        return dictionary.get(rows[row]);
+    }
+
+    /**
+     * @return the number of distinct values
+     */
+    int getDistinctCount() {
+        return dictionary.size();
+    }
+
+    @Override
+    void compact() {
+        codes = null;
+        rows = Arrays.copyOf(rows, size);
+    }
+}
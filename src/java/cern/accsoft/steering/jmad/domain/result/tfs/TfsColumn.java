@@ -0,0 +1,87 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.domain.result.tfs;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * One column of a {@link TfsResultImpl}. The values are appended row by row while the result is filled and can be read
+ * as text through a read only list view afterwards.
+ */
+abstract class TfsColumn {
+
+    /**
+     * @param value the text of the value to append as new last row
+     */
+    abstract void append(String value);
+
+    /**
+     * appends all rows of the given column, in their order.
+     *
+     * @param other the column whose rows to append
+     */
+    void appendAll(TfsColumn other) {
+        for (int row = 0; row < other.size(); row++) {
+            append(other.getString(row));
+        }
+    }
+
+    /**
+     * @return the number of rows
+     */
+    abstract int size();
+
+    /**
+     * @param row the index of the row
+     * @return the value as it was appended
+     */
+    abstract String getString(int row);
+
+    /**
+     * releases the memory which is only needed while appending. Further values can still be appended afterwards.
+     */
+    void compact() {
+        /* nothing by default */
+    }
+
+    /**
+     * @return a read only view on the values as text
+     */
+    List<String> stringView() {
+        return new StringView();
+    }
+
+    private class StringView extends AbstractList<String> implements RandomAccess {
+        @Override
+        public String get(int index) {
+            checkRow(index);
+            return getString(index);
+        }
+
+        @Override
+        public int size() {
+            return TfsColumn.this.size();
+        }
+    }
+
+    void checkRow(int row) {
+        if ((row < 0) || (row >= size())) {
+            throw new IndexOutOfBoundsException("Row " + row + " does not exist in a column of " + size() + " rows.");
+        }
+    }
+
+    static int grow(int length) {
+        return Math.max(16, length + (length >> 1));
+    }
+}
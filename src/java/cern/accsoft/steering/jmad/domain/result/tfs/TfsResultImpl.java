@@ -11,51 +11,78 @@
 
 package cern.accsoft.steering.jmad.domain.result.tfs;
 
-import static cern.accsoft.steering.jmad.domain.result.tfs.TfsDoubles.parseTfsDouble;
-
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import cern.accsoft.steering.jmad.JMadConstants;
+import cern.accsoft.steering.jmad.domain.elem.ElementNameDictionary;
 import cern.accsoft.steering.jmad.domain.result.ResultType;
 import cern.accsoft.steering.jmad.domain.var.MadxVariable;
 import cern.accsoft.steering.jmad.domain.var.enums.MadxTwissVariable;
 import cern.accsoft.steering.jmad.util.MadxVarType;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+/**
+ * The result of a MadX command which writes a TFS table. The data is stored column by column: numbers as primitive
+ * doubles and texts with a dictionary per column, so that large tables (e.g. a twiss of the whole machine with many
+ * columns) need only a fraction of the memory of one object per value. The lists returned by the getters are read
+ * only views on the columns.
+ * <p>
+ * The result is filled by one thread (through {@link #createColumn(String)}, {@link #setVarType(String, MadxVarType)}
+ * and {@link #addRow(List)}), completed by {@link #finish()} or {@link #convert()} and read afterwards. Completing
+ * creates all the columns, reading never changes the set of columns. The numbers of a column are converted from their
+ * text on the first call to {@link #getDoubleData(String)} for it, unless {@link #convert()} converted all of them in
+ * advance. Once it is completed, the result can be read by several threads concurrently: the first access to a column
+ * converts it exactly once and the index of the element names is built exactly once, while other threads wait for it.
+ * The dictionary of element names may grow meanwhile (e.g. by the parsing of further results of the same model), names
+ * added later are simply not found in this result.
+ */
 public class TfsResultImpl implements TfsResult {
 
-    /** the class logger */
-    private static final Logger LOGGER = LoggerFactory.getLogger(TfsResultImpl.class);
+    /** the key of the column with the element names */
+    private static final String NAME_KEY = unifyKey(MadxTwissVariable.NAME.getMadxName());
 
     /** The representation of the summary table for this result */
     private TfsSummary tfsSummary;
 
+    /** The dictionary, which provides the ids of the element names */
+    private final ElementNameDictionary nameDictionary;
+
     /**
-     * If the result includes the elementnames, then we store the index of the element-names for fast access.
+     * If the result includes the elementnames, then we store the row of each element by the canonical id of its name
+     * (-1 for names which are not contained) for fast access. Built on first use while holding the lock of the result,
+     * null until then.
      */
-    private final Map<String, Integer> elementIndizes = new HashMap<String, Integer>();
+    private volatile int[] elementIndizes = null;
 
-    /** here the Lists of values are stored. */
-    private final Map<String, List<String>> valueLists = new LinkedHashMap<String, List<String>>();
+    /** The keys of the columns in the order of the file */
+    private final List<String> keys = new ArrayList<String>();
 
-    /** also the double values are stored to improve performance */
-    private final Map<String, List<Double>> doubleValueLists = new LinkedHashMap<String, List<Double>>();
+    /** The index of each column by its (unified) key */
+    private final Map<String, Integer> columnIndizes = new HashMap<String, Integer>();
 
-    /**
-     * In order to be able to work with simple array-list we additionly store the keys seperately:
-     */
-    private final List<String> keys = new ArrayList<String>();
+    /** The columns in the order of the keys. null for columns, into which no row was added yet. */
+    private final List<TfsColumn> columns = new ArrayList<TfsColumn>();
 
     /** The types of the variables (columns in the file) */
     private final Map<String, MadxVarType> varTypes = new HashMap<String, MadxVarType>();
 
+    /**
+     * creates a result with its own dictionary of element names.
+     */
+    public TfsResultImpl() {
+        this(new ElementNameDictionary());
+    }
+
+    /**
+     * @param nameDictionary the dictionary for the element names, usually the one shared by all results of a model
+     */
+    public TfsResultImpl(ElementNameDictionary nameDictionary) {
+        this.nameDictionary = nameDictionary;
+    }
+
     //
     // public methods needed for filling the result
     //
@@ -64,10 +91,10 @@ public class TfsResultImpl implements TfsResult {
      * clears all internal variables.
      */
     public void clear() {
-        elementIndizes.clear();
+        elementIndizes = null;
         varTypes.clear();
-        valueLists.clear();
-        doubleValueLists.clear();
+        columnIndizes.clear();
+        columns.clear();
         keys.clear();
     }
 
@@ -77,8 +104,10 @@ public class TfsResultImpl implements TfsResult {
      * @param key the key for this column.
      */
     public void createColumn(String key) {
-        keys.add(unifyKey(key));
-        valueLists.put(unifyKey(key), new ArrayList<String>());
+        String unifiedKey = unifyKey(key);
+        columnIndizes.put(unifiedKey, keys.size());
+        keys.add(unifiedKey);
+        columns.add(null);
     }
 
     /**
@@ -92,60 +121,74 @@ public class TfsResultImpl implements TfsResult {
     }
 
     /**
-     * adds a new line of data to the dataset.
+     * adds a new line of data to the dataset. The types of the columns should be set before, otherwise the values are
+     * stored as text and converted by {@link #convert()}.
      * 
      * @param values the values to set as Strings.
      */
     public void addRow(List<String> values) {
-        int columnNumber = 0;
-        Collection<List<String>> lists = valueLists.values();
-        for (List<String> list : lists) {
-            list.add(values.get(columnNumber));
-
-            // if this is the column with element-name, then store the index
-            if (unifyKey(MadxTwissVariable.NAME.getMadxName()).equalsIgnoreCase(keys.get(columnNumber))) {
-                elementIndizes.put(values.get(columnNumber).toLowerCase(), list.size() - 1);
+        for (int i = 0; i < columns.size(); i++) {
+            TfsColumn column = columns.get(i);
+            if (column == null) {
+                column = newColumn(i);
+                columns.set(i, column);
             }
-            columnNumber++;
+            column.append(values.get(i));
         }
+        elementIndizes = null;
     }
 
     /**
-     * converts the data to Double and returns as ArrayList.
+     * creates an empty result with the same columns and types as this one. It can be filled independently (e.g. by
+     * another thread) and its rows can then be taken over by {@link #addRows(TfsResultImpl)}.
      * 
-     * @param key the key for which to get the data
-     * @return the ArrayList with values for one key (column in file)
-     * @throws TfsResultException if the calculation of the data fails
+     * @return the new, empty result without summary
      */
-    private List<Double> calcDoubleData(String key) throws TfsResultException {
-        ArrayList<Double> doubleList = new ArrayList<Double>();
-        List<String> valueList = valueLists.get(key);
-
-        if (!valueLists.containsKey(key)) {
-            LOGGER.error("No Data for key '" + key + "'");
-            return null;
+    public TfsResultImpl createChunk() {
+        TfsResultImpl chunk = new TfsResultImpl(nameDictionary);
+        for (String key : keys) {
+            chunk.createColumn(key);
         }
+        chunk.varTypes.putAll(varTypes);
+        return chunk;
+    }
 
-        if (!getVarType(key).equals(MadxVarType.DOUBLE)) {
-            LOGGER.error("Data for key '" + key + "' is not of type Double!");
-            return null;
+    /**
+     * adds all rows of the given result behind the existing ones. The data of the columns is copied as a whole, without
+     * going through the single values.
+     * 
+     * @param chunk a result with the same columns as this one, usually created by {@link #createChunk()}
+     */
+    public void addRows(TfsResultImpl chunk) {
+        if (!keys.equals(chunk.keys)) {
+            throw new IllegalArgumentException("The chunk has the columns " + chunk.keys + ", but " + keys
+                    + " are required.");
         }
-
-        for (String value : valueList) {
-            try {
-                doubleList.add(parseTfsDouble(value));
-            } catch (NumberFormatException e) {
-                throw new TfsResultException("Error while converting value '" + value + "' to Double", e);
+        for (int i = 0; i < columns.size(); i++) {
+            TfsColumn source = chunk.columns.get(i);
+            if (source != null) {
+                column(i).appendAll(source);
             }
         }
+        elementIndizes = null;
+    }
 
-        return doubleList;
+    private TfsColumn newColumn(int index) {
+        String key = keys.get(index);
+        if (NAME_KEY.equals(key)) {
+            return new NameColumn(nameDictionary);
+        }
+        if (MadxVarType.DOUBLE == varTypes.get(key)) {
+            return new DoubleColumn();
+        }
+        return new StringColumn();
     }
 
     /**
-     * Validates, if all values can be correctly retrieved. If not, it throws an exception.
+     * Validates, if all columns have a known type and data of this type. The texts of the numbers are checked without
+     * converting them, which is still done on the first access to a column.
      * 
-     * @throws TfsResultException if the verification fails.
+     * @throws TfsResultException if the verification fails, e.g. if a value of a double column is not a number
      */
     public void verify() throws TfsResultException {
         for (String key : keys) {
@@ -159,9 +202,15 @@ public class TfsResultImpl implements TfsResult {
                     throw new TfsResultException("Some String-data is null!");
                 }
             } else if (varType == MadxVarType.DOUBLE) {
-                if (getDoubleData(key) == null) {
+                TfsColumn column = column(key);
+                if (!(column instanceof DoubleColumn)) {
                     throw new TfsResultException("Some Double-data is null!");
                 }
+                String invalidValue = ((DoubleColumn) column).findInvalidValue();
+                if (invalidValue != null) {
+                    throw new TfsResultException("Double-data cannot be calculated!", new TfsResultException(
+                            "Error while converting value '" + invalidValue + "' to Double"));
+                }
             } else {
                 throw new TfsResultException("Result contains Data of type " + varType.toString()
                         + ". Dont know how to verify!");
@@ -170,25 +219,79 @@ public class TfsResultImpl implements TfsResult {
     }
 
     /**
-     * Converts all double data for fast retrieval.
+     * Converts all double data in advance and releases the memory which was only needed for filling the result.
      * 
      * @throws TfsResultException if the conversion from string to double values is not possible
      */
     public void convert() throws TfsResultException {
-        doubleValueLists.clear();
-        for (String key : keys) {
-            MadxVarType varType = getVarType(key);
-            if (MadxVarType.DOUBLE.equals(varType)) {
-                try {
-                    List<Double> doubleValues = calcDoubleData(key);
-                    doubleValueLists.put(key, doubleValues);
-                } catch (TfsResultException e) {
-                    throw new TfsResultException("Double-data cannot be calculated!", e);
+        finish();
+        for (int i = 0; i < columns.size(); i++) {
+            TfsColumn column = columns.get(i);
+            if (column instanceof DoubleColumn) {
+                String invalidValue = ((DoubleColumn) column).getInvalidValue();
+                if (invalidValue != null) {
+                    throw new TfsResultException("Double-data cannot be calculated!", new TfsResultException(
+                            "Error while converting value '" + invalidValue + "' to Double"));
                 }
             }
         }
     }
 
+    /**
+     * completes the filling of the result: the columns get the storage for their types and the memory which was only
+     * needed for filling is released. In contrast to {@link #convert()}, the numbers are converted only when they are
+     * accessed.
+     */
+    public void finish() {
+        for (int i = 0; i < columns.size(); i++) {
+            TfsColumn column = column(i);
+            if (MadxVarType.DOUBLE.equals(getVarType(keys.get(i))) && !(column instanceof DoubleColumn)) {
+                column = toDoubleColumn(column);
+                columns.set(i, column);
+            }
+            column.compact();
+        }
+    }
+
+    private static DoubleColumn toDoubleColumn(TfsColumn column) {
+        DoubleColumn doubleColumn = new DoubleColumn();
+        for (int row = 0; row < column.size(); row++) {
+            doubleColumn.append(column.getString(row));
+        }
+        return doubleColumn;
+    }
+
+    /**
+     * only for filling and completing the result, since it creates missing columns.
+     * 
+     * @param index the index of the column
+     * @return the column with the given index, an empty one of the right type if no row was added yet
+     */
+    private TfsColumn column(int index) {
+        TfsColumn column = columns.get(index);
+        if (column == null) {
+            column = newColumn(index);
+            columns.set(index, column);
+        }
+        return column;
+    }
+
+    /**
+     * for reading the result. Does not modify the columns, so that concurrent readers are safe.
+     * 
+     * @param key the key of the column
+     * @return the column for the given key, null if there is none. An empty column of the right type if the result was
+     *         not completed and no row was added yet.
+     */
+    private TfsColumn column(String key) {
+        Integer index = columnIndizes.get(unifyKey(key));
+        if (index == null) {
+            return null;
+        }
+        TfsColumn column = columns.get(index);
+        return (column == null) ? newColumn(index) : column;
+    }
+
     /**
      * ensures that all keys are the same case.
      * 
@@ -199,19 +302,55 @@ public class TfsResultImpl implements TfsResult {
         return key.toUpperCase(JMadConstants.DEFAULT_LOCALE);
     }
 
+    /**
+     * builds the index of the element names. Later rows win, if an element appears several times.
+     */
+    private int[] buildElementIndizes() {
+        int[] indizes = new int[nameDictionary.size()];
+        Arrays.fill(indizes, -1);
+        TfsColumn column = column(NAME_KEY);
+        if (column instanceof NameColumn) {
+            NameColumn nameColumn = (NameColumn) column;
+            for (int row = 0; row < nameColumn.size(); row++) {
+                indizes[nameColumn.getCanonicalId(row)] = row;
+            }
+        }
+        return indizes;
+    }
+
+    /**
+     * @return the dictionary, which provides the ids of the element names in this result
+     */
+    public ElementNameDictionary getElementNameDictionary() {
+        return nameDictionary;
+    }
+
     //
     // methods of interface TfsResult
     //
 
     @Override
     public int getColumnCount() {
-        return valueLists.size();
+        return keys.size();
     }
 
     @Override
     public Integer getElementIndex(String elementName) {
-        String key = elementName.toLowerCase();
-        return elementIndizes.get(key);
+        int[] indizes = elementIndizes;
+        if (indizes == null) {
+            synchronized (this) {
+                indizes = elementIndizes;
+                if (indizes == null) {
+                    indizes = buildElementIndizes();
+                    elementIndizes = indizes;
+                }
+            }
+        }
+        int id = nameDictionary.find(elementName);
+        if ((id < 0) || (id >= indizes.length) || (indizes[id] < 0)) {
+            return null;
+        }
+        return indizes[id];
     }
 
     @Override
@@ -219,9 +358,25 @@ public class TfsResultImpl implements TfsResult {
         return getDoubleData(resultVariable.getMadxName());
     }
 
+    /**
+     * {@inheritDoc} The column is converted from its text on the first call for it.
+     * 
+     * @throws IllegalStateException if the column contains a value, which is not a number. This can only happen, if
+     *             the result was neither completed by {@link #convert()} nor checked by {@link #verify()}.
+     */
     @Override
     public List<Double> getDoubleData(String key) {
-        return this.createImmutableList(doubleValueLists.get(unifyKey(key)));
+        TfsColumn column = column(key);
+        if (!(column instanceof DoubleColumn)) {
+            return null;
+        }
+        DoubleColumn doubleColumn = (DoubleColumn) column;
+        String invalidValue = doubleColumn.getInvalidValue();
+        if (invalidValue != null) {
+            throw new IllegalStateException("Value '" + invalidValue + "' of column '" + unifyKey(key)
+                    + "' is not a number.");
+        }
+        return doubleColumn.doubleView();
     }
 
     @Override
@@ -231,23 +386,11 @@ public class TfsResultImpl implements TfsResult {
 
     @Override
     public List<String> getStringData(String key) {
-        return this.createImmutableList(valueLists.get(unifyKey(key)));
-    }
-
-    /**
-     * make the input list unmodifiable. checks if the input list is <code>null</code> and returns <code>null</code> in
-     * this case.
-     * 
-     * @param <T> the generic type of the list elements
-     * @param input the input list
-     * @return the immutable list or <code>null</code> if input was <code>null</code>
-     */
-    private <T> List<T> createImmutableList(List<T> input) {
-        if (input == null) {
+        TfsColumn column = column(key);
+        if (column == null) {
             return null;
-        } else {
-            return Collections.unmodifiableList(input);
         }
+        return column.stringView();
     }
 
     @Override
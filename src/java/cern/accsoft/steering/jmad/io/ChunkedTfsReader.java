@@ -0,0 +1,314 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultImpl;
+
+/**
+ * Reads the rows of a plain (uncompressed) TFS file by parsing chunks of rows in parallel on the common fork/join pool.
+ * The chunks are split at line boundaries, so that each of them can be tokenized independently. Each chunk results in
+ * a separate {@link TfsResultImpl}, which is handed over in the order of the file as soon as it and all the chunks
+ * before it are parsed.
+ * <p>
+ * The chunks are read by positional reads of the channel into small buffers, so that neither the content of the file
+ * nor a mapping of it is held: the file can be deleted as soon as the channel is closed, also on Windows. Only a
+ * limited number of chunks is parsed ahead of the one which is handed over next, which bounds the memory used in
+ * addition to the complete result.
+ */
+class ChunkedTfsReader {
+
+    /** the default maximum number of bytes parsed as one chunk */
+    static final long DEFAULT_CHUNK_SIZE = 16L << 20;
+
+    /** the number of bytes read at once while searching for line boundaries */
+    private static final int SCAN_BUFFER_SIZE = 1 << 12;
+
+    /** the number of bytes read at once while decoding a chunk */
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private static final byte NEWLINE = '\n';
+
+    private final FileChannel channel;
+    private final long chunkSize;
+    private final long size;
+
+    /**
+     * @param channel the channel of the file to read. It is not closed by this class.
+     * @param chunkSize the maximum number of bytes which are parsed as one chunk (single lines may be longer)
+     * @throws IOException if the size of the file can not be determined
+     */
+    ChunkedTfsReader(FileChannel channel, long chunkSize) throws IOException {
+        this.channel = channel;
+        this.chunkSize = chunkSize;
+        this.size = channel.size();
+    }
+
+    /**
+     * finds the start of the first line, which is not part of the header (i.e. does not start with '@', '*' or '$'
+     * and is not empty).
+     *
+     * @return the position of the first row, the size of the file if there is none
+     * @throws IOException if reading fails
+     */
+    long findDataStart() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long lineStart = 0;
+        boolean atLineStart = true;
+        boolean headerLine = false;
+        long position = 0;
+        while (position < size) {
+            buffer.clear();
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                break;
+            }
+            for (int i = 0; i < count; i++) {
+                byte b = buffer.get(i);
+                if (b == NEWLINE) {
+                    atLineStart = true;
+                    headerLine = false;
+                    lineStart = position + i + 1;
+                } else if (atLineStart && !isBlank(b)) {
+                    if ((b != '@') && (b != '*') && (b != '$')) {
+                        return lineStart;
+                    }
+                    atLineStart = false;
+                    headerLine = true;
+                }
+            }
+            position += count;
+        }
+        return headerLine ? size : lineStart;
+    }
+
+    /**
+     * @param start the first byte
+     * @param end the byte after the last one
+     * @return a reader on the given part of the file, which decodes it with the default charset (as a
+     *         {@link java.io.FileReader} does)
+     */
+    Reader open(long start, long end) {
+        return new ChannelReader(start, end);
+    }
+
+    /**
+     * parses all rows from the given position on and hands over the chunks in the order of the file.
+     *
+     * @param start the position of the first row, as returned by {@link #findDataStart()}
+     * @param template the result, which provides the columns and their types for the chunks
+     * @param consumer receives the parsed chunks in the order of the file, always in the calling thread
+     * @throws TfsFileParserException if a row does not fit to the columns
+     * @throws IOException if reading fails
+     */
+    void readRows(long start, TfsResultImpl template, Consumer<TfsResultImpl> consumer)
+            throws TfsFileParserException, IOException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int maxPending = 2 * pool.getParallelism();
+        Deque<ForkJoinTask<TfsResultImpl>> pending = new ArrayDeque<>();
+        long position = start;
+        try {
+            while ((position < size) || !pending.isEmpty()) {
+                while ((position < size) && (pending.size() < maxPending)) {
+                    long end = nextLineStart(Math.min(size, position + chunkSize));
+                    pending.add(pool.submit(new ChunkTask(template, position, end)));
+                    position = end;
+                }
+                consumer.accept(pending.remove().join());
+            }
+        } catch (ChunkException e) {
+            throw findCause(e, TfsFileParserException.class);
+        } catch (UncheckedIOException e) {
+            throw findCause(e, IOException.class);
+        } finally {
+            for (ForkJoinTask<TfsResultImpl> task : pending) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * The fork/join pool might rethrow a copy of the exception of another thread, so the original one is searched in
+     * the causes.
+     */
+    private static <T extends Exception> T findCause(RuntimeException exception, Class<T> type) {
+        for (Throwable cause = exception.getCause(); cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return type.cast(cause);
+            }
+        }
+        throw exception;
+    }
+
+    /**
+     * @param position a position within the file
+     * @return the start of the first line which starts at or behind the given position, the size of the file if
+     *         there is none
+     */
+    private long nextLineStart(long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        /* if the previous byte is a newline, then the position itself is the start of a line */
+        long scanPosition = position - 1;
+        while (scanPosition < size) {
+            buffer.clear();
+            int count = channel.read(buffer, scanPosition);
+            if (count < 0) {
+                break;
+            }
+            for (int i = 0; i < count; i++) {
+                if (buffer.get(i) == NEWLINE) {
+                    return scanPosition + i + 1;
+                }
+            }
+            scanPosition += count;
+        }
+        return size;
+    }
+
+    private static boolean isBlank(byte b) {
+        return (b == ' ') || (b == '\t') || (b == '\r');
+    }
+
+    /**
+     * Parses the rows between two line boundaries.
+     */
+    private class ChunkTask extends RecursiveTask<TfsResultImpl> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient TfsResultImpl template;
+        private final long start;
+        private final long end;
+
+        ChunkTask(TfsResultImpl template, long start, long end) {
+            this.template = template;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected TfsResultImpl compute() {
+            try {
+                return parseChunk();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (TfsFileParserException e) {
+                throw new ChunkException(e);
+            }
+        }
+
+        private TfsResultImpl parseChunk() throws IOException, TfsFileParserException {
+            TfsResultImpl chunk = template.createChunk();
+            TfsTokenizer tokenizer = new TfsTokenizer(open(start, end));
+            while (tokenizer.nextLine()) {
+                if (tokenizer.getTokenCount() != chunk.getColumnCount()) {
+                    throw new TfsFileParserException("Line '" + tokenizer.describeLine() + "' seems to contain "
+                            + tokenizer.getTokenCount() + " fields, but there are " + chunk.getColumnCount()
+                            + " keys. Unable to handle this.");
+                }
+                chunk.addRow(tokenizer.getTokens());
+            }
+            return chunk;
+        }
+    }
+
+    /**
+     * Carries a parsing failure out of a fork/join task.
+     */
+    private static class ChunkException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ChunkException(TfsFileParserException cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Decodes a part of the file into characters, reading it by positional reads into a small buffer. As it does not
+     * use the position of the channel, several of them can read the same channel concurrently.
+     */
+    private class ChannelReader extends Reader {
+        private final ByteBuffer bytes = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final long end;
+        private long position;
+        private boolean flushed = false;
+
+        ChannelReader(long start, long end) {
+            this.position = start;
+            this.end = end;
+            bytes.flip();
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (flushed) {
+                return -1;
+            }
+            if (length == 0) {
+                return 0;
+            }
+            CharBuffer chars = CharBuffer.wrap(buffer, offset, length);
+            while (chars.position() == offset) {
+                boolean endOfInput = (position >= end);
+                decoder.decode(bytes, chars, endOfInput);
+                if (chars.position() > offset) {
+                    break;
+                }
+                if (endOfInput) {
+                    decoder.flush(chars);
+                    flushed = true;
+                    break;
+                }
+                fill();
+            }
+            int count = chars.position() - offset;
+            return ((count == 0) && flushed) ? -1 : count;
+        }
+
+        /**
+         * reads the next bytes behind the ones, which are not decoded yet.
+         */
+        private void fill() throws IOException {
+            bytes.compact();
+            if (bytes.remaining() > end - position) {
+                bytes.limit(bytes.position() + (int) (end - position));
+            }
+            int count = channel.read(bytes, position);
+            bytes.flip();
+            if (count < 0) {
+                throw new IOException("The file ended at position " + position + " instead of " + end + ".");
+            }
+            position += count;
+        }
+
+        @Override
+        public void close() {
+            /* the channel is closed by the owner */
+        }
+    }
+}
@@ -22,15 +22,20 @@
 
 package cern.accsoft.steering.jmad.io;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
+import cern.accsoft.steering.jmad.domain.elem.ElementNameDictionary;
 import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultException;
 import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultImpl;
 import cern.accsoft.steering.jmad.domain.result.tfs.TfsSummaryImpl;
 import cern.accsoft.steering.jmad.util.MadxVarType;
-import cern.accsoft.steering.jmad.util.StringUtil;
 import cern.accsoft.steering.jmad.util.io.TextFileParser;
 import cern.accsoft.steering.jmad.util.io.TextFileParserException;
 import cern.accsoft.steering.jmad.util.io.impl.TextFileParserImpl;
@@ -45,44 +50,128 @@ public class TfsFileParser {
     /** The index in the splitted line for the summary value */
     private static final int FIELD_IDX_SUMMARY_VALUE = 3;
 
+    /** The size from which on plain files are parsed in parallel chunks */
+    private static final long DEFAULT_PARALLEL_THRESHOLD = 32L << 20;
+
     /** The file from where to read */
     private final File file;
 
     /** The result - object, where all read Data will be stored. */
-    private final TfsResultImpl result = new TfsResultImpl();
+    private final TfsResultImpl result;
+
+    private long parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private long chunkSize = ChunkedTfsReader.DEFAULT_CHUNK_SIZE;
 
     /**
      * @param file the file to parse.
      */
     public TfsFileParser(File file) {
+        this(file, new ElementNameDictionary());
+    }
+
+    /**
+     * @param file the file to parse.
+     * @param nameDictionary the dictionary to which the element names of the result refer
+     */
+    public TfsFileParser(File file, ElementNameDictionary nameDictionary) {
         super();
         this.file = file;
+        this.result = new TfsResultImpl(nameDictionary);
     }
 
     /**
-     * Parses the file and stores the data in internal Variables.
+     * Parses the file and stores the data in internal Variables. The rows of large plain files are parsed in parallel
+     * chunks, compressed ones are read as a stream.
      * 
      * @throws TfsFileParserException if the parsing fails
      */
     public void parse() throws TfsFileParserException {
-
+        if (isParallel()) {
+            parseParallel();
+            return;
+        }
         TextFileParser parser = new TextFileParserImpl();
-        List<String> lines;
+        try (BufferedReader reader = parser.open(file)) {
+            parse(reader);
+        } catch (TextFileParserException | IOException e) {
+            throw new TfsFileParserException("Error while parsing MadX - Output file '" + file.getAbsolutePath() + "'",
+                    e);
+        }
+    }
+
+    /**
+     * Parses the lines as they arrive from the given reader until it reaches its end. This allows to process the data
+     * while it is still written, e.g. when reading from a named pipe. The file given in the constructor is only used
+     * for error messages.
+     * 
+     * @param reader the reader from which to read the lines
+     * @return the number of lines which were read
+     * @throws TfsFileParserException if reading or parsing fails
+     */
+    public int parse(BufferedReader reader) throws TfsFileParserException {
+        TfsSummaryImpl summary = prepareResult();
+        TfsTokenizer tokenizer = new TfsTokenizer(reader);
         try {
-            lines = parser.parse(file);
-        } catch (TextFileParserException e) {
+            while (tokenizer.nextLine()) {
+                processLine(tokenizer, summary);
+            }
+        } catch (IOException e) {
+            throw new TfsFileParserException("Error while reading MadX - Output from '" + file.getAbsolutePath()
+                    + "'", e);
+        }
+        convertAndVerify(summary);
+        return tokenizer.getLineCount();
+    }
+
+    private boolean isParallel() {
+        String name = file.getName();
+        return file.isFile() && (file.length() >= parallelThreshold)
+                && !name.endsWith(TextFileParserImpl.EXTENSION_GZIP)
+                && !name.endsWith(TextFileParserImpl.EXTENSION_BZIP2);
+    }
+
+    /**
+     * parses the header sequentially and the rows in parallel chunks.
+     */
+    private void parseParallel() throws TfsFileParserException {
+        TfsSummaryImpl summary = prepareResult();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ChunkedTfsReader reader = new ChunkedTfsReader(channel, chunkSize);
+            long dataStart = reader.findDataStart();
+            TfsTokenizer tokenizer = new TfsTokenizer(reader.open(0, dataStart));
+            while (tokenizer.nextLine()) {
+                processLine(tokenizer, summary);
+            }
+            /* each chunk is merged as soon as it is parsed, so that it can be released early */
+            reader.readRows(dataStart, result, result::addRows);
+        } catch (IOException e) {
             throw new TfsFileParserException("Error while parsing MadX - Output file '" + file.getAbsolutePath() + "'",
                     e);
         }
+        convertAndVerify(summary);
+    }
 
+    /* package visibility for testing */
+    void setParallelThreshold(long parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /* package visibility for testing */
+    void setChunkSize(long chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    private TfsSummaryImpl prepareResult() {
         result.clear();
         TfsSummaryImpl summary = new TfsSummaryImpl();
         result.setTfsSummary(summary);
+        return summary;
+    }
 
-        goThroughTheLines(lines, summary);
-
+    private void convertAndVerify(TfsSummaryImpl summary) throws TfsFileParserException {
         try {
-            result.convert();
+            /* the numbers are only checked here and converted on first access, so that unused columns cost little */
+            result.finish();
             result.verify();
             summary.convert();
         } catch (TfsResultException e) {
@@ -91,36 +180,32 @@ public class TfsFileParser {
         }
     }
 
-    protected void goThroughTheLines(List<String> lines, TfsSummaryImpl summary) throws TfsFileParserException {
-        for (String line : lines) {
-            List<String> splitString = splitString(line);
-            String[] tokens = splitString.toArray(new String[splitString.size()]);
-
-            if ((tokens.length > 2) && (tokens[0].equalsIgnoreCase("@"))) {
-                MadxVarType type = MadxVarType.getVarType(tokens[2].trim());
-                summary.addValue(tokens[1], tokens[FIELD_IDX_SUMMARY_VALUE].replace("\"", ""), type);
-            } else if (tokens.length > 0) {
-                if (tokens[0].equalsIgnoreCase("*")) { // keys
-                    for (int j = 1; j < tokens.length; j++) {
-                        String keyName = tokens[j];
-                        result.createColumn(keyName);
-                    }
-                } else if (tokens[0].equalsIgnoreCase("$")) { // types
-                    checkTokenNumber(tokens.length - 1, line);
-                    int keyCount = 1;
-                    for (String key : result.getKeys()) {
-                        result.setVarType(key, MadxVarType.getVarType(tokens[keyCount]));
-                        keyCount++;
-                    }
-                } else { // values
-                    checkTokenNumber(tokens.length, line);
-                    ArrayList<String> values = new ArrayList<String>();
-                    for (int j = 0; j < tokens.length; j++) {
-                        values.add(tokens[j].replace("\"", ""));
-                    }
-                    result.addRow(values);
-                }
+    /**
+     * processes the tokens of one line. The tokens are passed on to the result without copying them.
+     */
+    private void processLine(TfsTokenizer tokenizer, TfsSummaryImpl summary) throws TfsFileParserException {
+        int tokenCount = tokenizer.getTokenCount();
+        String first = tokenizer.getToken(0);
+
+        if ((tokenCount > FIELD_IDX_SUMMARY_VALUE) && "@".equals(first)) {
+            MadxVarType type = MadxVarType.getVarType(tokenizer.getToken(2).trim());
+            summary.addValue(tokenizer.getToken(1), tokenizer.getToken(FIELD_IDX_SUMMARY_VALUE), type);
+        } else if ("@".equals(first)) {
+            throw new TfsFileParserException("Summary line '" + tokenizer.describeLine() + "' has no value.");
+        } else if ("*".equals(first)) { // keys
+            for (int j = 1; j < tokenCount; j++) {
+                result.createColumn(tokenizer.getToken(j));
             }
+        } else if ("$".equals(first)) { // types
+            checkTokenNumber(tokenCount - 1, tokenizer);
+            int keyCount = 1;
+            for (String key : result.getKeys()) {
+                result.setVarType(key, MadxVarType.getVarType(tokenizer.getToken(keyCount)));
+                keyCount++;
+            }
+        } else { // values
+            checkTokenNumber(tokenCount, tokenizer);
+            result.addRow(tokenizer.getTokens());
         }
     }
 
@@ -129,20 +214,19 @@ public class TfsFileParser {
      * the case.
      * 
      * @param number the number of tokens to compare to the column count.
-     * @param line the actual parsed line, to compose a meaningful error message.
+     * @param tokenizer the tokenizer positioned at the actual line, to compose a meaningful error message.
      * @throws TfsFileParserException if the number does not correspond to the columnCounts in the actual result.
      */
-    private void checkTokenNumber(int number, String line) throws TfsFileParserException {
+    private void checkTokenNumber(int number, TfsTokenizer tokenizer) throws TfsFileParserException {
         if (result.getColumnCount() != number) {
-            throw new TfsFileParserException("Line '" + line + "' seems to contain " + number
+            throw new TfsFileParserException("Line '" + tokenizer.describeLine() + "' seems to contain " + number
                     + " fields, but there are only " + result.getColumnCount() + " keys. Unable to handle this.");
         }
     }
 
     /**
-     * Static function to split a line (almost) correctly. This is somehow complicated, since quoted values must stay
-     * together even if they contain spaces! XXX Problems may still arise, if quoted string e.g. has space as last
-     * character!
+     * Static function to split a line into its fields. Quoted values stay together even if they contain spaces and
+     * are returned without the quotes.
      * 
      * @param string the String to split
      * @return the fields
@@ -150,41 +234,14 @@ public class TfsFileParser {
      */
     static List<String> splitString(String string) throws TfsFileParserException { // NOPMD by kaifox on 10/6/10 8:25 PM
         /* PMD (package visibility for testing) */
-        ArrayList<String> fields = new ArrayList<String>();
-
-        String regexpSplitChars = "(^|\\s+)";
-        String regexpQuotes = "\\\"";
-
-        // first split on quotes after space
-        String[] tokens = string.split(regexpSplitChars + regexpQuotes);
-
-        for (int i = 0; i < tokens.length; i++) {
-            // if token still contains quotes, than it should also have been
-            // started by one...
-            String stringPastQuote = "";
-            if (tokens[i].contains("\"")) {
-                // we split at the quote.
-                String[] newTokens = tokens[i].split(regexpQuotes);
-                if (newTokens.length > 2) {
-                    throw new TfsFileParserException("Was not able to split string '" + string + "' correctly!");
-                }
-                fields.add(newTokens[0]); // this shall stay together since
-                // they were the ones under quotes.
-                // always add, could e.g. be ""
-                if (newTokens.length == 2) {
-                    stringPastQuote = newTokens[1];
-                }
-            } else { // if it contains no quote, we just split further
-                stringPastQuote = tokens[i];
-            }
-
-            String[] newTokens = stringPastQuote.split("[ \t\r]+");
-            for (int j = 0; j < newTokens.length; j++) {
-                String field = newTokens[j];
-                if (!StringUtil.isWhitespacesOnly(field)) { // only add if really some content.
-                    fields.add(field);
-                }
+        List<String> fields = new ArrayList<String>();
+        TfsTokenizer tokenizer = new TfsTokenizer(new StringReader(string), Math.max(1, string.length()));
+        try {
+            while (tokenizer.nextLine()) {
+                fields.addAll(tokenizer.getTokens());
             }
+        } catch (IOException e) {
+            throw new TfsFileParserException("Was not able to split string '" + string + "' correctly!", e);
         }
         return fields;
     }
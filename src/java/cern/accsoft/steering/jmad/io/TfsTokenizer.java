@@ -0,0 +1,235 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits the content of a TFS file into lines of whitespace separated tokens in a single pass over a character
+ * buffer, without regular expressions and without materializing the lines. Tokens in double quotes are kept together
+ * including their whitespace and are returned without the quotes (an empty quoted string results in an empty token).
+ * Lines without any token are skipped.
+ * <p>
+ * The tokens of the current line are kept in an array, which is reused for the next line. Instances are not thread
+ * safe.
+ */
+class TfsTokenizer {
+
+    /** the default number of characters which are read at once */
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private static final char QUOTE = '"';
+    private static final char NEWLINE = '\n';
+
+    private final Reader reader;
+    private final char[] buffer;
+
+    /** the position of the next character to process in the buffer */
+    private int position = 0;
+
+    /** the number of valid characters in the buffer */
+    private int limit = 0;
+
+    private boolean endOfStream = false;
+
+    /** the tokens of the current line. Only the first tokenCount entries are valid. */
+    private String[] tokens = new String[16];
+    private int tokenCount = 0;
+
+    /** the number of lines read so far, including empty ones */
+    private int lineCount = 0;
+
+    /** true, if there are characters after the last newline */
+    private boolean lineStarted = false;
+
+    /** a list view on the valid tokens */
+    private final List<String> tokenList = new AbstractList<String>() {
+        @Override
+        public String get(int index) {
+            return getToken(index);
+        }
+
+        @Override
+        public int size() {
+            return tokenCount;
+        }
+    };
+
+    /**
+     * @param reader the reader to read the characters from. It is not closed by the tokenizer.
+     */
+    TfsTokenizer(Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    /* package visibility for testing */
+    TfsTokenizer(Reader reader, int bufferSize) {
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+    }
+
+    /**
+     * reads the next line which contains at least one token.
+     * 
+     * @return true if a line was read, false if the end of the input was reached
+     * @throws IOException if reading fails
+     */
+    boolean nextLine() throws IOException {
+        tokenCount = 0;
+        while (true) {
+            if ((position == limit) && !fill()) {
+                if (lineStarted) {
+                    lineStarted = false;
+                    lineCount++;
+                }
+                return tokenCount > 0;
+            }
+            char c = buffer[position];
+            if (c == NEWLINE) {
+                position++;
+                lineStarted = false;
+                lineCount++;
+                if (tokenCount > 0) {
+                    return true;
+                }
+            } else {
+                lineStarted = true;
+                if (isBlank(c)) {
+                    position++;
+                } else {
+                    addToken(readToken());
+                }
+            }
+        }
+    }
+
+    /**
+     * reads one token, starting at the current (non blank) position. Quotes may start and end anywhere within the
+     * token, the quoted parts are concatenated with the rest. An unterminated quote ends at the end of the line.
+     */
+    private String readToken() throws IOException {
+        StringBuilder builder = null;
+        boolean quoted = false;
+        int start = position;
+        while (true) {
+            if (position == limit) {
+                builder = append(builder, start, position);
+                if (!fill()) {
+                    return builder.toString();
+                }
+                start = position;
+                continue;
+            }
+            char c = buffer[position];
+            if (c == QUOTE) {
+                builder = append(builder, start, position);
+                quoted = !quoted;
+                position++;
+                start = position;
+            } else if ((c == NEWLINE) || (!quoted && isBlank(c))) {
+                break;
+            } else {
+                position++;
+            }
+        }
+        if (builder == null) {
+            /* the usual case: the whole token is within the buffer and contains no quotes */
+            return new String(buffer, start, position - start);
+        }
+        return append(builder, start, position).toString();
+    }
+
+    private StringBuilder append(StringBuilder builder, int start, int end) {
+        StringBuilder result = (builder == null) ? new StringBuilder(Math.max(16, end - start)) : builder;
+        result.append(buffer, start, end - start);
+        return result;
+    }
+
+    private static boolean isBlank(char c) {
+        return (c == ' ') || (c == '\t') || (c == '\r');
+    }
+
+    private boolean fill() throws IOException {
+        if (endOfStream) {
+            return false;
+        }
+        int count;
+        do {
+            count = reader.read(buffer, 0, buffer.length);
+        } while (count == 0);
+        position = 0;
+        if (count < 0) {
+            endOfStream = true;
+            limit = 0;
+            return false;
+        }
+        limit = count;
+        return true;
+    }
+
+    private void addToken(String token) {
+        if (tokenCount == tokens.length) {
+            tokens = Arrays.copyOf(tokens, tokens.length * 2);
+        }
+        tokens[tokenCount++] = token;
+    }
+
+    /**
+     * @return the number of tokens in the current line
+     */
+    int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * @param index the index of the token within the current line
+     * @return the token without quotes
+     */
+    String getToken(int index) {
+        if (index >= tokenCount) {
+            throw new IndexOutOfBoundsException("Index " + index + " is beyond the " + tokenCount + " tokens.");
+        }
+        return tokens[index];
+    }
+
+    /**
+     * @return a view on the tokens of the current line. It changes, when the next line is read.
+     */
+    List<String> getTokens() {
+        return tokenList;
+    }
+
+    /**
+     * @return the number of lines read so far, including the ones without tokens
+     */
+    int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return the tokens of the current line, separated by spaces. Only meant for error messages.
+     */
+    String describeLine() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < tokenCount; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(tokens[i]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,63 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the {@link Journaled} executables which were sent to madx since the recovery point of a kernel. The journal
+ * is compacted while recording: an entry replaces the earlier one with the same key and moves to the end, so that the
+ * order of replay still reflects the order in which the different parts of the state were set last. This class is
+ * thread safe.
+ */
+class CommandJournal {
+
+    /** The entries in the order of replay. Cumulative entries get a key of their own. */
+    private final Map<Object, JMadExecutable> entries = new LinkedHashMap<>();
+
+    /**
+     * records the entries of the executable, if it is {@link Journaled}. Other executables are ignored.
+     *
+     * @param executable the executable which was executed successfully
+     */
+    synchronized void record(JMadExecutable executable) {
+        if (!(executable instanceof Journaled)) {
+            return;
+        }
+        for (JournalEntry entry : ((Journaled) executable).getJournalEntries()) {
+            Object key = (entry.getKey() == null) ? new Object() : entry.getKey();
+            entries.remove(key);
+            entries.put(key, entry.getExecutable());
+        }
+    }
+
+    /**
+     * @return the executables to replay, in the order of replay
+     */
+    synchronized List<JMadExecutable> getExecutables() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * @return the number of entries after compaction
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,52 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+/**
+ * Defines how the kernel detects, that MadX has finished processing the commands of one executable.
+ */
+public enum CompletionMode {
+
+    /**
+     * MadX creates a file through a system call, which is polled by the kernel. This is the historical protocol and the
+     * default: It is robust, but costs a fork of a shell within MadX and some milliseconds of polling for each
+     * executable.
+     */
+    READY_FILE,
+
+    /**
+     * MadX prints a numbered sentinel line to its standard output. The thread which reads the output of MadX anyhow
+     * recognizes this line and wakes up the waiting caller immediately.
+     * <p>
+     * The line only arrives in time if MadX flushes its standard output after each command. Output into a pipe is
+     * usually block-buffered and MadX has no command to flush it, so this depends on the MadX build. Therefore this
+     * mode has to be enabled explicitly and only for a MadX binary for which it was verified.
+     */
+    OUTPUT_SENTINEL;
+
+    /**
+     * @param name the name of the mode (case insensitive)
+     * @param defaultMode the mode to return if the name is {@code null} or unknown
+     * @return the mode of the given name, or the default mode
+     */
+    public static CompletionMode fromName(String name, CompletionMode defaultMode) {
+        if (name == null) {
+            return defaultMode;
+        }
+        for (CompletionMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name.trim())) {
+                return mode;
+            }
+        }
+        return defaultMode;
+    }
+}
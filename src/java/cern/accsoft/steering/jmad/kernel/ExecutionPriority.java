@@ -0,0 +1,26 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+/**
+ * The priority classes of the work, which is queued for the thread of a kernel. Queued work of a higher priority is
+ * always taken before work of a lower priority; within one priority the order of submission is kept. Work which is
+ * already running is never interrupted.
+ */
+public enum ExecutionPriority {
+
+    /** work somebody is waiting for, e.g. a twiss requested from a GUI. */
+    INTERACTIVE,
+
+    /** background work like parameter sweeps or studies, which may be delayed by interactive work. */
+    BATCH;
+}
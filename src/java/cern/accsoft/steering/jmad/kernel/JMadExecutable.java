@@ -23,6 +23,8 @@
 package cern.accsoft.steering.jmad.kernel;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
 
 import cern.accsoft.steering.jmad.domain.result.ResultType;
 
@@ -35,6 +37,17 @@ public interface JMadExecutable {
      */
     public abstract String compose();
 
+    /**
+     * writes the same commands as {@link #compose()} to the given writer. Executables which produce large payloads
+     * should override this in order to stream their commands instead of building one big string.
+     * 
+     * @param writer the writer to which to write the commands
+     * @throws IOException if writing fails
+     */
+    public default void composeTo(Writer writer) throws IOException {
+        writer.write(compose());
+    }
+
     public abstract ResultType getResultType();
 
     public abstract void setOutputFile(File outputFile);
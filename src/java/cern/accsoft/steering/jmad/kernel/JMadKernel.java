@@ -23,9 +23,14 @@
 package cern.accsoft.steering.jmad.kernel;
 
 import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import cern.accsoft.steering.jmad.JMadException;
 import cern.accsoft.steering.jmad.domain.result.Result;
+import cern.accsoft.steering.jmad.kernel.snapshot.KernelSnapshot;
+import cern.accsoft.steering.jmad.kernel.stats.ExecutionStatistics;
 
 /**
  * this is the interface for central class which controls an instance of MadX. The kernel only is able to do the most
@@ -52,6 +57,18 @@ public interface JMadKernel {
      */
     int stop() throws JMadException;
 
+    /**
+     * stops madx without blocking the caller. The queued executables may finish and madx is asked to quit, but if it
+     * did not terminate at the deadline, it is destroyed and finally killed forcibly. The working directory of the
+     * kernel is then deleted in the background. This allows to stop many kernels concurrently.
+     * 
+     * @param timeout the maximum time to wait for the queued executables and for madx to quit
+     * @param unit the unit of the timeout
+     * @return a future which completes with the exit value of madx (-9999 if it had to be destroyed) as soon as the
+     *         process terminated and its directory is deleted, or exceptionally if madx was not running
+     */
+    CompletableFuture<Integer> stopAsync(long timeout, TimeUnit unit);
+
     /**
      * executes a Command or Task, waits for completion (our timeout if set), and returns result, if command/task
      * provides one.
@@ -62,11 +79,84 @@ public interface JMadKernel {
      */
     Result execute(JMadExecutable executable) throws JMadException;
 
+    /**
+     * submits a Command or Task for execution and returns immediately. Several executables can be in flight at the
+     * same time: They are sent to MadX one after the other in the order of submission, while the results of already
+     * finished ones are parsed in a separate thread. The returned futures are completed in the order of submission.
+     * The executable has {@link ExecutionPriority#INTERACTIVE}.
+     * <p>
+     * Each pipelined executable writes to its own result file, which is deleted after parsing. Synchronous calls to
+     * {@link #execute(JMadExecutable)} are queued behind the interactive executables which are pending.
+     * 
+     * @param executable the command or task to execute
+     * @return a future which completes with the result (or {@code null} if the executable provides none) or
+     *         exceptionally with a {@link JMadException} if the execution fails
+     */
+    CompletableFuture<Result> executeAsync(JMadExecutable executable);
+
+    /**
+     * the same as {@link #executeAsync(JMadExecutable)}, but with the given priority: The executable is sent to madx
+     * before all queued executables of a lower priority. The futures of one priority complete in the order of
+     * submission.
+     * 
+     * @param executable the command or task to execute
+     * @param priority the priority class of the executable
+     * @return a future which completes with the result (or {@code null} if the executable provides none) or
+     *         exceptionally with a {@link JMadException} if the execution fails
+     */
+    CompletableFuture<Result> executeAsync(JMadExecutable executable, ExecutionPriority priority);
+
+    /**
+     * queues work for the thread of the kernel. All executions of the kernel run on this single thread; calls from
+     * other threads (also the synchronous ones, which have {@link ExecutionPriority#INTERACTIVE}) are queued. Calls to
+     * the kernel from within the work are executed directly, so the work has exclusive access to madx until it
+     * returns. Therefore it can also be used to serialize access to a model from several threads, e.g.
+     * {@code kernel.submit(k -> model.twiss(request), ExecutionPriority.BATCH)}.
+     * <p>
+     * The work must not wait for other work it submits itself, since this would never start.
+     * 
+     * @param work the work to run
+     * @param priority the priority class of the work
+     * @return a future which completes with the result of the work or exceptionally with its failure
+     */
+    <T> CompletableFuture<T> submit(KernelWork<T> work, ExecutionPriority priority);
+
+    /**
+     * @return the current depths of the queue and the waiting times of the executions so far, by priority
+     */
+    QueueStatistics getQueueStatistics();
+
+    /**
+     * executes several Commands or Tasks in one round trip: All of them are sent to MadX at once and the kernel waits
+     * only once for completion. Each executable writes to its own output file and gets its own result.
+     * 
+     * @param executables the commands or tasks to execute, in the order of execution
+     * @return the results in the same order as the executables. The entry is {@code null} for an executable which
+     *         does not provide a result.
+     * @throws JMadException if the execution or the parsing of one of the results fails
+     */
+    List<Result> executeBatch(List<? extends JMadExecutable> executables) throws JMadException;
+
     /**
      * @return true, if madx was started before, false otherwise
      */
     boolean isMadxRunning();
 
+    /**
+     * sets the state to return to, if madx terminates unexpectedly. From then on, the kernel keeps a journal of all
+     * successful {@link Journaled} executables (setting values, misalignments, field errors, installing elements, ...),
+     * compacted so that only the latest value of each variable or misalignment is kept. If madx terminates, the kernel
+     * restarts it, restores the snapshot and replays the journal as one batch. The failed execution still throws a
+     * {@link MadxTerminatedException}, which is marked as {@link MadxTerminatedException#isRecovered() recovered}.
+     * <p>
+     * Commands which are not journaled (e.g. free text) are lost on recovery. Stopping the kernel removes the recovery
+     * point.
+     * 
+     * @param snapshot the state to return to, usually captured directly after initialization. {@code null} disables
+     *            the recovery.
+     */
+    void setRecoveryPoint(KernelSnapshot snapshot);
+
     /**
      * @param listener the listener to add
      */
@@ -77,6 +167,21 @@ public interface JMadKernel {
      */
     void removeListener(JMadKernelListener listener);
 
+    /**
+     * returns the latencies of all successful executions since the start of the kernel (or the last reset), grouped by
+     * the class of the executables and by the phases of the execution (composing, writing to madx, execution within
+     * madx, noticing that madx is ready and parsing the result). Batches are recorded as a whole under the name
+     * {@code "batch"}.
+     *
+     * @return an immutable snapshot of the statistics
+     */
+    ExecutionStatistics getExecutionStatistics();
+
+    /**
+     * discards all the statistics recorded so far.
+     */
+    void resetExecutionStatistics();
+
     /**
      * @return the JMadKernel OutputFile
      */
@@ -22,6 +22,9 @@
 
 package cern.accsoft.steering.jmad.kernel;
 
+import cern.accsoft.steering.jmad.bin.ProcessLimits;
+import cern.accsoft.steering.jmad.kernel.snapshot.KernelSnapshot;
+
 /**
  * Interface to configure JMadKernel behavior
  * 
@@ -40,6 +43,120 @@ public interface JMadKernelConfig {
      */
     public abstract void setTimeout(Long timeout);
 
+    /**
+     * @return the way how the kernel detects that madx finished an executable
+     */
+    public abstract CompletionMode getCompletionMode();
+
+    /**
+     * sets the way how the kernel detects that madx finished an executable.
+     * 
+     * @param completionMode the mode to use
+     */
+    public abstract void setCompletionMode(CompletionMode completionMode);
+
+    /**
+     * @return the way how TFS results are transferred from madx to the kernel
+     */
+    public abstract ResultTransport getResultTransport();
+
+    /**
+     * sets the way how TFS results are transferred from madx to the kernel.
+     * 
+     * @param resultTransport the transport to use
+     */
+    public abstract void setResultTransport(ResultTransport resultTransport);
+
+    /**
+     * @return the number of characters, above which the commands of an executable are passed to madx through a file
+     */
+    public abstract int getPayloadSpillThreshold();
+
+    /**
+     * sets the number of characters, above which the commands of an executable are passed to madx through a file
+     * instead of its input stream. A negative value disables this.
+     * 
+     * @param payloadSpillThreshold the threshold in characters
+     */
+    public abstract void setPayloadSpillThreshold(int payloadSpillThreshold);
+
+    /**
+     * @return the way how the log files of madx are written
+     */
+    public abstract LogMode getLogMode();
+
+    /**
+     * sets the way how the log files of madx are written. This takes effect on the next start of the kernel.
+     * 
+     * @param logMode the mode to use
+     */
+    public abstract void setLogMode(LogMode logMode);
+
+    /**
+     * @return the number of characters after which the log files are rotated in {@link LogMode#ASYNC_ROTATING}
+     */
+    public abstract long getLogSizeLimit();
+
+    /**
+     * sets the number of characters after which the log files are rotated in {@link LogMode#ASYNC_ROTATING}.
+     * 
+     * @param logSizeLimit the limit in characters
+     */
+    public abstract void setLogSizeLimit(long logSizeLimit);
+
+    /**
+     * @return true, if all the commands sent to madx are logged to a file
+     */
+    public abstract boolean isInputLogEnabled();
+
+    /**
+     * enables or disables the logging of all commands sent to madx, e.g. to gain some throughput for many small
+     * executables. This takes effect on the next start of the kernel.
+     * 
+     * @param inputLogEnabled false to disable the input log
+     */
+    public abstract void setInputLogEnabled(boolean inputLogEnabled);
+
+    /**
+     * @return the kind of threads on which the kernel runs its blocking work
+     */
+    public abstract ThreadMode getThreadMode();
+
+    /**
+     * sets the kind of threads on which the kernel runs its blocking work. This takes effect for all threads which are
+     * created afterwards, so it should be set before the kernel is started.
+     * 
+     * @param threadMode the mode to use
+     */
+    public abstract void setThreadMode(ThreadMode threadMode);
+
+    /**
+     * @return the operating system limits for the madx process
+     */
+    public abstract ProcessLimits getProcessLimits();
+
+    /**
+     * sets the operating system limits (CPU affinity, nice level and memory) for the madx process. This takes effect
+     * on the next start of the kernel.
+     * 
+     * @param processLimits the limits to use
+     */
+    public abstract void setProcessLimits(ProcessLimits processLimits);
+
+    /**
+     * @return the resident memory in bytes above which madx is restarted, 0 if this is disabled
+     */
+    public abstract long getRecycleRssThreshold();
+
+    /**
+     * sets the resident memory (in bytes) above which madx is transparently restarted. The state is brought over to
+     * the new process by restoring the recovery point and replaying the journal, so this has only an effect while a
+     * recovery point is set (see {@link JMadKernel#setRecoveryPoint(KernelSnapshot)}).
+     * 
+     * @param recycleRssThreshold the threshold in bytes, 0 to disable recycling
+     */
+    public abstract void setRecycleRssThreshold(long recycleRssThreshold);
+
     /**
      * sets the flag, if the output-file shall be kept or deleted after task/command execution.
      * 
@@ -11,6 +11,8 @@
 
 package cern.accsoft.steering.jmad.kernel;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.io.BufferedWriter;
@@ -18,14 +20,31 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
 import cern.accsoft.steering.jmad.JMadException;
 import cern.accsoft.steering.jmad.bin.MadxBin;
+import cern.accsoft.steering.jmad.bin.ProcessLimits;
+import cern.accsoft.steering.jmad.domain.elem.ElementNameDictionary;
 import cern.accsoft.steering.jmad.domain.result.Result;
 import cern.accsoft.steering.jmad.domain.result.ResultType;
 import cern.accsoft.steering.jmad.io.DynapOutputParser;
@@ -33,14 +52,26 @@ import cern.accsoft.steering.jmad.io.MatchOutputParser;
 import cern.accsoft.steering.jmad.io.StrengthFileParser;
 import cern.accsoft.steering.jmad.io.TfsFileParser;
 import cern.accsoft.steering.jmad.io.TrackOutputParser;
+import cern.accsoft.steering.jmad.kernel.cmd.CallCommand;
+import cern.accsoft.steering.jmad.kernel.snapshot.KernelSnapshot;
+import cern.accsoft.steering.jmad.kernel.snapshot.KernelSnapshots;
+import cern.accsoft.steering.jmad.kernel.stats.ExecutionPhase;
+import cern.accsoft.steering.jmad.kernel.stats.ExecutionStatistics;
+import cern.accsoft.steering.jmad.kernel.stats.ExecutionStatisticsRecorder;
+import cern.accsoft.steering.jmad.kernel.stats.ExecutionTimer;
 import cern.accsoft.steering.jmad.util.FileMonitor;
 import cern.accsoft.steering.jmad.util.FileMonitor.ProcessTerminatedUnexpectedlyException;
+import cern.accsoft.steering.jmad.util.AsyncWriter;
 import cern.accsoft.steering.jmad.util.FileUtil;
 import cern.accsoft.steering.jmad.util.JMadPreferences;
+import cern.accsoft.steering.jmad.util.LineRingBuffer;
 import cern.accsoft.steering.jmad.util.ProcTools;
-import cern.accsoft.steering.jmad.util.ProcessTerminationMonitor;
+import cern.accsoft.steering.jmad.util.ProcessResourceUsage;
+import cern.accsoft.steering.jmad.util.RotatingFileWriter;
+import cern.accsoft.steering.jmad.util.StreamLineRelay;
 import cern.accsoft.steering.jmad.util.StringUtil;
 import cern.accsoft.steering.jmad.util.TempFileUtil;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,19 +95,143 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
      */
     private static final int EXIT_VALUE_DESTROYED = -9999;
 
+    /**
+     * the time to wait for madx to terminate after it was destroyed, before it is killed forcibly
+     */
+    private static final long DESTROY_GRACE_MILLIS = 1000;
+
+    /**
+     * the time to wait for madx to terminate after it was told to stop, when it is recycled
+     */
+    private static final long RECYCLE_STOP_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * the minimum time between two samples of the resource usage of madx
+     */
+    private static final long RESOURCE_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * the threads which stop kernels in the background. They are shared by all kernels, so that many kernels can be
+     * stopped concurrently without each of them holding a thread while it is running.
+     */
+    private static final ExecutorService STOP_EXECUTOR = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("jmad-kernel-stop-%d").build());
+
+    /**
+     * Returned by the methods waiting for the ready signal of madx, if they timed out.
+     */
+    private static final long NOT_READY = -1;
+
+    /**
+     * The name under which the statistics of batch executions are recorded.
+     */
+    public static final String STATISTICS_NAME_BATCH = "batch";
+
     /**
      * the command which is used to stop madx.
      */
     private static final String CMD_STOP = "stop;";
 
+    /**
+     * The name of the system property, which can be used to define the default {@link CompletionMode} for all kernels.
+     */
+    public static final String PROP_COMPLETION_MODE = "cern.jmad.kernel.completion.mode";
+
+    /**
+     * The prefix of the sentinel lines which are printed by madx in {@link CompletionMode#OUTPUT_SENTINEL}.
+     */
+    private static final String READY_SENTINEL_PREFIX = "jmad-ready-";
+
+    /**
+     * The name of the system property, which can be used to define the default {@link ResultTransport} for all kernels.
+     */
+    public static final String PROP_RESULT_TRANSPORT = "cern.jmad.kernel.result.transport";
+
+    /**
+     * The name of the system property, which can be used to define the default payload spill threshold for all
+     * kernels.
+     */
+    public static final String PROP_PAYLOAD_SPILL_THRESHOLD = "cern.jmad.kernel.payload.spill.threshold";
+
+    /**
+     * Per default, commands of more than 64k characters are passed to madx through a file.
+     */
+    private static final int DEFAULT_PAYLOAD_SPILL_THRESHOLD = 64 * 1024;
+
+    /**
+     * The name of the system property, which can be used to define the default {@link LogMode} for all kernels.
+     */
+    public static final String PROP_LOG_MODE = "cern.jmad.kernel.log.mode";
+
+    /**
+     * The name of the system property, which can be used to define the size limit (in characters) of each log file in
+     * {@link LogMode#ASYNC_ROTATING} for all kernels.
+     */
+    public static final String PROP_LOG_SIZE_LIMIT = "cern.jmad.kernel.log.size.limit";
+
+    /**
+     * Per default, the log files are rotated when they reach 16M characters.
+     */
+    private static final long DEFAULT_LOG_SIZE_LIMIT = 16L * 1024 * 1024;
+
+    /**
+     * The name of the system property, which can be set to 'false' to disable the input log for all kernels.
+     */
+    public static final String PROP_INPUT_LOG_ENABLED = "cern.jmad.kernel.log.input.enabled";
+
+    /**
+     * The name of the system property, which can be used to define the default {@link ThreadMode} for all kernels.
+     */
+    public static final String PROP_THREAD_MODE = "cern.jmad.kernel.thread.mode";
+
+    /**
+     * The name of the system property, which can be used to pin all madx processes to a list of CPUs (in the format of
+     * taskset, e.g. '0-3,8'). Only effective on Linux.
+     */
+    public static final String PROP_CPU_AFFINITY = "cern.jmad.kernel.cpu.affinity";
+
+    /**
+     * The name of the system property, which can be used to define the nice level of all madx processes. Only
+     * effective on Linux.
+     */
+    public static final String PROP_NICE_LEVEL = "cern.jmad.kernel.nice.level";
+
+    /**
+     * The name of the system property, which can be used to limit the memory (address space in bytes) of all madx
+     * processes. Only effective on Linux.
+     */
+    public static final String PROP_MEMORY_LIMIT = "cern.jmad.kernel.memory.limit";
+
+    /**
+     * The name of the system property, which can be used to define the resident memory in bytes above which madx is
+     * restarted.
+     */
+    public static final String PROP_RECYCLE_RSS_THRESHOLD = "cern.jmad.kernel.recycle.rss.threshold";
+
+    /**
+     * The number of lines of output and error output which are kept in memory for error reporting.
+     */
+    private static final int OUTPUT_BUFFER_LINES = 100;
+
+    /**
+     * The number of commands which may wait for being written to the input log in {@link LogMode#ASYNC_ROTATING}.
+     */
+    private static final int INPUT_LOG_QUEUE_CAPACITY = 1024;
+
     /*
      * various file names which are used to communicate with MadX and for logging
      */
     private static final String FILENAME_READY = "madx-ready.out";
     private static final String FILENAME_RESULT = "madx-result.out";
+    private static final String FILENAME_RESULT_PIPELINED_PREFIX = "madx-result-";
+    private static final String FILENAME_RESULT_PIPELINED_SUFFIX = ".out";
+    private static final String FILENAME_RESULT_BATCH_PREFIX = "madx-result-batch-";
+    private static final String FILENAME_RESULT_FIFO = "madx-result.fifo";
+    private static final String FILENAME_PAYLOAD = "madx-payload.madx";
     private static final String FILENAME_LOG_IN = "madx-input.log";
     private static final String FILENAME_LOG_OUT = "madx-output.log";
     private static final String FILENAME_LOG_ERROR = "madx-error.log";
+    private static final String FILENAME_CRASHED_SUFFIX = ".crashed";
 
     private File readyFile = null;
     private File resultFile = null;
@@ -100,6 +255,101 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
      */
     private Long timeout = null;
 
+    /**
+     * the way how we detect that madx finished an executable. The default is taken from the system property, if set.
+     */
+    private CompletionMode completionMode = CompletionMode.fromName(System.getProperty(PROP_COMPLETION_MODE),
+            CompletionMode.READY_FILE);
+
+    /**
+     * recognizes the ready-sentinels in the madx output. Created on each start of the process.
+     */
+    private ReadySentinelMonitor readySentinelMonitor = null;
+
+    /**
+     * recognizes fatal errors and progress in the output of madx. Created on each start of the process.
+     */
+    private MadxOutputWatchdog outputWatchdog = null;
+
+    /**
+     * the additional patterns, which mark an output line of madx as fatal error
+     */
+    private final List<Pattern> fatalOutputPatterns = new CopyOnWriteArrayList<>();
+
+    /**
+     * the number of the last ready-sentinel which was sent to madx
+     */
+    private long readySentinelSequence = 0;
+
+    /**
+     * the way how TFS results are transferred from madx. The default is taken from the system property, if set.
+     */
+    private ResultTransport resultTransport = ResultTransport.fromName(System.getProperty(PROP_RESULT_TRANSPORT),
+            ResultTransport.FILE);
+
+    /**
+     * the number of characters, above which the commands of executables are written to a file, which is then called
+     * by madx, instead of passing them through the input stream. A negative value disables this.
+     */
+    private int payloadSpillThreshold = Integer.getInteger(PROP_PAYLOAD_SPILL_THRESHOLD,
+            DEFAULT_PAYLOAD_SPILL_THRESHOLD);
+
+    /**
+     * the way how the log files are written. The default is taken from the system property, if set.
+     */
+    private LogMode logMode = LogMode.fromName(System.getProperty(PROP_LOG_MODE), LogMode.SYNCHRONOUS);
+
+    /**
+     * the size limit (in characters) of each log file in {@link LogMode#ASYNC_ROTATING}
+     */
+    private long logSizeLimit = Long.getLong(PROP_LOG_SIZE_LIMIT, DEFAULT_LOG_SIZE_LIMIT);
+
+    /**
+     * false, if the commands shall not be logged at all
+     */
+    private boolean inputLogEnabled = !"false".equalsIgnoreCase(System.getProperty(PROP_INPUT_LOG_ENABLED));
+
+    /**
+     * the kind of threads for the blocking work of this kernel. The default is taken from the system property, if set.
+     */
+    private ThreadMode threadMode = ThreadMode.fromName(System.getProperty(PROP_THREAD_MODE), ThreadMode.PLATFORM);
+
+    /**
+     * the operating system limits for the madx process. The defaults are taken from the system properties, if set.
+     */
+    private ProcessLimits processLimits = defaultProcessLimits();
+
+    /**
+     * the resident memory in bytes above which madx is restarted, 0 if this is disabled
+     */
+    private long recycleRssThreshold = Long.getLong(PROP_RECYCLE_RSS_THRESHOLD, 0L);
+
+    /**
+     * the time when the resource usage of madx was checked last
+     */
+    private long lastResourceCheckNanos = System.nanoTime();
+
+    /**
+     * the number of times madx was restarted, because it used too much memory
+     */
+    private volatile int recycleCount = 0;
+
+    /**
+     * the last lines of the output and error output of madx. Created on each start of the process.
+     */
+    private LineRingBuffer outputBuffer = null;
+    private LineRingBuffer errorBuffer = null;
+
+    /**
+     * the named pipe for {@link ResultTransport#NAMED_PIPE}. Created on first use after each start of the process.
+     */
+    private ResultFifo resultFifo = null;
+
+    /**
+     * set to true, if creating a named pipe failed once. Then we do not try again.
+     */
+    private boolean resultFifoUnavailable = false;
+
     /**
      * the process for madx
      */
@@ -113,7 +363,7 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
     /**
      * the logger, where the inputs to madx are logged
      */
-    private BufferedWriter inputLogWriter = null;
+    private Writer inputLogWriter = null;
 
     /**
      * The preferences to be injected
@@ -145,9 +395,60 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
     /**
      * the listeners to the kernel
      */
-    private final List<JMadKernelListener> listeners = new ArrayList<>();
+    private final List<JMadKernelListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * the latencies of all successful executions, by kind of executable and phase
+     */
+    private final ExecutionStatisticsRecorder executionStatistics = new ExecutionStatisticsRecorder();
+
+    /**
+     * the ids of the element names, shared by all TFS results of this kernel. It survives restarts, because the names
+     * of the lattice are usually the same afterwards.
+     */
+    private final ElementNameDictionary elementNameDictionary = new ElementNameDictionary();
+
+    /**
+     * the state to return to, if madx terminates unexpectedly. null, if the recovery is disabled.
+     */
+    private volatile KernelSnapshot recoveryPoint = null;
+
+    /**
+     * the state changing executables since the recovery point
+     */
+    private final CommandJournal journal = new CommandJournal();
+
+    /**
+     * true, while the kernel recovers from an unexpected termination of madx
+     */
+    private volatile boolean recovering = false;
 
-    private final ExecutorService logFileWriteExecutor = Executors.newCachedThreadPool();
+    /**
+     * creates the threads which relay the output of madx to the log files, two per start of the process. They block in
+     * reading the pipes of the process, so they are always platform threads (see {@link ThreadMode}).
+     */
+    private final ThreadFactory relayThreadFactory = platformThreadFactory("relay");
+
+    /**
+     * the single thread which sends all executables to madx and waits for them, ordered by priority.
+     */
+    private final PriorityKernelExecutor kernelExecutor = new PriorityKernelExecutor(daemonThreadFactory("madx"));
+
+    /**
+     * the thread which parses the results of pipelined executables, while madx already works on the next one. Since
+     * this is a single thread, the futures complete in the order of submission. Created on first use.
+     */
+    private ExecutorService parseExecutor = null;
+
+    /**
+     * the thread which reads the results from the named pipe, while madx writes them. Created on first use.
+     */
+    private ExecutorService fifoReadExecutor = null;
+
+    /**
+     * used to create a distinct result file for each pipelined executable
+     */
+    private final AtomicLong resultFileSequence = new AtomicLong(0);
 
     @Override
     public void start() throws JMadException {
@@ -164,15 +465,34 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
         madxErrorLogFile = fileUtil.getOutputFile(this, FILENAME_LOG_ERROR);
 
         deleteReadyFile();
+        resultFifo = null;
 
         madxInputLogFile.delete();
 
         try {
-            process = madxBin.execute();
+            process = madxBin.execute(processLimits);
             input = new PrintWriter(process.getOutputStream());
-            inputLogWriter = new BufferedWriter(new FileWriter(madxInputLogFile));
-            logFileWriteExecutor.submit(() -> Files.copy(process.getInputStream(), madxOutputLogFile.toPath()));
-            logFileWriteExecutor.submit(() -> Files.copy(process.getErrorStream(), madxErrorLogFile.toPath()));
+            inputLogWriter = createInputLogWriter();
+            readySentinelMonitor = new ReadySentinelMonitor(READY_SENTINEL_PREFIX, process);
+            readySentinelSequence = 0;
+            outputBuffer = new LineRingBuffer(OUTPUT_BUFFER_LINES);
+            errorBuffer = new LineRingBuffer(OUTPUT_BUFFER_LINES);
+            Process startedProcess = process;
+            outputWatchdog = new MadxOutputWatchdog(fatalOutputPatterns,
+                    event -> fireMadxOutput(startedProcess, event));
+
+            StreamLineRelay outputRelay = new StreamLineRelay(process.getInputStream(),
+                    createLogWriter(madxOutputLogFile));
+            outputRelay.addSniffer(readySentinelMonitor);
+            outputRelay.addSniffer(outputBuffer);
+            outputRelay.addSniffer(outputWatchdog);
+            relayThreadFactory.newThread(outputRelay).start();
+
+            StreamLineRelay errorRelay = new StreamLineRelay(process.getErrorStream(),
+                    createLogWriter(madxErrorLogFile));
+            errorRelay.addSniffer(errorBuffer);
+            errorRelay.addSniffer(outputWatchdog);
+            relayThreadFactory.newThread(errorRelay).start();
             fireStartedKernel();
         } catch (IOException e) {
             throw new JMadException("Error while executing madx.", e);
@@ -181,24 +501,63 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
 
     @Override
     public int stop() throws JMadException {
+        int exitValue = terminate(timeout);
+
+        /* delete the dir corresponding to the kernel. */
+        if (isCleanupDirs() && (fileUtil != null)) {
+            fileUtil.cleanup(this);
+        }
+
+        fireStoppedKernel();
+        return exitValue;
+    }
+
+    @Override
+    public CompletableFuture<Integer> stopAsync(long timeout, TimeUnit unit) {
+        Long timeoutMillis = unit.toMillis(timeout);
+        CompletableFuture<Integer> terminated = CompletableFuture.supplyAsync(() -> {
+            try {
+                int exitValue = terminate(timeoutMillis);
+                fireStoppedKernel();
+                return exitValue;
+            } catch (JMadException e) {
+                throw new CompletionException(e);
+            }
+        }, STOP_EXECUTOR);
+        return terminated.thenCompose(exitValue -> {
+            if (!isCleanupDirs() || (fileUtil == null)) {
+                return CompletableFuture.completedFuture(exitValue);
+            }
+            return fileUtil.cleanupAsync(this).thenApply(cleaned -> exitValue);
+        });
+    }
+
+    /**
+     * lets the queued executables finish, sends the stop command to madx and waits until it terminated. If this does
+     * not happen within the timeout, then the process is destroyed and, if it still does not terminate, killed
+     * forcibly.
+     *
+     * @param timeoutMillis the maximum time to wait for the queued executables and the termination together.
+     *            {@code null} to wait as long as it takes.
+     * @return the exit value of madx or {@link #EXIT_VALUE_DESTROYED}
+     */
+    private int terminate(Long timeoutMillis) throws JMadException {
+        long deadline = (timeoutMillis == null) ? Long.MAX_VALUE
+                : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
         int exitValue = 0;
+        setRecoveryPoint(null);
+        shutdownPipeline((timeoutMillis == null) ? null : remainingMillis(deadline));
         writeCommand(CMD_STOP);
         try {
-            if (timeout == null) {
+            if (timeoutMillis == null) {
                 LOGGER.debug("No timeout set. Waiting until madx-process terminates.");
                 exitValue = process.waitFor();
+            } else if (process.waitFor(remainingMillis(deadline), TimeUnit.MILLISECONDS)) {
+                exitValue = process.exitValue();
             } else {
-                ProcessTerminationMonitor processTerminationMonitor = new ProcessTerminationMonitor(process);
-                processTerminationMonitor.start();
-                processTerminationMonitor.join(timeout);
-                if (processTerminationMonitor.isAlive()) {
-                    processTerminationMonitor.interrupt();
-                    process.destroy();
-                    exitValue = EXIT_VALUE_DESTROYED;
-                    LOGGER.warn("Waiting for terminating madx timed out! (timeout={} ms)", timeout);
-                } else {
-                    exitValue = process.exitValue();
-                }
+                LOGGER.warn("Waiting for terminating madx timed out! (timeout={} ms)", timeoutMillis);
+                destroyProcess();
+                exitValue = EXIT_VALUE_DESTROYED;
             }
 
             if (exitValue == 0) {
@@ -209,85 +568,775 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
                 LOGGER.warn("madx terminated with exit-value {}.", exitValue);
             }
 
-            deleteReadyFile();
-            closeInputLogger();
+            deleteReadyFile();
+            closeInputLogger();
+        } catch (InterruptedException e) {
+            throw new JMadException("Error while trying to stop MadX", e);
+        }
+        return exitValue;
+    }
+
+    private static long remainingMillis(long deadline) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
+    /**
+     * destroys the madx process. If it does not terminate within a grace period, it is killed forcibly.
+     */
+    private void destroyProcess() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(DESTROY_GRACE_MILLIS, TimeUnit.MILLISECONDS)) {
+            LOGGER.warn("Madx did not terminate within {} ms after destroying it. Killing it forcibly.",
+                    DESTROY_GRACE_MILLIS);
+            process.destroyForcibly().waitFor(DESTROY_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void deleteReadyFile() {
+        readyFile.delete();
+    }
+
+    /**
+     * @return the writer for the input log, {@code null} if it is disabled
+     */
+    private Writer createInputLogWriter() throws IOException {
+        if (!inputLogEnabled) {
+            return null;
+        }
+        if (LogMode.ASYNC_ROTATING == logMode) {
+            return new AsyncWriter(createLogWriter(madxInputLogFile), INPUT_LOG_QUEUE_CAPACITY,
+                    daemonThreadFactory("input-log"));
+        }
+        return createLogWriter(madxInputLogFile);
+    }
+
+    /**
+     * @param logFile the log file to write to
+     * @return a writer to the given file, which is rotated in {@link LogMode#ASYNC_ROTATING}
+     */
+    private Writer createLogWriter(File logFile) throws IOException {
+        if (LogMode.ASYNC_ROTATING == logMode) {
+            return new RotatingFileWriter(logFile, logSizeLimit, 1);
+        }
+        return new BufferedWriter(new FileWriter(logFile));
+    }
+
+    private void closeInputLogger() {
+        if (inputLogWriter == null) {
+            return;
+        }
+        try {
+            inputLogWriter.flush();
+            inputLogWriter.close();
+        } catch (IOException e) {
+            LOGGER.error("Error while flushing input logger.", e);
+        }
+    }
+
+    @Override
+    public Result execute(JMadExecutable executable) throws JMadException {
+        if (!kernelExecutor.isExecutorThread()) {
+            return await(submit(kernel -> executeDirectly(executable), ExecutionPriority.INTERACTIVE));
+        }
+        return executeDirectly(executable);
+    }
+
+    /**
+     * executes the executable in the current thread, which has to be the one of the kernel executor.
+     */
+    private Result executeDirectly(JMadExecutable executable) throws JMadException {
+        ExecutionTimer timer = new ExecutionTimer();
+        Result result;
+        try {
+            ResultFifo fifo = getResultFifoFor(executable);
+            if (fifo != null) {
+                result = executeThroughFifo(executable, fifo, timer);
+            } else {
+                resultFile = runExecutable(executable, resultFile, timer);
+                result = parseResult(executable, resultFile);
+            }
+        } catch (MadxTerminatedException e) {
+            throw recover(e);
+        }
+        timer.lap(ExecutionPhase.PARSE);
+        recordExecution(executable, timer);
+        recycleIfTooLarge();
+        return result;
+    }
+
+    /**
+     * @param executable the executable to run
+     * @return the named pipe for the result, if the result of the given executable shall be transferred through it,
+     *         {@code null} otherwise
+     */
+    private ResultFifo getResultFifoFor(JMadExecutable executable) {
+        if ((ResultTransport.NAMED_PIPE != resultTransport) || keepOutputFile
+                || (ResultType.TFS_RESULT != executable.getResultType())) {
+            return null;
+        }
+        if ((resultFifo == null) && !resultFifoUnavailable) {
+            try {
+                resultFifo = ResultFifo.create(fileUtil.getOutputFile(this, FILENAME_RESULT_FIFO));
+            } catch (IOException e) {
+                LOGGER.warn("Could not create named pipe for results. Falling back to result files.", e);
+                resultFifoUnavailable = true;
+            }
+        }
+        return resultFifo;
+    }
+
+    /**
+     * runs the executable and parses its TFS result from the named pipe while madx is writing it. Since the parsing
+     * runs concurrently, only the part of it which remains after madx finished is measured as parse phase.
+     */
+    private Result executeThroughFifo(JMadExecutable executable, ResultFifo fifo, ExecutionTimer timer)
+            throws JMadException {
+        TfsFileParser parser = new TfsFileParser(fifo.getFile(), elementNameDictionary);
+        Future<Integer> lineCount = fifo.read(getFifoReadExecutor(), parser::parse);
+
+        executable.setOutputFile(fifo.getFile());
+        try {
+            writePayload(Collections.singletonList(executable), timer);
+            waitUntilReady(timer);
+        } catch (JMadException | RuntimeException e) {
+            fifo.abort(lineCount);
+            throw e;
+        }
+
+        try {
+            if (fifo.await(lineCount, timeout) == 0) {
+                throw new JMadException("No result arrived through named pipe '" + fifo.getFile().getAbsolutePath()
+                        + "'.\nProbably madx did not produce it?" + "\n\n" + madxOutputMessage());
+            }
+        } catch (ExecutionException e) {
+            throw new JMadException("Result from named pipe '" + fifo.getFile().getAbsolutePath()
+                    + "' could not be parsed.\n\n" + madxOutputMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new WaitForMadxTimedOutException("Reading result from named pipe timed out! (timeout=" + timeout
+                    + "ms).", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fifo.abort(lineCount);
+            throw new JMadException("Interrupted while reading result from named pipe.", e);
+        }
+        return parser.getResult();
+    }
+
+    @Override
+    public CompletableFuture<Result> executeAsync(JMadExecutable executable) {
+        return executeAsync(executable, ExecutionPriority.INTERACTIVE);
+    }
+
+    @Override
+    public CompletableFuture<Result> executeAsync(JMadExecutable executable, ExecutionPriority priority) {
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        try {
+            kernelExecutor.execute(priority, () -> runPipelined(executable, future), () -> future
+                    .completeExceptionally(new KernelStoppedException("Kernel stopped before '" + executable
+                            + "' was executed.")));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(new JMadException("Could not submit executable to the kernel.", e));
+        }
+        return future;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(KernelWork<T> work, ExecutionPriority priority) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            kernelExecutor.execute(priority, () -> {
+                try {
+                    future.complete(work.run(this));
+                } catch (JMadException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }, () -> future.completeExceptionally(new KernelStoppedException(
+                    "Kernel stopped before the submitted work was run.")));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(new JMadException("Could not submit work to the kernel.", e));
+        }
+        return future;
+    }
+
+    @Override
+    public QueueStatistics getQueueStatistics() {
+        return kernelExecutor.getStatistics();
+    }
+
+    @Override
+    public List<Result> executeBatch(List<? extends JMadExecutable> executables) throws JMadException {
+        if (!kernelExecutor.isExecutorThread()) {
+            return await(submit(kernel -> executeBatchDirectly(executables), ExecutionPriority.INTERACTIVE));
+        }
+        return executeBatchDirectly(executables);
+    }
+
+    /**
+     * executes the batch in the current thread, which has to be the one of the kernel executor.
+     */
+    private List<Result> executeBatchDirectly(List<? extends JMadExecutable> executables) throws JMadException {
+        ExecutionTimer timer = new ExecutionTimer();
+
+        /* each executable gets its own result file, so that they do not overwrite each other */
+        List<File> outputFiles = new ArrayList<>(executables.size());
+        for (int i = 0; i < executables.size(); i++) {
+            JMadExecutable executable = executables.get(i);
+            File outputFile = fileUtil.getOutputFile(this,
+                    FILENAME_RESULT_BATCH_PREFIX + i + FILENAME_RESULT_PIPELINED_SUFFIX);
+            outputFile.delete();
+            executable.setOutputFile(outputFile);
+            outputFiles.add(outputFile);
+        }
+
+        /* one write and one completion barrier for the whole batch */
+        try {
+            writePayload(executables, timer);
+            waitUntilReady(timer);
+            if (outputFiles.stream().anyMatch(fileUtil::isOutOfSpace)) {
+                /* madx does not report failed writes, so the outputs might be incomplete */
+                LOGGER.warn("No space left for the output files of a batch. Executing it again with the outputs below "
+                        + "the normal output path.");
+                for (int i = 0; i < executables.size(); i++) {
+                    File diskFile = fileUtil.moveToDisk(this, outputFiles.get(i).getName());
+                    diskFile.delete();
+                    executables.get(i).setOutputFile(diskFile);
+                    outputFiles.set(i, diskFile);
+                }
+                writePayload(executables, timer);
+                waitUntilReady(timer);
+            }
+        } catch (MadxTerminatedException e) {
+            throw recover(e);
+        }
+
+        List<Result> results = new ArrayList<>(executables.size());
+        for (int i = 0; i < executables.size(); i++) {
+            results.add(parseResult(executables.get(i), outputFiles.get(i)));
+        }
+        timer.lap(ExecutionPhase.PARSE);
+
+        executionStatistics.record(STATISTICS_NAME_BATCH, timer.getTimings());
+        for (JMadExecutable executable : executables) {
+            journal(executable);
+        }
+        for (JMadKernelListener listener : this.listeners) {
+            listener.executedBatch(executables, timer.getTimings());
+        }
+        recycleIfTooLarge();
+        return results;
+    }
+
+    /**
+     * runs the executable in madx (called in the madx thread) and hands the result file over to the parse thread.
+     * Also failures are passed to the parse thread, so that the futures complete in the order of submission. The
+     * executable is journaled in the madx thread, so that the journal keeps the order in which madx executed.
+     */
+    private void runPipelined(JMadExecutable executable, CompletableFuture<Result> future) {
+        File pipelinedResultFile = fileUtil.getOutputFile(this, FILENAME_RESULT_PIPELINED_PREFIX
+                + resultFileSequence.incrementAndGet() + FILENAME_RESULT_PIPELINED_SUFFIX);
+        ExecutionTimer timer = new ExecutionTimer();
+        File outputFile = pipelinedResultFile;
+        JMadException failure = null;
+        try {
+            outputFile = runExecutable(executable, pipelinedResultFile, timer);
+            journal(executable);
+        } catch (MadxTerminatedException e) {
+            failure = recover(e);
+        } catch (JMadException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = new JMadException("Error while executing '" + executable + "'.", e);
+        }
+
+        JMadException runFailure = failure;
+        File parsedFile = outputFile;
+        getParseExecutor().execute(new DroppableTask(() -> {
+            try {
+                if (runFailure != null) {
+                    future.completeExceptionally(runFailure);
+                } else {
+                    /* the time waiting for the parse thread is not attributed to any phase */
+                    timer.skip();
+                    Result result = parseResult(executable, parsedFile);
+                    timer.lap(ExecutionPhase.PARSE);
+                    recordStatistics(executable, timer);
+                    future.complete(result);
+                }
+            } catch (JMadException | RuntimeException e) {
+                future.completeExceptionally(e);
+            } finally {
+                fileUtil.deleteOutputFile(JMadKernelImpl.this, parsedFile.getName());
+            }
+        }, () -> {
+            fileUtil.deleteOutputFile(this, parsedFile.getName());
+            future.completeExceptionally(new KernelStoppedException("Kernel stopped before the result of '"
+                    + executable + "' was parsed."));
+        }));
+        if (runFailure == null) {
+            recycleIfTooLarge();
+        }
+    }
+
+    /**
+     * sends the executable to madx and waits until madx has finished it.
+     *
+     * @param executable the executable to run
+     * @param outputFile the file to which the executable shall write its output
+     * @param timer the timer which measures the phases of the execution
+     * @return the file to which the executable wrote its output: the given one or, if the memory backed file system
+     *         of this one ran full, the one below the normal output path to which it was written again
+     * @throws JMadException if writing or waiting fails
+     */
+    private File runExecutable(JMadExecutable executable, File outputFile, ExecutionTimer timer)
+            throws JMadException {
+        outputFile.delete();
+        executable.setOutputFile(outputFile);
+
+        /* execute the commands and wait. */
+        writePayload(Collections.singletonList(executable), timer);
+        waitUntilReady(timer);
+        if (!fileUtil.isOutOfSpace(outputFile)) {
+            return outputFile;
+        }
+
+        /* madx does not report failed writes, so the output might be incomplete */
+        LOGGER.warn("No space left for output file '{}'. Executing '{}' again with the output below the normal "
+                + "output path.", outputFile.getAbsolutePath(), executable);
+        File diskFile = fileUtil.moveToDisk(this, outputFile.getName());
+        diskFile.delete();
+        executable.setOutputFile(diskFile);
+        writePayload(Collections.singletonList(executable), timer);
+        waitUntilReady(timer);
+        return diskFile;
+    }
+
+    /**
+     * waits until madx is ready and splits the time since sending the commands into the execution within madx and the
+     * delay until the kernel noticed that madx is ready.
+     */
+    private void waitUntilReady(ExecutionTimer timer) throws JMadException {
+        long readyNanos = waitUntilReady();
+        timer.lap(ExecutionPhase.EXECUTE);
+        timer.splitReady(readyNanos);
+    }
+
+    /**
+     * composes the commands of the given executables and sends them to madx. If they exceed the payload spill
+     * threshold, then they are streamed into a file and madx is only told to call this file. The file is overwritten by
+     * the next large payload and removed together with the kernel directory. If the file system of the file is full,
+     * then the payload is composed again into a file below the normal output path.
+     *
+     * @param executables the executables whose commands to send
+     * @param timer the timer which measures the phases of the execution
+     * @throws JMadException if composing or writing fails
+     */
+    private void writePayload(List<? extends JMadExecutable> executables, ExecutionTimer timer)
+            throws JMadException {
+        File spillFile = fileUtil.getOutputFile(this, FILENAME_PAYLOAD);
+        String commands;
+        try {
+            try {
+                commands = composePayload(executables, spillFile);
+            } catch (IOException e) {
+                if (!FileUtil.isNoSpaceLeft(e)) {
+                    throw e;
+                }
+                LOGGER.warn("No space left for payload file '{}'. Writing it below the normal output path.",
+                        spillFile.getAbsolutePath());
+                commands = composePayload(executables, fileUtil.moveToDisk(this, FILENAME_PAYLOAD));
+            }
+        } catch (IOException e) {
+            throw new JMadException("Error while composing the commands for madx.", e);
+        }
+        timer.lap(ExecutionPhase.COMPOSE);
+        writeCommand(commands);
+        timer.lap(ExecutionPhase.WRITE);
+    }
+
+    /**
+     * @return the commands to send to madx: either the composed commands themselves or the call of the spill file
+     */
+    private String composePayload(List<? extends JMadExecutable> executables, File spillFile) throws IOException {
+        try (PayloadWriter writer = new PayloadWriter(payloadSpillThreshold, spillFile)) {
+            for (JMadExecutable executable : executables) {
+                executable.composeTo(writer);
+                writer.write('\n');
+            }
+            if (writer.isSpilled()) {
+                LOGGER.debug("Large payload written to file '{}'.", writer.getSpillFile().getAbsolutePath());
+                return new CallCommand(writer.getSpillFile()).compose();
+            }
+            return writer.getContent();
+        }
+    }
+
+    /**
+     * journals a successful execution, adds its timings to the statistics and notifies the listeners.
+     */
+    private void recordExecution(JMadExecutable executable, ExecutionTimer timer) {
+        journal(executable);
+        recordStatistics(executable, timer);
+    }
+
+    /**
+     * adds the timings of a successful execution to the statistics and notifies the listeners.
+     */
+    private void recordStatistics(JMadExecutable executable, ExecutionTimer timer) {
+        executionStatistics.record(statisticsName(executable), timer.getTimings());
+        for (JMadKernelListener listener : this.listeners) {
+            listener.executed(executable, timer.getTimings());
+        }
+    }
+
+    /**
+     * records the executable in the journal, if there is a recovery point to which the journal refers. The replay
+     * during a recovery is not recorded again.
+     */
+    private void journal(JMadExecutable executable) {
+        if ((recoveryPoint != null) && !recovering) {
+            journal.record(executable);
+        }
+    }
+
+    @Override
+    public void setRecoveryPoint(KernelSnapshot snapshot) {
+        journal.clear();
+        this.recoveryPoint = snapshot;
+    }
+
+    /**
+     * @return the number of entries which would be replayed on a recovery
+     */
+    public int getJournalSize() {
+        return journal.size();
+    }
+
+    /**
+     * restarts madx after it terminated unexpectedly and brings it back to the state it had before: the recovery point
+     * is restored and the compacted journal is replayed as one batch. Called in the thread of the kernel executor.
+     *
+     * @param e the exception which reports the termination
+     * @return the exception to throw for the failed execution: marked as recovered if the recovery succeeded, the
+     *         given one otherwise
+     */
+    private MadxTerminatedException recover(MadxTerminatedException e) {
+        KernelSnapshot snapshot = this.recoveryPoint;
+        if ((snapshot == null) || recovering) {
+            return e;
+        }
+        recovering = true;
+        long start = System.nanoTime();
+        try {
+            List<JMadExecutable> replay = journal.getExecutables();
+            LOGGER.warn("Madx terminated unexpectedly. Restarting it and replaying {} journal entries.", replay.size());
+            restartAfterTermination();
+            KernelSnapshots.restore(this, snapshot);
+            if (!replay.isEmpty()) {
+                executeBatchDirectly(replay);
+            }
+            LOGGER.info("Recovered kernel state in {} ms.", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return new MadxTerminatedException(e.getMessage() + "\nThe kernel was restarted and its state recovered. "
+                    + "The logs of the terminated madx process were renamed to '*" + FILENAME_CRASHED_SUFFIX + "'.",
+                    e, true);
+        } catch (JMadException | RuntimeException recoveryFailure) {
+            LOGGER.error("Could not recover the kernel after madx terminated.", recoveryFailure);
+            e.addSuppressed(recoveryFailure);
+            return e;
+        } finally {
+            recovering = false;
+        }
+    }
+
+    /**
+     * restarts madx, if its resident memory exceeds the recycle threshold. The state is brought over to the new process
+     * in the same way as by {@link #recover(MadxTerminatedException)}, so this only happens while a recovery point is
+     * set. Called in the thread of the kernel executor after successful executions. If the restart fails, the process
+     * is destroyed, so that the next execution recovers the kernel.
+     */
+    private void recycleIfTooLarge() {
+        KernelSnapshot snapshot = this.recoveryPoint;
+        if ((recycleRssThreshold <= 0) || (snapshot == null) || recovering) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (now - lastResourceCheckNanos < RESOURCE_CHECK_INTERVAL_NANOS) {
+            return;
+        }
+        lastResourceCheckNanos = now;
+        ProcessResourceUsage usage = ProcessResourceUsage.sample(process);
+        if ((usage == null) || (usage.getResidentSetSize() <= recycleRssThreshold)) {
+            return;
+        }
+
+        recovering = true;
+        try {
+            List<JMadExecutable> replay = journal.getExecutables();
+            LOGGER.info("Madx uses {} bytes of resident memory (threshold: {} bytes). Restarting it and replaying {} "
+                    + "journal entries.", usage.getResidentSetSize(), recycleRssThreshold, replay.size());
+            stopForRecycle();
+            start();
+            KernelSnapshots.restore(this, snapshot);
+            if (!replay.isEmpty()) {
+                executeBatchDirectly(replay);
+            }
+            recycleCount++;
+            LOGGER.info("Recycled madx process in {} ms.", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - now));
+        } catch (JMadException | RuntimeException e) {
+            LOGGER.error("Could not recycle the madx process. The kernel will be recovered on the next execution.", e);
+            try {
+                destroyProcess();
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
         } catch (InterruptedException e) {
-            throw new JMadException("Error while trying to stop MadX", e);
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while recycling the madx process.", e);
+        } finally {
+            recovering = false;
         }
+    }
 
-        /* delete the dir corresponding to the kernel. */
-        if (isCleanupDirs() && (fileUtil != null)) {
-            fileUtil.cleanup(this);
+    /**
+     * tells madx to stop and waits for it, in order to replace it by a new process.
+     */
+    private void stopForRecycle() throws JMadException, InterruptedException {
+        writeCommand(CMD_STOP);
+        closeInputLogger();
+        if (!process.waitFor(RECYCLE_STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            LOGGER.warn("Madx did not stop within {} ms. Destroying it.", RECYCLE_STOP_TIMEOUT_MILLIS);
+            destroyProcess();
         }
-
-        fireStoppedKernel();
-        return exitValue;
     }
 
-    private void deleteReadyFile() {
-        readyFile.delete();
+    /**
+     * starts a new madx process, after the old one terminated. The logs of the old one are kept.
+     */
+    private void restartAfterTermination() throws JMadException {
+        closeInputLogger();
+        if (isMadxRunning()) {
+            process.destroyForcibly();
+        }
+        for (File logFile : new File[] { madxInputLogFile, madxOutputLogFile, madxErrorLogFile }) {
+            keepCrashedLog(logFile);
+        }
+        start();
     }
 
-    private void closeInputLogger() {
+    private static void keepCrashedLog(File logFile) {
+        if ((logFile == null) || !logFile.exists()) {
+            return;
+        }
         try {
-            inputLogWriter.flush();
-            inputLogWriter.close();
+            Files.move(logFile.toPath(), new File(logFile.getPath() + FILENAME_CRASHED_SUFFIX).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
         } catch (IOException e) {
-            LOGGER.error("Error while flushing input logger.", e);
+            LOGGER.warn("Could not keep log file '{}' of terminated madx process.", logFile.getAbsolutePath(), e);
         }
     }
 
-    @Override
-    public Result execute(JMadExecutable executable) throws JMadException {
-        resultFile.delete();
-        executable.setOutputFile(resultFile);
-
-        /* execute the commands and wait. */
-        writeCommand(executable.compose());
-        waitUntilReady();
+    /**
+     * @param executable the executable for which to determine the name
+     * @return the name under which the statistics of the given executable are recorded
+     */
+    static String statisticsName(JMadExecutable executable) {
+        String name = executable.getClass().getSimpleName();
+        if (name.isEmpty()) {
+            /* anonymous classes */
+            return executable.getClass().getName();
+        }
+        return name;
+    }
 
+    /**
+     * parses the output of the executable, depending on its result type.
+     *
+     * @param executable the executable which was run
+     * @param outputFile the file to which the executable wrote its output
+     * @return the result or {@code null} if the executable does not produce one
+     * @throws JMadException if the parsing fails
+     */
+    private Result parseResult(JMadExecutable executable, File outputFile) throws JMadException {
         /* parse result */
         Result result = null;
         if ((executable.getResultType() != null) && (ResultType.NO_RESULT != executable.getResultType())) {
-            LOGGER.debug("parsing madx output-file ({})", resultFile.getAbsolutePath());
+            LOGGER.debug("parsing madx output-file ({})", outputFile.getAbsolutePath());
             try {
                 if (ResultType.TFS_RESULT == executable.getResultType()) {
-                    TfsFileParser parser = new TfsFileParser(resultFile);
+                    TfsFileParser parser = new TfsFileParser(outputFile, elementNameDictionary);
                     parser.parse();
                     result = parser.getResult();
                 } else if (ResultType.VALUES_RESULT == executable.getResultType()) {
-                    StrengthFileParser parser = new StrengthFileParser(resultFile);
+                    StrengthFileParser parser = new StrengthFileParser(outputFile);
                     parser.parse(false);
                     result = parser.getResult();
                 } else if (ResultType.MATCH_RESULT == executable.getResultType()) {
-                    MatchOutputParser parser = new MatchOutputParser(executable.getOutputFile());
+                    MatchOutputParser parser = new MatchOutputParser(outputFile);
                     parser.parse();
                     result = parser.getResult();
                 } else if (ResultType.TRACK_RESULT == executable.getResultType()) {
-                    TrackOutputParser parser = new TrackOutputParser(executable.getOutputFile());
+                    TrackOutputParser parser = new TrackOutputParser(outputFile);
                     parser.parse();
                     result = parser.getResult();
                 } else if (ResultType.DYNAP_RESULT == executable.getResultType()) {
-                    DynapOutputParser parser = new DynapOutputParser(executable.getOutputFile());
+                    DynapOutputParser parser = new DynapOutputParser(outputFile);
                     parser.parse();
                     result = parser.getResult();
                 }
             } catch (Exception e) {
-                throw new JMadException("File '" + resultFile.getAbsolutePath() + "' could not be parsed."
+                throw new JMadException("File '" + outputFile.getAbsolutePath() + "' could not be parsed."
                         + "\nProbably madx did not produce it?" + "\n\n" + madxOutputMessage());
             }
 
             if (!this.keepOutputFile) {
-                if (!resultFile.delete()) {
-                    throw new JMadException("Could not delete result file '" + resultFile.getAbsolutePath());
+                if (!outputFile.delete()) {
+                    throw new JMadException("Could not delete result file '" + outputFile.getAbsolutePath());
                 }
-                LOGGER.debug("deleted madx output file ({})", resultFile.getAbsolutePath());
+                LOGGER.debug("deleted madx output file ({})", outputFile.getAbsolutePath());
             }
         }
 
         return result;
     }
 
+    /**
+     * waits for the future of an execution on the kernel thread and unwraps the failure, if any.
+     */
+    private static <T> T await(Future<T> future) throws JMadException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMadException("Interrupted while waiting for the result of madx.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof JMadException) {
+                throw (JMadException) e.getCause();
+            }
+            throw new JMadException("Error while executing in madx.", e.getCause());
+        }
+    }
+
+    private synchronized ExecutorService getParseExecutor() {
+        if (parseExecutor == null) {
+            parseExecutor = Executors.newSingleThreadExecutor(daemonThreadFactory("parse"));
+        }
+        return parseExecutor;
+    }
+
+    private synchronized ExecutorService getFifoReadExecutor() {
+        if (fifoReadExecutor == null) {
+            fifoReadExecutor = Executors.newSingleThreadExecutor(platformThreadFactory("fifo"));
+        }
+        return fifoReadExecutor;
+    }
+
+    /**
+     * @return the process limits as defined by the system properties
+     */
+    private static ProcessLimits defaultProcessLimits() {
+        ProcessLimits limits = new ProcessLimits();
+        limits.setCpuAffinity(System.getProperty(PROP_CPU_AFFINITY));
+        limits.setNiceLevel(Integer.getInteger(PROP_NICE_LEVEL));
+        limits.setMemoryLimit(Long.getLong(PROP_MEMORY_LIMIT));
+        return limits;
+    }
+
+    /**
+     * @param purpose the purpose of the threads, used in their names
+     * @return a factory, which creates the threads of the {@link ThreadMode} which is set at the time of their creation
+     */
+    private ThreadFactory daemonThreadFactory(String purpose) {
+        return daemonThreadFactory(purpose, () -> threadMode);
+    }
+
+    /**
+     * @param purpose the purpose of the threads, used in their names
+     * @return a factory, which creates platform threads regardless of the {@link ThreadMode}. Used for the threads
+     *         which block in reading pipes.
+     */
+    private ThreadFactory platformThreadFactory(String purpose) {
+        return daemonThreadFactory(purpose, () -> ThreadMode.PLATFORM);
+    }
+
+    private ThreadFactory daemonThreadFactory(String purpose, Supplier<ThreadMode> mode) {
+        String namePrefix = "jmad-kernel-" + Integer.toHexString(hashCode()) + "-" + purpose + "-";
+        AtomicLong threadCount = new AtomicLong(0);
+        return runnable -> mode.get().newThread(namePrefix + threadCount.getAndIncrement(), runnable);
+    }
+
+    /**
+     * lets all the queued and pipelined executables finish (or the timeout expire) and releases the pipeline threads.
+     * The queued executables need the lock of the kernel for creating the other threads, so we must not hold it while
+     * waiting for them.
+     *
+     * @param timeoutMillis the maximum time to wait for the queued executables, {@code null} to wait without limit
+     */
+    private void shutdownPipeline(Long timeoutMillis) {
+        try {
+            if (!kernelExecutor.shutdown(timeoutMillis)) {
+                LOGGER.warn("Queued executables did not finish in time (timeout={} ms).", timeoutMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        shutdownHelperExecutors(timeoutMillis);
+    }
+
+    private synchronized void shutdownHelperExecutors(Long timeoutMillis) {
+        for (ExecutorService executor : new ExecutorService[] { parseExecutor, fifoReadExecutor }) {
+            if (executor == null) {
+                continue;
+            }
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(timeoutMillis == null ? Long.MAX_VALUE : timeoutMillis,
+                        TimeUnit.MILLISECONDS)) {
+                    LOGGER.warn("Pipelined executables did not finish in time (timeout={} ms).", timeoutMillis);
+                    dropQueued(executor);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropQueued(executor);
+            }
+        }
+        parseExecutor = null;
+        fifoReadExecutor = null;
+    }
+
+    /**
+     * stops the executor and notifies the waiters of all the tasks, which did not run yet.
+     */
+    private static void dropQueued(ExecutorService executor) {
+        for (Runnable dropped : executor.shutdownNow()) {
+            if (dropped instanceof DroppableTask) {
+                ((DroppableTask) dropped).drop();
+            } else if (dropped instanceof Future) {
+                ((Future<?>) dropped).cancel(true);
+            }
+        }
+    }
+
+    /**
+     * A task for one of the helper executors, which has to notify its waiter, if it is dropped.
+     */
+    private static final class DroppableTask implements Runnable {
+        private final Runnable work;
+        private final Runnable drop;
+
+        DroppableTask(Runnable work, Runnable drop) {
+            this.work = work;
+            this.drop = drop;
+        }
+
+        @Override
+        public void run() {
+            work.run();
+        }
+
+        void drop() {
+            drop.run();
+        }
+    }
+
     /**
      * writes the command(s) as String to MadX-input. This method does not wait for the end of the execution and does
      * not return any result. Use with care!
@@ -307,6 +1356,9 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
         input.flush();
 
         /* also log in separate file for simple executing in madx */
+        if (inputLogWriter == null) {
+            return;
+        }
         try {
             inputLogWriter.write(commandString);
             inputLogWriter.flush();
@@ -321,54 +1373,104 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
     }
 
     /**
-     * writes a file through madx and waits until it exists or reaching timeout (if set).
+     * makes madx signal that it processed all the commands sent so far and waits for this signal or reaching timeout
+     * (if set). How the signal is sent depends on the {@link CompletionMode}.
      *
+     * @return the time in nanoseconds between madx giving the signal and the kernel noticing it
      * @throws JMadException
      * @see #getTimeout()
      * @see #setTimeout(Long)
+     * @see #setCompletionMode(CompletionMode)
      */
     /* package visibility for testing! */
-    void waitUntilReady() throws JMadException {
+    long waitUntilReady() throws JMadException {
         if (!isMadxRunning()) {
             throw new JMadException("MadX is not running!");
         }
 
-        writeCommand("\nsystem, \"echo > " + readyFile.getAbsolutePath() + "\"; // wait until ready\n");
-
-        /* wait for the file, which tells us, that madx finished */
-        FileMonitor fileMonitor = new FileMonitor(readyFile, process);
-
-        boolean fileCreated = false;
+        long readyNanos = NOT_READY;
         try {
-            fileCreated = fileMonitor.waitForFile(timeout);
+            if (CompletionMode.OUTPUT_SENTINEL == completionMode) {
+                readyNanos = waitForReadySentinel();
+            } else {
+                readyNanos = waitForReadyFile();
+            }
         } catch (ProcessTerminatedUnexpectedlyException e) {
             closeInputLogger();
             throwTerminatedException(e);
         }
 
-        if (!fileCreated) {
-            throw new WaitForMadxTimedOutException("madx command timed out! (timeout=" + timeout + "ms).");
+        if (readyNanos == NOT_READY) {
+            String hint = (CompletionMode.OUTPUT_SENTINEL == completionMode)
+                    ? " The ready-sentinel might be stuck in the output buffer of madx, consider "
+                            + CompletionMode.READY_FILE + "."
+                    : "";
+            throw new WaitForMadxTimedOutException("madx command timed out! (timeout=" + timeout + "ms)." + hint);
+        }
+        return readyNanos;
+    }
+
+    /**
+     * writes a file through madx and waits until it exists or reaching timeout.
+     *
+     * @return the time in nanoseconds since the file was written, {@link #NOT_READY} if we timed out
+     */
+    private long waitForReadyFile() throws JMadException {
+        writeCommand("\nsystem, \"echo > " + readyFile.getAbsolutePath() + "\"; // wait until ready\n");
+
+        /* wait for the file, which tells us, that madx finished */
+        FileMonitor fileMonitor = new FileMonitor(readyFile, process);
+        if (!fileMonitor.waitForFile(timeout)) {
+            return NOT_READY;
         }
 
+        /* only as precise as the modification time of the file system, therefore at least zero */
+        long readyMillis = Math.max(0, System.currentTimeMillis() - readyFile.lastModified());
         deleteReadyFileWithRetries();
+        return TimeUnit.MILLISECONDS.toNanos(readyMillis);
+    }
+
+    /**
+     * lets madx print the next sentinel line to its output and waits until the output reader saw it or reaching
+     * timeout.
+     *
+     * @return the time in nanoseconds since the sentinel arrived, {@link #NOT_READY} if we timed out
+     */
+    private long waitForReadySentinel() throws JMadException {
+        long sequence = ++readySentinelSequence;
+        writeCommand("\nprint, text=\"" + readySentinelMonitor.sentinelLine(sequence) + "\"; // wait until ready\n");
+        if (!readySentinelMonitor.waitForSentinel(sequence, timeout)) {
+            return NOT_READY;
+        }
+        return readySentinelMonitor.getNanosSinceLastSentinel();
     }
 
     private void throwTerminatedException(ProcessTerminatedUnexpectedlyException e) throws MadxTerminatedException {
+        MadxOutputEvent fatalEvent = (outputWatchdog == null) ? null : outputWatchdog.getFatalEvent();
+        if (fatalEvent != null) {
+            throw new MadxFatalErrorException("Madx reported a fatal error: '" + fatalEvent.getLine().trim()
+                    + "'.\n\n" + madxOutputMessage(), fatalEvent, e);
+        }
         throw new MadxTerminatedException("Madx terminated unexpectedly.\n\n" + madxOutputMessage(), e);
     }
 
+    /**
+     * @return the last lines of output and error output of madx (from memory) and the locations of the log files
+     */
     private String madxOutputMessage() {
-        return fileSnippet("output", madxOutputLogFile, MAX_REPORTED_OUTPUT_LINES) //
-                + fileSnippet("error output", madxErrorLogFile, MAX_REPORTED_ERROR_LINES) //
-                + "\nFull MadX Input Log: '" + madxInputLogFile.getAbsolutePath() + "'" //
+        String inputLogMessage = (inputLogWriter == null) ? "\nMadX Input Log disabled." : "\nFull MadX Input Log: '"
+                + madxInputLogFile.getAbsolutePath() + "'";
+        return snippet("output", outputBuffer, MAX_REPORTED_OUTPUT_LINES) //
+                + snippet("error output", errorBuffer, MAX_REPORTED_ERROR_LINES) //
+                + inputLogMessage //
                 + "\nFull MadX Output Log: '" + madxOutputLogFile.getAbsolutePath() + "'" //
                 + "\nFull MadX Error Log: '" + madxErrorLogFile.getAbsolutePath() + "'\n";
     }
 
-    private String fileSnippet(String fileQualifier, File file, int maxLines) {
-        List<String> lastMadxErrorLines = FileUtil.tail(file, maxLines);
-        return "MadX " + fileQualifier + "(Max last " + maxLines + " lines):\n---\n'" + StringUtil
-                .join(lastMadxErrorLines, "\n") + "'.\n---\n";
+    private String snippet(String qualifier, LineRingBuffer buffer, int maxLines) {
+        List<String> lastLines = (buffer == null) ? Collections.<String> emptyList() : buffer.getLastLines(maxLines);
+        return "MadX " + qualifier + "(Max last " + maxLines + " lines):\n---\n'" + StringUtil.join(lastLines, "\n")
+                + "'.\n---\n";
     }
 
     private void deleteReadyFileWithRetries() throws JMadException {
@@ -421,6 +1523,96 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
         this.listeners.remove(listener);
     }
 
+    /**
+     * moves all listeners of this kernel to the given one, e.g. to a kernel which replaces this one. Afterwards, they
+     * are not notified anymore by this kernel, so that stopping the replaced kernel does not reach them.
+     *
+     * @param target the kernel which shall notify the listeners from now on
+     */
+    public void moveListenersTo(JMadKernel target) {
+        checkNotNull(target, "target must not be null");
+        for (JMadKernelListener listener : this.listeners) {
+            target.addListener(listener);
+            this.listeners.remove(listener);
+        }
+    }
+
+    /**
+     * copies the configuration and the additional fatal output patterns of this kernel to the given one, e.g. to a
+     * kernel which replaces this one. The settings which take effect on the start of the kernel only apply to an
+     * already running target from its next start on.
+     *
+     * @param target the kernel to configure
+     * @return true, if the target already had the same settings which take effect on start, false otherwise
+     */
+    public boolean copyConfigurationTo(JMadKernelImpl target) {
+        checkNotNull(target, "target must not be null");
+        boolean sameStartSettings = getStartSettings().equals(target.getStartSettings());
+        target.timeout = this.timeout;
+        target.completionMode = this.completionMode;
+        target.resultTransport = this.resultTransport;
+        target.payloadSpillThreshold = this.payloadSpillThreshold;
+        target.logMode = this.logMode;
+        target.logSizeLimit = this.logSizeLimit;
+        target.inputLogEnabled = this.inputLogEnabled;
+        target.threadMode = this.threadMode;
+        target.processLimits = this.processLimits;
+        target.recycleRssThreshold = this.recycleRssThreshold;
+        target.keepOutputFile = this.keepOutputFile;
+        target.cleanupDirs = this.cleanupDirs;
+        target.fatalOutputPatterns.clear();
+        target.fatalOutputPatterns.addAll(this.fatalOutputPatterns);
+        return sameStartSettings;
+    }
+
+    /**
+     * @return the values of the settings, which take effect on the start of the kernel
+     */
+    private List<Object> getStartSettings() {
+        List<Object> settings = new ArrayList<>(Arrays.asList(logMode, logSizeLimit, inputLogEnabled, threadMode,
+                String.valueOf(processLimits)));
+        for (Pattern pattern : fatalOutputPatterns) {
+            settings.add(pattern.flags() + "/" + pattern.pattern());
+        }
+        return settings;
+    }
+
+    @Override
+    public ExecutionStatistics getExecutionStatistics() {
+        return executionStatistics.snapshot();
+    }
+
+    @Override
+    public void resetExecutionStatistics() {
+        executionStatistics.reset();
+    }
+
+    /**
+     * adds a pattern, which marks an output line of madx as fatal error. As soon as such a line appears, madx is
+     * terminated and the waiting execution fails with a {@link MadxFatalErrorException}, instead of waiting until the
+     * timeout. The fatal errors of madx itself are always recognized. This takes effect on the next start of the
+     * kernel.
+     *
+     * @param pattern the pattern which is searched in each line of the output and error output
+     */
+    public void addFatalOutputPattern(Pattern pattern) {
+        this.fatalOutputPatterns.add(checkNotNull(pattern, "pattern must not be null"));
+    }
+
+    /**
+     * called by the output watchdog for each recognized line. A fatal error terminates the process, so that the
+     * waiting execution fails immediately.
+     */
+    private void fireMadxOutput(Process startedProcess, MadxOutputEvent event) {
+        if (MadxOutputEvent.Kind.FATAL == event.getKind()) {
+            LOGGER.error("Madx reported a fatal error: '{}'. Terminating it.", event.getLine().trim());
+            startedProcess.destroyForcibly();
+        }
+        for (JMadKernelListener listener : this.listeners) {
+            listener.madxOutput(event);
+        }
+    }
+
     /**
      * notifies the listeners, that the kernel has started
      */
@@ -461,6 +1653,171 @@ public class JMadKernelImpl implements JMadKernel, JMadKernelConfig {
         this.timeout = timeout;
     }
 
+    @Override
+    public CompletionMode getCompletionMode() {
+        return completionMode;
+    }
+
+    /**
+     * sets the way how the kernel detects that madx finished an executable. This can be changed at any time, also
+     * while madx is running.
+     *
+     * @param completionMode the mode to use from now on
+     */
+    @Override
+    public void setCompletionMode(CompletionMode completionMode) {
+        this.completionMode = checkNotNull(completionMode, "completionMode must not be null");
+    }
+
+    @Override
+    public int getPayloadSpillThreshold() {
+        return payloadSpillThreshold;
+    }
+
+    /**
+     * sets the number of characters, above which the commands of an executable are passed to madx through a file
+     * instead of its input stream.
+     *
+     * @param payloadSpillThreshold the threshold in characters. A negative value disables the use of files.
+     */
+    @Override
+    public void setPayloadSpillThreshold(int payloadSpillThreshold) {
+        this.payloadSpillThreshold = payloadSpillThreshold;
+    }
+
+    @Override
+    public LogMode getLogMode() {
+        return logMode;
+    }
+
+    /**
+     * sets the way how the log files are written. This takes effect on the next start of the kernel.
+     *
+     * @param logMode the mode to use
+     */
+    @Override
+    public void setLogMode(LogMode logMode) {
+        this.logMode = checkNotNull(logMode, "logMode must not be null");
+    }
+
+    @Override
+    public ThreadMode getThreadMode() {
+        return threadMode;
+    }
+
+    /**
+     * sets the kind of threads for the blocking work of this kernel. This takes effect for all threads which are
+     * created afterwards, so it should be set before the kernel is started. The output relays and the fifo reader
+     * always use platform threads (see {@link ThreadMode}).
+     *
+     * @param threadMode the mode to use
+     */
+    @Override
+    public void setThreadMode(ThreadMode threadMode) {
+        this.threadMode = checkNotNull(threadMode, "threadMode must not be null");
+    }
+
+    @Override
+    public ProcessLimits getProcessLimits() {
+        return processLimits;
+    }
+
+    /**
+     * sets the operating system limits for the madx process. This takes effect on the next start of the kernel.
+     *
+     * @param processLimits the limits to use
+     */
+    @Override
+    public void setProcessLimits(ProcessLimits processLimits) {
+        this.processLimits = checkNotNull(processLimits, "processLimits must not be null");
+    }
+
+    @Override
+    public long getRecycleRssThreshold() {
+        return recycleRssThreshold;
+    }
+
+    @Override
+    public void setRecycleRssThreshold(long recycleRssThreshold) {
+        checkArgument(recycleRssThreshold >= 0, "recycleRssThreshold must not be negative, but was %s.",
+                recycleRssThreshold);
+        this.recycleRssThreshold = recycleRssThreshold;
+    }
+
+    /**
+     * @return the current memory and CPU usage of the madx process, {@code null} if it can not be determined (e.g. if
+     *         not running on Linux)
+     */
+    public ProcessResourceUsage getResourceUsage() {
+        Process currentProcess = this.process;
+        if (currentProcess == null) {
+            return null;
+        }
+        return ProcessResourceUsage.sample(currentProcess);
+    }
+
+    /**
+     * @return the number of times madx was restarted, because it exceeded the recycle threshold
+     */
+    public int getRecycleCount() {
+        return recycleCount;
+    }
+
+    /**
+     * @return the dictionary to which the element names of all TFS results of this kernel refer
+     */
+    public ElementNameDictionary getElementNameDictionary() {
+        return elementNameDictionary;
+    }
+
+    @Override
+    public long getLogSizeLimit() {
+        return logSizeLimit;
+    }
+
+    /**
+     * sets the number of characters after which the log files are rotated in {@link LogMode#ASYNC_ROTATING}. This
+     * takes effect on the next start of the kernel.
+     *
+     * @param logSizeLimit the limit in characters
+     */
+    @Override
+    public void setLogSizeLimit(long logSizeLimit) {
+        checkArgument(logSizeLimit > 0, "logSizeLimit must be positive, but was %s.", logSizeLimit);
+        this.logSizeLimit = logSizeLimit;
+    }
+
+    @Override
+    public boolean isInputLogEnabled() {
+        return inputLogEnabled;
+    }
+
+    /**
+     * enables or disables the logging of all commands sent to madx. This takes effect on the next start of the kernel.
+     *
+     * @param inputLogEnabled false to disable the input log
+     */
+    @Override
+    public void setInputLogEnabled(boolean inputLogEnabled) {
+        this.inputLogEnabled = inputLogEnabled;
+    }
+
+    @Override
+    public ResultTransport getResultTransport() {
+        return resultTransport;
+    }
+
+    /**
+     * sets the way how TFS results are transferred from madx. Note that {@link ResultTransport#NAMED_PIPE} is only
+     * used, if the output files are not kept (see {@link #setKeepOutputFile(boolean)}).
+     *
+     * @param resultTransport the transport to use from now on
+     */
+    @Override
+    public void setResultTransport(ResultTransport resultTransport) {
+        this.resultTransport = checkNotNull(resultTransport, "resultTransport must not be null");
+    }
+
     /**
      * sets the flag, if the output-file shall be kept or deleted after task/command execution.
      *
@@ -29,6 +29,10 @@
  */
 package cern.accsoft.steering.jmad.kernel;
 
+import java.util.List;
+
+import cern.accsoft.steering.jmad.kernel.stats.ExecutionTimings;
+
 /**
  * this interface defines the methods which are fired, when the kernel-state changes.
  * 
@@ -47,4 +51,35 @@ public interface JMadKernelListener {
      * fired, when the kernel stops.
      */
     public void stoppedKernel();
+
+    /**
+     * fired, when an executable was successfully executed and its result parsed. For pipelined executions this is
+     * called from the thread which parses the results, so implementations have to be fast and thread safe.
+     *
+     * @param executable the executable which was executed
+     * @param timings the time spent in the different phases of the execution
+     */
+    default void executed(JMadExecutable executable, ExecutionTimings timings) {
+        /* nothing by default */
+    }
+
+    /**
+     * fired, when a batch of executables was successfully executed and all their results parsed.
+     *
+     * @param executables the executables of the batch
+     * @param timings the time spent in the different phases for the batch as a whole
+     */
+    default void executedBatch(List<? extends JMadExecutable> executables, ExecutionTimings timings) {
+        /* nothing by default */
+    }
+
+    /**
+     * fired, when madx printed a fatal error, a warning or a progress message (e.g. of a matching or tracking). This is
+     * called from the thread which reads the output of madx, so implementations have to be fast and thread safe.
+     *
+     * @param event the recognized output line
+     */
+    default void madxOutput(MadxOutputEvent event) {
+        /* nothing by default */
+    }
 }
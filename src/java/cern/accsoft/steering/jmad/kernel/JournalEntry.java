@@ -0,0 +1,59 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * One entry of the journal of a kernel: an executable which re-establishes a part of the state of madx. If the entry
+ * has a key, then it replaces all earlier entries with the same key (latest value wins). Entries without a key are
+ * cumulative and are always kept.
+ */
+public final class JournalEntry {
+
+    private final String key;
+    private final JMadExecutable executable;
+
+    private JournalEntry(String key, JMadExecutable executable) {
+        this.key = key;
+        this.executable = Preconditions.checkNotNull(executable, "executable must not be null");
+    }
+
+    /**
+     * @param key the part of the state of madx which is set by the executable (e.g. the name of a variable)
+     * @param executable the executable which sets it
+     * @return an entry which replaces earlier ones with the same key
+     */
+    public static JournalEntry latest(String key, JMadExecutable executable) {
+        return new JournalEntry(Preconditions.checkNotNull(key, "key must not be null"), executable);
+    }
+
+    /**
+     * @param executable an executable whose effect adds up to the one of earlier executables (e.g. adding field
+     *            errors)
+     * @return an entry which is always kept
+     */
+    public static JournalEntry cumulative(JMadExecutable executable) {
+        return new JournalEntry(null, executable);
+    }
+
+    /**
+     * @return the key of the entry or {@code null} if it is cumulative
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public JMadExecutable getExecutable() {
+        return executable;
+    }
+}
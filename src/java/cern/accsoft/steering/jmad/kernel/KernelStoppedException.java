@@ -0,0 +1,26 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import cern.accsoft.steering.jmad.JMadException;
+
+/**
+ * Thrown through the future of queued work, which was dropped, because the kernel was stopped before the work could
+ * run (e.g. since the queued work did not finish within the timeout of the stop).
+ */
+public class KernelStoppedException extends JMadException {
+    private static final long serialVersionUID = 1L;
+
+    public KernelStoppedException(String message) {
+        super(message);
+    }
+}
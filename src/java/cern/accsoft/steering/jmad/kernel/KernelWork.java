@@ -0,0 +1,32 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import cern.accsoft.steering.jmad.JMadException;
+
+/**
+ * A piece of work, which is run exclusively on the thread of a kernel (see
+ * {@link JMadKernel#submit(KernelWork, ExecutionPriority)}). All calls to the kernel from within the work are executed
+ * directly, so that a sequence of executables is never interleaved with executables from other threads.
+ *
+ * @param <T> the type of the result of the work
+ */
+@FunctionalInterface
+public interface KernelWork<T> {
+
+    /**
+     * @param kernel the kernel on whose thread the work runs
+     * @return the result of the work
+     * @throws JMadException if the work fails
+     */
+    T run(JMadKernel kernel) throws JMadException;
+}
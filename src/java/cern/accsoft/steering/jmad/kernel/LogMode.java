@@ -0,0 +1,48 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+/**
+ * Defines how the kernel writes the log files of the input, output and error output of MadX.
+ */
+public enum LogMode {
+
+    /**
+     * Each command is written and flushed to the input log before the kernel continues. The output of MadX is copied
+     * to the log files for the whole lifetime of the kernel, without any limit.
+     */
+    SYNCHRONOUS,
+
+    /**
+     * The input log is written by a background thread, so that sending commands never waits for the disk (if the
+     * logging falls behind too much, commands are dropped from the log). All the log files are rotated as soon as they
+     * reach the configured size limit, keeping only one older file each.
+     */
+    ASYNC_ROTATING;
+
+    /**
+     * @param name the name of the mode (case insensitive)
+     * @param defaultMode the mode to return if the name is {@code null} or unknown
+     * @return the mode of the given name, or the default mode
+     */
+    public static LogMode fromName(String name, LogMode defaultMode) {
+        if (name == null) {
+            return defaultMode;
+        }
+        for (LogMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name.trim())) {
+                return mode;
+            }
+        }
+        return defaultMode;
+    }
+}
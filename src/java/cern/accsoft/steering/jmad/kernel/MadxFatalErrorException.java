@@ -0,0 +1,35 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+/**
+ * Thrown, if MadX reported a fatal error in its output. The process is terminated by the kernel in this case, because
+ * MadX might not exit by itself (or only after the timeout), and its state is undefined afterwards.
+ */
+public class MadxFatalErrorException extends MadxTerminatedException {
+    private static final long serialVersionUID = 1L;
+
+    /** the output line which reported the error */
+    private final transient MadxOutputEvent event;
+
+    public MadxFatalErrorException(String message, MadxOutputEvent event, Throwable cause) {
+        super(message, cause);
+        this.event = event;
+    }
+
+    /**
+     * @return the event for the output line, which reported the fatal error
+     */
+    public MadxOutputEvent getEvent() {
+        return event;
+    }
+}
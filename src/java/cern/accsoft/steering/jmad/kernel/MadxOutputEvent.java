@@ -0,0 +1,69 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+/**
+ * A line of the output of MadX which was recognized by the {@link MadxOutputWatchdog}: a fatal error, a warning or a
+ * progress message of a long running command. The events are passed to
+ * {@link JMadKernelListener#madxOutput(MadxOutputEvent)} in the thread which reads the output of MadX.
+ */
+public class MadxOutputEvent {
+
+    /**
+     * The kinds of recognized output lines.
+     */
+    public enum Kind {
+        /** An error after which MadX can not continue. The executable which is currently waiting is aborted. */
+        FATAL,
+        /** A warning, after which MadX continues. */
+        WARNING,
+        /** One evaluation of the penalty function within a matching. The value is the number of the call. */
+        MATCH_CALL,
+        /** A turn of a tracking. The value is the number of the turn. */
+        TRACK_TURN;
+    }
+
+    private final Kind kind;
+    private final String line;
+    private final long value;
+
+    /**
+     * @param kind the kind of the line
+     * @param line the line as printed by MadX
+     * @param value the counter contained in a progress line, 0 for other kinds
+     */
+    public MadxOutputEvent(Kind kind, String line, long value) {
+        this.kind = kind;
+        this.line = line;
+        this.value = value;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getLine() {
+        return line;
+    }
+
+    /**
+     * @return the number of the match call or tracking turn, 0 for other kinds
+     */
+    public long getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "MadxOutputEvent [kind=" + kind + ", line=" + line + ", value=" + value + "]";
+    }
+}
@@ -0,0 +1,127 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import cern.accsoft.steering.jmad.kernel.MadxOutputEvent.Kind;
+import cern.accsoft.steering.jmad.util.StreamSniffer;
+
+/**
+ * Watches the output and error output of MadX for fatal errors, warnings and progress messages and passes them as
+ * {@link MadxOutputEvent}s to a consumer. The first fatal error is remembered, so that the kernel can report it instead
+ * of waiting for MadX until the timeout.
+ * <p>
+ * Each rule consists of a literal marker, which a line has to contain, and a pattern, which is only applied to lines
+ * containing the marker. This keeps the costs low for the bulk of the output, which matches none of the rules. The
+ * lines from both streams arrive in different threads, so the watchdog is thread safe.
+ */
+class MadxOutputWatchdog implements StreamSniffer {
+
+    /** the rules for the messages of MadX itself */
+    private static final List<Rule> DEFAULT_RULES = defaultRules();
+
+    /** the rules which are checked for each line, the first matching one wins */
+    private final List<Rule> rules;
+
+    /** the consumer of all events. Called in the threads which read the output. */
+    private final Consumer<MadxOutputEvent> consumer;
+
+    /** the first fatal error, null if there was none */
+    private final AtomicReference<MadxOutputEvent> fatalEvent = new AtomicReference<>();
+
+    /**
+     * @param fatalPatterns additional patterns, which mark a line as fatal error (e.g. messages of an endless loop in
+     *            custom macros)
+     * @param consumer the consumer of all the events
+     */
+    MadxOutputWatchdog(List<Pattern> fatalPatterns, Consumer<MadxOutputEvent> consumer) {
+        this.rules = new ArrayList<>(DEFAULT_RULES);
+        for (Pattern pattern : fatalPatterns) {
+            this.rules.add(new Rule(Kind.FATAL, null, pattern));
+        }
+        this.consumer = consumer;
+    }
+
+    private static List<Rule> defaultRules() {
+        List<Rule> rules = new ArrayList<>();
+        rules.add(new Rule(Kind.FATAL, "+=+=+= fatal", Pattern.compile("^\\s*\\+=\\+=\\+= fatal")));
+        rules.add(new Rule(Kind.WARNING, "++++++ warning", Pattern.compile("^\\s*\\+\\+\\+\\+\\+\\+ warning")));
+        rules.add(new Rule(Kind.MATCH_CALL, "call:",
+                Pattern.compile("^\\s*call:\\s*(\\d+)\\s+Penalty function", Pattern.CASE_INSENSITIVE)));
+        rules.add(new Rule(Kind.TRACK_TURN, "urn",
+                Pattern.compile("^\\s*turn\\s*[:=]?\\s*(\\d+)", Pattern.CASE_INSENSITIVE)));
+        return rules;
+    }
+
+    @Override
+    public void processNewLine(String newLine) {
+        for (Rule rule : rules) {
+            MadxOutputEvent event = rule.apply(newLine);
+            if (event != null) {
+                if (Kind.FATAL == event.getKind()) {
+                    fatalEvent.compareAndSet(null, event);
+                }
+                consumer.accept(event);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the first fatal error seen so far, {@code null} if there was none
+     */
+    MadxOutputEvent getFatalEvent() {
+        return fatalEvent.get();
+    }
+
+    /**
+     * A pattern for a kind of output lines. If the pattern has a group, it has to capture the counter of a progress
+     * line.
+     */
+    private static class Rule {
+        private final Kind kind;
+        private final String marker;
+        private final Pattern pattern;
+
+        Rule(Kind kind, String marker, Pattern pattern) {
+            this.kind = kind;
+            this.marker = marker;
+            this.pattern = pattern;
+        }
+
+        MadxOutputEvent apply(String line) {
+            if ((marker != null) && !line.contains(marker)) {
+                return null;
+            }
+            Matcher matcher = pattern.matcher(line);
+            if (!matcher.find()) {
+                return null;
+            }
+            long value = 0;
+            if (matcher.groupCount() > 0) {
+                try {
+                    value = Long.parseLong(matcher.group(1));
+                } catch (NumberFormatException e) {
+                    /* too large, we still report the line */
+                    value = 0;
+                }
+            }
+            return new MadxOutputEvent(kind, line, value);
+        }
+    }
+}
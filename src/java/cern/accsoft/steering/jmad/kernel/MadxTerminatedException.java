@@ -9,16 +9,34 @@ import cern.accsoft.steering.jmad.JMadException;
 public class MadxTerminatedException extends JMadException {
     private static final long serialVersionUID = 1L;
 
+    /** true, if the kernel was restarted and its state was recovered */
+    private final boolean recovered;
+
     public MadxTerminatedException(String message, Throwable cause) {
+        this(message, cause, false);
+    }
+
+    public MadxTerminatedException(String message, Throwable cause, boolean recovered) {
         super(message, cause);
+        this.recovered = recovered;
     }
 
     public MadxTerminatedException(String message) {
         super(message);
+        this.recovered = false;
     }
 
     public MadxTerminatedException(Throwable cause) {
         super(cause);
+        this.recovered = false;
+    }
+
+    /**
+     * @return true, if the kernel already restarted madx and recovered its state (see
+     *         {@link JMadKernel#setRecoveryPoint}). Only the executable which failed has to be repeated then.
+     */
+    public boolean isRecovered() {
+        return recovered;
     }
 
 }
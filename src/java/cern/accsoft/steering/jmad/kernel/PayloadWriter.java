@@ -0,0 +1,117 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Collects the commands which are sent to MadX. As long as they are small, they are kept in memory, so that they can be
+ * written to the input of MadX directly. As soon as they exceed the given threshold, all the content is moved to a file
+ * and written there from then on, so that huge payloads are never held in memory as a whole. MadX then only has to be
+ * told to call this file.
+ */
+class PayloadWriter extends Writer {
+
+    /** the number of characters up to which the content is kept in memory. Negative means no limit. */
+    private final int threshold;
+
+    /** the file to which to spill the content */
+    private final File spillFile;
+
+    /** the content, as long as it is kept in memory */
+    private StringBuilder buffer = new StringBuilder();
+
+    /** the writer to the spill file, once we spilled */
+    private Writer fileWriter = null;
+
+    /**
+     * @param threshold the number of characters up to which the content is kept in memory. A negative value means, that
+     *            the content is never written to a file.
+     * @param spillFile the file to write the content to, if it exceeds the threshold
+     */
+    PayloadWriter(int threshold, File spillFile) {
+        this.threshold = threshold;
+        this.spillFile = spillFile;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (fileWriter != null) {
+            fileWriter.write(cbuf, off, len);
+            return;
+        }
+        buffer.append(cbuf, off, len);
+        spillIfRequired();
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        if (fileWriter != null) {
+            fileWriter.write(str, off, len);
+            return;
+        }
+        buffer.append(str, off, off + len);
+        spillIfRequired();
+    }
+
+    private void spillIfRequired() throws IOException {
+        if ((threshold < 0) || (buffer.length() <= threshold)) {
+            return;
+        }
+        fileWriter = new BufferedWriter(new FileWriter(spillFile));
+        fileWriter.write(buffer.toString());
+        buffer = null;
+    }
+
+    /**
+     * @return true, if the content exceeded the threshold and was therefore written to the spill file
+     */
+    boolean isSpilled() {
+        return fileWriter != null;
+    }
+
+    /**
+     * @return the content, if it was not spilled
+     * @throws IllegalStateException if the content was spilled to the file
+     */
+    String getContent() {
+        if (isSpilled()) {
+            throw new IllegalStateException("Content was written to file '" + spillFile.getAbsolutePath() + "'.");
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * @return the file to which the content is written, if it exceeds the threshold
+     */
+    File getSpillFile() {
+        return this.spillFile;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileWriter != null) {
+            fileWriter.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileWriter != null) {
+            fileWriter.close();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cern.accsoft.steering.jmad.kernel.stats.LatencyHistogram;
+import cern.accsoft.steering.jmad.kernel.stats.LatencySnapshot;
+
+/**
+ * The single thread, which talks to madx on behalf of all the callers of a kernel. Waiting work is ordered by its
+ * {@link ExecutionPriority} and then by the order of submission. The thread is created on the first submission after
+ * each {@link #shutdown(Long)}, while the statistics are kept for the lifetime of the kernel.
+ * <p>
+ * Work which is dropped by a shutdown is never run. Instead, its cancel hook is called, so that whoever waits for the
+ * work can be notified.
+ */
+public class PriorityKernelExecutor {
+
+    private final ThreadFactory threadFactory;
+
+    /** used to keep the order of submission within one priority */
+    private final AtomicLong sequence = new AtomicLong(0);
+
+    private final Map<ExecutionPriority, AtomicInteger> queueDepths = new EnumMap<>(ExecutionPriority.class);
+    private final Map<ExecutionPriority, LatencyHistogram> waitTimes = new EnumMap<>(ExecutionPriority.class);
+
+    /** marks the thread of the executor while it is running some work */
+    private final ThreadLocal<Boolean> executorThread = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private ThreadPoolExecutor executor = null;
+
+    /**
+     * @param threadFactory the factory for the thread of the executor
+     */
+    public PriorityKernelExecutor(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+        for (ExecutionPriority priority : ExecutionPriority.values()) {
+            queueDepths.put(priority, new AtomicInteger(0));
+            waitTimes.put(priority, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * queues the given work, which does not need to be notified if it is dropped.
+     *
+     * @param priority the priority of the work
+     * @param work the work to run on the thread of the executor
+     * @throws java.util.concurrent.RejectedExecutionException if the work can not be queued
+     */
+    public void execute(ExecutionPriority priority, Runnable work) {
+        execute(priority, work, () -> {
+            /* nobody waits for it */
+        });
+    }
+
+    /**
+     * queues the given work.
+     *
+     * @param priority the priority of the work
+     * @param work the work to run on the thread of the executor
+     * @param cancel called instead of the work, if the work is dropped by {@link #shutdown(Long)}
+     * @throws java.util.concurrent.RejectedExecutionException if the work can not be queued
+     */
+    public void execute(ExecutionPriority priority, Runnable work, Runnable cancel) {
+        AtomicInteger depth = queueDepths.get(priority);
+        depth.incrementAndGet();
+        try {
+            getExecutor().execute(new PrioritizedWork(priority, sequence.incrementAndGet(), work, cancel));
+        } catch (RuntimeException e) {
+            depth.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * @return true, if the current thread is the one of the executor and is running some work
+     */
+    public boolean isExecutorThread() {
+        return executorThread.get();
+    }
+
+    /**
+     * @return a snapshot of the queue depths and waiting times
+     */
+    public QueueStatistics getStatistics() {
+        Map<ExecutionPriority, Integer> depths = new EnumMap<>(ExecutionPriority.class);
+        Map<ExecutionPriority, LatencySnapshot> waits = new EnumMap<>(ExecutionPriority.class);
+        for (ExecutionPriority priority : ExecutionPriority.values()) {
+            depths.put(priority, queueDepths.get(priority).get());
+            waits.put(priority, waitTimes.get(priority).snapshot());
+        }
+        return new QueueStatistics(depths, waits);
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
+                    threadFactory);
+        }
+        return executor;
+    }
+
+    /**
+     * lets all the queued work finish (or the timeout expire) and releases the thread. If this is called from the
+     * thread of the executor itself, then the queued work is finished asynchronously.
+     *
+     * @param timeout the maximum time to wait in milliseconds, {@code null} to wait forever
+     * @return true, if all the work finished, false if the timeout expired and the remaining work was dropped (i.e.
+     *         cancelled)
+     * @throws InterruptedException if the waiting was interrupted. The remaining work is dropped then.
+     */
+    public boolean shutdown(Long timeout) throws InterruptedException {
+        ThreadPoolExecutor current;
+        synchronized (this) {
+            current = executor;
+            executor = null;
+        }
+        if (current == null) {
+            return true;
+        }
+        current.shutdown();
+        if (isExecutorThread()) {
+            return true;
+        }
+        try {
+            if (current.awaitTermination(timeout == null ? Long.MAX_VALUE : timeout, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            dropQueued(current);
+            throw e;
+        }
+        dropQueued(current);
+        return false;
+    }
+
+    private void dropQueued(ThreadPoolExecutor current) {
+        for (Runnable dropped : current.shutdownNow()) {
+            ((PrioritizedWork) dropped).drop();
+        }
+    }
+
+    /**
+     * The wrapper for the queued work, which defines the order in the queue and records the statistics.
+     */
+    private class PrioritizedWork implements Runnable, Comparable<PrioritizedWork> {
+        private final ExecutionPriority priority;
+        private final long sequenceNumber;
+        private final Runnable work;
+        private final Runnable cancel;
+        private final long queuedNanoTime = System.nanoTime();
+
+        PrioritizedWork(ExecutionPriority priority, long sequenceNumber, Runnable work, Runnable cancel) {
+            this.priority = priority;
+            this.sequenceNumber = sequenceNumber;
+            this.work = work;
+            this.cancel = cancel;
+        }
+
+        void drop() {
+            queueDepths.get(priority).decrementAndGet();
+            cancel.run();
+        }
+
+        @Override
+        public void run() {
+            queueDepths.get(priority).decrementAndGet();
+            waitTimes.get(priority).record(System.nanoTime() - queuedNanoTime);
+            executorThread.set(Boolean.TRUE);
+            try {
+                work.run();
+            } finally {
+                executorThread.set(Boolean.FALSE);
+            }
+        }
+
+        @Override
+        public int compareTo(PrioritizedWork other) {
+            int result = priority.compareTo(other.priority);
+            if (result != 0) {
+                return result;
+            }
+            return Long.compare(sequenceNumber, other.sequenceNumber);
+        }
+    }
+}
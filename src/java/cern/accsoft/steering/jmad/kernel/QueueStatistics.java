@@ -0,0 +1,70 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import cern.accsoft.steering.jmad.kernel.stats.LatencySnapshot;
+
+/**
+ * An immutable snapshot of the queue of a kernel: the number of waiting entries and the time the entries waited until
+ * they were started, for each {@link ExecutionPriority}.
+ */
+public class QueueStatistics {
+
+    private final Map<ExecutionPriority, Integer> depths;
+    private final Map<ExecutionPriority, LatencySnapshot> waitTimes;
+
+    QueueStatistics(Map<ExecutionPriority, Integer> depths, Map<ExecutionPriority, LatencySnapshot> waitTimes) {
+        this.depths = Collections.unmodifiableMap(new EnumMap<>(depths));
+        this.waitTimes = Collections.unmodifiableMap(new EnumMap<>(waitTimes));
+    }
+
+    /**
+     * @param priority the priority class
+     * @return the number of entries of the given priority, which are currently waiting
+     */
+    public int getQueueDepth(ExecutionPriority priority) {
+        return depths.get(priority);
+    }
+
+    /**
+     * @return the number of all entries, which are currently waiting
+     */
+    public int getTotalQueueDepth() {
+        int total = 0;
+        for (Integer depth : depths.values()) {
+            total += depth;
+        }
+        return total;
+    }
+
+    /**
+     * @param priority the priority class
+     * @return the times (in nanoseconds) which the started entries of the given priority waited in the queue
+     */
+    public LatencySnapshot getWaitTime(ExecutionPriority priority) {
+        return waitTimes.get(priority);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (ExecutionPriority priority : ExecutionPriority.values()) {
+            builder.append(priority.name().toLowerCase()).append(": depth=").append(getQueueDepth(priority))
+                    .append(", wait[").append(getWaitTime(priority)).append("]\n");
+        }
+        return builder.toString();
+    }
+}
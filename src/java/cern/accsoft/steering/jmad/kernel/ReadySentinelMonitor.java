@@ -0,0 +1,153 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.util.FileMonitor.ProcessTerminatedUnexpectedlyException;
+import cern.accsoft.steering.jmad.util.FileMonitor.WaitingFailedException;
+import cern.accsoft.steering.jmad.util.ProcTools;
+import cern.accsoft.steering.jmad.util.StreamSniffer;
+
+/**
+ * Watches the output of MadX for numbered sentinel lines (as used by {@link CompletionMode#OUTPUT_SENTINEL}) and wakes
+ * up threads which wait for a certain sentinel. Since the sentinels are numbered ascending, it is sufficient to
+ * remember the highest number seen so far. Therefore it does not matter, if the line arrives before somebody starts
+ * waiting for it.
+ * <p>
+ * An explicit lock is used instead of a monitor, so that waiting virtual threads (see {@link ThreadMode#VIRTUAL}) do
+ * not pin their carrier thread.
+ */
+class ReadySentinelMonitor implements StreamSniffer {
+
+    /** The interval (in ms) in which it is checked, if the process is still alive, while waiting */
+    private static final int PROCESS_CHECK_INTERVAL = 10;
+
+    /** The prefix of the lines which mark the end of one executable */
+    private final String prefix;
+
+    /** The process which writes the sentinels. Might be null. */
+    private final Process process;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** signalled whenever a new sentinel arrives */
+    private final Condition sentinelArrived = lock.newCondition();
+
+    /** The highest sentinel number seen so far */
+    private long lastSeenSequence = 0;
+
+    /** The time (as of {@link System#nanoTime()}) when the highest sentinel was seen */
+    private long lastSeenNanoTime = 0;
+
+    /**
+     * @param prefix the text in front of the sentinel number
+     * @param process the process to watch while waiting. If it terminates, waiting is interrupted.
+     */
+    ReadySentinelMonitor(String prefix, Process process) {
+        this.prefix = prefix;
+        this.process = process;
+    }
+
+    /**
+     * @param sequence the number of the sentinel
+     * @return the line, which MadX prints for the given sentinel number
+     */
+    String sentinelLine(long sequence) {
+        return prefix + sequence;
+    }
+
+    @Override
+    public void processNewLine(String newLine) {
+        String line = newLine.trim();
+        if (!line.startsWith(prefix)) {
+            return;
+        }
+        long sequence;
+        try {
+            sequence = Long.parseLong(line.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            /* e.g. the echo of the print command itself */
+            return;
+        }
+        lock.lock();
+        try {
+            if (sequence > lastSeenSequence) {
+                lastSeenSequence = sequence;
+                lastSeenNanoTime = System.nanoTime();
+                sentinelArrived.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * waits until the sentinel with the given number (or a later one) was printed.
+     *
+     * @param sequence the number of the sentinel to wait for
+     * @param timeout the maximum time to wait in milliseconds. If {@code null}, then we wait forever.
+     * @return true if the sentinel arrived, false if we timed out
+     * @throws JMadException if the process terminated or the waiting was interrupted
+     */
+    boolean waitForSentinel(long sequence, Long timeout) throws JMadException {
+        lock.lock();
+        try {
+            return awaitSentinel(sequence, timeout);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean awaitSentinel(long sequence, Long timeout) throws JMadException {
+        long startTime = System.currentTimeMillis();
+        while (lastSeenSequence < sequence) {
+            if ((process != null) && (!ProcTools.isRunning(process))) {
+                throw new ProcessTerminatedUnexpectedlyException("process '" + process.toString()
+                        + "' terminated while waiting for sentinel '" + sentinelLine(sequence)
+                        + "' - maybe there was some error!");
+            }
+
+            long waitTime = PROCESS_CHECK_INTERVAL;
+            if (timeout != null) {
+                long delay = timeout - (System.currentTimeMillis() - startTime);
+                if (delay <= 0) {
+                    return false;
+                }
+                waitTime = Math.min(waitTime, delay);
+            }
+
+            try {
+                sentinelArrived.await(waitTime, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                throw new WaitingFailedException("waiting for sentinel '" + sentinelLine(sequence)
+                        + "' was interrupted", e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the time in nanoseconds since the highest sentinel so far was seen
+     */
+    long getNanosSinceLastSentinel() {
+        lock.lock();
+        try {
+            return System.nanoTime() - lastSeenNanoTime;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
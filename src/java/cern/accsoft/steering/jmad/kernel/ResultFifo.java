@@ -0,0 +1,202 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A named pipe (FIFO) through which MadX passes a result to a reader thread of the kernel (see
+ * {@link ResultTransport#NAMED_PIPE}).
+ * <p>
+ * Opening a FIFO for reading blocks until a writer opens it. If MadX does not write the result at all (e.g. because
+ * of an error), the reader would therefore wait forever. To prevent this, {@link #await(Future, Long)} opens the FIFO
+ * itself as long as the reader did not succeed to open it, which lets the reader see an empty stream.
+ */
+class ResultFifo {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultFifo.class);
+
+    /** The interval (in ms) in which we check, if the reader is still blocked in opening the fifo */
+    private static final long UNBLOCK_INTERVAL = 10;
+
+    /** The number of characters read at once, when discarding the rest of the fifo */
+    private static final int DRAIN_BUFFER_SIZE = 1 << 13;
+
+    /** The fifo in the file system */
+    private final File file;
+
+    /** true, as soon as the current reader has opened the fifo */
+    private final AtomicBoolean readerOpened = new AtomicBoolean(false);
+
+    private ResultFifo(File file) {
+        this.file = file;
+    }
+
+    /**
+     * creates a new named pipe in the file system by the help of the {@code mkfifo} command.
+     *
+     * @param file the path of the pipe to create. An existing file is replaced.
+     * @return the new fifo
+     * @throws IOException if the fifo could not be created, e.g. because {@code mkfifo} is not available
+     */
+    static ResultFifo create(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not delete existing file '" + file.getAbsolutePath() + "'.");
+        }
+        Process process = new ProcessBuilder("mkfifo", file.getAbsolutePath()).redirectErrorStream(true).start();
+        try {
+            int exitValue = process.waitFor();
+            if (exitValue != 0) {
+                throw new IOException("mkfifo for '" + file.getAbsolutePath() + "' exited with value " + exitValue
+                        + ".");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while creating named pipe '" + file.getAbsolutePath() + "'.", e);
+        }
+        return new ResultFifo(file);
+    }
+
+    /**
+     * @return the fifo in the file system, to which MadX shall write
+     */
+    File getFile() {
+        return this.file;
+    }
+
+    /**
+     * starts reading from the fifo in the given executor. This must be called before MadX is told to write into the
+     * fifo. Whatever the function does not consume (e.g. because it fails) is read and discarded before the fifo is
+     * closed: otherwise MadX would be killed by a broken pipe while still writing.
+     *
+     * @param executor the executor in which to read
+     * @param readerFunction the function which consumes the content of the fifo
+     * @return the future result of the function
+     */
+    <T> Future<T> read(ExecutorService executor, ReaderFunction<T> readerFunction) {
+        readerOpened.set(false);
+        return executor.submit(() -> {
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                readerOpened.set(true);
+                try {
+                    return readerFunction.apply(reader);
+                } finally {
+                    drain(reader);
+                }
+            }
+        });
+    }
+
+    /**
+     * reads the rest of the fifo until MadX closes it. Failures are only logged, so that they do not hide the one of
+     * the reader function.
+     */
+    private void drain(BufferedReader reader) {
+        char[] buffer = new char[DRAIN_BUFFER_SIZE];
+        try {
+            while (reader.read(buffer) >= 0) {
+                /* discard */
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not drain named pipe '{}'.", file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * waits for the reader to finish. This must only be called after MadX finished writing (i.e. closed the fifo).
+     *
+     * @param future the future as returned from {@link #read(ExecutorService, ReaderFunction)}
+     * @param timeout the maximum time to wait in milliseconds. If {@code null}, then we wait forever.
+     * @return the result of the reader function
+     * @throws ExecutionException if the reader function failed
+     * @throws InterruptedException if the waiting was interrupted
+     * @throws TimeoutException if the timeout is exceeded
+     */
+    <T> T await(Future<T> future, Long timeout) throws ExecutionException, InterruptedException, TimeoutException {
+        long startTime = System.currentTimeMillis();
+        while (true) {
+            try {
+                return future.get(UNBLOCK_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (!readerOpened.get()) {
+                    /* madx did not open the fifo at all */
+                    unblockReader();
+                }
+                if ((timeout != null) && (System.currentTimeMillis() - startTime > timeout)) {
+                    abort(future);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * cancels the reader and ensures that its thread does not stay blocked in opening the fifo.
+     *
+     * @param future the future as returned from {@link #read(ExecutorService, ReaderFunction)}
+     */
+    void abort(Future<?> future) {
+        future.cancel(true);
+        if (!readerOpened.get()) {
+            unblockReader();
+        }
+    }
+
+    /**
+     * opens and closes the fifo for reading and writing. On linux this never blocks, but lets a reader, which waits in
+     * opening the fifo, continue and see the end of the stream.
+     */
+    private void unblockReader() {
+        RandomAccessFile unblocker = null;
+        try {
+            unblocker = new RandomAccessFile(file, "rw");
+            LOGGER.debug("Unblocking reader of named pipe '{}'.", file.getAbsolutePath());
+        } catch (IOException e) {
+            LOGGER.warn("Could not unblock reader of named pipe '{}'.", file.getAbsolutePath(), e);
+        } finally {
+            closeQuietly(unblocker);
+        }
+    }
+
+    private void closeQuietly(RandomAccessFile unblocker) {
+        if (unblocker == null) {
+            return;
+        }
+        try {
+            unblocker.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not close named pipe '{}'.", file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * consumes the content of the fifo
+     *
+     * @param <T> the type of the result of the function
+     */
+    interface ReaderFunction<T> {
+        T apply(BufferedReader reader) throws Exception;
+    }
+}
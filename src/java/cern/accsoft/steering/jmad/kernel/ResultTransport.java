@@ -0,0 +1,48 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+/**
+ * Defines how the TFS results are transferred from MadX to the kernel.
+ */
+public enum ResultTransport {
+
+    /**
+     * MadX writes the complete result to a file, which is parsed after MadX finished the executable.
+     */
+    FILE,
+
+    /**
+     * MadX writes the result into a named pipe (FIFO), from which a parser thread reads the rows while MadX is still
+     * writing them. The result never touches the disk. This requires the {@code mkfifo} command (i.e. a unix like
+     * system), otherwise the kernel falls back to {@link #FILE}. Since the result can not be kept, this transport is
+     * only used if the kernel does not keep its output files.
+     */
+    NAMED_PIPE;
+
+    /**
+     * @param name the name of the transport (case insensitive)
+     * @param defaultTransport the transport to return if the name is {@code null} or unknown
+     * @return the transport of the given name, or the default transport
+     */
+    public static ResultTransport fromName(String name, ResultTransport defaultTransport) {
+        if (name == null) {
+            return defaultTransport;
+        }
+        for (ResultTransport transport : values()) {
+            if (transport.name().equalsIgnoreCase(name.trim())) {
+                return transport;
+            }
+        }
+        return defaultTransport;
+    }
+}
@@ -0,0 +1,136 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Defines on which kind of threads a kernel runs its blocking work: the thread which talks to MadX and waits for it,
+ * the thread which parses the results of the pipeline and the one which writes the input log.
+ * <p>
+ * The threads which relay the output of MadX to the log files and the one which reads the result fifo always are
+ * platform threads: they block in reading pipes, which pins the carrier thread of a virtual thread (as of Java 21).
+ */
+public enum ThreadMode {
+
+    /**
+     * Each kernel uses a few daemon platform threads. This works on all runtimes, but with hundreds of kernels the
+     * number of (mostly blocked) threads becomes large.
+     */
+    PLATFORM {
+        @Override
+        public Thread newThread(String name, Runnable runnable) {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    },
+
+    /**
+     * The kernels use virtual threads for sending the commands to MadX and waiting for it, which are cheap to block.
+     * This saves one platform thread per kernel (and the ones of the pipeline), but the output relays still need two
+     * platform threads per kernel. Virtual threads are only available on Java 21 and later. On older runtimes, platform
+     * threads are used instead.
+     */
+    VIRTUAL {
+        @Override
+        public Thread newThread(String name, Runnable runnable) {
+            if (!VirtualThreads.isAvailable()) {
+                return PLATFORM.newThread(name, runnable);
+            }
+            return VirtualThreads.newThread(name, runnable);
+        }
+    };
+
+    /**
+     * creates a new (not yet started) thread of this kind.
+     *
+     * @param name the name of the thread
+     * @param runnable the work to run in the thread
+     * @return the new thread
+     */
+    public abstract Thread newThread(String name, Runnable runnable);
+
+    /**
+     * @return true, if the runtime supports virtual threads, false if {@link #VIRTUAL} falls back to platform threads
+     */
+    public static boolean isVirtualThreadAvailable() {
+        return VirtualThreads.isAvailable();
+    }
+
+    /**
+     * @param name the name of the mode (case insensitive)
+     * @param defaultMode the mode to return if the name is {@code null} or unknown
+     * @return the mode of the given name, or the default mode
+     */
+    public static ThreadMode fromName(String name, ThreadMode defaultMode) {
+        if (name == null) {
+            return defaultMode;
+        }
+        for (ThreadMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name.trim())) {
+                return mode;
+            }
+        }
+        return defaultMode;
+    }
+
+    /**
+     * Creates virtual threads through reflection, because this code has to compile and run on Java 8.
+     */
+    private static final class VirtualThreads {
+
+        /** Thread.ofVirtual(), null if not available */
+        private static final Method OF_VIRTUAL;
+
+        /** Thread.Builder.name(String) */
+        private static final Method NAME;
+
+        /** Thread.Builder.unstarted(Runnable) */
+        private static final Method UNSTARTED;
+
+        static {
+            Method ofVirtual = null;
+            Method name = null;
+            Method unstarted = null;
+            try {
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                name = builderClass.getMethod("name", String.class);
+                unstarted = builderClass.getMethod("unstarted", Runnable.class);
+            } catch (ClassNotFoundException | NoSuchMethodException e) {
+                ofVirtual = null;
+            }
+            OF_VIRTUAL = ofVirtual;
+            NAME = name;
+            UNSTARTED = unstarted;
+        }
+
+        private VirtualThreads() {
+            /* only static methods */
+        }
+
+        static boolean isAvailable() {
+            return OF_VIRTUAL != null;
+        }
+
+        static Thread newThread(String name, Runnable runnable) {
+            try {
+                Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), name);
+                return (Thread) UNSTARTED.invoke(builder, runnable);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Could not create virtual thread '" + name + "'.", e);
+            }
+        }
+    }
+}
@@ -24,12 +24,15 @@ package cern.accsoft.steering.jmad.kernel.cmd;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import cern.accsoft.steering.jmad.kernel.JournalEntry;
+import cern.accsoft.steering.jmad.kernel.Journaled;
 import cern.accsoft.steering.jmad.kernel.cmd.param.GenericParameter;
 import cern.accsoft.steering.jmad.kernel.cmd.param.Parameter;
 
-public class CallCommand extends AbstractCommand {
+public class CallCommand extends AbstractCommand implements Journaled {
     private static final String CMD_NAME = "call";
 
     /* the only parameter: */
@@ -54,4 +57,13 @@ public class CallCommand extends AbstractCommand {
         parameters.add(new GenericParameter<>("file", filePath, true));
         return parameters;
     }
+
+    /**
+     * Calling the same file again re-establishes the same definitions. The file must still exist when the journal is
+     * replayed.
+     */
+    @Override
+    public List<JournalEntry> getJournalEntries() {
+        return Collections.singletonList(JournalEntry.latest(CMD_NAME + ":" + filePath, this));
+    }
 }
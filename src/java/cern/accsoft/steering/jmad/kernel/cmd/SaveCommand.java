@@ -0,0 +1,56 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.cmd;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import cern.accsoft.steering.jmad.kernel.cmd.param.GenericParameter;
+import cern.accsoft.steering.jmad.kernel.cmd.param.Parameter;
+
+/**
+ * represents the 'save' command of madx, which writes sequences together with all their elements and the variables
+ * (including deferred expressions) to a file, which can be called again later.
+ */
+public class SaveCommand extends AbstractCommand {
+    private static final String CMD_NAME = "save";
+
+    private final File file;
+    private final String sequence;
+    private final boolean beam;
+
+    /**
+     * @param file the file to write to
+     * @param sequence the sequence to save. If {@code null}, all sequences are saved.
+     * @param beam true, if also the beam commands shall be saved
+     */
+    public SaveCommand(File file, String sequence, boolean beam) {
+        this.file = file;
+        this.sequence = sequence;
+        this.beam = beam;
+    }
+
+    @Override
+    public String getName() {
+        return CMD_NAME;
+    }
+
+    @Override
+    public List<Parameter> getParameters() {
+        ArrayList<Parameter> parameters = new ArrayList<>();
+        parameters.add(new GenericParameter<>("sequence", sequence));
+        parameters.add(new GenericParameter<>("file", file.getAbsolutePath(), true));
+        parameters.add(new GenericParameter<>("beam", beam));
+        return parameters;
+    }
+}
@@ -23,13 +23,16 @@
 package cern.accsoft.steering.jmad.kernel.cmd;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import cern.accsoft.steering.jmad.kernel.AbstractJMadExecutable;
+import cern.accsoft.steering.jmad.kernel.JournalEntry;
+import cern.accsoft.steering.jmad.kernel.Journaled;
 import cern.accsoft.steering.jmad.kernel.cmd.param.GenericParameter;
 import cern.accsoft.steering.jmad.kernel.cmd.param.Parameter;
 
-public class SetEqual extends AbstractJMadExecutable implements Command {
+public class SetEqual extends AbstractJMadExecutable implements Command, Journaled {
     private final String valueName;
     private final Double value;
 
@@ -57,4 +60,17 @@ public class SetEqual extends AbstractJMadExecutable implements Command {
         retVal.add(new GenericParameter<>(this.valueName, this.value));
         return retVal;
     }
+
+    @Override
+    public List<JournalEntry> getJournalEntries() {
+        return Collections.singletonList(JournalEntry.latest(journalKey(valueName), this));
+    }
+
+    /**
+     * @param valueName the name of a variable or element attribute
+     * @return the key under which setting the value is journaled. Madx does not distinguish upper and lower case.
+     */
+    static String journalKey(String valueName) {
+        return "value:" + valueName.toLowerCase();
+    }
 }
@@ -22,14 +22,21 @@
 
 package cern.accsoft.steering.jmad.kernel.cmd;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import cern.accsoft.steering.jmad.kernel.AbstractJMadExecutable;
+import cern.accsoft.steering.jmad.kernel.JournalEntry;
+import cern.accsoft.steering.jmad.kernel.Journaled;
 import cern.accsoft.steering.jmad.kernel.cmd.param.Parameter;
 
-public class SetListEqual extends AbstractJMadExecutable implements Command {
+public class SetListEqual extends AbstractJMadExecutable implements Command, Journaled {
     private final Map<String, Double> valuePairs;
 
     public SetListEqual(Map<String, Double> valuePairs) {
@@ -38,13 +45,26 @@ public class SetListEqual extends AbstractJMadExecutable implements Command {
 
     @Override
     public String compose() {
-        StringBuffer cmd = new StringBuffer("");
-        for (String valueName : this.valuePairs.keySet()) {
-            cmd.append(valueName + " = " + this.valuePairs.get(valueName) + ";\n");
+        StringWriter cmd = new StringWriter();
+        try {
+            composeTo(cmd);
+        } catch (IOException e) {
+            /* should never happen for a StringWriter */
+            throw new UncheckedIOException(e);
         }
         return cmd.toString();
     }
 
+    @Override
+    public void composeTo(Writer writer) throws IOException {
+        for (Entry<String, Double> valuePair : this.valuePairs.entrySet()) {
+            writer.write(valuePair.getKey());
+            writer.write(" = ");
+            writer.write(String.valueOf(valuePair.getValue()));
+            writer.write(";\n");
+        }
+    }
+
     @Override
     public String getName() {
         return "";
@@ -54,4 +74,17 @@ public class SetListEqual extends AbstractJMadExecutable implements Command {
     public List<Parameter> getParameters() {
         return new ArrayList<>(0);
     }
+
+    /**
+     * @return one entry per value, so that each of them is replaced by later changes of the same value
+     */
+    @Override
+    public List<JournalEntry> getJournalEntries() {
+        List<JournalEntry> entries = new ArrayList<>(this.valuePairs.size());
+        for (Entry<String, Double> valuePair : this.valuePairs.entrySet()) {
+            entries.add(JournalEntry.latest(SetEqual.journalKey(valuePair.getKey()),
+                    new SetEqual(valuePair.getKey(), valuePair.getValue())));
+        }
+        return entries;
+    }
 }
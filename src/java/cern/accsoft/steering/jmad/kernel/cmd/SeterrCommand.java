@@ -0,0 +1,47 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.cmd;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cern.accsoft.steering.jmad.kernel.cmd.param.GenericParameter;
+import cern.accsoft.steering.jmad.kernel.cmd.param.Parameter;
+
+/**
+ * represents the 'seterr' command of madx, which assigns the errors from a table (as written by {@link EsaveCommand}
+ * and read by a 'readmytable' command) to the elements of the sequence in use.
+ */
+public class SeterrCommand extends AbstractCommand {
+    private static final String CMD_NAME = "seterr";
+
+    private final String tableName;
+
+    /**
+     * @param tableName the name of the table which contains the errors
+     */
+    public SeterrCommand(String tableName) {
+        this.tableName = tableName;
+    }
+
+    @Override
+    public String getName() {
+        return CMD_NAME;
+    }
+
+    @Override
+    public List<Parameter> getParameters() {
+        ArrayList<Parameter> parameters = new ArrayList<>();
+        parameters.add(new GenericParameter<>("table", tableName));
+        return parameters;
+    }
+}
@@ -23,13 +23,16 @@
 package cern.accsoft.steering.jmad.kernel.cmd;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import cern.accsoft.steering.jmad.domain.machine.MadxRange;
+import cern.accsoft.steering.jmad.kernel.JournalEntry;
+import cern.accsoft.steering.jmad.kernel.Journaled;
 import cern.accsoft.steering.jmad.kernel.cmd.param.GenericParameter;
 import cern.accsoft.steering.jmad.kernel.cmd.param.Parameter;
 
-public class UseCommand extends AbstractCommand {
+public class UseCommand extends AbstractCommand implements Journaled {
     private static final String CMD_NAME = "use";
 
     private static final String PARAM_NAME_PERIOD = "period";
@@ -69,4 +72,13 @@ public class UseCommand extends AbstractCommand {
         return parameters;
     }
 
+    /**
+     * Only one sequence can be in use. Using a sequence also removes its errors, so the errors which were set before
+     * are not re-established by the replay.
+     */
+    @Override
+    public List<JournalEntry> getJournalEntries() {
+        return Collections.singletonList(JournalEntry.latest(CMD_NAME, this));
+    }
+
 }
@@ -0,0 +1,524 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.remote;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.security.SecureRandom;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.conf.JMadServiceConfiguration;
+import cern.accsoft.steering.jmad.domain.result.Result;
+import cern.accsoft.steering.jmad.domain.result.ResultType;
+import cern.accsoft.steering.jmad.factory.JMadKernelFactory;
+import cern.accsoft.steering.jmad.kernel.JMadKernel;
+import cern.accsoft.steering.jmad.kernel.MadxTerminatedException;
+import cern.accsoft.steering.jmad.kernel.WaitForMadxTimedOutException;
+import cern.accsoft.steering.jmad.util.FileUtil;
+
+/**
+ * A small server which hosts MadX kernels on behalf of {@link RemoteJMadKernel}s on other hosts. Each accepted
+ * connection gets its own kernel (and therefore its own MadX process) and its own directory, which mirrors the files the
+ * client refers to in its commands. The kernel is stopped and the directory deleted as soon as the connection is
+ * closed.
+ * <p>
+ * The results are parsed by the agent and sent back to the client in a compact binary form (see {@link ResultCodec}).
+ * <p>
+ * The agent executes any MadX commands it receives, which includes running arbitrary programs through the MadX
+ * {@code system} command. Therefore it listens only on the loopback interface, unless another address is given
+ * explicitly, and a client has to prove that it knows the shared secret of the agent before any command is accepted.
+ * Still, the agent shall only be reachable from trusted hosts.
+ */
+public class JMadKernelAgent implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JMadKernelAgent.class);
+
+    /** The port on which the agent listens, if none is given on the command line */
+    public static final int DEFAULT_PORT = 7342;
+
+    /** The environment variable, from which {@link #main(String...)} takes the shared secret */
+    public static final String ENV_SECRET = "JMAD_KERNEL_AGENT_SECRET";
+
+    /** The time in ms a client has for answering the challenge */
+    private static final int HANDSHAKE_TIMEOUT = 10000;
+
+    /** creates the kernel for each connection */
+    private final JMadKernelFactory kernelFactory;
+
+    /** the dir below which the mirror dirs of the connections are created */
+    private final File baseDir;
+
+    /** the secret, which the clients have to know */
+    private final String secret;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+
+    private ServerSocket serverSocket;
+    private ExecutorService sessionExecutor;
+    private volatile boolean closed = false;
+    private final CountDownLatch closedLatch = new CountDownLatch(1);
+
+    /**
+     * @param kernelFactory the factory for the kernels, one per connection
+     * @param baseDir the dir below which the files of the clients are mirrored
+     * @param secret the shared secret, which the clients have to know
+     */
+    public JMadKernelAgent(JMadKernelFactory kernelFactory, File baseDir, String secret) {
+        this.kernelFactory = Preconditions.checkNotNull(kernelFactory, "kernelFactory must not be null");
+        this.baseDir = Preconditions.checkNotNull(baseDir, "baseDir must not be null");
+        Preconditions.checkArgument((secret != null) && !secret.isEmpty(), "secret must not be empty");
+        this.secret = secret;
+    }
+
+    /**
+     * starts listening for connections on the loopback interface only.
+     *
+     * @param port the port to listen on, 0 to choose any free one
+     * @throws IOException if the port can not be bound
+     */
+    public void start(int port) throws IOException {
+        start(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * starts listening for connections on the given address. Only use an address other than the loopback one, if the
+     * agent shall be reachable from other hosts.
+     *
+     * @param bindAddress the address of the interface to listen on
+     * @param port the port to listen on, 0 to choose any free one
+     * @throws IOException if the port can not be bound
+     */
+    public synchronized void start(InetAddress bindAddress, int port) throws IOException {
+        Preconditions.checkNotNull(bindAddress, "bindAddress must not be null");
+        Preconditions.checkState(serverSocket == null, "The agent was already started.");
+        if (!baseDir.isDirectory() && !baseDir.mkdirs()) {
+            throw new IOException("Could not create directory '" + baseDir.getAbsolutePath() + "'.");
+        }
+        serverSocket = new ServerSocket(port, 0, bindAddress);
+        sessionExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("jmad-kernel-agent-%d").build());
+        sessionExecutor.execute(this::acceptConnections);
+        LOGGER.info("JMad kernel agent listening on {}:{}.", bindAddress.getHostAddress(), getPort());
+    }
+
+    /**
+     * @return the port on which the agent listens
+     */
+    public synchronized int getPort() {
+        Preconditions.checkState(serverSocket != null, "The agent is not started.");
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return the number of currently connected clients
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * stops accepting connections, closes all the open ones and thereby stops their kernels.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                LOGGER.warn("Error while closing server socket.", e);
+            }
+            for (Session session : sessions) {
+                session.close();
+            }
+            sessionExecutor.shutdown();
+        }
+        closedLatch.countDown();
+    }
+
+    /**
+     * blocks until the agent is closed.
+     *
+     * @throws InterruptedException if the waiting is interrupted
+     */
+    public void awaitClose() throws InterruptedException {
+        closedLatch.await();
+    }
+
+    private void acceptConnections() {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.error("Error while accepting connections. Agent stops listening.", e);
+                }
+                return;
+            }
+            try {
+                Session session = new Session(socket);
+                sessions.add(session);
+                sessionExecutor.execute(session);
+            } catch (RuntimeException e) {
+                LOGGER.error("Could not set up session for client {}.", socket.getRemoteSocketAddress(), e);
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LOGGER.debug("Error while closing socket.", e);
+        }
+    }
+
+    /**
+     * One connected client with its kernel. The kernel and the mirror dir are only created, after the client is
+     * authenticated.
+     */
+    private class Session implements Runnable {
+        private final Socket socket;
+        private JMadKernel kernel;
+        private File mirrorDir;
+
+        /** the modification times of the files as they were written on behalf of the client */
+        private final Map<String, Long> writtenFiles = new HashMap<>();
+
+        Session(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            LOGGER.info("Client {} connected.", socket.getRemoteSocketAddress());
+            try {
+                socket.setTcpNoDelay(true);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                out.writeInt(RemoteProtocol.MAGIC);
+                out.writeInt(RemoteProtocol.VERSION);
+                if (!authenticate(in, out)) {
+                    return;
+                }
+                synchronized (this) {
+                    kernel = kernelFactory.createKernel();
+                    mirrorDir = Files.createTempDirectory(baseDir.toPath(), "session-").toFile();
+                }
+                out.writeByte(RemoteProtocol.STATUS_OK);
+                RemoteProtocol.writeString(out, mirrorDir.getAbsolutePath());
+                out.flush();
+                while (true) {
+                    byte operation;
+                    try {
+                        operation = in.readByte();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    handle(operation, in, out);
+                    out.flush();
+                }
+            } catch (IOException | RuntimeException e) {
+                if (!closed) {
+                    LOGGER.warn("Connection to client {} failed.", socket.getRemoteSocketAddress(), e);
+                }
+            } finally {
+                close();
+                sessions.remove(this);
+                LOGGER.info("Client {} disconnected.", socket.getRemoteSocketAddress());
+            }
+        }
+
+        /**
+         * sends a random challenge and checks the response of the client.
+         *
+         * @return true, if the client knows the secret
+         */
+        private boolean authenticate(DataInputStream in, DataOutputStream out) throws IOException {
+            byte[] challenge = new byte[RemoteProtocol.CHALLENGE_LENGTH];
+            random.nextBytes(challenge);
+            out.write(challenge);
+            out.flush();
+
+            byte[] response;
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+            try {
+                response = RemoteProtocol.readBytes(in, RemoteProtocol.readLength(in, RemoteProtocol.CHALLENGE_LENGTH
+                        * 2, "response length"));
+            } catch (SocketTimeoutException e) {
+                LOGGER.warn("Client {} did not answer the challenge in time.", socket.getRemoteSocketAddress());
+                return false;
+            }
+            socket.setSoTimeout(0);
+
+            if (!RemoteProtocol.isValidResponse(secret, challenge, response)) {
+                LOGGER.warn("Client {} failed to authenticate.", socket.getRemoteSocketAddress());
+                out.writeByte(RemoteProtocol.STATUS_ERROR);
+                RemoteProtocol.writeString(out, "Authentication failed.");
+                out.flush();
+                return false;
+            }
+            return true;
+        }
+
+        private void handle(byte operation, DataInputStream in, DataOutputStream out) throws IOException {
+            switch (operation) {
+            case RemoteProtocol.OP_START:
+                respond(out, () -> {
+                    kernel.start();
+                    return null;
+                });
+                break;
+            case RemoteProtocol.OP_STOP:
+                respond(out, () -> {
+                    int exitValue = kernel.stop();
+                    return resultOut -> resultOut.writeInt(exitValue);
+                });
+                break;
+            case RemoteProtocol.OP_PUT_FILE:
+                String name = RemoteProtocol.readString(in);
+                byte[] content = RemoteProtocol.readBlock(in);
+                respond(out, () -> putFile(name, content));
+                break;
+            case RemoteProtocol.OP_GET_FILES:
+                List<String> names = new ArrayList<>();
+                for (int i = RemoteProtocol.readLength(in, RemoteProtocol.MAX_COUNT, "file count"); i > 0; i--) {
+                    names.add(RemoteProtocol.readString(in));
+                }
+                respond(out, () -> getFiles(names));
+                break;
+            case RemoteProtocol.OP_EXECUTE:
+                List<RemoteExecutable> executables = new ArrayList<>();
+                for (int i = RemoteProtocol.readLength(in, RemoteProtocol.MAX_COUNT, "executable count"); i > 0; i--) {
+                    String commands = RemoteProtocol.readString(in);
+                    executables.add(new RemoteExecutable(commands, ResultType.valueOf(RemoteProtocol.readString(in))));
+                }
+                respond(out, () -> execute(executables));
+                break;
+            default:
+                throw new IOException("Unknown operation " + operation + ". Incompatible client?");
+            }
+        }
+
+        /**
+         * runs the action and writes either its response or the error which occurred.
+         */
+        private void respond(DataOutputStream out, Action action) throws IOException {
+            ResponseWriter writer;
+            try {
+                writer = action.run();
+            } catch (JMadException | RuntimeException e) {
+                LOGGER.debug("Sending error to client {}.", socket.getRemoteSocketAddress(), e);
+                out.writeByte(RemoteProtocol.STATUS_ERROR);
+                if (e instanceof MadxTerminatedException) {
+                    out.writeByte(RemoteProtocol.ERROR_TERMINATED);
+                } else if (e instanceof WaitForMadxTimedOutException) {
+                    out.writeByte(RemoteProtocol.ERROR_TIMEOUT);
+                } else {
+                    out.writeByte(RemoteProtocol.ERROR_GENERAL);
+                }
+                RemoteProtocol.writeString(out, String.valueOf(e.getMessage()));
+                return;
+            }
+            out.writeByte(RemoteProtocol.STATUS_OK);
+            if (writer != null) {
+                writer.write(out);
+            }
+        }
+
+        private ResponseWriter putFile(String name, byte[] content) throws JMadException {
+            File file = resolve(name);
+            try {
+                Files.createDirectories(file.getParentFile().toPath());
+                Files.write(file.toPath(), content);
+            } catch (IOException e) {
+                throw new JMadException("Could not write file '" + file.getAbsolutePath() + "'.", e);
+            }
+            writtenFiles.put(name, file.lastModified());
+            return null;
+        }
+
+        /**
+         * reads all the given files, which were created or modified since they were written on behalf of the client.
+         */
+        private ResponseWriter getFiles(List<String> names) throws JMadException {
+            Map<String, byte[]> contents = new HashMap<>();
+            for (String name : names) {
+                File file = resolve(name);
+                Long written = writtenFiles.get(name);
+                if (file.isFile() && ((written == null) || (written != file.lastModified()))) {
+                    try {
+                        contents.put(name, Files.readAllBytes(file.toPath()));
+                    } catch (IOException e) {
+                        throw new JMadException("Could not read file '" + file.getAbsolutePath() + "'.", e);
+                    }
+                    writtenFiles.put(name, file.lastModified());
+                }
+            }
+            return out -> {
+                for (String name : names) {
+                    byte[] content = contents.get(name);
+                    out.writeBoolean(content != null);
+                    if (content != null) {
+                        RemoteProtocol.writeBlock(out, content);
+                    }
+                }
+            };
+        }
+
+        private ResponseWriter execute(List<RemoteExecutable> executables) throws JMadException {
+            List<Result> results;
+            if (executables.size() == 1) {
+                results = Collections.singletonList(kernel.execute(executables.get(0)));
+            } else {
+                results = kernel.executeBatch(executables);
+            }
+
+            List<byte[]> encoded = new ArrayList<>(results.size());
+            for (int i = 0; i < executables.size(); i++) {
+                RemoteExecutable executable = executables.get(i);
+                try {
+                    if (ResultCodec.isTransferredRaw(executable.getRemoteResultType())) {
+                        Path outputFile = executable.getOutputFile().toPath();
+                        encoded.add(ResultCodec.encodeRaw(executable.getRemoteResultType(),
+                                Files.readAllBytes(outputFile)));
+                        Files.delete(outputFile);
+                    } else {
+                        encoded.add(ResultCodec.encode(results.get(i)));
+                    }
+                } catch (IOException e) {
+                    throw new JMadException("Could not encode result of type " + executable.getRemoteResultType()
+                            + ".", e);
+                }
+            }
+            return out -> {
+                out.writeInt(encoded.size());
+                for (byte[] result : encoded) {
+                    RemoteProtocol.writeBlock(out, result);
+                }
+            };
+        }
+
+        /**
+         * @param name the name of a file, relative to the mirror dir
+         * @return the file within the mirror dir
+         * @throws JMadException if the name points outside of the mirror dir
+         */
+        private File resolve(String name) throws JMadException {
+            Path mirrorPath = mirrorDir.toPath().toAbsolutePath().normalize();
+            Path path = mirrorPath.resolve(name).normalize();
+            if (!path.startsWith(mirrorPath) || path.equals(mirrorPath)) {
+                throw new JMadException("The file name '" + name + "' does not point into the mirror dir.");
+            }
+            return path.toFile();
+        }
+
+        void close() {
+            closeQuietly(socket);
+            synchronized (this) {
+                try {
+                    if ((kernel != null) && kernel.isMadxRunning()) {
+                        kernel.stop();
+                    }
+                } catch (JMadException | RuntimeException e) {
+                    LOGGER.warn("Error while stopping kernel of client {}.", socket.getRemoteSocketAddress(), e);
+                }
+                if ((mirrorDir != null) && mirrorDir.exists() && !FileUtil.deleteDir(mirrorDir)) {
+                    LOGGER.warn("Could not delete directory '{}'.", mirrorDir.getAbsolutePath());
+                }
+            }
+        }
+    }
+
+    /**
+     * The handling of one request, which returns the writer for the (successful) response.
+     */
+    @FunctionalInterface
+    private interface Action {
+        ResponseWriter run() throws JMadException;
+    }
+
+    /**
+     * Writes the body of a successful response.
+     */
+    @FunctionalInterface
+    private interface ResponseWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Runs an agent until the process is killed. The kernels are configured by the default JMad service configuration.
+     * The shared secret is taken from the environment variable {@value #ENV_SECRET}.
+     *
+     * @param args optionally the port to listen on, the dir for the mirrored files and the address to listen on
+     *            (default: loopback only)
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        if (args.length > 3) {
+            throw new IllegalArgumentException("Usage: JMadKernelAgent [port [dir [bindAddress]]]");
+        }
+        String secret = System.getenv(ENV_SECRET);
+        if ((secret == null) || secret.isEmpty()) {
+            throw new IllegalStateException("The shared secret must be given in the environment variable "
+                    + ENV_SECRET + ".");
+        }
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        File dir = (args.length > 1) ? new File(args[1])
+                : new File(System.getProperty("java.io.tmpdir"), "jmad-kernel-agent");
+        InetAddress bindAddress = (args.length > 2) ? InetAddress.getByName(args[2])
+                : InetAddress.getLoopbackAddress();
+
+        @SuppressWarnings("resource")
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(
+                JMadServiceConfiguration.class);
+        JMadKernelAgent agent = new JMadKernelAgent(context.getBean(JMadKernelFactory.class), dir,
+                secret);
+        Runtime.getRuntime().addShutdownHook(new Thread(agent::close, "jmad-kernel-agent-shutdown"));
+        agent.start(bindAddress, port);
+        agent.awaitClose();
+    }
+}
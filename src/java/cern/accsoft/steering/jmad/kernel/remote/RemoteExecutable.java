@@ -0,0 +1,59 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.remote;
+
+import cern.accsoft.steering.jmad.domain.result.ResultType;
+import cern.accsoft.steering.jmad.kernel.AbstractJMadExecutable;
+
+/**
+ * The agent side form of an executable, which was composed by the client. The only part which is not known before the
+ * execution is the output file, which the client therefore replaced by {@link RemoteProtocol#OUTPUT_FILE_TOKEN}.
+ * Executables whose results are transferred raw pretend to have no result, so that the kernel of the agent keeps their
+ * output file untouched.
+ */
+class RemoteExecutable extends AbstractJMadExecutable {
+
+    private final String commands;
+    private final ResultType remoteResultType;
+
+    /**
+     * @param commands the composed commands, with the output file replaced by the token
+     * @param remoteResultType the type of result which the client expects
+     */
+    RemoteExecutable(String commands, ResultType remoteResultType) {
+        this.commands = commands;
+        this.remoteResultType = remoteResultType;
+    }
+
+    @Override
+    public String compose() {
+        if (getOutputFile() == null) {
+            return commands;
+        }
+        return commands.replace(RemoteProtocol.OUTPUT_FILE_TOKEN, getOutputFile().getAbsolutePath());
+    }
+
+    @Override
+    public ResultType getResultType() {
+        if (ResultCodec.isTransferredRaw(remoteResultType)) {
+            return ResultType.NO_RESULT;
+        }
+        return remoteResultType;
+    }
+
+    /**
+     * @return the type of result which the client expects
+     */
+    ResultType getRemoteResultType() {
+        return remoteResultType;
+    }
+}
@@ -0,0 +1,682 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.remote;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.domain.result.Result;
+import cern.accsoft.steering.jmad.domain.result.ResultType;
+import cern.accsoft.steering.jmad.kernel.ExecutionPriority;
+import cern.accsoft.steering.jmad.kernel.JMadExecutable;
+import cern.accsoft.steering.jmad.kernel.JMadKernel;
+import cern.accsoft.steering.jmad.kernel.JMadKernelImpl;
+import cern.accsoft.steering.jmad.kernel.JMadKernelListener;
+import cern.accsoft.steering.jmad.kernel.KernelWork;
+import cern.accsoft.steering.jmad.kernel.MadxTerminatedException;
+import cern.accsoft.steering.jmad.kernel.KernelStoppedException;
+import cern.accsoft.steering.jmad.kernel.PriorityKernelExecutor;
+import cern.accsoft.steering.jmad.kernel.QueueStatistics;
+import cern.accsoft.steering.jmad.kernel.WaitForMadxTimedOutException;
+import cern.accsoft.steering.jmad.kernel.snapshot.KernelSnapshot;
+import cern.accsoft.steering.jmad.kernel.stats.ExecutionPhase;
+import cern.accsoft.steering.jmad.kernel.stats.ExecutionStatistics;
+import cern.accsoft.steering.jmad.kernel.stats.ExecutionStatisticsRecorder;
+import cern.accsoft.steering.jmad.kernel.stats.ExecutionTimer;
+import cern.accsoft.steering.jmad.util.FileUtil;
+import cern.accsoft.steering.jmad.util.TempFileUtil;
+
+/**
+ * A kernel, whose MadX process runs within a {@link JMadKernelAgent} on another host. Models can use it instead of the
+ * local {@link JMadKernelImpl}, e.g.:
+ *
+ * <pre>
+ * RemoteJMadKernel kernel = new RemoteJMadKernel(&quot;madx-host&quot;, JMadKernelAgent.DEFAULT_PORT, secret);
+ * kernel.setFileUtil(fileUtil);
+ * model.setKernel(kernel);
+ * model.init();
+ * </pre>
+ *
+ * The executables are composed locally and sent to the agent, which sends back the parsed results. Absolute paths
+ * within the commands are translated to the mirror dir of the agent: existing local files are uploaded (again, if they
+ * changed) and files below the local working dir of the kernel, which MadX creates or modifies, are downloaded after
+ * the execution. Therefore, paths must be absolute and must not contain white spaces, quotes, commas or semicolons.
+ * <p>
+ * Like in the local kernel, all executions run one after the other on one thread. Asynchronous executions are queued
+ * by priority, but not pipelined. The automatic recovery after a crash of MadX is not supported: a terminated MadX
+ * process is reported by a {@link MadxTerminatedException} and the kernel has to be restarted.
+ */
+public class RemoteJMadKernel implements JMadKernel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RemoteJMadKernel.class);
+
+    /** The default time in ms to wait for the connection to the agent */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+    /** returned by the stop methods, if the agent did not stop the kernel in time and the connection was dropped */
+    private static final int EXIT_VALUE_DROPPED = -9999;
+
+    /** the local placeholder for the output files, which is replaced by the agent */
+    private static final String FILENAME_RESULT = "remote-result.out";
+
+    /** the file into which raw results are written for parsing */
+    private static final String FILENAME_RAW_RESULT = "remote-raw-result.out";
+
+    /** the dir within the mirror dir of the agent, which contains the files from outside the local working dir */
+    private static final String REMOTE_EXTERNAL_DIR = "ext";
+
+    /** the candidates for absolute paths within the composed commands */
+    private static final Pattern ABSOLUTE_PATH_PATTERN = Pattern.compile("/[^\"'\\s,;]+");
+
+    private final String host;
+    private final int port;
+
+    /** the secret shared with the agent */
+    private final String secret;
+
+    private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+    /** the time in ms to wait for a response of the agent, null to wait forever */
+    private Long timeout = null;
+
+    private TempFileUtil fileUtil;
+
+    private final PriorityKernelExecutor kernelExecutor = new PriorityKernelExecutor(new ThreadFactoryBuilder()
+            .setDaemon(true).setNameFormat("jmad-remote-kernel-" + Integer.toHexString(hashCode()) + "-%d").build());
+
+    private final List<JMadKernelListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final ExecutionStatisticsRecorder executionStatistics = new ExecutionStatisticsRecorder();
+
+    /** the connection to the agent, while the kernel is started */
+    private Connection connection = null;
+
+    private volatile boolean running = false;
+
+    /**
+     * @param host the host on which the agent runs
+     * @param port the port on which the agent listens
+     * @param secret the secret shared with the agent
+     */
+    public RemoteJMadKernel(String host, int port, String secret) {
+        this.host = Preconditions.checkNotNull(host, "host must not be null");
+        this.port = port;
+        Preconditions.checkArgument((secret != null) && !secret.isEmpty(), "secret must not be empty");
+        this.secret = secret;
+    }
+
+    @Override
+    public synchronized void start() throws JMadException {
+        Preconditions.checkState(fileUtil != null, "fileUtil not set.");
+        if (connection != null) {
+            disconnect();
+        }
+        try {
+            connection = new Connection();
+        } catch (IOException e) {
+            throw new JMadException("Could not connect to JMad kernel agent at " + host + ":" + port + ".", e);
+        }
+        call(out -> out.writeByte(RemoteProtocol.OP_START));
+        running = true;
+        LOGGER.debug("Started remote kernel at {}:{}.", host, port);
+        for (JMadKernelListener listener : this.listeners) {
+            listener.startedKernel(null);
+        }
+    }
+
+    @Override
+    public int stop() throws JMadException {
+        int exitValue = terminate(timeout);
+        fileUtil.cleanup(this);
+        fireStoppedKernel();
+        return exitValue;
+    }
+
+    @Override
+    public CompletableFuture<Integer> stopAsync(long stopTimeout, TimeUnit unit) {
+        Long timeoutMillis = unit.toMillis(stopTimeout);
+        CompletableFuture<Integer> terminated = CompletableFuture.supplyAsync(() -> {
+            try {
+                int exitValue = terminate(timeoutMillis);
+                fireStoppedKernel();
+                return exitValue;
+            } catch (JMadException e) {
+                throw new CompletionException(e);
+            }
+        });
+        return terminated.thenCompose(exitValue -> fileUtil.cleanupAsync(this).thenApply(cleaned -> exitValue));
+    }
+
+    /**
+     * lets the queued executions finish, stops the kernel of the agent and closes the connection. If the agent does not
+     * respond in time, then the connection is dropped, which makes the agent stop its kernel anyway.
+     */
+    private int terminate(Long timeoutMillis) throws JMadException {
+        long deadline = (timeoutMillis == null) ? Long.MAX_VALUE
+                : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            if (!kernelExecutor.shutdown(timeoutMillis)) {
+                LOGGER.warn("Queued executions did not finish in time (timeout={} ms). Dropped them.", timeoutMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMadException("Interrupted while waiting for queued executions.", e);
+        }
+
+        synchronized (this) {
+            if (connection == null) {
+                return 0;
+            }
+            try {
+                if (timeoutMillis != null) {
+                    connection.socket.setSoTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline
+                            - System.nanoTime())));
+                }
+                call(out -> out.writeByte(RemoteProtocol.OP_STOP));
+                return connection.in.readInt();
+            } catch (WaitForMadxTimedOutException e) {
+                LOGGER.warn("Stopping the remote kernel timed out! (timeout={} ms)", timeoutMillis);
+                return EXIT_VALUE_DROPPED;
+            } catch (IOException e) {
+                throw connectionLost(e);
+            } finally {
+                disconnect();
+            }
+        }
+    }
+
+    private void fireStoppedKernel() {
+        for (JMadKernelListener listener : this.listeners) {
+            listener.stoppedKernel();
+        }
+    }
+
+    @Override
+    public Result execute(JMadExecutable executable) throws JMadException {
+        if (!kernelExecutor.isExecutorThread()) {
+            return await(submit(kernel -> executeDirectly(executable), ExecutionPriority.INTERACTIVE));
+        }
+        return executeDirectly(executable);
+    }
+
+    private Result executeDirectly(JMadExecutable executable) throws JMadException {
+        ExecutionTimer timer = new ExecutionTimer();
+        Result result = executeRemotely(Collections.singletonList(executable), timer).get(0);
+        String name = executable.getClass().getSimpleName();
+        executionStatistics.record(name.isEmpty() ? executable.getClass().getName() : name, timer.getTimings());
+        for (JMadKernelListener listener : this.listeners) {
+            listener.executed(executable, timer.getTimings());
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Result> executeAsync(JMadExecutable executable) {
+        return executeAsync(executable, ExecutionPriority.INTERACTIVE);
+    }
+
+    @Override
+    public CompletableFuture<Result> executeAsync(JMadExecutable executable, ExecutionPriority priority) {
+        return submit(kernel -> executeDirectly(executable), priority);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(KernelWork<T> work, ExecutionPriority priority) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            kernelExecutor.execute(priority, () -> {
+                try {
+                    future.complete(work.run(this));
+                } catch (JMadException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }, () -> future.completeExceptionally(new KernelStoppedException(
+                    "Remote kernel stopped before the submitted work was run.")));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(new JMadException("Could not submit work to the kernel.", e));
+        }
+        return future;
+    }
+
+    @Override
+    public QueueStatistics getQueueStatistics() {
+        return kernelExecutor.getStatistics();
+    }
+
+    @Override
+    public List<Result> executeBatch(List<? extends JMadExecutable> executables) throws JMadException {
+        if (!kernelExecutor.isExecutorThread()) {
+            return await(submit(kernel -> executeBatchDirectly(executables), ExecutionPriority.INTERACTIVE));
+        }
+        return executeBatchDirectly(executables);
+    }
+
+    private List<Result> executeBatchDirectly(List<? extends JMadExecutable> executables) throws JMadException {
+        ExecutionTimer timer = new ExecutionTimer();
+        List<Result> results = executeRemotely(executables, timer);
+        executionStatistics.record(JMadKernelImpl.STATISTICS_NAME_BATCH, timer.getTimings());
+        for (JMadKernelListener listener : this.listeners) {
+            listener.executedBatch(executables, timer.getTimings());
+        }
+        return results;
+    }
+
+    /**
+     * sends the executables to the agent in one request and receives their results. Called in the kernel thread.
+     */
+    private List<Result> executeRemotely(List<? extends JMadExecutable> executables, ExecutionTimer timer)
+            throws JMadException {
+        synchronized (this) {
+            if (connection == null) {
+                throw new JMadException("The remote kernel is not started.");
+            }
+
+            File outputFile = getOutputFile();
+            String outputPath = outputFile.getAbsolutePath();
+            Map<String, File> referencedFiles = new LinkedHashMap<>();
+            List<String> commands = new ArrayList<>(executables.size());
+            for (JMadExecutable executable : executables) {
+                executable.setOutputFile(outputFile);
+                String composed = executable.compose().replace(outputPath, RemoteProtocol.OUTPUT_FILE_TOKEN);
+                commands.add(connection.translate(composed, referencedFiles));
+            }
+            timer.lap(ExecutionPhase.COMPOSE);
+
+            try {
+                connection.upload(referencedFiles);
+                call(out -> {
+                    out.writeByte(RemoteProtocol.OP_EXECUTE);
+                    out.writeInt(executables.size());
+                    for (int i = 0; i < executables.size(); i++) {
+                        ResultType resultType = executables.get(i).getResultType();
+                        RemoteProtocol.writeString(out, commands.get(i));
+                        RemoteProtocol.writeString(out, (resultType == null) ? ResultType.NO_RESULT.name()
+                                : resultType.name());
+                    }
+                    out.flush();
+                    timer.lap(ExecutionPhase.WRITE);
+                });
+                List<byte[]> encodedResults = new ArrayList<>(executables.size());
+                for (int i = RemoteProtocol.readLength(connection.in, RemoteProtocol.MAX_COUNT, "result count"); i > 0;
+                        i--) {
+                    encodedResults.add(RemoteProtocol.readBlock(connection.in));
+                }
+                timer.lap(ExecutionPhase.EXECUTE);
+
+                List<Result> results = new ArrayList<>(encodedResults.size());
+                for (byte[] encodedResult : encodedResults) {
+                    results.add(decode(encodedResult));
+                }
+                connection.download(referencedFiles);
+                timer.lap(ExecutionPhase.PARSE);
+                return results;
+            } catch (SocketTimeoutException e) {
+                disconnect();
+                throw new WaitForMadxTimedOutException("Waiting for the agent timed out! (timeout=" + timeout
+                        + "ms).", e);
+            } catch (IOException e) {
+                disconnect();
+                throw connectionLost(e);
+            }
+        }
+    }
+
+    /**
+     * decodes a result. If the raw output of madx can not be written to the scratch file because its file system is
+     * full, then a scratch file below the normal output path is used.
+     */
+    private Result decode(byte[] encodedResult) throws IOException, JMadException {
+        File scratchFile = fileUtil.getOutputFile(this, FILENAME_RAW_RESULT);
+        try {
+            return ResultCodec.decode(encodedResult, scratchFile);
+        } catch (IOException e) {
+            if (!FileUtil.isNoSpaceLeft(e)) {
+                throw e;
+            }
+            LOGGER.warn("No space left for scratch file '{}'. Writing it below the normal output path.",
+                    scratchFile.getAbsolutePath());
+            return ResultCodec.decode(encodedResult, fileUtil.moveToDisk(this, FILENAME_RAW_RESULT));
+        }
+    }
+
+    /**
+     * writes a request and reads the status of the response. If the status is ok, the rest of the response can be read
+     * from the connection afterwards.
+     *
+     * @throws JMadException the exception corresponding to the error sent by the agent
+     */
+    private synchronized void call(RequestWriter request) throws JMadException {
+        try {
+            request.write(connection.out);
+            connection.out.flush();
+            if (connection.in.readByte() == RemoteProtocol.STATUS_OK) {
+                return;
+            }
+            byte kind = connection.in.readByte();
+            String message = "Remote kernel at " + host + ":" + port + ": " + RemoteProtocol.readString(connection.in);
+            if (kind == RemoteProtocol.ERROR_TERMINATED) {
+                running = false;
+                throw new MadxTerminatedException(message);
+            } else if (kind == RemoteProtocol.ERROR_TIMEOUT) {
+                throw new WaitForMadxTimedOutException(message);
+            }
+            throw new JMadException(message);
+        } catch (SocketTimeoutException e) {
+            /* the response may still arrive, so the connection is out of sync */
+            disconnect();
+            throw new WaitForMadxTimedOutException("Waiting for the agent timed out! (timeout=" + timeout + "ms).", e);
+        } catch (IOException e) {
+            disconnect();
+            throw connectionLost(e);
+        }
+    }
+
+    private JMadException connectionLost(IOException e) {
+        return new MadxTerminatedException("Lost connection to JMad kernel agent at " + host + ":" + port + ".", e);
+    }
+
+    private synchronized void disconnect() {
+        running = false;
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.socket.close();
+        } catch (IOException e) {
+            LOGGER.debug("Error while closing connection to agent.", e);
+        }
+        connection = null;
+    }
+
+    /**
+     * waits for the future of an execution on the kernel thread and unwraps the failure, if any.
+     */
+    private static <T> T await(Future<T> future) throws JMadException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMadException("Interrupted while waiting for the result of the remote kernel.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof JMadException) {
+                throw (JMadException) e.getCause();
+            }
+            throw new JMadException("Error while executing in the remote kernel.", e.getCause());
+        }
+    }
+
+    @Override
+    public boolean isMadxRunning() {
+        return running;
+    }
+
+    @Override
+    public void setRecoveryPoint(KernelSnapshot snapshot) {
+        if (snapshot != null) {
+            LOGGER.warn("The remote kernel does not support automatic recovery. Ignoring the recovery point.");
+        }
+    }
+
+    @Override
+    public void addListener(JMadKernelListener listener) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(JMadKernelListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    @Override
+    public ExecutionStatistics getExecutionStatistics() {
+        return executionStatistics.snapshot();
+    }
+
+    @Override
+    public void resetExecutionStatistics() {
+        executionStatistics.reset();
+    }
+
+    @Override
+    public File getOutputFile() {
+        return fileUtil.getOutputFile(this, FILENAME_RESULT);
+    }
+
+    public void setFileUtil(TempFileUtil fileUtil) {
+        this.fileUtil = fileUtil;
+    }
+
+    /**
+     * @param connectTimeout the time in ms to wait for the connection to the agent
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * @param timeout the time in ms to wait for a response of the agent. If null then the kernel waits forever.
+     */
+    public void setTimeout(Long timeout) {
+        this.timeout = timeout;
+    }
+
+    public Long getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteJMadKernel [" + host + ":" + port + "]";
+    }
+
+    /**
+     * Writes one request to the agent.
+     */
+    @FunctionalInterface
+    private interface RequestWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * The connection to the agent together with the bookkeeping of the mirrored files.
+     */
+    private class Connection {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        /** the mirror dir on the agent host */
+        private final String remoteDir;
+
+        /** the local working dir, including the trailing separator */
+        private final String localDirPrefix;
+
+        /** the size and modification time of the files, as they were transferred last time, by remote name */
+        private final Map<String, String> transferredFiles = new HashMap<>();
+
+        /** the ids of the dirs within the remote external dir, by the canonical path of the local dir */
+        private final Map<String, Integer> externalDirIds = new HashMap<>();
+
+        Connection() throws IOException {
+            socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(host, port), connectTimeout);
+                socket.setTcpNoDelay(true);
+                if (timeout != null) {
+                    socket.setSoTimeout(timeout.intValue());
+                }
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                if (in.readInt() != RemoteProtocol.MAGIC) {
+                    throw new IOException("The peer is not a JMad kernel agent.");
+                }
+                int version = in.readInt();
+                if (version != RemoteProtocol.VERSION) {
+                    throw new IOException("Incompatible agent: protocol version " + version + " instead of "
+                            + RemoteProtocol.VERSION + ".");
+                }
+                byte[] response = RemoteProtocol.respondToChallenge(secret,
+                        RemoteProtocol.readBytes(in, RemoteProtocol.CHALLENGE_LENGTH));
+                out.writeInt(response.length);
+                out.write(response);
+                out.flush();
+                if (in.readByte() != RemoteProtocol.STATUS_OK) {
+                    throw new IOException("Authentication at the agent failed: " + RemoteProtocol.readString(in));
+                }
+                remoteDir = RemoteProtocol.readString(in);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            localDirPrefix = getOutputFile().getParentFile().getAbsolutePath() + File.separator;
+        }
+
+        /**
+         * replaces the absolute paths of local files within the given commands by the ones of the mirror dir.
+         *
+         * @param commands the composed commands
+         * @param referencedFiles the map to which the translated files are added by their remote name
+         * @return the translated commands
+         */
+        String translate(String commands, Map<String, File> referencedFiles) {
+            Matcher matcher = ABSOLUTE_PATH_PATTERN.matcher(commands);
+            StringBuffer translated = null;
+            while (matcher.find()) {
+                String path = matcher.group();
+                String remoteName = remoteName(path);
+                if (remoteName == null) {
+                    continue;
+                }
+                referencedFiles.put(remoteName, new File(path));
+                if (translated == null) {
+                    translated = new StringBuffer(commands.length());
+                }
+                matcher.appendReplacement(translated, Matcher.quoteReplacement(remoteDir + "/" + remoteName));
+            }
+            if (translated == null) {
+                return commands;
+            }
+            matcher.appendTail(translated);
+            return translated.toString();
+        }
+
+        /**
+         * @return the name relative to the mirror dir or {@code null} if the path shall not be translated
+         */
+        private String remoteName(String path) {
+            if (path.startsWith(localDirPrefix)) {
+                return path.substring(localDirPrefix.length()).replace(File.separatorChar, '/');
+            }
+            File file = new File(path);
+            if (!file.isFile()) {
+                return null;
+            }
+            return REMOTE_EXTERNAL_DIR + "/" + externalDirId(file.getParentFile()) + "/" + file.getName();
+        }
+
+        /**
+         * @return the id of the given local dir within the remote external dir, which is unique for this connection
+         */
+        private int externalDirId(File dir) {
+            String key;
+            try {
+                key = dir.getCanonicalPath();
+            } catch (IOException e) {
+                key = dir.getAbsolutePath();
+            }
+            return externalDirIds.computeIfAbsent(key, k -> externalDirIds.size());
+        }
+
+        /**
+         * uploads the referenced files, which exist locally and changed since they were transferred last time.
+         */
+        void upload(Map<String, File> referencedFiles) throws IOException, JMadException {
+            for (Map.Entry<String, File> entry : referencedFiles.entrySet()) {
+                File file = entry.getValue();
+                String signature = signature(file);
+                if (!file.isFile() || signature.equals(transferredFiles.get(entry.getKey()))) {
+                    continue;
+                }
+                byte[] content = Files.readAllBytes(file.toPath());
+                call(request -> {
+                    request.writeByte(RemoteProtocol.OP_PUT_FILE);
+                    RemoteProtocol.writeString(request, entry.getKey());
+                    RemoteProtocol.writeBlock(request, content);
+                });
+                transferredFiles.put(entry.getKey(), signature);
+            }
+        }
+
+        /**
+         * downloads the referenced files within the working dir, which MadX created or modified.
+         */
+        void download(Map<String, File> referencedFiles) throws IOException, JMadException {
+            List<String> names = new ArrayList<>();
+            for (String name : referencedFiles.keySet()) {
+                if (!name.startsWith(REMOTE_EXTERNAL_DIR + "/")) {
+                    names.add(name);
+                }
+            }
+            if (names.isEmpty()) {
+                return;
+            }
+            call(request -> {
+                request.writeByte(RemoteProtocol.OP_GET_FILES);
+                request.writeInt(names.size());
+                for (String name : names) {
+                    RemoteProtocol.writeString(request, name);
+                }
+            });
+            for (String name : names) {
+                if (in.readBoolean()) {
+                    File file = referencedFiles.get(name);
+                    Files.createDirectories(file.getParentFile().toPath());
+                    Files.write(file.toPath(), RemoteProtocol.readBlock(in));
+                    transferredFiles.put(name, signature(file));
+                }
+            }
+        }
+
+        private String signature(File file) {
+            return file.length() + ":" + file.lastModified();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.remote;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The constants and the low level encoding of the protocol between a {@link RemoteJMadKernel} and a
+ * {@link JMadKernelAgent}. Each request consists of an operation code followed by its arguments, each response starts
+ * with a status. Strings are written as length prefixed UTF-8, larger payloads (files and results) as length prefixed,
+ * deflated blocks.
+ * <p>
+ * Before any request is accepted, the client has to prove that it knows the shared secret of the agent: the agent
+ * sends a random challenge, which the client answers with the HMAC-SHA256 of the challenge, keyed by the secret. The
+ * lengths received from the peer are validated before anything is allocated for them.
+ */
+final class RemoteProtocol {
+
+    /** sent by the agent directly after accepting a connection */
+    static final int MAGIC = 0x4a4d4144;
+
+    /** incremented on each incompatible change */
+    static final int VERSION = 2;
+
+    /** the number of random bytes the agent sends as challenge */
+    static final int CHALLENGE_LENGTH = 32;
+
+    /** the maximum length of a string in bytes */
+    static final int MAX_STRING_LENGTH = 64 << 20;
+
+    /** the maximum length of a block (compressed or not) in bytes */
+    static final int MAX_BLOCK_LENGTH = 1 << 30;
+
+    /** the maximum number of entries in a list (e.g. of files or executables) */
+    static final int MAX_COUNT = 1 << 24;
+
+    /** the maximum ratio between uncompressed and compressed size, which deflate can achieve */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    /** placed into the commands instead of the (client-local) output file */
+    static final String OUTPUT_FILE_TOKEN = "@@JMAD_OUTPUT_FILE@@";
+
+    /* the operations */
+    static final byte OP_START = 1;
+    static final byte OP_STOP = 2;
+    static final byte OP_PUT_FILE = 3;
+    static final byte OP_GET_FILES = 4;
+    static final byte OP_EXECUTE = 5;
+
+    /* the status of a response */
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+
+    /* the kinds of errors, mapped to the corresponding exceptions on the client side */
+    static final byte ERROR_GENERAL = 0;
+    static final byte ERROR_TERMINATED = 1;
+    static final byte ERROR_TIMEOUT = 2;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private RemoteProtocol() {
+        /* only static methods */
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in, readLength(in, MAX_STRING_LENGTH, "string length"));
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * reads a length or count, sent by the peer.
+     *
+     * @param in the stream to read from
+     * @param max the maximum allowed value
+     * @param what the meaning of the value, for the error message
+     * @return the value, between 0 and max
+     * @throws IOException if reading fails or the value is out of range
+     */
+    static int readLength(DataInputStream in, int max, String what) throws IOException {
+        int length = in.readInt();
+        if ((length < 0) || (length > max)) {
+            throw new IOException("Invalid " + what + " " + length + " received, allowed are 0 to " + max + ".");
+        }
+        return length;
+    }
+
+    /**
+     * reads the given number of bytes. Large arrays are only allocated as the bytes arrive, so that a wrong length
+     * does not allocate memory for data which is never sent.
+     */
+    static byte[] readBytes(DataInputStream in, int length) throws IOException {
+        if (length <= BUFFER_SIZE) {
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return bytes;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int remaining = length; remaining > 0; remaining -= BUFFER_SIZE) {
+            int count = Math.min(remaining, BUFFER_SIZE);
+            in.readFully(buffer, 0, count);
+            bytes.write(buffer, 0, count);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param secret the shared secret
+     * @param challenge the challenge sent by the agent
+     * @return the response, which proves the knowledge of the secret
+     */
+    static byte[] respondToChallenge(String secret, byte[] challenge) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM));
+            return mac.doFinal(challenge);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(HMAC_ALGORITHM + " is not available.", e);
+        }
+    }
+
+    /**
+     * @return true, if the response is the right one for the challenge. The comparison takes constant time.
+     */
+    static boolean isValidResponse(String secret, byte[] challenge, byte[] response) {
+        return MessageDigest.isEqual(respondToChallenge(secret, challenge), response);
+    }
+
+    /**
+     * writes the given bytes in compressed form.
+     */
+    static void writeBlock(DataOutputStream out, byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream deflaterOut = new DeflaterOutputStream(compressed, deflater, BUFFER_SIZE)) {
+            deflaterOut.write(bytes);
+        } finally {
+            deflater.end();
+        }
+        out.writeInt(bytes.length);
+        out.writeInt(compressed.size());
+        compressed.writeTo(out);
+    }
+
+    /**
+     * reads a block, written by {@link #writeBlock(DataOutputStream, byte[])}.
+     */
+    static byte[] readBlock(DataInputStream in) throws IOException {
+        int length = readLength(in, MAX_BLOCK_LENGTH, "block length");
+        byte[] compressed = readBytes(in, readLength(in, MAX_BLOCK_LENGTH, "compressed block length"));
+        if (length > (long) compressed.length * MAX_DEFLATE_RATIO) {
+            throw new IOException("A block of " + compressed.length + " compressed bytes can not contain " + length
+                    + " bytes.");
+        }
+        byte[] bytes = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int offset = 0;
+            while (offset < bytes.length) {
+                int inflated = inflater.inflate(bytes, offset, bytes.length - offset);
+                if ((inflated == 0) && (inflater.needsInput() || inflater.finished())) {
+                    throw new IOException("Compressed block ended after " + offset + " of " + bytes.length
+                            + " bytes.");
+                }
+                offset += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed block.", e);
+        } finally {
+            inflater.end();
+        }
+        return bytes;
+    }
+}
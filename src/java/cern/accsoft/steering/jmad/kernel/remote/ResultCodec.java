@@ -0,0 +1,238 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.remote;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.domain.knob.strength.SimpleStrength;
+import cern.accsoft.steering.jmad.domain.knob.strength.Strength;
+import cern.accsoft.steering.jmad.domain.result.Result;
+import cern.accsoft.steering.jmad.domain.result.ResultType;
+import cern.accsoft.steering.jmad.domain.result.StrengthResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultImpl;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsSummary;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsSummaryImpl;
+import cern.accsoft.steering.jmad.io.DynapOutputParser;
+import cern.accsoft.steering.jmad.io.MatchOutputParser;
+import cern.accsoft.steering.jmad.io.TrackOutputParser;
+import cern.accsoft.steering.jmad.util.MadxVarType;
+
+/**
+ * Encodes the results of the agent into the compact binary form which is sent to the client. TFS and strength results
+ * are encoded column-wise with their original string values, so that the decoded results are identical to the ones
+ * parsed locally. The rarely used match-, track- and dynap-results are transferred as the raw output of MadX and are
+ * parsed on the client side.
+ */
+final class ResultCodec {
+
+    private static final byte TAG_NONE = 0;
+    private static final byte TAG_TFS = 1;
+    private static final byte TAG_VALUES = 2;
+    private static final byte TAG_RAW = 3;
+
+    private ResultCodec() {
+        /* only static methods */
+    }
+
+    /**
+     * @param resultType the type of the result of an executable
+     * @return true, if results of this type are transferred as raw output, false if they are parsed by the agent
+     */
+    static boolean isTransferredRaw(ResultType resultType) {
+        return (ResultType.MATCH_RESULT == resultType) || (ResultType.TRACK_RESULT == resultType)
+                || (ResultType.DYNAP_RESULT == resultType);
+    }
+
+    /**
+     * @param result the parsed result, may be {@code null}
+     * @return the encoded (not yet compressed) result
+     */
+    static byte[] encode(Result result) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (result instanceof TfsResult) {
+            out.writeByte(TAG_TFS);
+            writeTfs(out, (TfsResult) result);
+        } else if (result instanceof StrengthResult) {
+            out.writeByte(TAG_VALUES);
+            writeStrengths(out, ((StrengthResult) result).getValues());
+        } else if (result == null) {
+            out.writeByte(TAG_NONE);
+        } else {
+            throw new IOException("Results of type " + result.getResultType() + " can not be encoded.");
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param resultType the type of the result
+     * @param output the content of the output file of MadX
+     * @return the encoded (not yet compressed) raw result
+     */
+    static byte[] encodeRaw(ResultType resultType, byte[] output) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(output.length + 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(TAG_RAW);
+        RemoteProtocol.writeString(out, resultType.name());
+        out.writeInt(output.length);
+        out.write(output);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param encoded the result as returned by one of the encode methods
+     * @param scratchFile the file to which raw results are written in order to parse them
+     * @return the decoded result
+     */
+    static Result decode(byte[] encoded, File scratchFile) throws IOException, JMadException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+        byte tag = in.readByte();
+        switch (tag) {
+        case TAG_NONE:
+            return null;
+        case TAG_TFS:
+            return readTfs(in);
+        case TAG_VALUES:
+            return new StrengthResult(readStrengths(in));
+        case TAG_RAW:
+            ResultType resultType = ResultType.valueOf(RemoteProtocol.readString(in));
+            byte[] output = RemoteProtocol.readBytes(in, RemoteProtocol.readLength(in, in.available(),
+                    "raw result length"));
+            return parseRaw(resultType, output, scratchFile);
+        default:
+            throw new IOException("Unknown result tag " + tag + ".");
+        }
+    }
+
+    private static void writeTfs(DataOutputStream out, TfsResult result) throws IOException {
+        List<String> keys = result.getKeys();
+        int rowCount = keys.isEmpty() ? 0 : result.getStringData(keys.get(0)).size();
+        out.writeInt(keys.size());
+        out.writeInt(rowCount);
+        for (String key : keys) {
+            RemoteProtocol.writeString(out, key);
+            RemoteProtocol.writeString(out, result.getVarType(key).name());
+            for (String value : result.getStringData(key)) {
+                RemoteProtocol.writeString(out, value);
+            }
+        }
+
+        TfsSummary summary = result.getSummary();
+        out.writeBoolean(summary != null);
+        if (summary != null) {
+            out.writeInt(summary.getKeys().size());
+            for (String key : summary.getKeys()) {
+                RemoteProtocol.writeString(out, key);
+                RemoteProtocol.writeString(out, summary.getStringValue(key));
+                RemoteProtocol.writeString(out, summary.getVarType(key).name());
+            }
+        }
+    }
+
+    private static TfsResult readTfs(DataInputStream in) throws IOException, JMadException {
+        int columnCount = RemoteProtocol.readLength(in, in.available(), "column count");
+        int rowCount = RemoteProtocol.readLength(in, in.available(), "row count");
+        TfsResultImpl result = new TfsResultImpl();
+        List<List<String>> columns = new ArrayList<>(columnCount);
+        for (int column = 0; column < columnCount; column++) {
+            String key = RemoteProtocol.readString(in);
+            result.createColumn(key);
+            result.setVarType(key, MadxVarType.valueOf(RemoteProtocol.readString(in)));
+            List<String> values = new ArrayList<>(rowCount);
+            for (int row = 0; row < rowCount; row++) {
+                values.add(RemoteProtocol.readString(in));
+            }
+            columns.add(values);
+        }
+        List<String> rowValues = new ArrayList<>(columnCount);
+        for (int row = 0; row < rowCount; row++) {
+            rowValues.clear();
+            for (List<String> column : columns) {
+                rowValues.add(column.get(row));
+            }
+            result.addRow(rowValues);
+        }
+
+        if (in.readBoolean()) {
+            TfsSummaryImpl summary = new TfsSummaryImpl();
+            int count = RemoteProtocol.readLength(in, in.available(), "summary count");
+            for (int i = 0; i < count; i++) {
+                String key = RemoteProtocol.readString(in);
+                String value = RemoteProtocol.readString(in);
+                summary.addValue(key, value, MadxVarType.valueOf(RemoteProtocol.readString(in)));
+            }
+            summary.convert();
+            result.setTfsSummary(summary);
+        }
+        result.convert();
+        return result;
+    }
+
+    private static void writeStrengths(DataOutputStream out, List<Strength> strengths) throws IOException {
+        out.writeInt(strengths.size());
+        for (Strength strength : strengths) {
+            RemoteProtocol.writeString(out, strength.getName());
+            out.writeDouble(strength.getValue());
+            out.writeBoolean(strength.getDescription() != null);
+            if (strength.getDescription() != null) {
+                RemoteProtocol.writeString(out, strength.getDescription());
+            }
+        }
+    }
+
+    private static List<Strength> readStrengths(DataInputStream in) throws IOException {
+        int count = RemoteProtocol.readLength(in, in.available(), "strength count");
+        List<Strength> strengths = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = RemoteProtocol.readString(in);
+            double value = in.readDouble();
+            String description = in.readBoolean() ? RemoteProtocol.readString(in) : null;
+            strengths.add(new SimpleStrength(name, value, description));
+        }
+        return strengths;
+    }
+
+    private static Result parseRaw(ResultType resultType, byte[] output, File scratchFile) throws IOException,
+            JMadException {
+        Files.write(scratchFile.toPath(), output);
+        try {
+            if (ResultType.MATCH_RESULT == resultType) {
+                MatchOutputParser parser = new MatchOutputParser(scratchFile);
+                parser.parse();
+                return parser.getResult();
+            } else if (ResultType.TRACK_RESULT == resultType) {
+                TrackOutputParser parser = new TrackOutputParser(scratchFile);
+                parser.parse();
+                return parser.getResult();
+            } else if (ResultType.DYNAP_RESULT == resultType) {
+                DynapOutputParser parser = new DynapOutputParser(scratchFile);
+                parser.parse();
+                return parser.getResult();
+            }
+            throw new IOException("Results of type " + resultType + " are not transferred raw.");
+        } finally {
+            Files.deleteIfExists(scratchFile.toPath());
+        }
+    }
+}
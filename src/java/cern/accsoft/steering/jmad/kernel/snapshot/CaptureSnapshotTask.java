@@ -0,0 +1,61 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.snapshot;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import cern.accsoft.steering.jmad.kernel.cmd.Command;
+import cern.accsoft.steering.jmad.kernel.cmd.EsaveCommand;
+import cern.accsoft.steering.jmad.kernel.cmd.SaveCommand;
+import cern.accsoft.steering.jmad.kernel.cmd.SelectCommand;
+import cern.accsoft.steering.jmad.kernel.task.AbstractTask;
+
+/**
+ * Lets madx write all its sequences, variables and beams and (if a sequence is in use) the errors of this sequence to
+ * files.
+ */
+class CaptureSnapshotTask extends AbstractTask {
+
+    private final File stateFile;
+    private final File errorFile;
+
+    /**
+     * @param stateFile the file for the sequences, variables and beams
+     * @param errorFile the file for the errors. {@code null}, if no sequence is in use.
+     */
+    CaptureSnapshotTask(File stateFile, File errorFile) {
+        this.stateFile = stateFile;
+        this.errorFile = errorFile;
+    }
+
+    @Override
+    protected List<Command> getCommands() {
+        List<Command> commands = new ArrayList<>();
+        commands.add(new SaveCommand(stateFile, null, true));
+        if (errorFile != null) {
+            SelectCommand select = new SelectCommand();
+            select.setFlag(SelectCommand.SELECT_FLAG_ERROR);
+            select.setFull(true);
+            commands.add(select);
+            commands.add(new EsaveCommand(errorFile));
+
+            /* do not leave the selection behind, it would influence later ealign commands */
+            SelectCommand clear = new SelectCommand();
+            clear.setFlag(SelectCommand.SELECT_FLAG_ERROR);
+            clear.setClear(true);
+            commands.add(clear);
+        }
+        return commands;
+    }
+}
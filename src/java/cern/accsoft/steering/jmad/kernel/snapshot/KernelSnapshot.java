@@ -0,0 +1,184 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.snapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import cern.accsoft.steering.jmad.domain.machine.MadxRange;
+
+/**
+ * The complete state of a madx process (sequences, element definitions, variables, beams and the errors of the
+ * sequence in use) as captured by {@link KernelSnapshots#capture(cern.accsoft.steering.jmad.kernel.JMadKernel, String,
+ * MadxRange)}. The state is kept compressed in memory. It can be written to a stream and read back, e.g. to share it
+ * between processes.
+ */
+public class KernelSnapshot {
+
+    /** identifies the serialized form */
+    private static final int MAGIC = 0x4a4d5353;
+    private static final int VERSION = 1;
+
+    private final String sequenceName;
+    private final MadxRange range;
+    private final byte[] compressedState;
+    private final byte[] compressedErrors;
+
+    KernelSnapshot(String sequenceName, MadxRange range, byte[] compressedState, byte[] compressedErrors) {
+        this.sequenceName = sequenceName;
+        this.range = range;
+        this.compressedState = compressedState;
+        this.compressedErrors = compressedErrors;
+    }
+
+    /**
+     * @return the name of the sequence which was in use, {@code null} if none
+     */
+    public String getSequenceName() {
+        return sequenceName;
+    }
+
+    /**
+     * @return the range of the sequence which was in use, {@code null} for the whole sequence
+     */
+    public MadxRange getRange() {
+        return range;
+    }
+
+    /**
+     * @return true, if the snapshot contains the errors of the sequence in use
+     */
+    public boolean hasErrors() {
+        return compressedErrors != null;
+    }
+
+    /**
+     * @return the number of bytes the snapshot occupies in memory
+     */
+    public int getCompressedSize() {
+        return compressedState.length + (compressedErrors == null ? 0 : compressedErrors.length);
+    }
+
+    /**
+     * @return the madx commands which re-create the state
+     */
+    String getState() throws IOException {
+        return decompress(compressedState);
+    }
+
+    /**
+     * @return the error table in TFS format, {@code null} if there is none
+     */
+    String getErrors() throws IOException {
+        return (compressedErrors == null) ? null : decompress(compressedErrors);
+    }
+
+    /**
+     * writes the snapshot to the given stream. The stream is not closed.
+     *
+     * @param outputStream the stream to write to
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeNullable(out, sequenceName);
+        writeNullable(out, (range == null) ? null : range.getFirstElementName());
+        writeNullable(out, (range == null) ? null : range.getLastElementName());
+        writeBytes(out, compressedState);
+        writeBytes(out, compressedErrors);
+        out.flush();
+    }
+
+    /**
+     * reads a snapshot, which was written by {@link #writeTo(OutputStream)}.
+     *
+     * @param inputStream the stream to read from. It is not closed.
+     * @return the snapshot
+     * @throws IOException if the stream does not contain a valid snapshot
+     */
+    public static KernelSnapshot readFrom(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("The stream does not contain a kernel snapshot.");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version + " of kernel snapshot.");
+        }
+        String sequenceName = readNullable(in);
+        String firstElementName = readNullable(in);
+        String lastElementName = readNullable(in);
+        MadxRange range = (firstElementName == null) ? null : new MadxRange(firstElementName, lastElementName);
+        byte[] state = readBytes(in);
+        if (state == null) {
+            throw new IOException("The kernel snapshot contains no state.");
+        }
+        return new KernelSnapshot(sequenceName, range, state, readBytes(in));
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes == null ? -1 : bytes.length);
+        if (bytes != null) {
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static byte[] compress(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String decompress(byte[] compressed) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, count);
+            }
+        }
+        return new String(bytes.toByteArray(), "UTF-8");
+    }
+}
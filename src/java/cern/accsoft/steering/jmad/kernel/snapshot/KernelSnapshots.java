@@ -0,0 +1,125 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.domain.machine.MadxRange;
+import cern.accsoft.steering.jmad.kernel.JMadKernel;
+
+/**
+ * Captures the state of a running kernel into a {@link KernelSnapshot} and restores it into another kernel. Restoring
+ * means calling one file with the saved definitions and assigning the errors, which is much faster than replaying all
+ * the init files, optics and knob changes which led to the state.
+ * <p>
+ * Only the state within madx is captured. Things like tables, twiss initial conditions or selections are not part of
+ * the snapshot.
+ */
+public final class KernelSnapshots {
+    private static final Logger LOGGER = LoggerFactory.getLogger(KernelSnapshots.class);
+
+    private static final String FILE_PREFIX = "madx-snapshot-";
+
+    private KernelSnapshots() {
+        /* Only static methods */
+    }
+
+    /**
+     * captures the state of the given kernel.
+     *
+     * @param kernel the running kernel
+     * @param sequenceName the sequence which is in use. Its errors are captured and it is used again on restore. If
+     *            {@code null}, no errors are captured.
+     * @param range the range of the sequence which is in use, {@code null} for the whole sequence
+     * @return the snapshot
+     * @throws JMadException if madx fails to save its state or the files can not be read
+     */
+    public static KernelSnapshot capture(JMadKernel kernel, String sequenceName, MadxRange range)
+            throws JMadException {
+        File dir = workingDir(kernel);
+        File stateFile = null;
+        File errorFile = null;
+        try {
+            stateFile = Files.createTempFile(dir.toPath(), FILE_PREFIX, ".madx").toFile();
+            if (sequenceName != null) {
+                errorFile = Files.createTempFile(dir.toPath(), FILE_PREFIX, ".tfs").toFile();
+            }
+            kernel.execute(new CaptureSnapshotTask(stateFile, errorFile));
+
+            byte[] state = Files.readAllBytes(stateFile.toPath());
+            if (state.length == 0) {
+                throw new JMadException("Madx did not save its state to file '" + stateFile.getAbsolutePath() + "'.");
+            }
+            byte[] errors = (errorFile == null) ? null : KernelSnapshot.compress(Files.readAllBytes(errorFile.toPath()));
+            KernelSnapshot snapshot = new KernelSnapshot(sequenceName, range, KernelSnapshot.compress(state), errors);
+            LOGGER.debug("Captured kernel snapshot of {} bytes ({} bytes uncompressed state).",
+                    snapshot.getCompressedSize(), state.length);
+            return snapshot;
+        } catch (IOException e) {
+            throw new JMadException("Error while capturing the state of the kernel.", e);
+        } finally {
+            delete(stateFile);
+            delete(errorFile);
+        }
+    }
+
+    /**
+     * restores the state of a snapshot into the given kernel. Usually the kernel is freshly started, otherwise the
+     * definitions of the snapshot are added to the existing ones (and redefine them on conflicts).
+     *
+     * @param kernel the running kernel
+     * @param snapshot the snapshot to restore
+     * @throws JMadException if the files can not be written or madx fails to load them
+     */
+    public static void restore(JMadKernel kernel, KernelSnapshot snapshot) throws JMadException {
+        File dir = workingDir(kernel);
+        File stateFile = null;
+        File errorFile = null;
+        try {
+            stateFile = Files.createTempFile(dir.toPath(), FILE_PREFIX, ".madx").toFile();
+            Files.write(stateFile.toPath(), snapshot.getState().getBytes(StandardCharsets.UTF_8));
+            String errors = snapshot.getErrors();
+            if (errors != null) {
+                errorFile = Files.createTempFile(dir.toPath(), FILE_PREFIX, ".tfs").toFile();
+                Files.write(errorFile.toPath(), errors.getBytes(StandardCharsets.UTF_8));
+            }
+            kernel.execute(new RestoreSnapshotTask(stateFile, errorFile, snapshot.getSequenceName(),
+                    snapshot.getRange()));
+        } catch (IOException e) {
+            throw new JMadException("Error while writing the state of the snapshot.", e);
+        } finally {
+            delete(stateFile);
+            delete(errorFile);
+        }
+    }
+
+    private static File workingDir(JMadKernel kernel) throws JMadException {
+        File outputFile = kernel.getOutputFile();
+        if ((outputFile == null) || !kernel.isMadxRunning()) {
+            throw new JMadException("The kernel is not running.");
+        }
+        return outputFile.getParentFile();
+    }
+
+    private static void delete(File file) {
+        if ((file != null) && file.exists() && !file.delete()) {
+            LOGGER.warn("Could not delete snapshot file '{}'.", file.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.snapshot;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import cern.accsoft.steering.jmad.domain.machine.MadxRange;
+import cern.accsoft.steering.jmad.kernel.cmd.CallCommand;
+import cern.accsoft.steering.jmad.kernel.cmd.Command;
+import cern.accsoft.steering.jmad.kernel.cmd.SeterrCommand;
+import cern.accsoft.steering.jmad.kernel.cmd.UseCommand;
+import cern.accsoft.steering.jmad.kernel.cmd.table.ReadMyTableCommand;
+import cern.accsoft.steering.jmad.kernel.task.AbstractTask;
+
+/**
+ * Calls the state file of a snapshot, uses the sequence which was in use and assigns the errors to it.
+ */
+class RestoreSnapshotTask extends AbstractTask {
+
+    private static final String ERROR_TABLE_NAME = "jmad_snapshot_errors";
+
+    private final File stateFile;
+    private final File errorFile;
+    private final String sequenceName;
+    private final MadxRange range;
+
+    /**
+     * @param stateFile the file which contains the sequences, variables and beams
+     * @param errorFile the file which contains the errors, {@code null} if there are none
+     * @param sequenceName the sequence to use, {@code null} if none
+     * @param range the range to use, {@code null} for the whole sequence
+     */
+    RestoreSnapshotTask(File stateFile, File errorFile, String sequenceName, MadxRange range) {
+        this.stateFile = stateFile;
+        this.errorFile = errorFile;
+        this.sequenceName = sequenceName;
+        this.range = range;
+    }
+
+    @Override
+    protected List<Command> getCommands() {
+        List<Command> commands = new ArrayList<>();
+        commands.add(new CallCommand(stateFile));
+        if (sequenceName != null) {
+            commands.add(new UseCommand(sequenceName, range));
+            if (errorFile != null) {
+                commands.add(new ReadMyTableCommand(errorFile, ERROR_TABLE_NAME));
+                commands.add(new SeterrCommand(ERROR_TABLE_NAME));
+            }
+        }
+        return commands;
+    }
+}
@@ -0,0 +1,33 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.stats;
+
+/**
+ * The phases of the execution of a command or task by the kernel, for which the latencies are recorded.
+ */
+public enum ExecutionPhase {
+
+    /** composing the commands (including writing large payloads to a file) */
+    COMPOSE,
+
+    /** writing the commands to the input of MadX */
+    WRITE,
+
+    /** MadX processing the commands, until it signals that it is ready */
+    EXECUTE,
+
+    /** the delay between MadX signalling that it is ready and the kernel noticing it */
+    READY,
+
+    /** parsing the result */
+    PARSE;
+}
@@ -0,0 +1,106 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.stats;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An immutable snapshot of the latencies recorded by a kernel, grouped by the kind of executable (e.g. the class name
+ * of the task) and by {@link ExecutionPhase}.
+ */
+public class ExecutionStatistics {
+
+    private final Map<String, Map<ExecutionPhase, LatencySnapshot>> phaseSnapshots;
+    private final Map<String, LatencySnapshot> totalSnapshots;
+
+    ExecutionStatistics(Map<String, Map<ExecutionPhase, LatencySnapshot>> phaseSnapshots,
+            Map<String, LatencySnapshot> totalSnapshots) {
+        this.phaseSnapshots = Collections.unmodifiableMap(new TreeMap<>(phaseSnapshots));
+        this.totalSnapshots = Collections.unmodifiableMap(new TreeMap<>(totalSnapshots));
+    }
+
+    /**
+     * @return the names of all kinds of executables for which latencies were recorded
+     */
+    public Set<String> getExecutableNames() {
+        return totalSnapshots.keySet();
+    }
+
+    /**
+     * @param executableName the name of the kind of executable, as returned by {@link #getExecutableNames()}
+     * @param phase the phase of the execution
+     * @return the latencies of the given phase, or an empty snapshot if nothing was recorded
+     */
+    public LatencySnapshot getLatency(String executableName, ExecutionPhase phase) {
+        Map<ExecutionPhase, LatencySnapshot> snapshots = phaseSnapshots.get(executableName);
+        if ((snapshots == null) || !snapshots.containsKey(phase)) {
+            return new LatencyHistogram().snapshot();
+        }
+        return snapshots.get(phase);
+    }
+
+    /**
+     * @param executableName the name of the kind of executable, as returned by {@link #getExecutableNames()}
+     * @return the latencies of the whole executions, or an empty snapshot if nothing was recorded
+     */
+    public LatencySnapshot getTotalLatency(String executableName) {
+        LatencySnapshot snapshot = totalSnapshots.get(executableName);
+        if (snapshot == null) {
+            return new LatencyHistogram().snapshot();
+        }
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (String name : getExecutableNames()) {
+            builder.append(name).append(": total[").append(getTotalLatency(name)).append("]\n");
+            for (ExecutionPhase phase : ExecutionPhase.values()) {
+                builder.append("  ").append(phase.name().toLowerCase()).append('[')
+                        .append(getLatency(name, phase)).append("]\n");
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return a builder to assemble the snapshot
+     */
+    static Builder builder() {
+        return new Builder();
+    }
+
+    static class Builder {
+        private final Map<String, Map<ExecutionPhase, LatencySnapshot>> phaseSnapshots = new TreeMap<>();
+        private final Map<String, LatencySnapshot> totalSnapshots = new TreeMap<>();
+
+        Builder add(String executableName, ExecutionPhase phase, LatencySnapshot snapshot) {
+            phaseSnapshots.computeIfAbsent(executableName, name -> new EnumMap<>(ExecutionPhase.class)).put(phase,
+                    snapshot);
+            return this;
+        }
+
+        Builder addTotal(String executableName, LatencySnapshot snapshot) {
+            totalSnapshots.put(executableName, snapshot);
+            return this;
+        }
+
+        ExecutionStatistics build() {
+            return new ExecutionStatistics(phaseSnapshots, totalSnapshots);
+        }
+    }
+}
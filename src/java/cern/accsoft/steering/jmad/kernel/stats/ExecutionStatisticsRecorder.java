@@ -0,0 +1,75 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.stats;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the {@link ExecutionTimings} of a kernel into one {@link LatencyHistogram} per kind of executable and
+ * phase. Recording is thread safe and does not block, so it can be done from any thread of the kernel.
+ */
+public class ExecutionStatisticsRecorder {
+
+    private final Map<String, Histograms> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * adds the timings of one execution to the statistics.
+     *
+     * @param executableName the name of the kind of executable (e.g. the class name of a task)
+     * @param timings the measured timings
+     */
+    public void record(String executableName, ExecutionTimings timings) {
+        histograms.computeIfAbsent(executableName, name -> new Histograms()).record(timings);
+    }
+
+    /**
+     * @return an immutable snapshot of all the statistics recorded so far
+     */
+    public ExecutionStatistics snapshot() {
+        ExecutionStatistics.Builder builder = ExecutionStatistics.builder();
+        for (Map.Entry<String, Histograms> entry : histograms.entrySet()) {
+            for (Map.Entry<ExecutionPhase, LatencyHistogram> phaseEntry : entry.getValue().phases.entrySet()) {
+                builder.add(entry.getKey(), phaseEntry.getKey(), phaseEntry.getValue().snapshot());
+            }
+            builder.addTotal(entry.getKey(), entry.getValue().total.snapshot());
+        }
+        return builder.build();
+    }
+
+    /**
+     * removes all the statistics recorded so far.
+     */
+    public void reset() {
+        histograms.clear();
+    }
+
+    private static class Histograms {
+        private final Map<ExecutionPhase, LatencyHistogram> phases = new EnumMap<>(ExecutionPhase.class);
+        private final LatencyHistogram total = new LatencyHistogram();
+
+        Histograms() {
+            /* all the histograms are created upfront, so that the map is never modified concurrently */
+            for (ExecutionPhase phase : ExecutionPhase.values()) {
+                phases.put(phase, new LatencyHistogram());
+            }
+        }
+
+        void record(ExecutionTimings timings) {
+            for (Map.Entry<ExecutionPhase, LatencyHistogram> entry : phases.entrySet()) {
+                entry.getValue().record(timings.getNanos(entry.getKey()));
+            }
+            total.record(timings.getTotalNanos());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.stats;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Measures the phases of one execution. The timer runs from its creation on; each call to
+ * {@link #lap(ExecutionPhase)} attributes the time since the previous lap to the given phase. The timer is not thread
+ * safe, but it may be handed over from one thread to another (e.g. from the thread which runs madx to the one which
+ * parses the result).
+ */
+public class ExecutionTimer {
+
+    private final Map<ExecutionPhase, Long> phaseNanos = new EnumMap<>(ExecutionPhase.class);
+    private long lastLap = System.nanoTime();
+
+    /**
+     * attributes the time since the last lap (or the creation of the timer) to the given phase.
+     *
+     * @param phase the phase which just ended
+     */
+    public void lap(ExecutionPhase phase) {
+        long now = System.nanoTime();
+        add(phase, now - lastLap);
+        lastLap = now;
+    }
+
+    /**
+     * restarts the measurement of the current phase without attributing the time since the last lap to any phase, e.g.
+     * to exclude the time an execution was waiting in a queue.
+     */
+    public void skip() {
+        lastLap = System.nanoTime();
+    }
+
+    /**
+     * moves the given time from the {@link ExecutionPhase#EXECUTE} phase to the {@link ExecutionPhase#READY} phase.
+     * This is used, because the end of the execution within madx can only be determined afterwards from the time madx
+     * signalled that it is ready. The moved time is limited to the time recorded for the execute phase.
+     *
+     * @param readyNanos the time between madx signalling that it is ready and the kernel noticing it
+     */
+    public void splitReady(long readyNanos) {
+        long executeNanos = get(ExecutionPhase.EXECUTE);
+        long moved = Math.max(0, Math.min(readyNanos, executeNanos));
+        phaseNanos.put(ExecutionPhase.EXECUTE, executeNanos - moved);
+        add(ExecutionPhase.READY, moved);
+    }
+
+    /**
+     * @return the timings as measured so far
+     */
+    public ExecutionTimings getTimings() {
+        return new ExecutionTimings(phaseNanos);
+    }
+
+    private long get(ExecutionPhase phase) {
+        Long nanos = phaseNanos.get(phase);
+        return (nanos == null) ? 0 : nanos;
+    }
+
+    private void add(ExecutionPhase phase, long nanos) {
+        phaseNanos.put(phase, get(phase) + nanos);
+    }
+}
@@ -0,0 +1,65 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.stats;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time (in nanoseconds) spent in the different {@link ExecutionPhase}s by one execution of the kernel. Phases which
+ * did not take place (e.g. parsing of a command without result) are reported as zero.
+ */
+public class ExecutionTimings {
+
+    private final Map<ExecutionPhase, Long> phaseNanos;
+
+    ExecutionTimings(Map<ExecutionPhase, Long> phaseNanos) {
+        EnumMap<ExecutionPhase, Long> copy = new EnumMap<>(ExecutionPhase.class);
+        copy.putAll(phaseNanos);
+        this.phaseNanos = Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * @param phase the phase for which to retrieve the time
+     * @return the time in nanoseconds spent in the given phase
+     */
+    public long getNanos(ExecutionPhase phase) {
+        Long nanos = phaseNanos.get(phase);
+        return (nanos == null) ? 0 : nanos;
+    }
+
+    /**
+     * @return the time in nanoseconds spent in all phases together
+     */
+    public long getTotalNanos() {
+        long total = 0;
+        for (Long nanos : phaseNanos.values()) {
+            total += nanos;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (ExecutionPhase phase : ExecutionPhase.values()) {
+            builder.append(phase.name().toLowerCase()).append('=').append(millis(getNanos(phase))).append("ms, ");
+        }
+        return builder.append("total=").append(millis(getTotalNanos())).append("ms").toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,123 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.stats;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable copy of a {@link LatencyHistogram}. All values are in nanoseconds.
+ */
+public class LatencySnapshot {
+
+    private final long[] bucketCounts;
+    private final long count;
+    private final long sum;
+    private final long min;
+    private final long max;
+
+    LatencySnapshot(long[] bucketCounts, long count, long sum, long min, long max) {
+        this.bucketCounts = bucketCounts;
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the smallest recorded value, 0 if nothing was recorded
+     */
+    public long getMin() {
+        return min;
+    }
+
+    /**
+     * @return the largest recorded value, 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return the sum of all the recorded values
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the mean of the recorded values, 0 if nothing was recorded
+     */
+    public double getMean() {
+        return (count == 0) ? 0 : ((double) sum) / count;
+    }
+
+    /**
+     * @param percentile the percentile to calculate (between 0 and 100)
+     * @return the value below or equal to which the given percentage of the recorded values lie, 0 if nothing was
+     *         recorded
+     */
+    public long getPercentile(double percentile) {
+        if ((percentile < 0) || (percentile > 100)) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100, but was " + percentile + ".");
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long cumulated = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            cumulated += bucketCounts[i];
+            if (cumulated >= rank) {
+                return Math.max(min, Math.min(max, LatencyHistogram.bucketUpperBound(i)));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return the median
+     */
+    public long getP50() {
+        return getPercentile(50);
+    }
+
+    /**
+     * @return the 90th percentile
+     */
+    public long getP90() {
+        return getPercentile(90);
+    }
+
+    /**
+     * @return the 99th percentile
+     */
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + ", mean=" + millis((long) getMean()) + "ms, p50=" + millis(getP50()) + "ms, p90="
+                + millis(getP90()) + "ms, p99=" + millis(getP99()) + "ms, max=" + millis(max) + "ms";
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
@@ -22,6 +22,10 @@
 
 package cern.accsoft.steering.jmad.kernel.task;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.List;
 
 import cern.accsoft.steering.jmad.kernel.AbstractJMadExecutable;
@@ -43,21 +47,29 @@ public abstract class AbstractTask extends AbstractJMadExecutable {
 
     @Override
     public final String compose() {
+        StringWriter taskString = new StringWriter();
+        try {
+            composeTo(taskString);
+        } catch (IOException e) {
+            /* should never happen for a StringWriter */
+            throw new UncheckedIOException(e);
+        }
+        return taskString.toString();
+    }
+
+    @Override
+    public final void composeTo(Writer writer) throws IOException {
         List<Command> commands = getCommands();
 
-        StringBuffer taskString = new StringBuffer("\n" + getHeader() + "\n"); // add
-        // header,
-        // just
-        // for
-        // readability;
+        /* add header, just for readability */
+        writer.write("\n" + getHeader() + "\n");
         for (int i = 0; i < commands.size(); i++) {
             Command command = commands.get(i);
             command.setOutputFile(getOutputFile());
-            taskString.append(command.compose());
-            taskString.append('\n');
+            command.composeTo(writer);
+            writer.write('\n');
         }
-        taskString.append(getFooter());
-        return taskString.toString();
+        writer.write(getFooter());
     }
 
     private final String getHeader() {
@@ -1,11 +1,14 @@
 package cern.accsoft.steering.jmad.kernel.task;
 
+import cern.accsoft.steering.jmad.kernel.JournalEntry;
+import cern.accsoft.steering.jmad.kernel.Journaled;
 import cern.accsoft.steering.jmad.kernel.cmd.Command;
 import cern.accsoft.steering.jmad.kernel.cmd.EOptionCommand;
 import cern.accsoft.steering.jmad.kernel.cmd.EfcompCommand;
 import cern.accsoft.steering.jmad.kernel.cmd.SelectCommand;
 import com.google.common.collect.ImmutableList;
 
+import java.util.Collections;
 import java.util.List;
 
 import static cern.accsoft.steering.jmad.kernel.cmd.SelectCommand.SELECT_FLAG_ERROR;
@@ -14,7 +17,7 @@ import static cern.accsoft.steering.jmad.kernel.cmd.SelectCommand.SELECT_FLAG_ER
  * Task to add absolute field errors to a single element. The provided field errors are ADDED to any field errors
  * already present by the means of an "eoption,add=true" MAD-X command.
  */
-public class AddFieldErrors extends AbstractTask {
+public class AddFieldErrors extends AbstractTask implements Journaled {
 
     private final String elementName;
     private final List<Double> absoluteErrors;
@@ -42,6 +45,14 @@ public class AddFieldErrors extends AbstractTask {
         );
     }
 
+    /**
+     * The errors add up, so all of them are kept in the journal.
+     */
+    @Override
+    public List<JournalEntry> getJournalEntries() {
+        return Collections.singletonList(JournalEntry.cumulative(this));
+    }
+
     private static SelectCommand clearErrorSelect() {
         SelectCommand select = new SelectCommand();
         select.setFlag(SELECT_FLAG_ERROR);
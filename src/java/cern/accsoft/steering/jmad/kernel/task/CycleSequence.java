@@ -23,16 +23,19 @@
 package cern.accsoft.steering.jmad.kernel.task;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import cern.accsoft.steering.jmad.domain.machine.RangeDefinition;
+import cern.accsoft.steering.jmad.kernel.JournalEntry;
+import cern.accsoft.steering.jmad.kernel.Journaled;
 import cern.accsoft.steering.jmad.kernel.cmd.Command;
 import cern.accsoft.steering.jmad.kernel.cmd.seqedit.CycleCommand;
 import cern.accsoft.steering.jmad.kernel.cmd.seqedit.EndeditCommand;
 import cern.accsoft.steering.jmad.kernel.cmd.seqedit.FlattenCommand;
 import cern.accsoft.steering.jmad.kernel.cmd.seqedit.SeqeditCommand;
 
-public class CycleSequence extends AbstractTask {
+public class CycleSequence extends AbstractTask implements Journaled {
 
     private RangeDefinition rangeDefinition;
 
@@ -51,4 +54,16 @@ public class CycleSequence extends AbstractTask {
         }
         return commands;
     }
+
+    /**
+     * Cycling replaces the start of the sequence defined by an earlier cycling.
+     */
+    @Override
+    public List<JournalEntry> getJournalEntries() {
+        if (this.rangeDefinition.getStartElementName() == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(JournalEntry.latest("cycle:"
+                + rangeDefinition.getSequenceDefinition().getName().toLowerCase(), this));
+    }
 }
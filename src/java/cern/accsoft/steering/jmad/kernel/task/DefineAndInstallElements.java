@@ -23,9 +23,12 @@
 package cern.accsoft.steering.jmad.kernel.task;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import cern.accsoft.steering.jmad.domain.elem.Element;
+import cern.accsoft.steering.jmad.kernel.JournalEntry;
+import cern.accsoft.steering.jmad.kernel.Journaled;
 import cern.accsoft.steering.jmad.kernel.cmd.Command;
 import cern.accsoft.steering.jmad.kernel.cmd.DefineElement;
 import cern.accsoft.steering.jmad.kernel.cmd.seqedit.EndeditCommand;
@@ -39,7 +42,7 @@ import cern.accsoft.steering.jmad.kernel.cmd.seqedit.SeqeditCommand;
  * @author xbuffat
  */
 
-public class DefineAndInstallElements extends AbstractTask {
+public class DefineAndInstallElements extends AbstractTask implements Journaled {
 
     private String sequence;
     private List<Element> toInstall;
@@ -64,4 +67,12 @@ public class DefineAndInstallElements extends AbstractTask {
         return commands;
     }
 
+    /**
+     * Each installation adds elements, so all of them are kept in the journal.
+     */
+    @Override
+    public List<JournalEntry> getJournalEntries() {
+        return Collections.singletonList(JournalEntry.cumulative(this));
+    }
+
 }
@@ -30,10 +30,13 @@
 package cern.accsoft.steering.jmad.kernel.task;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import cern.accsoft.steering.jmad.domain.misalign.Misalignment;
 import cern.accsoft.steering.jmad.domain.misalign.PatternOrClassMisalignmentConfiguration;
+import cern.accsoft.steering.jmad.kernel.JournalEntry;
+import cern.accsoft.steering.jmad.kernel.Journaled;
 import cern.accsoft.steering.jmad.kernel.cmd.Command;
 import cern.accsoft.steering.jmad.kernel.cmd.EOptionCommand;
 import cern.accsoft.steering.jmad.kernel.cmd.GaussEalignCommand;
@@ -45,7 +48,7 @@ import cern.accsoft.steering.jmad.kernel.cmd.SelectCommand;
  * 
  * @author agorzaws
  */
-public class SetClassMisalignment extends AbstractTask {
+public class SetClassMisalignment extends AbstractTask implements Journaled {
 
     /** the flag to use for the select command to set the misalignment */
     private static final String SELECT_FLAG_ERROR = "error";
@@ -106,6 +109,19 @@ public class SetClassMisalignment extends AbstractTask {
         return commands;
     }
 
+    /**
+     * A new misalignment replaces the old one of the same class and pattern. Since the seed is part of the task, the
+     * replay results in the same random values.
+     */
+    @Override
+    public List<JournalEntry> getJournalEntries() {
+        if ((this.elementsClass == null) || (this.misalignment == null)) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(JournalEntry.latest("ealign:" + elementsClass.toLowerCase() + "/"
+                + ((pattern == null) ? "" : pattern.toLowerCase()), this));
+    }
+
     private boolean isValueSet(String elementToTest) {
         return elementToTest != null && elementToTest != "";
     }
@@ -31,11 +31,14 @@ package cern.accsoft.steering.jmad.kernel.task;
 
 import cern.accsoft.steering.jmad.domain.misalign.Misalignment;
 import cern.accsoft.steering.jmad.domain.misalign.MisalignmentConfiguration;
+import cern.accsoft.steering.jmad.kernel.JournalEntry;
+import cern.accsoft.steering.jmad.kernel.Journaled;
 import cern.accsoft.steering.jmad.kernel.cmd.Command;
 import cern.accsoft.steering.jmad.kernel.cmd.EalignCommand;
 import cern.accsoft.steering.jmad.kernel.cmd.SelectCommand;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static cern.accsoft.steering.jmad.kernel.cmd.SelectCommand.SELECT_FLAG_ERROR;
@@ -45,7 +48,7 @@ import static cern.accsoft.steering.jmad.kernel.cmd.SelectCommand.SELECT_FLAG_ER
  * 
  * @author Kajetan Fuchsberger (kajetan.fuchsberger at cern.ch)
  */
-public class SetMisalignment extends AbstractTask {
+public class SetMisalignment extends AbstractTask implements Journaled {
 
     /** the machine-element to which to apply the misalignment */
     private final String elementName;
@@ -87,4 +90,15 @@ public class SetMisalignment extends AbstractTask {
         return commands;
     }
 
+    /**
+     * A new misalignment replaces the old one of the same element.
+     */
+    @Override
+    public List<JournalEntry> getJournalEntries() {
+        if ((this.elementName == null) || (this.misalignment == null)) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(JournalEntry.latest("ealign:" + elementName.toLowerCase(), this));
+    }
+
 }
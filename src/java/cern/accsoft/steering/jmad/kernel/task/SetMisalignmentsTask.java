@@ -9,6 +9,8 @@ import java.util.List;
 
 import cern.accsoft.steering.jmad.domain.misalign.MisalignmentConfiguration;
 import cern.accsoft.steering.jmad.domain.misalign.PatternOrClassMisalignmentConfiguration;
+import cern.accsoft.steering.jmad.kernel.JournalEntry;
+import cern.accsoft.steering.jmad.kernel.Journaled;
 import cern.accsoft.steering.jmad.kernel.cmd.Command;
 
 /**
@@ -18,7 +20,7 @@ import cern.accsoft.steering.jmad.kernel.cmd.Command;
  * 
  * @author agorzaws
  */
-public class SetMisalignmentsTask extends AbstractTask {
+public class SetMisalignmentsTask extends AbstractTask implements Journaled {
 
     private List<MisalignmentConfiguration> misalignments;
 
@@ -29,15 +31,35 @@ public class SetMisalignmentsTask extends AbstractTask {
     @Override
     protected List<Command> getCommands() {
         List<Command> toReturn = new ArrayList<Command>();
+        for (AbstractTask task : getTasks()) {
+            toReturn.addAll(task.getCommands());
+        }
+        return toReturn;
+    }
+
+    /**
+     * @return the entries of the single misalignments, so that each of them is replaced by a later misalignment of the
+     *         same elements
+     */
+    @Override
+    public List<JournalEntry> getJournalEntries() {
+        List<JournalEntry> entries = new ArrayList<>();
+        for (AbstractTask task : getTasks()) {
+            entries.addAll(((Journaled) task).getJournalEntries());
+        }
+        return entries;
+    }
+
+    private List<AbstractTask> getTasks() {
+        List<AbstractTask> tasks = new ArrayList<>();
         for (MisalignmentConfiguration misalignmentConfiguration : misalignments) {
             if (misalignmentConfiguration instanceof PatternOrClassMisalignmentConfiguration) {
-                toReturn.addAll(new SetClassMisalignment(
-                        (PatternOrClassMisalignmentConfiguration) misalignmentConfiguration).getCommands());
+                tasks.add(new SetClassMisalignment((PatternOrClassMisalignmentConfiguration) misalignmentConfiguration));
             } else {
-                toReturn.addAll(new SetMisalignment(misalignmentConfiguration).getCommands());
+                tasks.add(new SetMisalignment(misalignmentConfiguration));
             }
         }
-        return toReturn;
+        return tasks;
     }
 
 }
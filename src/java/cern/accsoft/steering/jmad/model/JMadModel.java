@@ -26,6 +26,8 @@ import java.io.File;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import cern.accsoft.steering.jmad.domain.aperture.Aperture;
 import cern.accsoft.steering.jmad.domain.ex.JMadModelException;
@@ -46,6 +48,8 @@ import cern.accsoft.steering.jmad.domain.track.TrackInitialCondition;
 import cern.accsoft.steering.jmad.domain.twiss.TwissInitialConditions;
 import cern.accsoft.steering.jmad.domain.var.custom.StrengthVarSet;
 import cern.accsoft.steering.jmad.kernel.JMadKernel;
+import cern.accsoft.steering.jmad.kernel.snapshot.KernelSnapshot;
+import cern.accsoft.steering.jmad.kernel.snapshot.KernelSnapshots;
 import cern.accsoft.steering.jmad.model.manage.StrengthVarManager;
 import cern.accsoft.steering.jmad.modeldefs.domain.JMadModelDefinition;
 import cern.accsoft.steering.jmad.modeldefs.domain.OpticsDefinition;
@@ -150,6 +154,9 @@ public interface JMadModel {
     /**
      * resets the model. Preserves the elements-state: if they are initialized, they will be reinitialized, otherwise
      * not.
+     * <p>
+     * If the warm standby is enabled in the startup configuration, then a prepared spare kernel is swapped in instead
+     * of restarting madx (see {@link JMadModelStartupConfiguration#isWarmStandby()}).
      * 
      * @throws JMadModelException if the reset fails
      */
@@ -162,6 +169,16 @@ public interface JMadModel {
      */
     void cleanup() throws JMadModelException;
 
+    /**
+     * the same as {@link #cleanup()}, but stops the kernel in the background (see
+     * {@link JMadKernel#stopAsync(long, TimeUnit)}), so that many models can be cleaned up concurrently.
+     * 
+     * @param timeout the maximum time to wait for madx to quit, before it is killed
+     * @param unit the unit of the timeout
+     * @return a future which completes as soon as the kernel is stopped and its files are deleted
+     */
+    CompletableFuture<Void> cleanupAsync(long timeout, TimeUnit unit);
+
     //
     // The methods for the calculation of the twiss-values and retrieving data.
     //
@@ -275,6 +292,16 @@ public interface JMadModel {
      */
     JMadKernel getKernel();
 
+    /**
+     * captures the complete state of the madx process of this model (sequences, variables, beams and the errors of the
+     * active sequence). The snapshot can be restored into other kernels by {@link KernelSnapshots#restore(JMadKernel,
+     * KernelSnapshot)}, which is much faster than initializing another model and replaying all the changes.
+     * 
+     * @return the snapshot
+     * @throws JMadModelException if the model is not initialized or madx fails to save its state
+     */
+    KernelSnapshot createKernelSnapshot() throws JMadModelException;
+
     /**
      * calls a file from madx.
      * 
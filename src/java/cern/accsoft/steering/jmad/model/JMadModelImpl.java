@@ -20,6 +20,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import cern.accsoft.steering.jmad.JMadException;
 import cern.accsoft.steering.jmad.domain.aperture.Aperture;
@@ -42,6 +44,7 @@ import cern.accsoft.steering.jmad.domain.knob.attribute.ElementAttribute;
 import cern.accsoft.steering.jmad.domain.knob.strength.SimpleStrength;
 import cern.accsoft.steering.jmad.domain.knob.strength.Strength;
 import cern.accsoft.steering.jmad.domain.machine.ApertureDefinition;
+import cern.accsoft.steering.jmad.domain.machine.MadxRange;
 import cern.accsoft.steering.jmad.domain.machine.Range;
 import cern.accsoft.steering.jmad.domain.machine.RangeDefinition;
 import cern.accsoft.steering.jmad.domain.machine.RangeListener;
@@ -77,6 +80,7 @@ import cern.accsoft.steering.jmad.domain.var.custom.StrengthVarSet;
 import cern.accsoft.steering.jmad.domain.var.enums.EalignVariables;
 import cern.accsoft.steering.jmad.domain.var.enums.MadxGlobalVariable;
 import cern.accsoft.steering.jmad.domain.var.enums.MadxTwissVariable;
+import cern.accsoft.steering.jmad.factory.JMadKernelFactory;
 import cern.accsoft.steering.jmad.io.ApertureReader;
 import cern.accsoft.steering.jmad.io.ApertureReaderImpl;
 import cern.accsoft.steering.jmad.kernel.JMadKernel;
@@ -103,6 +107,8 @@ import cern.accsoft.steering.jmad.kernel.task.SetMisalignmentsTask;
 import cern.accsoft.steering.jmad.kernel.task.ptc.InitPtcTask;
 import cern.accsoft.steering.jmad.kernel.task.ptc.RunPtcTwiss;
 import cern.accsoft.steering.jmad.kernel.task.track.DynapTask;
+import cern.accsoft.steering.jmad.kernel.snapshot.KernelSnapshot;
+import cern.accsoft.steering.jmad.kernel.snapshot.KernelSnapshots;
 import cern.accsoft.steering.jmad.kernel.task.track.TrackTask;
 import cern.accsoft.steering.jmad.model.manage.StrengthVarManager;
 import cern.accsoft.steering.jmad.modeldefs.domain.JMadModelDefinition;
@@ -150,6 +156,21 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
      */
     private JMadKernel kernel;
 
+    /**
+     * The factory to create spare kernels for the warm standby. Might be null, then no standby is possible.
+     */
+    private JMadKernelFactory kernelFactory;
+
+    /**
+     * The spare kernel, if the warm standby is enabled in the startup configuration. null otherwise.
+     */
+    private KernelStandby standby;
+
+    /**
+     * The state of madx directly after initialization, if it was needed for the warm standby or the auto recovery.
+     */
+    private KernelSnapshot initialSnapshot;
+
     /**
      * The last calculated optics-values
      */
@@ -308,10 +329,7 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
          * then we decide if we should load some default ranges and optics.
          */
 
-        OpticsDefinition opticsDefinition = getStartupConfiguration().getInitialOpticsDefinition();
-        if (opticsDefinition == null) {
-            opticsDefinition = getModelDefinition().getDefaultOpticsDefinition();
-        }
+        OpticsDefinition opticsDefinition = initialOpticsDefinition();
         if (opticsDefinition == null) {
             throw new JMadModelException(
                     "Neither a initial optic (in the startup configuration), nor a default optics is defined."
@@ -319,21 +337,108 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
         }
         setActiveOpticsDefinition(opticsDefinition);
 
+        RangeDefinition rangeDefinition = initialRangeDefinition();
+        if (rangeDefinition != null) {
+            setActiveRangeDefinition(rangeDefinition);
+        }
+        calcOptics();
+        captureInitialState(opticsDefinition, rangeDefinition);
+    }
+
+    private OpticsDefinition initialOpticsDefinition() {
+        OpticsDefinition opticsDefinition = getStartupConfiguration().getInitialOpticsDefinition();
+        if (opticsDefinition == null) {
+            opticsDefinition = getModelDefinition().getDefaultOpticsDefinition();
+        }
+        return opticsDefinition;
+    }
+
+    private RangeDefinition initialRangeDefinition() {
         RangeDefinition rangeDefinition = getStartupConfiguration().getInitialRangeDefinition();
         if ((rangeDefinition == null) && getStartupConfiguration().isLoadDefaultRange()) {
             rangeDefinition = getModelDefinition().getDefaultRangeDefinition();
         }
-        if (rangeDefinition != null) {
-            setActiveRangeDefinition(rangeDefinition);
+        return rangeDefinition;
+    }
+
+    /**
+     * captures the state of the freshly initialized kernel, if the warm standby or the auto recovery is enabled. Then
+     * it is used as recovery point of the kernel and to prepare a spare kernel.
+     */
+    private void captureInitialState(OpticsDefinition opticsDefinition, RangeDefinition rangeDefinition) {
+        closeStandby();
+        this.initialSnapshot = null;
+        boolean warmStandby = getStartupConfiguration().isWarmStandby();
+        if (warmStandby && (this.kernelFactory == null)) {
+            LOGGER.warn("Warm standby requested for model '{}', but no kernel factory is configured.", getName());
+            warmStandby = false;
+        }
+        if (!warmStandby && !getStartupConfiguration().isAutoRecovery()) {
+            return;
+        }
+
+        KernelSnapshot snapshot;
+        try {
+            snapshot = createKernelSnapshot();
+        } catch (JMadModelException e) {
+            LOGGER.warn("Could not capture the initial state of model '{}'. Continuing without warm standby and "
+                    + "auto recovery.", getName(), e);
+            return;
+        }
+        this.initialSnapshot = snapshot;
+        setRecoveryPoint(getKernel());
+        if (warmStandby) {
+            this.standby = new KernelStandby(this.kernelFactory, spare -> {
+                copyConfiguration(getKernel(), spare);
+                return null;
+            }, spare -> {
+                KernelSnapshots.restore(spare, snapshot);
+                return null;
+            }, opticsDefinition, rangeDefinition, getModelDefinition().getName());
+            this.standby.prepare();
+        }
+    }
+
+    /**
+     * copies the configuration of the current kernel to a spare one, as far as both are local kernels.
+     *
+     * @return false, if the spare was started with other settings than the current kernel has
+     */
+    private static boolean copyConfiguration(JMadKernel source, JMadKernel spare) {
+        if ((source instanceof JMadKernelImpl) && (spare instanceof JMadKernelImpl)) {
+            return ((JMadKernelImpl) source).copyConfigurationTo((JMadKernelImpl) spare);
+        }
+        return true;
+    }
+
+    private void setRecoveryPoint(JMadKernel recoveringKernel) {
+        if (getStartupConfiguration().isAutoRecovery() && (this.initialSnapshot != null)) {
+            recoveringKernel.setRecoveryPoint(this.initialSnapshot);
+        }
+    }
+
+    private void closeStandby() {
+        if (this.standby != null) {
+            this.standby.close();
+            this.standby = null;
         }
-        calcOptics();
     }
 
     private void processModelFiles(List<ModelFile> modelFiles) {
+        processModelFiles(modelFiles, true);
+    }
+
+    /**
+     * processes the given model files.
+     *
+     * @param modelFiles the files to process
+     * @param callFiles if false, then the callable files are not sent to madx (because madx already knows their
+     *            content). Strength files are still loaded into the strength manager and tables are read in any case.
+     */
+    private void processModelFiles(List<ModelFile> modelFiles, boolean callFiles) {
         boolean containsStrengthFile = false;
         for (ModelFile modelFile : modelFiles) {
-            if ((modelFile instanceof CallableModelFile) && (ParseType.STRENGTHS == ((CallableModelFile) modelFile)
-                    .getParseType())) {
+            if (isStrengthFile(modelFile)) {
                 containsStrengthFile = true;
                 break;
             }
@@ -346,10 +451,15 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
         }
 
         for (ModelFile modelFile : modelFiles) {
+            if (!callFiles && (modelFile instanceof CallableModelFile) && !isStrengthFile(modelFile)) {
+                continue;
+            }
             File file = getModelFileFinder().getFile(modelFile, getKernel());
             if (modelFile instanceof CallableModelFile) {
-                this.call(file);
-                if (ParseType.STRENGTHS == ((CallableModelFile) modelFile).getParseType()) {
+                if (callFiles) {
+                    this.call(file);
+                }
+                if (isStrengthFile(modelFile)) {
                     strengthVarManager.load(file);
                 }
             } else if (modelFile instanceof TableModelFile) {
@@ -365,6 +475,11 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
         }
     }
 
+    private static boolean isStrengthFile(ModelFile modelFile) {
+        return (modelFile instanceof CallableModelFile)
+                && (ParseType.STRENGTHS == ((CallableModelFile) modelFile).getParseType());
+    }
+
     /**
      * instructs madx to read a table from a file.
      * <p>
@@ -390,10 +505,69 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
 
     @Override
     public void reset() throws JMadModelException {
+        if (resetFromStandby()) {
+            return;
+        }
         cleanup();
         init();
     }
 
+    /**
+     * swaps in the spare kernel of the warm standby and brings the java side of the model into the state after
+     * initialization. The spare gets the configuration and the listeners of the old kernel, which is then stopped,
+     * and the next spare is prepared in the background.
+     *
+     * @return true, if the model was reset, false if no suitable spare kernel was available
+     * @throws JMadModelException if the initial range can not be set
+     */
+    private boolean resetFromStandby() throws JMadModelException {
+        KernelStandby currentStandby = this.standby;
+        if ((currentStandby == null) || !getStartupConfiguration().isWarmStandby()) {
+            return false;
+        }
+        OpticsDefinition opticsDefinition = initialOpticsDefinition();
+        RangeDefinition rangeDefinition = initialRangeDefinition();
+        if (!currentStandby.matches(opticsDefinition, rangeDefinition)) {
+            LOGGER.debug("Startup configuration of model '{}' changed. Spare kernel can not be used.", getName());
+            return false;
+        }
+        JMadKernel spare = currentStandby.take();
+        if (spare == null) {
+            return false;
+        }
+        if (!copyConfiguration(getKernel(), spare)) {
+            LOGGER.debug("Kernel configuration of model '{}' changed. Spare kernel can not be used.", getName());
+            currentStandby.retire(spare);
+            return false;
+        }
+
+        JMadKernel oldKernel;
+        synchronized (this) {
+            oldKernel = this.kernel;
+            this.kernel = spare;
+        }
+        if (oldKernel instanceof JMadKernelImpl) {
+            ((JMadKernelImpl) oldKernel).moveListenersTo(spare);
+        }
+        currentStandby.retire(oldKernel);
+        currentStandby.prepare();
+        setRecoveryPoint(spare);
+        LOGGER.debug("Swapped in spare kernel for model '{}'.", getName());
+
+        cleanupModelState();
+        processModelFiles(getModelDefinition().getInitFiles(), false);
+        processModelFiles(opticsDefinition.getInitFiles(), false);
+        this.activeOpticsDefinition = opticsDefinition;
+        this.dirtyModel = true;
+        fireOpticsDefinitionChanged();
+
+        if (rangeDefinition != null) {
+            setActiveRangeDefinition(rangeDefinition);
+        }
+        calcOptics();
+        return true;
+    }
+
     /**
      * @return true if the model is initialized, false otherwise.
      */
@@ -407,6 +581,7 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
 
     @Override
     public void cleanup() throws JMadModelException {
+        closeStandby();
         try {
             if (getKernel().isMadxRunning()) {
                 getKernel().stop();
@@ -414,7 +589,23 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
         } catch (JMadException e) {
             throw new JMadModelException("Error while stopping MadX-Kernel.", e);
         }
+        cleanupModelState();
+    }
+
+    @Override
+    public CompletableFuture<Void> cleanupAsync(long timeout, TimeUnit unit) {
+        closeStandby();
+        CompletableFuture<Void> stopped = CompletableFuture.completedFuture(null);
+        if (getKernel().isMadxRunning()) {
+            stopped = getKernel().stopAsync(timeout, unit).thenAccept(exitValue -> {
+                /* only wait for it */
+            });
+        }
+        cleanupModelState();
+        return stopped;
+    }
 
+    private void cleanupModelState() {
         this.activeOpticsDefinition = null;
         this.activeRangeDefinition = null;
         this.activeRange = null;
@@ -428,6 +619,21 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
         return this.kernel;
     }
 
+    @Override
+    public KernelSnapshot createKernelSnapshot() throws JMadModelException {
+        if (!isInitialized()) {
+            throw new JMadModelException("Model '" + this + "' is not initialized. Cannot capture its state.");
+        }
+        RangeDefinition rangeDefinition = getActiveRangeDefinition();
+        String sequenceName = (rangeDefinition == null) ? null : rangeDefinition.getSequenceDefinition().getName();
+        MadxRange madxRange = (rangeDefinition == null) ? null : rangeDefinition.getMadxRange();
+        try {
+            return KernelSnapshots.capture(getKernel(), sequenceName, madxRange);
+        } catch (JMadException e) {
+            throw new JMadModelException("Could not capture the state of model '" + this + "'.", e);
+        }
+    }
+
     @Override
     public List<Double> getValues(List<String> valueNames) throws JMadModelException {
         return this.getValuesResult(valueNames).getDoubleValues();
@@ -1192,6 +1398,10 @@ public class JMadModelImpl implements JMadModel, ElementAttributeReader {
         this.kernel = kernel;
     }
 
+    public void setKernelFactory(JMadKernelFactory kernelFactory) {
+        this.kernelFactory = kernelFactory;
+    }
+
     @Override
     public JMadModelStartupConfiguration getStartupConfiguration() {
         return startupConfiguration;
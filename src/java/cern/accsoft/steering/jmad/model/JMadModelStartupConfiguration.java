@@ -31,6 +31,8 @@ public class JMadModelStartupConfiguration {
     private boolean loadDefaultRange = true;
     private OpticsDefinition initialOpticsDefinition = null;
     private RangeDefinition initialRangeDefinition = null;
+    private boolean warmStandby = false;
+    private boolean autoRecovery = false;
 
     /**
      * @return true, if the default optics shall be loaded on startup
@@ -70,6 +72,28 @@ public class JMadModelStartupConfiguration {
         return this.initialOpticsDefinition;
     }
 
+    /**
+     * If this returns true, then the model keeps a second, already initialized kernel in the background. A
+     * {@link JMadModel#reset()} then only has to swap the kernels instead of restarting madx and replaying all the init
+     * files. This costs one additional madx process per model.
+     * 
+     * @return true, if a warm standby kernel shall be kept
+     */
+    public boolean isWarmStandby() {
+        return this.warmStandby;
+    }
+
+    /**
+     * If this returns true, then the state of madx after initialization is kept as recovery point of the kernel (see
+     * {@link cern.accsoft.steering.jmad.kernel.JMadKernel#setRecoveryPoint}). If madx terminates unexpectedly, the
+     * kernel restarts it and replays all values, misalignments and field errors set since then.
+     * 
+     * @return true, if the kernel shall recover automatically from a termination of madx
+     */
+    public boolean isAutoRecovery() {
+        return this.autoRecovery;
+    }
+
     /*
      * setters
      */
@@ -86,6 +110,14 @@ public class JMadModelStartupConfiguration {
         this.initialRangeDefinition = initialRangeDefinition;
     }
 
+    public void setWarmStandby(boolean warmStandby) {
+        this.warmStandby = warmStandby;
+    }
+
+    public void setAutoRecovery(boolean autoRecovery) {
+        this.autoRecovery = autoRecovery;
+    }
+
     /**
      * @deprecated does nothing!!!!
      */
@@ -97,7 +129,8 @@ public class JMadModelStartupConfiguration {
     @Override
     public String toString() {
         return "JMadModelStartupConfiguration [loadDefaultRange=" + loadDefaultRange + ", initialOpticsDefinition="
-                + initialOpticsDefinition + ", initialRangeDefinition=" + initialRangeDefinitionString() + "]";
+                + initialOpticsDefinition + ", initialRangeDefinition=" + initialRangeDefinitionString() + ", warmStandby="
+                + warmStandby + ", autoRecovery=" + autoRecovery + "]";
     }
 
     private String initialRangeDefinitionString() {
@@ -0,0 +1,177 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.model;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.domain.machine.RangeDefinition;
+import cern.accsoft.steering.jmad.factory.JMadKernelFactory;
+import cern.accsoft.steering.jmad.kernel.JMadKernel;
+import cern.accsoft.steering.jmad.kernel.KernelWork;
+import cern.accsoft.steering.jmad.modeldefs.domain.OpticsDefinition;
+
+/**
+ * Keeps one spare kernel for a model, which is already in the state the model had directly after its initialization.
+ * A reset of the model then only has to swap the kernels instead of starting madx and replaying all the init files.
+ * Preparing the spare and stopping the retired kernels is done on background threads.
+ * <p>
+ * The spare is only valid for the optics and range it was prepared for (see
+ * {@link #matches(OpticsDefinition, RangeDefinition)}).
+ */
+class KernelStandby {
+    private static final Logger LOGGER = LoggerFactory.getLogger(KernelStandby.class);
+
+    private final JMadKernelFactory kernelFactory;
+    private final KernelWork<?> configuration;
+    private final KernelWork<?> preparation;
+    private final OpticsDefinition opticsDefinition;
+    private final RangeDefinition rangeDefinition;
+    private final ExecutorService executor;
+
+    /** The spare kernel, as soon as it is prepared. null if none is being prepared. */
+    private Future<JMadKernel> spare;
+
+    /**
+     * @param kernelFactory the factory to create the spare kernels
+     * @param configuration the work which configures a created kernel before it is started
+     * @param preparation the work which brings a freshly started kernel into the initial state of the model
+     * @param opticsDefinition the optics the model was initialized with
+     * @param rangeDefinition the range the model was initialized with. Might be null.
+     * @param name the name to use for the background threads
+     */
+    KernelStandby(JMadKernelFactory kernelFactory, KernelWork<?> configuration, KernelWork<?> preparation,
+            OpticsDefinition opticsDefinition, RangeDefinition rangeDefinition, String name) {
+        this.kernelFactory = kernelFactory;
+        this.configuration = configuration;
+        this.preparation = preparation;
+        this.opticsDefinition = opticsDefinition;
+        this.rangeDefinition = rangeDefinition;
+        this.executor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("jmad-standby-" + name + "-%d").build());
+    }
+
+    /**
+     * @param opticsDefinition the optics the model shall be initialized with
+     * @param rangeDefinition the range the model shall be initialized with
+     * @return true, if the spare kernel is in the state which results from initializing with the given definitions
+     */
+    boolean matches(OpticsDefinition opticsDefinition, RangeDefinition rangeDefinition) {
+        return (this.opticsDefinition == opticsDefinition) && (this.rangeDefinition == rangeDefinition);
+    }
+
+    /**
+     * starts to prepare a new spare kernel in the background. Does nothing, if there is already one.
+     */
+    synchronized void prepare() {
+        if ((spare == null) && !executor.isShutdown()) {
+            spare = executor.submit(this::createSpare);
+        }
+    }
+
+    private JMadKernel createSpare() throws JMadException {
+        long start = System.nanoTime();
+        JMadKernel kernel = kernelFactory.createKernel();
+        try {
+            configuration.run(kernel);
+            kernel.start();
+            preparation.run(kernel);
+        } catch (JMadException | RuntimeException e) {
+            stopQuietly(kernel);
+            throw e;
+        }
+        LOGGER.debug("Prepared spare kernel in {} ms.", (System.nanoTime() - start) / 1000000);
+        return kernel;
+    }
+
+    /**
+     * takes the spare kernel. If it is still being prepared, this waits until it is ready. Afterwards, there is no
+     * spare kernel until {@link #prepare()} is called again.
+     *
+     * @return the running spare kernel or {@code null} if there is none or its preparation failed
+     */
+    JMadKernel take() {
+        Future<JMadKernel> future;
+        synchronized (this) {
+            future = spare;
+            spare = null;
+        }
+        if (future == null) {
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            LOGGER.warn("Could not prepare the spare kernel.", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            retire(future);
+            return null;
+        }
+    }
+
+    /**
+     * stops the given kernel in the background.
+     *
+     * @param kernel the kernel which is no longer used
+     */
+    void retire(JMadKernel kernel) {
+        try {
+            executor.execute(() -> stopQuietly(kernel));
+        } catch (RuntimeException e) {
+            /* the executor is already shut down */
+            stopQuietly(kernel);
+        }
+    }
+
+    private void retire(Future<JMadKernel> future) {
+        executor.execute(() -> {
+            try {
+                stopQuietly(future.get());
+            } catch (ExecutionException e) {
+                /* no kernel to stop */
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    /**
+     * stops the spare kernel (when its preparation is finished) and all the background threads.
+     */
+    synchronized void close() {
+        if (spare != null) {
+            retire(spare);
+            spare = null;
+        }
+        executor.shutdown();
+    }
+
+    private static void stopQuietly(JMadKernel kernel) {
+        try {
+            if (kernel.isMadxRunning()) {
+                kernel.stop();
+            }
+        } catch (JMadException | RuntimeException e) {
+            LOGGER.warn("Error while stopping retired kernel.", e);
+        }
+    }
+}
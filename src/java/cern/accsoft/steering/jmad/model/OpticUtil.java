@@ -30,6 +30,7 @@ import cern.accsoft.steering.jmad.domain.optics.OpticImpl;
 import cern.accsoft.steering.jmad.domain.optics.OpticPoint;
 import cern.accsoft.steering.jmad.domain.optics.OpticPointImpl;
 import cern.accsoft.steering.jmad.domain.result.tfs.TfsResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultImpl;
 import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultRequest;
 import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultRequestImpl;
 import cern.accsoft.steering.jmad.domain.var.enums.MadxTwissVariable;
@@ -75,7 +76,9 @@ public final class OpticUtil {
     }
 
     public static Optic createOptic(TfsResult tfsResult, MadxTwissVariable... variables) {
-        OpticImpl optic = new OpticImpl();
+        /* the optic shares the element names with the result, if possible */
+        OpticImpl optic = (tfsResult instanceof TfsResultImpl) ? new OpticImpl(((TfsResultImpl) tfsResult)
+                .getElementNameDictionary()) : new OpticImpl();
 
         /*
          * store the values from the twiss result
@@ -30,6 +30,8 @@
 package cern.accsoft.steering.jmad.model.manage;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import cern.accsoft.steering.jmad.domain.elem.Element;
 import cern.accsoft.steering.jmad.model.JMadModel;
@@ -92,6 +94,17 @@ public interface JMadModelManager {
      */
     public void cleanup();
 
+    /**
+     * cleans up all the models concurrently (see {@link JMadModel#cleanupAsync(long, TimeUnit)}). Does not remove
+     * anything from the Model-manager.
+     * 
+     * @param timeout the maximum time to wait for each madx process to quit, before it is killed
+     * @param unit the unit of the timeout
+     * @return a future which completes as soon as all the kernels are stopped and their files are deleted. Errors of
+     *         single models are only logged.
+     */
+    public CompletableFuture<Void> cleanupAsync(long timeout, TimeUnit unit);
+
     public List<Element> getCommonSequenceElements(JMadModel model1, JMadModel model2, SequenceElementFilter filter);
 
 }
@@ -31,6 +31,8 @@ package cern.accsoft.steering.jmad.model.manage;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -153,6 +155,18 @@ public class JMadModelManagerImpl implements JMadModelManager {
         }
     }
 
+    @Override
+    public CompletableFuture<Void> cleanupAsync(long timeout, TimeUnit unit) {
+        List<CompletableFuture<Void>> cleanups = new ArrayList<>();
+        for (JMadModel model : getModels()) {
+            cleanups.add(model.cleanupAsync(timeout, unit).exceptionally(e -> {
+                LOGGER.error("Error while cleaning up model.", e);
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(cleanups.toArray(new CompletableFuture<?>[cleanups.size()]));
+    }
+
     public void setjMadModelComparator(JMadModelComparator jMadModelComparator) {
         this.jMadModelComparator = jMadModelComparator;
     }
@@ -0,0 +1,334 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.model.pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import cern.accsoft.steering.jmad.domain.ex.JMadModelException;
+import cern.accsoft.steering.jmad.kernel.stats.LatencyHistogram;
+import cern.accsoft.steering.jmad.kernel.stats.LatencySnapshot;
+import cern.accsoft.steering.jmad.model.JMadModel;
+
+/**
+ * Runs {@link ModelWork} on the models of a {@link JMadKernelPool} within a latency budget. The latencies of each kind
+ * of work are recorded. If an execution takes longer than a high percentile of the previous ones, the same work is
+ * started a second time on an idle model of the pool (a 'hedge'). The first successful result wins. The model of the
+ * other attempt is discarded, so that its kernel stops working on the obsolete request, and it is replaced by a new
+ * one on demand. If no result arrives within the budget, the execution fails and all running attempts are discarded.
+ * <p>
+ * The latencies are measured from the start of the execution, also for a winning hedge. Attempts which are discarded
+ * while still running are recorded with the time until they were given up. This is only a lower bound of their actual
+ * latency (a censored sample), but ignoring them would make the learned percentiles too optimistic exactly when the
+ * work gets slow.
+ * <p>
+ * This bounds the tail latency of e.g. a periodic online model, where single MadX calls occasionally take much longer
+ * than usual. Since the hedge runs on a different model, the work must only depend on the initial state of the models
+ * in the pool, see {@link ModelWork}.
+ */
+public class HedgedExecutor implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HedgedExecutor.class);
+
+    /** The default percentile of the latencies after which an execution is hedged */
+    public static final double DEFAULT_HEDGE_PERCENTILE = 95;
+
+    /** The default number of recorded latencies, below which the percentile is not trusted */
+    public static final int DEFAULT_MIN_SAMPLES = 20;
+
+    /** The pool to lease the models from */
+    private final JMadKernelPool pool;
+
+    /** The percentile of the latencies after which an execution is hedged */
+    private final double hedgePercentile;
+
+    /** The number of recorded latencies, below which executions are hedged after half of their budget */
+    private final int minSamples;
+
+    /** The latencies of the successful and the censored latencies of the discarded attempts, by name of the work */
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+    /** Runs the attempts and gives back the models */
+    private final ExecutorService executor;
+
+    private final LongAdder executionCount = new LongAdder();
+    private final LongAdder hedgeCount = new LongAdder();
+    private final LongAdder hedgeWinCount = new LongAdder();
+    private final LongAdder deadlineMissCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+
+    /**
+     * creates an executor which hedges after the {@value #DEFAULT_HEDGE_PERCENTILE}th percentile.
+     *
+     * @param pool the pool to lease the models from
+     */
+    public HedgedExecutor(JMadKernelPool pool) {
+        this(pool, DEFAULT_HEDGE_PERCENTILE, DEFAULT_MIN_SAMPLES);
+    }
+
+    /**
+     * @param pool the pool to lease the models from
+     * @param hedgePercentile the percentile (between 0 and 100) of the previous latencies, after which an execution is
+     *            hedged
+     * @param minSamples the number of latencies which have to be recorded for a kind of work, before the percentile is
+     *            used. Until then, executions are hedged after half of their budget.
+     */
+    public HedgedExecutor(JMadKernelPool pool, double hedgePercentile, int minSamples) {
+        Preconditions.checkArgument((hedgePercentile > 0) && (hedgePercentile <= 100),
+                "The hedge percentile must be between 0 and 100, but was %s.", hedgePercentile);
+        Preconditions.checkArgument(minSamples >= 0, "minSamples must not be negative, but was %s.", minSamples);
+        this.pool = Preconditions.checkNotNull(pool, "pool must not be null");
+        this.hedgePercentile = hedgePercentile;
+        this.minSamples = minSamples;
+        this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("jmad-hedged-executor-" + Integer.toHexString(hashCode()) + "-%d").build());
+    }
+
+    /**
+     * runs the work on a model of the pool and hedges it on a second one, if it takes unusually long.
+     *
+     * @param name the name of the kind of work. The latencies are learned separately for each name.
+     * @param work the work to run
+     * @param budget the maximum time until the result has to be available (including waiting for a model)
+     * @param unit the unit of the budget
+     * @return the result of the first successful attempt
+     * @throws JMadModelException if no result arrived within the budget, or all attempts failed (then the failure of
+     *             the first attempt is thrown)
+     */
+    public <T> T execute(String name, ModelWork<T> work, long budget, TimeUnit unit) throws JMadModelException {
+        long start = System.nanoTime();
+        /* limited, so that the deadline does not overflow */
+        long budgetNanos = Math.min(unit.toNanos(budget), Long.MAX_VALUE / 2);
+        long deadline = start + budgetNanos;
+        executionCount.increment();
+
+        JMadModel primaryModel = pool.lease(budget, unit);
+        if (primaryModel == null) {
+            deadlineMissCount.increment();
+            throw new JMadModelException("No model of the pool became available within the budget of "
+                    + unit.toMillis(budget) + " ms for '" + name + "'.");
+        }
+
+        BlockingQueue<Attempt<T>> completions = new LinkedBlockingQueue<>();
+        List<Attempt<T>> attempts = new ArrayList<>(2);
+        attempts.add(startAttempt(primaryModel, work, completions));
+        long hedgeTime = start + hedgeDelayNanos(name, budgetNanos);
+        try {
+            Attempt<T> winner = null;
+            JMadModelException firstFailure = null;
+            int running = 1;
+            boolean hedged = false;
+            while ((winner == null) && (running > 0)) {
+                long now = System.nanoTime();
+                if (now - deadline >= 0) {
+                    break;
+                }
+                long waitNanos = hedged ? deadline - now : Math.min(deadline, hedgeTime) - now;
+                Attempt<T> completed = completions.poll(Math.max(0, waitNanos), TimeUnit.NANOSECONDS);
+                if (completed != null) {
+                    running--;
+                    if (completed.failure == null) {
+                        winner = completed;
+                    } else if (firstFailure == null) {
+                        firstFailure = completed.failure;
+                    }
+                } else if (!hedged && (System.nanoTime() - hedgeTime >= 0)) {
+                    /* we try only once, also if there is no idle model */
+                    hedged = true;
+                    running += hedge(name, work, completions, attempts);
+                }
+            }
+
+            recordLatencies(name, start, winner, attempts);
+            if (winner != null) {
+                if (winner != attempts.get(0)) {
+                    hedgeWinCount.increment();
+                }
+                return winner.result;
+            }
+            if (running == 0) {
+                failureCount.increment();
+                throw firstFailure;
+            }
+            deadlineMissCount.increment();
+            throw new JMadModelException("No result for '" + name + "' within the budget of " + unit.toMillis(budget)
+                    + " ms.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMadModelException("Interrupted while waiting for the result of '" + name + "'.", e);
+        } finally {
+            giveBack(attempts);
+        }
+    }
+
+    /**
+     * starts a second attempt, if there is an idle model in the pool.
+     *
+     * @return the number of started attempts (0 or 1)
+     */
+    private <T> int hedge(String name, ModelWork<T> work, BlockingQueue<Attempt<T>> completions,
+            List<Attempt<T>> attempts) {
+        JMadModel hedgeModel = pool.tryLeaseIdle();
+        if (hedgeModel == null) {
+            LOGGER.debug("'{}' takes unusually long, but there is no idle model to hedge it.", name);
+            return 0;
+        }
+        LOGGER.debug("'{}' takes unusually long. Hedging it on a second model.", name);
+        hedgeCount.increment();
+        attempts.add(startAttempt(hedgeModel, work, completions));
+        return 1;
+    }
+
+    /**
+     * records the latency of the winner and the censored latencies of the attempts which are still running, all
+     * measured from the start of the execution.
+     */
+    private <T> void recordLatencies(String name, long start, Attempt<T> winner, List<Attempt<T>> attempts) {
+        LatencyHistogram histogram = latencyHistogram(name);
+        long now = System.nanoTime();
+        for (Attempt<T> attempt : attempts) {
+            if (attempt == winner) {
+                histogram.record(attempt.finishNanos - start);
+            } else if (!attempt.done) {
+                histogram.record(now - start);
+            }
+        }
+    }
+
+    private <T> Attempt<T> startAttempt(JMadModel model, ModelWork<T> work, BlockingQueue<Attempt<T>> completions) {
+        Attempt<T> attempt = new Attempt<>(model);
+        try {
+            executor.execute(() -> attempt.run(work, completions));
+        } catch (RuntimeException e) {
+            attempt.fail(new JMadModelException("Could not start the work on model '" + model + "'.", e));
+            completions.add(attempt);
+        }
+        return attempt;
+    }
+
+    /**
+     * returns the models of the finished attempts to the pool in the background and discards the ones which are still
+     * busy. After the executor is closed, the models are returned directly.
+     */
+    private <T> void giveBack(List<Attempt<T>> attempts) {
+        for (Attempt<T> attempt : attempts) {
+            JMadModel model = attempt.model;
+            if (attempt.done) {
+                release(model);
+            } else {
+                LOGGER.debug("Discarding model '{}' of an obsolete attempt.", model);
+                pool.discard(model);
+            }
+        }
+    }
+
+    private void release(JMadModel model) {
+        if (!executor.isShutdown()) {
+            try {
+                executor.execute(() -> pool.release(model));
+                return;
+            } catch (RejectedExecutionException e) {
+                /* closed in the meantime */
+            }
+        }
+        pool.release(model);
+    }
+
+    /**
+     * @param name the name of the work
+     * @param budgetNanos the budget of the execution
+     * @return the time after which the execution shall be hedged
+     */
+    private long hedgeDelayNanos(String name, long budgetNanos) {
+        LatencySnapshot snapshot = latencyHistogram(name).snapshot();
+        if (snapshot.getCount() < minSamples) {
+            return budgetNanos / 2;
+        }
+        return Math.min(snapshot.getPercentile(hedgePercentile), budgetNanos);
+    }
+
+    private LatencyHistogram latencyHistogram(String name) {
+        return latencies.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * @param name the name of the kind of work
+     * @return the latencies of the given kind of work, including the censored ones of discarded attempts
+     */
+    public LatencySnapshot getLatency(String name) {
+        return latencyHistogram(name).snapshot();
+    }
+
+    /**
+     * @return the current counters of executions, hedges and deadline misses
+     */
+    public HedgingStatistics getStatistics() {
+        return new HedgingStatistics(executionCount.sum(), hedgeCount.sum(), hedgeWinCount.sum(),
+                deadlineMissCount.sum(), failureCount.sum());
+    }
+
+    /**
+     * stops the threads of this executor. The pool is not closed.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * One run of the work on one model.
+     */
+    private static class Attempt<T> {
+        private final JMadModel model;
+        private volatile boolean done = false;
+        private T result;
+        private JMadModelException failure;
+        private long finishNanos;
+
+        Attempt(JMadModel model) {
+            this.model = model;
+        }
+
+        void run(ModelWork<T> work, BlockingQueue<Attempt<T>> completions) {
+            try {
+                result = work.run(model);
+            } catch (JMadModelException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new JMadModelException("Error while running work on model '" + model + "'.", e);
+            }
+            finishNanos = System.nanoTime();
+            done = true;
+            completions.add(this);
+        }
+
+        void fail(JMadModelException exception) {
+            failure = exception;
+            done = true;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.model.pool;
+
+/**
+ * An immutable snapshot of the counters of a {@link HedgedExecutor}.
+ */
+public class HedgingStatistics {
+
+    private final long executionCount;
+    private final long hedgeCount;
+    private final long hedgeWinCount;
+    private final long deadlineMissCount;
+    private final long failureCount;
+
+    HedgingStatistics(long executionCount, long hedgeCount, long hedgeWinCount, long deadlineMissCount,
+            long failureCount) {
+        this.executionCount = executionCount;
+        this.hedgeCount = hedgeCount;
+        this.hedgeWinCount = hedgeWinCount;
+        this.deadlineMissCount = deadlineMissCount;
+        this.failureCount = failureCount;
+    }
+
+    /**
+     * @return the number of executions
+     */
+    public long getExecutionCount() {
+        return executionCount;
+    }
+
+    /**
+     * @return the number of executions, for which a second attempt was started on another model
+     */
+    public long getHedgeCount() {
+        return hedgeCount;
+    }
+
+    /**
+     * @return the number of executions, for which the second attempt delivered the result
+     */
+    public long getHedgeWinCount() {
+        return hedgeWinCount;
+    }
+
+    /**
+     * @return the number of executions, which did not deliver a result within their budget
+     */
+    public long getDeadlineMissCount() {
+        return deadlineMissCount;
+    }
+
+    /**
+     * @return the number of executions, for which all attempts failed
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * @return the fraction of the executions which were hedged, 0 if there were none
+     */
+    public double getHedgeRate() {
+        return rate(hedgeCount);
+    }
+
+    /**
+     * @return the fraction of the executions which missed their deadline, 0 if there were none
+     */
+    public double getDeadlineMissRate() {
+        return rate(deadlineMissCount);
+    }
+
+    private double rate(long count) {
+        return (executionCount == 0) ? 0 : ((double) count) / executionCount;
+    }
+
+    @Override
+    public String toString() {
+        return "HedgingStatistics [executions=" + executionCount + ", hedges=" + hedgeCount + ", hedgeWins="
+                + hedgeWinCount + ", deadlineMisses=" + deadlineMissCount + ", failures=" + failureCount + "]";
+    }
+}
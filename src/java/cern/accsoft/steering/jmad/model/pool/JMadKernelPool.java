@@ -0,0 +1,128 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.model.pool;
+
+import java.util.concurrent.TimeUnit;
+
+import cern.accsoft.steering.jmad.domain.ex.JMadModelException;
+import cern.accsoft.steering.jmad.model.JMadModel;
+
+/**
+ * A pool of models of the same model definition, each of them running its own, fully initialized MadX kernel. This
+ * allows to run many short, independent calculations (e.g. the elements of a response matrix, parameter sweeps or
+ * tracking of several particles) in parallel, without paying the startup costs of MadX for each of them.
+ * <p>
+ * A typical usage looks like:
+ *
+ * <pre>
+ * JMadModel model = pool.lease();
+ * try {
+ *     model.setValue(&quot;kqf&quot;, 0.01);
+ *     TfsResult result = model.twiss(request);
+ * } finally {
+ *     pool.release(model);
+ * }
+ * </pre>
+ *
+ * When a model is released, it is brought back to the state it had directly after initialization: the state of MadX
+ * (sequences including installed elements, variables, beams and errors) is restored from a snapshot taken after the
+ * initialization, the initial optics is reloaded, the initial range is made active again and the twiss initial
+ * conditions are restored. If the snapshot could not be taken, the model is completely re-initialized instead. A caller
+ * who changed the Java side of the model in other ways (e.g. added knobs) has to return it by
+ * {@link #invalidate(JMadModel)}.
+ */
+public interface JMadKernelPool extends AutoCloseable {
+
+    /**
+     * leases a model from the pool. If no idle model is available, but the pool is not yet full, then a new model is
+     * created and initialized. Otherwise this method blocks until another caller returns a model.
+     *
+     * @return an initialized model, which is exclusively owned by the caller until it is returned
+     * @throws JMadModelException if the initialization of a new model fails, the waiting was interrupted or the pool
+     *             is already closed
+     */
+    JMadModel lease() throws JMadModelException;
+
+    /**
+     * the same as {@link #lease()}, but waits at most the given time for a model to become available.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return an initialized model or {@code null} if no model became available within the given time
+     * @throws JMadModelException if the initialization of a new model fails, the waiting was interrupted or the pool
+     *             is already closed
+     */
+    JMadModel lease(long timeout, TimeUnit unit) throws JMadModelException;
+
+    /**
+     * leases an idle model, if there is one. In contrast to the other lease methods, this neither waits nor creates a
+     * new model.
+     *
+     * @return an idle model or {@code null} if none is available right now
+     */
+    JMadModel tryLeaseIdle();
+
+    /**
+     * returns a model to the pool. The state of its kernel is restored from the snapshot taken after initialization and
+     * the model is reset to its initial optics, range and twiss initial conditions before it is handed out again. If
+     * this fails, the model is discarded and replaced by a new one on demand.
+     *
+     * @param model the model to return, as obtained by one of the lease methods
+     */
+    void release(JMadModel model);
+
+    /**
+     * returns a model, whose state can not be restored by {@link #release(JMadModel)}. The model is completely
+     * re-initialized (i.e. its kernel is restarted) before it is handed out again.
+     *
+     * @param model the model to return, as obtained by one of the lease methods
+     */
+    void invalidate(JMadModel model);
+
+    /**
+     * removes a model from the pool, which might still be busy (e.g. because its result is not needed anymore). Its
+     * kernel is stopped in the background without waiting for running executions. A new model is created on demand.
+     *
+     * @param model the model to remove, as obtained by one of the lease methods
+     */
+    void discard(JMadModel model);
+
+    /**
+     * initializes models (in parallel) until the pool is full, so that later leases do not have to wait for a MadX
+     * startup.
+     *
+     * @throws JMadModelException if the initialization of one of the models fails
+     */
+    void prestart() throws JMadModelException;
+
+    /**
+     * @return the maximum number of models (and therefore MadX processes) within this pool
+     */
+    int getSize();
+
+    /**
+     * @return the number of models which are currently initialized and ready to be leased
+     */
+    int getIdleCount();
+
+    /**
+     * @return the number of models which are currently leased
+     */
+    int getLeasedCount();
+
+    /**
+     * stops all the idle models. Models which are currently leased are stopped as soon as they are returned. Further
+     * leases fail.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,416 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.model.pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.domain.ex.JMadModelException;
+import cern.accsoft.steering.jmad.domain.machine.RangeDefinition;
+import cern.accsoft.steering.jmad.factory.JMadModelFactory;
+import cern.accsoft.steering.jmad.kernel.snapshot.KernelSnapshot;
+import cern.accsoft.steering.jmad.kernel.snapshot.KernelSnapshots;
+import cern.accsoft.steering.jmad.model.JMadModel;
+import cern.accsoft.steering.jmad.model.JMadModelImpl;
+import cern.accsoft.steering.jmad.model.JMadModelStartupConfiguration;
+import cern.accsoft.steering.jmad.model.ModelMode;
+import cern.accsoft.steering.jmad.modeldefs.domain.JMadModelDefinition;
+import cern.accsoft.steering.jmad.modeldefs.domain.OpticsDefinition;
+
+/**
+ * The default implementation of a {@link JMadKernelPool}. The models are created lazily on the first leases (or all at
+ * once by {@link #prestart()}) and are kept running until the pool is closed. Idle models are handed out in LIFO
+ * order, so that a lightly loaded pool always works with the same (warm) processes.
+ */
+public class JMadKernelPoolImpl implements JMadKernelPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JMadKernelPoolImpl.class);
+
+    /** The default size of a pool: one MadX process per available core */
+    public static final int DEFAULT_SIZE = Runtime.getRuntime().availableProcessors();
+
+    /** The time to wait for a discarded model to stop, before its process is destroyed */
+    private static final long DISCARD_TIMEOUT_MILLIS = 100;
+
+    /** The factory to create new models */
+    private final JMadModelFactory modelFactory;
+
+    /** The definition of all the models in this pool */
+    private final JMadModelDefinition modelDefinition;
+
+    /** The configuration to initialize the models with. Might be null. */
+    private final JMadModelStartupConfiguration startupConfiguration;
+
+    /** The maximum number of models */
+    private final int size;
+
+    /** One permit per model which may be leased */
+    private final Semaphore permits;
+
+    /** The initialized models, which are currently not leased */
+    private final BlockingDeque<JMadModel> idleModels = new LinkedBlockingDeque<>();
+
+    /** The models, which are currently leased */
+    private final Set<JMadModel> leasedModels = ConcurrentHashMap.newKeySet();
+
+    /** The state directly after initialization for all living models */
+    private final Map<JMadModel, InitialState> initialStates = new ConcurrentHashMap<>();
+
+    /** true, as soon as the pool was closed */
+    private volatile boolean closed = false;
+
+    /**
+     * creates a pool with one model per available core.
+     *
+     * @param modelFactory the factory to use for creating the models
+     * @param modelDefinition the model definition for all the models
+     * @param startupConfiguration the configuration (e.g. optics and range) to initialize the models with. If this is
+     *            {@code null}, then the defaults of the model definition are used.
+     */
+    public JMadKernelPoolImpl(JMadModelFactory modelFactory, JMadModelDefinition modelDefinition,
+            JMadModelStartupConfiguration startupConfiguration) {
+        this(modelFactory, modelDefinition, startupConfiguration, DEFAULT_SIZE);
+    }
+
+    /**
+     * @param modelFactory the factory to use for creating the models
+     * @param modelDefinition the model definition for all the models
+     * @param startupConfiguration the configuration (e.g. optics and range) to initialize the models with. If this is
+     *            {@code null}, then the defaults of the model definition are used.
+     * @param size the maximum number of models (and therefore MadX processes) within the pool
+     */
+    public JMadKernelPoolImpl(JMadModelFactory modelFactory, JMadModelDefinition modelDefinition,
+            JMadModelStartupConfiguration startupConfiguration, int size) {
+        Preconditions.checkArgument(size > 0, "The size of the pool must be positive, but was %s.", size);
+        this.modelFactory = Preconditions.checkNotNull(modelFactory, "modelFactory must not be null");
+        this.modelDefinition = Preconditions.checkNotNull(modelDefinition, "modelDefinition must not be null");
+        this.startupConfiguration = startupConfiguration;
+        this.size = size;
+        this.permits = new Semaphore(size, true);
+    }
+
+    @Override
+    public JMadModel lease() throws JMadModelException {
+        ensureOpen();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMadModelException("Interrupted while waiting for a model of the pool.", e);
+        }
+        return leaseWithPermit();
+    }
+
+    @Override
+    public JMadModel lease(long timeout, TimeUnit unit) throws JMadModelException {
+        ensureOpen();
+        try {
+            if (!permits.tryAcquire(timeout, unit)) {
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMadModelException("Interrupted while waiting for a model of the pool.", e);
+        }
+        return leaseWithPermit();
+    }
+
+    @Override
+    public JMadModel tryLeaseIdle() {
+        if (closed || !permits.tryAcquire()) {
+            return null;
+        }
+        JMadModel model = idleModels.pollFirst();
+        if (model == null) {
+            permits.release();
+            return null;
+        }
+        leasedModels.add(model);
+        return model;
+    }
+
+    private JMadModel leaseWithPermit() throws JMadModelException {
+        try {
+            ensureOpen();
+            JMadModel model = takeIdleOrCreate();
+            leasedModels.add(model);
+            return model;
+        } catch (JMadModelException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private JMadModel takeIdleOrCreate() throws JMadModelException {
+        JMadModel model = idleModels.pollFirst();
+        if (model != null) {
+            return model;
+        }
+        return createModel();
+    }
+
+    @Override
+    public void release(JMadModel model) {
+        giveBack(model, false);
+    }
+
+    @Override
+    public void invalidate(JMadModel model) {
+        giveBack(model, true);
+    }
+
+    private void giveBack(JMadModel model, boolean reinitialize) {
+        if (!leasedModels.remove(model)) {
+            throw new IllegalArgumentException("The model '" + model + "' was not leased from this pool.");
+        }
+        try {
+            if (!closed) {
+                if (reinitialize || !model.isInitialized()) {
+                    reinitialize(model);
+                } else {
+                    restore(model);
+                }
+            }
+            addIdle(model);
+        } catch (JMadModelException | RuntimeException e) {
+            LOGGER.warn("Could not bring model '{}' back to its initial state. Discarding it.", model, e);
+            dispose(model);
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void discard(JMadModel model) {
+        if (!leasedModels.remove(model)) {
+            throw new IllegalArgumentException("The model '" + model + "' was not leased from this pool.");
+        }
+        initialStates.remove(model);
+        try {
+            model.cleanupAsync(DISCARD_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).whenComplete((result, e) -> {
+                if (e != null) {
+                    LOGGER.warn("Error while stopping discarded model '{}'.", model, e);
+                }
+            });
+        } catch (RuntimeException e) {
+            LOGGER.warn("Error while stopping discarded model '{}'.", model, e);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private synchronized void addIdle(JMadModel model) {
+        if (closed) {
+            dispose(model);
+        } else {
+            idleModels.offerFirst(model);
+        }
+    }
+
+    @Override
+    public void prestart() throws JMadModelException {
+        ensureOpen();
+        int count = 0;
+        while (permits.tryAcquire()) {
+            count++;
+        }
+        /* the idle models correspond to some of the permits we got, so we only have to create the rest */
+        int missing = Math.max(0, count - idleModels.size());
+        permits.release(count - missing);
+        if (missing == 0) {
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(missing, new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("jmad-kernel-pool-" + Integer.toHexString(hashCode()) + "-prestart-%d").build());
+        try {
+            List<Future<JMadModel>> futures = new ArrayList<>();
+            for (int i = 0; i < missing; i++) {
+                futures.add(executor.submit(this::createModel));
+            }
+
+            JMadModelException firstException = null;
+            for (Future<JMadModel> future : futures) {
+                try {
+                    addIdle(future.get());
+                } catch (ExecutionException e) {
+                    if (firstException == null) {
+                        firstException = new JMadModelException("Error while prestarting models of the pool.",
+                                e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    if (firstException == null) {
+                        firstException = new JMadModelException("Interrupted while prestarting models.", e);
+                    }
+                } finally {
+                    permits.release();
+                }
+            }
+            if (firstException != null) {
+                throw firstException;
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    @Override
+    public int getIdleCount() {
+        return idleModels.size();
+    }
+
+    @Override
+    public int getLeasedCount() {
+        return leasedModels.size();
+    }
+
+    @Override
+    public void close() {
+        List<JMadModel> models = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            idleModels.drainTo(models);
+        }
+        for (JMadModel model : models) {
+            dispose(model);
+        }
+    }
+
+    private void ensureOpen() throws JMadModelException {
+        if (closed) {
+            throw new JMadModelException("The pool for model definition '" + modelDefinition.getName()
+                    + "' is already closed.");
+        }
+    }
+
+    /**
+     * creates and initializes a new model and remembers its initial state.
+     */
+    private JMadModel createModel() throws JMadModelException {
+        LOGGER.debug("Creating new model for pool of model definition '{}'.", modelDefinition.getName());
+        JMadModel model = modelFactory.createModel(modelDefinition);
+        if (startupConfiguration != null) {
+            model.setStartupConfiguration(startupConfiguration);
+        }
+        try {
+            model.init();
+        } catch (JMadModelException | RuntimeException e) {
+            dispose(model);
+            throw e;
+        }
+        initialStates.put(model, new InitialState(model));
+        return model;
+    }
+
+    private void reinitialize(JMadModel model) throws JMadModelException {
+        model.reset();
+        initialStates.put(model, new InitialState(model));
+    }
+
+    /**
+     * brings a still running model back to the state it had after initialization. The snapshot undoes all the changes
+     * within madx (installed elements, misalignments, beams and variables). Reloading the optics resets the strengths
+     * on the Java side and re-uses the active range. Without a snapshot, the model is re-initialized.
+     */
+    private void restore(JMadModel model) throws JMadModelException {
+        InitialState initialState = initialStates.get(model);
+        if (initialState.snapshot == null) {
+            reinitialize(model);
+            return;
+        }
+        try {
+            KernelSnapshots.restore(model.getKernel(), initialState.snapshot);
+        } catch (JMadException e) {
+            throw new JMadModelException("Could not restore the initial state of the kernel of model '" + model
+                    + "'.", e);
+        }
+        model.setMode(initialState.mode);
+        model.setActiveOpticsDefinition(initialState.opticsDefinition);
+
+        RangeDefinition rangeDefinition = initialState.rangeDefinition;
+        if (rangeDefinition == null) {
+            return;
+        }
+        if (model.getActiveRangeDefinition() != rangeDefinition) {
+            model.setActiveRangeDefinition(rangeDefinition);
+        }
+        if (model instanceof JMadModelImpl) {
+            /* setting the same range again does not touch the initial conditions, so we restore them explicitly */
+            ((JMadModelImpl) model).setTwissInitialConditions(rangeDefinition.getTwiss().clone());
+        }
+    }
+
+    private void dispose(JMadModel model) {
+        initialStates.remove(model);
+        try {
+            model.cleanup();
+        } catch (JMadModelException | RuntimeException e) {
+            LOGGER.warn("Error while cleaning up pooled model '{}'.", model, e);
+        }
+    }
+
+    /**
+     * The state of a model which is restored, when it is returned to the pool.
+     */
+    private static class InitialState {
+        private final OpticsDefinition opticsDefinition;
+        private final RangeDefinition rangeDefinition;
+        private final ModelMode mode;
+
+        /** the state within madx, null if it could not be captured */
+        private final KernelSnapshot snapshot;
+
+        InitialState(JMadModel model) {
+            this.opticsDefinition = model.getActiveOpticsDefinition();
+            this.rangeDefinition = model.getActiveRangeDefinition();
+            this.mode = model.getMode();
+            this.snapshot = captureSnapshot(model);
+        }
+
+        private static KernelSnapshot captureSnapshot(JMadModel model) {
+            try {
+                return model.createKernelSnapshot();
+            } catch (JMadModelException | RuntimeException e) {
+                LOGGER.warn("Could not capture the initial state of pooled model '{}'. It will be re-initialized "
+                        + "whenever it is returned.", model, e);
+                return null;
+            }
+        }
+    }
+}
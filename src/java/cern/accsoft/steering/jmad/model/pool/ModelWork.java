@@ -0,0 +1,33 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.model.pool;
+
+import cern.accsoft.steering.jmad.domain.ex.JMadModelException;
+import cern.accsoft.steering.jmad.model.JMadModel;
+
+/**
+ * A calculation on a model leased from a {@link JMadKernelPool}. The model is in its initial state when the work
+ * starts, so the work has to apply all its settings itself. This allows to run the same work on any model of the pool
+ * (see {@link HedgedExecutor}).
+ *
+ * @param <T> the type of the result of the work
+ */
+@FunctionalInterface
+public interface ModelWork<T> {
+
+    /**
+     * @param model the leased model to work on
+     * @return the result of the work
+     * @throws JMadModelException if the work fails
+     */
+    T run(JMadModel model) throws JMadModelException;
+}
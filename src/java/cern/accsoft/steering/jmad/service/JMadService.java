@@ -28,6 +28,7 @@ package cern.accsoft.steering.jmad.service;
 import cern.accsoft.steering.jmad.model.JMadModel;
 import cern.accsoft.steering.jmad.model.JMadModelStartupConfiguration;
 import cern.accsoft.steering.jmad.model.manage.JMadModelManager;
+import cern.accsoft.steering.jmad.model.pool.JMadKernelPool;
 import cern.accsoft.steering.jmad.modeldefs.JMadModelDefinitionManager;
 import cern.accsoft.steering.jmad.modeldefs.domain.JMadModelDefinition;
 import cern.accsoft.steering.jmad.modeldefs.io.JMadModelDefinitionExporter;
@@ -86,6 +87,28 @@ public interface JMadService {
      */
     JMadModel createModel(JMadModelDefinition definition, JMadModelStartupConfiguration startupConfiguration);
 
+    /**
+     * creates a pool of models for the given model definition, which can be used to run independent calculations in
+     * parallel. The size of the pool is the number of available cores. The models of the pool are not added to the
+     * model manager.
+     * @param definition the model definition for all the models of the pool
+     * @param startupConfiguration the startup configuration (optics and range) for the models. May be {@code null}, then
+     *            the defaults of the model definition are used.
+     * @return the new pool
+     */
+    JMadKernelPool createKernelPool(JMadModelDefinition definition, JMadModelStartupConfiguration startupConfiguration);
+
+    /**
+     * creates a pool of models of the given size for the given model definition.
+     * @param definition the model definition for all the models of the pool
+     * @param startupConfiguration the startup configuration (optics and range) for the models. May be {@code null}, then
+     *            the defaults of the model definition are used.
+     * @param size the maximum number of models (and therefore MadX processes) in the pool
+     * @return the new pool
+     */
+    JMadKernelPool createKernelPool(JMadModelDefinition definition, JMadModelStartupConfiguration startupConfiguration,
+            int size);
+
     /**
      * removes the model from the list of available models. I.e. removes all internal references to this model.
      * 
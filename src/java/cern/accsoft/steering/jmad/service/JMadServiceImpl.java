@@ -32,6 +32,8 @@ import org.slf4j.LoggerFactory;
 import cern.accsoft.steering.jmad.factory.JMadModelFactory;
 import cern.accsoft.steering.jmad.model.JMadModel;
 import cern.accsoft.steering.jmad.model.manage.JMadModelManager;
+import cern.accsoft.steering.jmad.model.pool.JMadKernelPool;
+import cern.accsoft.steering.jmad.model.pool.JMadKernelPoolImpl;
 import cern.accsoft.steering.jmad.modeldefs.JMadModelDefinitionManager;
 import cern.accsoft.steering.jmad.modeldefs.domain.JMadModelDefinition;
 import cern.accsoft.steering.jmad.modeldefs.io.JMadModelDefinitionExporter;
@@ -102,6 +104,18 @@ public class JMadServiceImpl implements JMadService {
         return model;
     }
 
+    @Override
+    public JMadKernelPool createKernelPool(JMadModelDefinition definition,
+            JMadModelStartupConfiguration startupConfiguration) {
+        return createKernelPool(definition, startupConfiguration, JMadKernelPoolImpl.DEFAULT_SIZE);
+    }
+
+    @Override
+    public JMadKernelPool createKernelPool(JMadModelDefinition definition,
+            JMadModelStartupConfiguration startupConfiguration, int size) {
+        return new JMadKernelPoolImpl(getModelFactory(), definition, startupConfiguration, size);
+    }
+
     @Override
     public JMadPreferences getPreferences() {
         if (this.preferences == null) {
@@ -0,0 +1,144 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A writer, which hands all the written text over to a background thread, which writes it to the delegate writer.
+ * Writing therefore never blocks on I/O. The queue between the two threads is bounded: If it is full, further text is
+ * dropped and a note about the number of dropped chunks is written as soon as there is space again. The delegate is
+ * flushed by the background thread whenever the queue runs empty, so {@link #flush()} does nothing.
+ */
+public class AsyncWriter extends Writer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncWriter.class);
+
+    /** the maximum time (in ms) to wait for the background thread to write the remaining text on close */
+    private static final long CLOSE_TIMEOUT = 5000;
+
+    /** the marker which tells the background thread to stop. Compared by identity. */
+    private static final String END = new String("end");
+
+    private final Writer delegate;
+    private final BlockingQueue<String> queue;
+    private final AtomicLong droppedCount = new AtomicLong(0);
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean closed = false;
+
+    /**
+     * creates the writer and starts its background thread.
+     *
+     * @param delegate the writer to which the text is finally written. It is closed together with this writer.
+     * @param capacity the maximum number of chunks (i.e. calls to one of the write methods) waiting to be written
+     * @param threadFactory the factory to create the background thread
+     */
+    public AsyncWriter(Writer delegate, int capacity, ThreadFactory threadFactory) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        threadFactory.newThread(this::drain).start();
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        enqueue(new String(cbuf, off, len));
+    }
+
+    @Override
+    public void write(String str) throws IOException {
+        enqueue(str);
+    }
+
+    private void enqueue(String chunk) throws IOException {
+        if (closed) {
+            throw new IOException("Writer already closed.");
+        }
+        if (!queue.offer(chunk)) {
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of chunks which were dropped so far, because the queue was full
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private void drain() {
+        long reportedDropped = 0;
+        try {
+            while (true) {
+                String chunk = queue.take();
+                if (chunk == END) {
+                    break;
+                }
+                long dropped = droppedCount.get();
+                if (dropped > reportedDropped) {
+                    delegate.write("\n// ... " + (dropped - reportedDropped) + " chunk(s) dropped from log ...\n");
+                    reportedDropped = dropped;
+                }
+                delegate.write(chunk);
+                if (queue.isEmpty()) {
+                    delegate.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOGGER.warn("Error while writing log. Stopped logging.", e);
+        } finally {
+            try {
+                delegate.close();
+            } catch (IOException e) {
+                LOGGER.warn("Error while closing log.", e);
+            }
+            finished.countDown();
+        }
+    }
+
+    @Override
+    public void flush() {
+        /* done by the background thread as soon as the queue is empty */
+    }
+
+    /**
+     * lets the background thread write all the queued text, closes the delegate and waits (a limited time) for this to
+     * be finished.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (!queue.offer(END, CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)
+                    || !finished.await(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("Writing the remaining log timed out.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing writer.", e);
+        }
+    }
+}
@@ -58,7 +58,7 @@ public class FileMonitor {
      * @return true, if the file finally exists, false, if the monitored process was interrupted or we timed out.
      * @throws WaitingFailedException if something goes wrong during the waiting
      */
-    public synchronized boolean waitForFile(Long timeout) throws JMadException {
+    public boolean waitForFile(Long timeout) throws JMadException {
         long startTime = System.currentTimeMillis();
         while (!file.exists()) {
             /* interrupt if the process has stopped meanwhile. */
@@ -77,10 +77,11 @@ public class FileMonitor {
             }
 
             /*
-             * If everything is ok so far, we wait a little bit before continuing.
+             * If everything is ok so far, we wait a little bit before continuing. Sleeping (instead of waiting on a
+             * monitor) does not pin the carrier thread, if this runs in a virtual thread.
              */
             try {
-                this.wait(POLL_INTERVAL);
+                Thread.sleep(POLL_INTERVAL);
             } catch (InterruptedException e) {
                 throw new WaitingFailedException("waiting for file '" + file.getAbsolutePath() + "' was interrupted", e);
             }
@@ -31,6 +31,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -56,6 +57,9 @@ public final class FileUtil {
     /** The logger for the class */
     private static final Logger LOGGER = LoggerFactory.getLogger(FileUtil.class);
 
+    /** the message of the operating system if a write fails because the device is full (ENOSPC) */
+    private static final String NO_SPACE_LEFT_MESSAGE = "No space left on device";
+
     /**
      * private constructor to prevent instantiation
      */
@@ -101,6 +105,43 @@ public final class FileUtil {
         return dir.delete();
     }
 
+    /**
+     * recursively sums up the sizes of all the files within the given dir. Files which disappear while counting are
+     * simply ignored.
+     * 
+     * @param dir the dir (or file) whose size to determine
+     * @return the total size in bytes, 0 if the file does not exist
+     */
+    public static long sizeOf(File dir) {
+        if (!dir.isDirectory()) {
+            return dir.length();
+        }
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return 0;
+        }
+        long size = 0;
+        for (File child : children) {
+            size += sizeOf(child);
+        }
+        return size;
+    }
+
+    /**
+     * @param exception an exception which occurred while writing a file
+     * @return true, if the exception (or one of its causes) reports that there is no space left on the device
+     */
+    public static boolean isNoSpaceLeft(IOException exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            String message = (cause instanceof FileSystemException) ? ((FileSystemException) cause).getReason()
+                    : cause.getMessage();
+            if ((message != null) && message.contains(NO_SPACE_LEFT_MESSAGE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Copy a file in the File system. Uses {@link FileReader} and {@link FileWriter} to copy the files content.
      * 
@@ -71,4 +71,39 @@ public interface JMadPreferences {
      * @param cleanup the value to set
      */
     public void setCleanupKernelFiles(boolean cleanup);
+
+    /**
+     * @return the path of a memory backed file system (e.g. /dev/shm) below which the working directories of the
+     *         kernels shall be placed, or {@code null} if all the files shall be placed below the output path.
+     */
+    public String getRamOutputPath();
+
+    /**
+     * sets the path of a memory backed file system for the working directories of the kernels.
+     * 
+     * @param ramOutputPath the path to use or {@code null} to place all the files below the output path
+     */
+    public void setRamOutputPath(String ramOutputPath);
+
+    /**
+     * @return the maximum number of bytes, which all the kernel directories below the ram output path may use
+     *         together. As soon as this limit is reached, new kernel directories are placed below the output path.
+     */
+    public long getRamOutputSizeLimit();
+
+    /**
+     * @param sizeLimit the maximum number of bytes to use below the ram output path
+     */
+    public void setRamOutputSizeLimit(long sizeLimit);
+
+    /**
+     * @return the directory in which the extracted madx executables are cached, shared by all JVMs of the same user.
+     *         {@code null} if the executable shall be extracted to the output path on each start.
+     */
+    public String getMadxCachePath();
+
+    /**
+     * @param madxCachePath the directory in which to cache the extracted madx executables
+     */
+    public void setMadxCachePath(String madxCachePath);
 }
@@ -29,6 +29,8 @@
  */
 package cern.accsoft.steering.jmad.util;
 
+import java.io.File;
+
 /**
  * The basic implementation to store preferences.
  * <p>
@@ -67,6 +69,34 @@ public class JMadPreferencesImpl implements JMadPreferences {
 	 */
 	private Boolean cleanupKernelFiles = null;
 
+	/** The name of the system-property for the path of a memory backed file system */
+	private static final String PROP_RAM_OUTPUT_PATH = "cern.jmad.ram.output.path";
+	/**
+	 * The path of a memory backed file system, if set. Defaults to null so the
+	 * system property value is returned.
+	 */
+	private String ramOutputPath = null;
+
+	/** The name of the system-property for the size limit of the ram output path */
+	private static final String PROP_RAM_OUTPUT_SIZE_LIMIT = "cern.jmad.ram.output.size.limit";
+	/** Per default we use at most 256 MB of memory for kernel files */
+	private static final long DEFAULT_RAM_OUTPUT_SIZE_LIMIT = 256L * 1024 * 1024;
+	/**
+	 * The size limit for the ram output path, if set. Defaults to null so the
+	 * property value is returned.
+	 */
+	private Long ramOutputSizeLimit = null;
+
+	/** The name of the system-property for the cache directory of the madx executables */
+	private static final String PROP_MADX_CACHE_PATH = "cern.jmad.madx.cache.path";
+	/** The name of the cache directory below the system temp dir, if nothing else is set */
+	private static final String DEFAULT_MADX_CACHE_DIR_NAME = "jmad-madx-cache";
+	/**
+	 * The cache directory of the madx executables, if set. Defaults to null so
+	 * the property value (or a directory in the system temp dir) is returned.
+	 */
+	private String madxCachePath = null;
+
 	//
 	// methods of interface Preferences
 	//
@@ -133,4 +163,61 @@ public class JMadPreferencesImpl implements JMadPreferences {
 		this.cleanupKernelFiles = cleanup;
 	}
 
+	@Override
+	public String getRamOutputPath() {
+		if (this.ramOutputPath != null) {
+			return this.ramOutputPath;
+		}
+		return System.getProperty(PROP_RAM_OUTPUT_PATH);
+	}
+
+	@Override
+	public void setRamOutputPath(String ramOutputPath) {
+		this.ramOutputPath = ramOutputPath;
+	}
+
+	@Override
+	public long getRamOutputSizeLimit() {
+		if (this.ramOutputSizeLimit != null) {
+			return this.ramOutputSizeLimit;
+		}
+		String propertyValue = System.getProperty(PROP_RAM_OUTPUT_SIZE_LIMIT);
+		if (propertyValue != null) {
+			try {
+				return Long.parseLong(propertyValue.trim());
+			} catch (NumberFormatException e) {
+				/* fall through to the default */
+			}
+		}
+		return DEFAULT_RAM_OUTPUT_SIZE_LIMIT;
+	}
+
+	@Override
+	public void setRamOutputSizeLimit(long sizeLimit) {
+		this.ramOutputSizeLimit = sizeLimit;
+	}
+
+	@Override
+	public String getMadxCachePath() {
+		if (this.madxCachePath != null) {
+			return this.madxCachePath;
+		}
+		String propertyValue = System.getProperty(PROP_MADX_CACHE_PATH);
+		if (propertyValue != null) {
+			return propertyValue;
+		}
+		/* one directory per user, so that permissions never get in the way */
+		String tempPath = SystemUtil.getSystemTempDirectoryPath();
+		if (tempPath == null) {
+			return null;
+		}
+		return new File(tempPath, DEFAULT_MADX_CACHE_DIR_NAME + "-" + System.getProperty("user.name"))
+				.getAbsolutePath();
+	}
+
+	@Override
+	public void setMadxCachePath(String madxCachePath) {
+		this.madxCachePath = madxCachePath;
+	}
+
 }
@@ -0,0 +1,57 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link StreamSniffer} which keeps the last lines of a stream in memory, e.g. to report the recent output of a
+ * process without reading back its log file. The buffer is thread safe.
+ */
+public class LineRingBuffer implements StreamSniffer {
+
+    private final String[] lines;
+
+    /** the total number of lines seen so far */
+    private long count = 0;
+
+    /**
+     * @param capacity the maximum number of lines to keep
+     */
+    public LineRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive, but was " + capacity + ".");
+        }
+        this.lines = new String[capacity];
+    }
+
+    @Override
+    public synchronized void processNewLine(String newLine) {
+        lines[(int) (count % lines.length)] = newLine;
+        count++;
+    }
+
+    /**
+     * @param maxLines the maximum number of lines to return
+     * @return the last lines (at most the given number and the capacity), the oldest one first
+     */
+    public synchronized List<String> getLastLines(int maxLines) {
+        int available = (int) Math.min(count, lines.length);
+        int size = Math.max(0, Math.min(maxLines, available));
+        List<String> result = new ArrayList<>(size);
+        for (long i = count - size; i < count; i++) {
+            result.add(lines[(int) (i % lines.length)]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,140 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.util;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The memory and CPU time a process used, as sampled from the Linux {@code /proc} file system.
+ */
+public class ProcessResourceUsage {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProcessResourceUsage.class);
+
+    /** the unit of the CPU times in /proc/[pid]/stat. This is 100 Hz on all common Linux platforms. */
+    private static final long CLOCK_TICKS_PER_SECOND = 100;
+
+    /** the position of utime in /proc/[pid]/stat, counted from the field after the command name */
+    private static final int STAT_UTIME_INDEX = 11;
+
+    /** the position of stime in /proc/[pid]/stat, counted from the field after the command name */
+    private static final int STAT_STIME_INDEX = 12;
+
+    private final long residentSetSize;
+    private final long cpuTimeNanos;
+
+    public ProcessResourceUsage(long residentSetSize, long cpuTimeNanos) {
+        this.residentSetSize = residentSetSize;
+        this.cpuTimeNanos = cpuTimeNanos;
+    }
+
+    /**
+     * @return the physical memory the process currently occupies (VmRSS) in bytes
+     */
+    public long getResidentSetSize() {
+        return residentSetSize;
+    }
+
+    /**
+     * @return the CPU time (user and system) the process consumed since it was started, in nanoseconds
+     */
+    public long getCpuTimeNanos() {
+        return cpuTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ProcessResourceUsage [rss=" + (residentSetSize / 1024) + " kB, cpu="
+                + TimeUnit.NANOSECONDS.toMillis(cpuTimeNanos) + " ms]";
+    }
+
+    /**
+     * samples the resource usage of the given process.
+     *
+     * @param process the process
+     * @return the current usage or {@code null} if it is not available (e.g. not on Linux, or the process terminated)
+     */
+    public static ProcessResourceUsage sample(Process process) {
+        if (!OsUtil.isLinux() || !ProcTools.isRunning(process)) {
+            return null;
+        }
+        Long pid = pid(process);
+        if (pid == null) {
+            return null;
+        }
+        try {
+            String status = new String(Files.readAllBytes(Paths.get("/proc", pid.toString(), "status")),
+                    StandardCharsets.US_ASCII);
+            String stat = new String(Files.readAllBytes(Paths.get("/proc", pid.toString(), "stat")),
+                    StandardCharsets.US_ASCII);
+            return new ProcessResourceUsage(parseResidentSetSize(status), parseCpuTimeNanos(stat));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Could not sample resource usage of process {}.", pid, e);
+            return null;
+        }
+    }
+
+    /**
+     * @param status the content of /proc/[pid]/status
+     * @return the resident set size in bytes
+     */
+    static long parseResidentSetSize(String status) {
+        for (String line : status.split("\n")) {
+            if (line.startsWith("VmRSS:")) {
+                String[] tokens = line.substring("VmRSS:".length()).trim().split("\\s+");
+                return Long.parseLong(tokens[0]) * 1024;
+            }
+        }
+        throw new IllegalArgumentException("No VmRSS entry in process status.");
+    }
+
+    /**
+     * @param stat the content of /proc/[pid]/stat
+     * @return the user and system CPU time in nanoseconds
+     */
+    static long parseCpuTimeNanos(String stat) {
+        /* the command name is in parentheses and may contain spaces */
+        String[] fields = stat.substring(stat.lastIndexOf(')') + 1).trim().split("\\s+");
+        long ticks = Long.parseLong(fields[STAT_UTIME_INDEX]) + Long.parseLong(fields[STAT_STIME_INDEX]);
+        return ticks * (TimeUnit.SECONDS.toNanos(1) / CLOCK_TICKS_PER_SECOND);
+    }
+
+    /**
+     * @return the operating system id of the given process, {@code null} if it can not be determined
+     */
+    static Long pid(Process process) {
+        try {
+            /* Java 9 and later */
+            Method pidMethod = Process.class.getMethod("pid");
+            return (Long) pidMethod.invoke(process);
+        } catch (ReflectiveOperationException e) {
+            /* fall back to the field of the Java 8 implementation */
+        }
+        try {
+            Field pidField = process.getClass().getDeclaredField("pid");
+            pidField.setAccessible(true);
+            return (long) pidField.getInt(process);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debug("Could not determine the pid of process {}.", process, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A writer to a file, whose size is limited: As soon as the given number of characters is written, the file is renamed
+ * to a backup (with the suffix '.1', older backups are shifted to '.2' and so on) and writing continues with a new file.
+ * Rotation only takes place after a complete line, so lines are never split between two files. This writer is not
+ * thread safe.
+ */
+public class RotatingFileWriter extends Writer {
+
+    private final File file;
+    private final long sizeLimit;
+    private final int backupCount;
+
+    private Writer writer;
+    private long written = 0;
+    private boolean lineComplete = true;
+
+    /**
+     * creates the writer and truncates the file. Backups of previous uses of the same file are deleted.
+     *
+     * @param file the file to write to
+     * @param sizeLimit the number of characters after which the file is rotated
+     * @param backupCount the number of old files to keep
+     * @throws IOException if the file can not be opened
+     */
+    public RotatingFileWriter(File file, long sizeLimit, int backupCount) throws IOException {
+        if (sizeLimit <= 0) {
+            throw new IllegalArgumentException("The size limit must be positive, but was " + sizeLimit + ".");
+        }
+        this.file = file;
+        this.sizeLimit = sizeLimit;
+        this.backupCount = Math.max(0, backupCount);
+        for (int i = 1; i <= this.backupCount; i++) {
+            backupFile(i).delete();
+        }
+        this.writer = new BufferedWriter(new FileWriter(file));
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (len <= 0) {
+            return;
+        }
+        if ((written >= sizeLimit) && lineComplete) {
+            rotate();
+        }
+        writer.write(cbuf, off, len);
+        written += len;
+        lineComplete = cbuf[off + len - 1] == '\n';
+    }
+
+    private void rotate() throws IOException {
+        writer.close();
+        if (backupCount == 0) {
+            file.delete();
+        } else {
+            backupFile(backupCount).delete();
+            for (int i = backupCount - 1; i >= 1; i--) {
+                backupFile(i).renameTo(backupFile(i + 1));
+            }
+            file.renameTo(backupFile(1));
+        }
+        writer = new BufferedWriter(new FileWriter(file));
+        written = 0;
+    }
+
+    /**
+     * @param index the number of the backup (1 for the most recent one)
+     * @return the file of the given backup
+     */
+    public File backupFile(int index) {
+        return new File(file.getAbsolutePath() + "." + index);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
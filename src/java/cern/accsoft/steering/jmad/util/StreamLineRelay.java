@@ -0,0 +1,112 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads an input stream line by line until it is closed. Each line is copied to an (optional) writer and then passed
+ * on to all registered {@link StreamSniffer}s. The writer is flushed whenever no more input is immediately available,
+ * so that it is up to date while the producer of the stream is idle.
+ */
+public class StreamLineRelay implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamLineRelay.class);
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    /** the stream to read from */
+    private final InputStream inputStream;
+
+    /** the writer to copy all lines to. Might be null. */
+    private final Writer writer;
+
+    /** the sniffers which are notified about each line */
+    private final List<StreamSniffer> sniffers = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param inputStream the stream to read
+     * @param writer the writer to which all the lines are copied. Might be {@code null}, then the lines are only
+     *            passed to the sniffers. The writer is closed, as soon as the stream ends.
+     */
+    public StreamLineRelay(InputStream inputStream, Writer writer) {
+        this.inputStream = inputStream;
+        this.writer = writer;
+    }
+
+    @Override
+    public void run() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                boolean moreInput = reader.ready();
+                write(line, moreInput);
+                for (StreamSniffer sniffer : sniffers) {
+                    sniffer.processNewLine(line);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Error while reading stream.", e);
+        } finally {
+            closeWriter();
+        }
+    }
+
+    private void write(String line, boolean moreInput) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(line);
+            writer.write(LINE_SEPARATOR);
+            if (!moreInput) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Error while writing line '{}'.", line, e);
+        }
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            LOGGER.warn("Error while closing writer.", e);
+        }
+    }
+
+    /**
+     * @param sniffer the sniffer to notify about each new line
+     */
+    public void addSniffer(StreamSniffer sniffer) {
+        this.sniffers.add(sniffer);
+    }
+
+    /**
+     * @param sniffer the sniffer to remove
+     */
+    public void removeSniffer(StreamSniffer sniffer) {
+        this.sniffers.remove(sniffer);
+    }
+}
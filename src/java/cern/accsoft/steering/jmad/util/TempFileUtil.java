@@ -23,6 +23,7 @@
 package cern.accsoft.steering.jmad.util;
 
 import java.io.File;
+import java.util.concurrent.CompletableFuture;
 
 public interface TempFileUtil {
 
@@ -56,6 +57,37 @@ public interface TempFileUtil {
      */
     File getOutputFile(Object object, String relativePath);
 
+    /**
+     * returns the location of the given file of the object below the normal output path, e.g. because writing it
+     * failed as the memory backed file system is full. A file which is already placed on the memory backed file system
+     * is deleted there and subsequent calls to {@link #getOutputFile(Object, String)} return the new location.
+     * 
+     * @param object the object which is used to create a subdir name.
+     * @param relativePath the relative path
+     * @return the file below the normal output path
+     */
+    File moveToDisk(Object object, String relativePath);
+
+    /**
+     * deletes the given file of the object and forgets about it, so that the space it used on the memory backed file
+     * system is free again. Files with unique names (which are not requested again) have to be deleted through this
+     * method.
+     * 
+     * @param object the object which is used to create a subdir name.
+     * @param relativePath the relative path
+     */
+    void deleteOutputFile(Object object, String relativePath);
+
+    /**
+     * MadX can not tell, if writing a file failed because the file system is full. So after it wrote a file, this
+     * method can be used to check if the file is placed on the memory backed file system and almost no space is left
+     * there, in which case the file might be incomplete.
+     * 
+     * @param file a file returned by {@link #getOutputFile(Object, String)}
+     * @return true, if the file is placed on the memory backed file system and this one is (almost) full
+     */
+    boolean isOutOfSpace(File file);
+
     /**
      * recursively removes the dir related to the given object.
      * 
@@ -63,4 +95,26 @@ public interface TempFileUtil {
      */
     void cleanup(Object object);
 
+    /**
+     * the same as {@link #cleanup(Object)}, but the directory is only moved out of the way immediately and deleted by
+     * a background thread. Afterwards, a new directory can be used for the object.
+     * 
+     * @param object the object for which to delete the dir
+     * @return a future which completes as soon as the directory is deleted
+     */
+    CompletableFuture<Void> cleanupAsync(Object object);
+
+    /**
+     * @param object the object whose directory to inspect
+     * @return the number of bytes currently used by the files in the directory of the given object
+     */
+    long getUsage(Object object);
+
+    /**
+     * @param object the object whose directory to inspect
+     * @return {@code true} if the directory of the given object is placed on a memory backed file system,
+     *         {@code false} otherwise
+     */
+    boolean isInMemory(Object object);
+
 }
@@ -30,12 +30,36 @@
 package cern.accsoft.steering.jmad.util;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * This Class provides some methods to simply access output-files
+ * <p>
+ * If the preferences define a ram output path (e.g. /dev/shm), then the files of the objects (i.e. of the kernels) are
+ * placed there, as long as the files handed out below it use less than the configured size limit. The limit is checked
+ * for each file: once it is reached, further files go to the directory of the object below the normal output path,
+ * while the files already handed out keep their location until the object is cleaned up. All files which are not
+ * related to an object are always placed below the normal output path.
+ * <p>
+ * The usage of the ram output path is not determined by walking the directory tree, but tracked incrementally: whenever
+ * an object asks for a file, the current sizes of its files are compared to the remembered ones and only the
+ * difference is added. As the files are written only after they were handed out, a new file reserves the size of the
+ * largest file of the same object, until it exists. A file which is deleted by the object (e.g. before writing it
+ * again) keeps the size it had, so files with unique names have to be deleted through
+ * {@link #deleteOutputFile(Object, String)} to be forgotten.
  *
  * @author Kajetan Fuchsberger (kajetan.fuchsberger at cern.ch)
  */
@@ -56,6 +80,53 @@ public class TempFileUtilImpl implements TempFileUtil {
      */
     private String outputPath = null;
 
+    /**
+     * the output-path on the memory backed file system including username and host. null if not used.
+     */
+    private String ramOutputPath = null;
+
+    /**
+     * the minimum free space (in bytes) which must be left on the memory backed file system to place new files there.
+     */
+    private static final long MIN_FREE_RAM_SPACE = 16L * 1024 * 1024;
+
+    /**
+     * if less than this number of bytes is left on the memory backed file system, then writing a file there may have
+     * failed.
+     */
+    private static final long OUT_OF_SPACE_THRESHOLD = 64L * 1024;
+
+    /**
+     * the directories of the objects, once they were placed. The key is the hash code of the object.
+     */
+    private final Map<Integer, ObjectDir> objectDirs = new ConcurrentHashMap<>();
+
+    /**
+     * the bytes used (or reserved) by all the files which were handed out below the ram output path, as far as they
+     * are known
+     */
+    private final AtomicLong ramUsage = new AtomicLong(0);
+
+    /**
+     * true, as long as new files can not be placed below the ram output path. Only used to log the changes.
+     */
+    private volatile boolean ramFull = false;
+
+    /**
+     * the suffix for directories, which are moved out of the way to be deleted in the background
+     */
+    private static final String DELETED_DIR_SUFFIX = ".deleted-";
+
+    /**
+     * used to create distinct names for the directories to delete
+     */
+    private final AtomicLong deletedDirSequence = new AtomicLong(0);
+
+    /**
+     * the single thread which deletes directories in the background. Created on first use.
+     */
+    private ExecutorService dirCleaner = null;
+
     /**
      * The preferences object, to be injected
      */
@@ -65,7 +136,24 @@ public class TempFileUtilImpl implements TempFileUtil {
      * init - method called by spring
      */
     public void init() {
-        this.outputPath = createDirTree();
+        JMadPreferences prefs = getPreferences();
+        if (prefs == null) {
+            return;
+        }
+        this.outputPath = createDirTree(prefs.getOutputPath());
+
+        String ramPath = prefs.getRamOutputPath();
+        if (ramPath != null) {
+            File ramDir = new File(ramPath);
+            if (ramDir.isDirectory() && ramDir.canWrite()) {
+                this.ramOutputPath = createDirTree(ramPath);
+                LOGGER.info("Placing kernel files below '{}' (up to {} bytes).", this.ramOutputPath,
+                        prefs.getRamOutputSizeLimit());
+            } else {
+                LOGGER.warn("Ram output path '{}' is not a writable directory. Using '{}' instead.", ramPath,
+                        this.outputPath);
+            }
+        }
     }
 
     @Override
@@ -80,7 +168,74 @@ public class TempFileUtilImpl implements TempFileUtil {
 
     @Override
     public final File getOutputFile(Object object, String relativePath) {
-        return createFile(getObjectPath(object) + File.separator + stripDirectoryTraversal(relativePath));
+        String path = stripDirectoryTraversal(relativePath);
+        ObjectDir dir = getObjectDir(object);
+        if (dir.ramPath == null) {
+            return createFile(dir.diskPath + File.separator + path);
+        }
+        synchronized (dir) {
+            updateUsage(dir);
+            FileEntry entry = dir.files.get(path);
+            if (entry == null) {
+                long reservation = dir.largestFileSize;
+                entry = new FileEntry(hasRamCapacity(reservation));
+                if (entry.inRam) {
+                    entry.size = reservation;
+                    ramUsage.addAndGet(reservation);
+                }
+                dir.files.put(path, entry);
+            }
+            return createFile((entry.inRam ? dir.ramPath : dir.diskPath) + File.separator + path);
+        }
+    }
+
+    @Override
+    public File moveToDisk(Object object, String relativePath) {
+        String path = stripDirectoryTraversal(relativePath);
+        ObjectDir dir = getObjectDir(object);
+        if (dir.ramPath != null) {
+            synchronized (dir) {
+                FileEntry entry = dir.files.put(path, new FileEntry(false));
+                if ((entry != null) && entry.inRam) {
+                    ramUsage.addAndGet(-entry.size);
+                    File ramFile = new File(dir.ramPath + File.separator + path);
+                    if (ramFile.exists() && !ramFile.delete()) {
+                        LOGGER.warn("Could not delete file '{}'.", ramFile.getAbsolutePath());
+                    }
+                }
+            }
+        }
+        return createFile(dir.diskPath + File.separator + path);
+    }
+
+    @Override
+    public void deleteOutputFile(Object object, String relativePath) {
+        String path = stripDirectoryTraversal(relativePath);
+        ObjectDir dir = objectDirs.get(object.hashCode());
+        if (dir == null) {
+            /* already cleaned up */
+            return;
+        }
+        FileEntry entry;
+        synchronized (dir) {
+            entry = dir.files.remove(path);
+            if ((entry != null) && entry.inRam) {
+                ramUsage.addAndGet(-entry.size);
+            }
+        }
+        String dirPath = ((entry != null) && entry.inRam) ? dir.ramPath : dir.diskPath;
+        File file = new File(dirPath + File.separator + path);
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("Could not delete file '{}'.", file.getAbsolutePath());
+        }
+    }
+
+    @Override
+    public boolean isOutOfSpace(File file) {
+        if ((ramOutputPath == null) || !file.getAbsolutePath().startsWith(ramOutputPath + File.separator)) {
+            return false;
+        }
+        return new File(ramOutputPath).getUsableSpace() < OUT_OF_SPACE_THRESHOLD;
     }
 
     private static String stripDirectoryTraversal(String relativePath) {
@@ -89,18 +244,144 @@ public class TempFileUtilImpl implements TempFileUtil {
 
     @Override
     public final void cleanup(Object object) {
-        File dir = new File(getObjectPath(object));
-        if (!FileUtil.deleteDir(dir)) {
-            LOGGER.error("Could not delete directory '" + dir.getAbsolutePath() + "'");
+        ObjectDir dir = getObjectDir(object);
+        for (String path : dir.getPaths()) {
+            File file = new File(path);
+            if (file.exists() && !FileUtil.deleteDir(file)) {
+                LOGGER.error("Could not delete directory '" + file.getAbsolutePath() + "'");
+            }
+        }
+        release(objectDirs.remove(object.hashCode()));
+    }
+
+    @Override
+    public CompletableFuture<Void> cleanupAsync(Object object) {
+        ObjectDir dir = objectDirs.remove(object.hashCode());
+        if (dir == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        release(dir);
+        CompletableFuture<?>[] deletions = dir.getPaths().stream().map(File::new).filter(File::exists)
+                .map(this::deleteAsync).toArray(CompletableFuture<?>[]::new);
+        return CompletableFuture.allOf(deletions);
+    }
+
+    private CompletableFuture<Void> deleteAsync(File dir) {
+        File deletedDir = new File(dir.getPath() + DELETED_DIR_SUFFIX + deletedDirSequence.incrementAndGet());
+        File dirToDelete = dir.renameTo(deletedDir) ? deletedDir : dir;
+        return CompletableFuture.runAsync(() -> {
+            if (!FileUtil.deleteDir(dirToDelete)) {
+                LOGGER.error("Could not delete directory '" + dirToDelete.getAbsolutePath() + "'");
+            }
+        }, getDirCleaner());
+    }
+
+    private synchronized ExecutorService getDirCleaner() {
+        if (dirCleaner == null) {
+            dirCleaner = Executors.newSingleThreadExecutor(
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("jmad-dir-cleaner-%d").build());
+        }
+        return dirCleaner;
+    }
+
+    @Override
+    public long getUsage(Object object) {
+        ObjectDir dir = objectDirs.get(object.hashCode());
+        if (dir == null) {
+            return 0;
         }
+        long usage = 0;
+        for (String path : dir.getPaths()) {
+            usage += FileUtil.sizeOf(new File(path));
+        }
+        return usage;
+    }
+
+    @Override
+    public boolean isInMemory(Object object) {
+        ObjectDir dir = objectDirs.get(object.hashCode());
+        return (dir != null) && dir.files.values().stream().anyMatch(entry -> entry.inRam);
     }
 
     /**
      * @param object the object the temp-path belongs to
-     * @return the path as string for the object
+     * @return the directories for the object
+     */
+    private final ObjectDir getObjectDir(Object object) {
+        return objectDirs.computeIfAbsent(object.hashCode(), this::placeObjectDir);
+    }
+
+    /**
+     * decides, where to put the directories for an object with the given hash code.
+     *
+     * @param hashCode the hash code of the object
+     * @return the directories for the object
+     */
+    private ObjectDir placeObjectDir(int hashCode) {
+        String ramPath = (ramOutputPath == null) ? null : ramOutputPath + File.separator + hashCode;
+        return new ObjectDir(ramPath, outputPath + File.separator + hashCode);
+    }
+
+    /**
+     * subtracts the files of an object, which is cleaned up, from the usage of the ram output path.
+     *
+     * @param dir the directories of the object, may be {@code null}
      */
-    private final String getObjectPath(Object object) {
-        return outputPath + File.separator + object.hashCode();
+    private void release(ObjectDir dir) {
+        if (dir == null) {
+            return;
+        }
+        synchronized (dir) {
+            for (FileEntry entry : dir.files.values()) {
+                if (entry.inRam) {
+                    ramUsage.addAndGet(-entry.size);
+                }
+            }
+            dir.files.clear();
+        }
+    }
+
+    /**
+     * updates the usage by the current sizes of the files of one object below the ram output path. A file which does
+     * not exist (yet or any more) keeps the size it is accounted with. Only these files are inspected, the directory
+     * tree is not walked. Must be called while holding the lock of the given directory.
+     *
+     * @param dir the directories of the object whose files to inspect
+     */
+    private void updateUsage(ObjectDir dir) {
+        for (Map.Entry<String, FileEntry> mapEntry : dir.files.entrySet()) {
+            FileEntry entry = mapEntry.getValue();
+            if (!entry.inRam) {
+                continue;
+            }
+            File file = new File(dir.ramPath + File.separator + mapEntry.getKey());
+            if (file.exists()) {
+                long size = file.length();
+                ramUsage.addAndGet(size - entry.size);
+                entry.size = size;
+                dir.largestFileSize = Math.max(dir.largestFileSize, size);
+            }
+        }
+    }
+
+    /**
+     * @param reservation the number of bytes which shall be reserved for the new file
+     * @return true, if the size limit on the memory backed file system is not reached by the reservation and the file
+     *         system itself is not full.
+     */
+    private boolean hasRamCapacity(long reservation) {
+        long usage = ramUsage.get();
+        long limit = getPreferences().getRamOutputSizeLimit();
+        boolean full = (usage + reservation >= limit)
+                || (new File(ramOutputPath).getUsableSpace() < MIN_FREE_RAM_SPACE);
+        if (full && !ramFull) {
+            LOGGER.info("Ram output path '{}' is full ({} of {} bytes used). Placing new files below '{}'.",
+                    ramOutputPath, usage, limit, outputPath);
+        } else if (!full && ramFull) {
+            LOGGER.info("Ram output path '{}' has space again ({} of {} bytes used).", ramOutputPath, usage, limit);
+        }
+        ramFull = full;
+        return !full;
     }
 
     /**
@@ -134,14 +415,11 @@ public class TempFileUtilImpl implements TempFileUtil {
     /**
      * creates the output - dir tree with the correct user - rights
      *
+     * @param basePath the path below which to create the tree
      * @return the final output - dir
      */
-    private final String createDirTree() {
-        JMadPreferences prefs = getPreferences();
-        if (prefs == null) {
-            return null;
-        }
-        String outPath = prefs.getOutputPath();
+    private static final String createDirTree(String basePath) {
+        String outPath = basePath;
 
         /* the base dir must be writable by all users */
         outPath = outPath + File.separator + TMPDIR_NAME;
@@ -165,4 +443,46 @@ public class TempFileUtilImpl implements TempFileUtil {
         return preferences;
     }
 
+    /**
+     * The directories of one object: the one below the ram output path (if used) and the one below the normal output
+     * path, together with the files handed out while the ram path is used.
+     */
+    private static class ObjectDir {
+        /** the directory below the ram output path, null if not used */
+        private final String ramPath;
+
+        /** the directory below the normal output path */
+        private final String diskPath;
+
+        /** the files handed out, by their relative paths */
+        private final Map<String, FileEntry> files = new ConcurrentHashMap<>();
+
+        /** the size of the largest file of the object below the ram path, which was seen so far */
+        private long largestFileSize = 0;
+
+        ObjectDir(String ramPath, String diskPath) {
+            this.ramPath = ramPath;
+            this.diskPath = diskPath;
+        }
+
+        List<String> getPaths() {
+            return (ramPath == null) ? Collections.singletonList(diskPath) : Arrays.asList(ramPath, diskPath);
+        }
+    }
+
+    /**
+     * The location of a file which was handed out and the bytes it is accounted with.
+     */
+    private static class FileEntry {
+        /** true, if the file is placed below the ram output path */
+        private final boolean inRam;
+
+        /** the bytes included in the usage of the ram output path: the reservation or the size when last seen */
+        private long size = 0;
+
+        FileEntry(boolean inRam) {
+            this.inRam = inRam;
+        }
+    }
+
 }
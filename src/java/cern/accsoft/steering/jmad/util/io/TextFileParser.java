@@ -1,5 +1,6 @@
 package cern.accsoft.steering.jmad.util.io;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.util.List;
 
@@ -20,4 +21,14 @@ public interface TextFileParser {
      */
     public abstract List<String> parse(File file) throws TextFileParserException;
 
+    /**
+     * opens the file for reading, decompressing it on the fly if necessary. This allows to process large files without
+     * keeping all their lines in memory.
+     * 
+     * @param file the file to open
+     * @return a reader for the (uncompressed) content of the file. The caller has to close it.
+     * @throws TextFileParserException if the file cannot be opened
+     */
+    public abstract BufferedReader open(File file) throws TextFileParserException;
+
 }
\ No newline at end of file
@@ -41,7 +41,7 @@ public class TextFileParserImpl implements TextFileParser {
         }
 
         List<String> lines = new ArrayList<String>();
-        BufferedReader bufferedReader = openReader(file);
+        BufferedReader bufferedReader = open(file);
 
         try {
             while (true) {
@@ -69,7 +69,11 @@ public class TextFileParserImpl implements TextFileParser {
      * @return the reader if successful
      * @throws TextFileParserException if the reader cannot be opened
      */
-    private BufferedReader openReader(File file) throws TextFileParserException {
+    @Override
+    public BufferedReader open(File file) throws TextFileParserException {
+        if (file == null) {
+            throw new TextFileParserException("Failure: file must not be null!");
+        }
         BufferedReader reader = null;
         try {
             if (file.getCanonicalPath().endsWith(EXTENSION_GZIP)) {
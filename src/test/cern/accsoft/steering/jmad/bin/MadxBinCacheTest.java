@@ -0,0 +1,97 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+package cern.accsoft.steering.jmad.bin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MadxBinCacheTest {
+
+    private static final byte[] CONTENT = "#!/bin/sh\necho madx\n".getBytes();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MadxBinCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new MadxBinCache(new File(folder.getRoot(), "cache"));
+    }
+
+    @Test
+    public void secondInstallUsesCachedFile() throws IOException {
+        URL resource = jarEntry("first.jar", CONTENT);
+        File first = cache.install(resource, "madx");
+        assertArrayEquals(CONTENT, Files.readAllBytes(first.toPath()));
+        assertTrue(first.canExecute());
+        assertTrue(first.setLastModified(1000));
+
+        File second = new MadxBinCache(new File(folder.getRoot(), "cache")).install(resource, "madx");
+        assertEquals(first, second);
+        /* not written again */
+        assertEquals(1000, second.lastModified());
+        assertEquals(1, first.getParentFile().list().length);
+    }
+
+    @Test
+    public void fileOutsideOfJarIsCachedUnderTheSameKey() throws IOException {
+        File plain = folder.newFile("madx-plain");
+        Files.write(plain.toPath(), CONTENT);
+
+        File fromJar = cache.install(jarEntry("first.jar", CONTENT), "madx");
+        assertEquals(fromJar, cache.install(plain.toURI().toURL(), "madx"));
+    }
+
+    @Test
+    public void differentContentIsCachedSeparately() throws IOException {
+        File first = cache.install(jarEntry("first.jar", CONTENT), "madx");
+        File second = cache.install(jarEntry("second.jar", "#!/bin/sh\necho other\n".getBytes()), "madx");
+        assertFalse(first.equals(second));
+        assertArrayEquals(CONTENT, Files.readAllBytes(first.toPath()));
+    }
+
+    @Test
+    public void corruptFileIsReplaced() throws IOException {
+        URL resource = jarEntry("first.jar", CONTENT);
+        File file = cache.install(resource, "madx");
+        Files.write(file.toPath(), "garbage".getBytes());
+
+        File replaced = cache.install(resource, "madx");
+        assertEquals(file, replaced);
+        assertArrayEquals(CONTENT, Files.readAllBytes(replaced.toPath()));
+    }
+
+    private URL jarEntry(String jarName, byte[] content) throws IOException {
+        File jar = folder.newFile(jarName);
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+            out.putNextEntry(new JarEntry("bin/madx"));
+            out.write(content);
+            out.closeEntry();
+        }
+        return new URL("jar:" + jar.toURI().toURL() + "!/bin/madx");
+    }
+}
@@ -0,0 +1,49 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.bin;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class MadxBinImplTest {
+
+    @Test
+    public void withoutLimitsOnlyTheExecutableIsStarted() {
+        assertEquals(Arrays.asList("/opt/madx"), MadxBinImpl.command("/opt/madx", new ProcessLimits(), true));
+    }
+
+    @Test
+    public void limitsAreAppliedThroughLinuxTools() {
+        ProcessLimits limits = new ProcessLimits();
+        limits.setNiceLevel(5);
+        limits.setCpuAffinity("0-3");
+        limits.setMemoryLimit(1024L * 1024 * 1024);
+        assertEquals(Arrays.asList("nice", "-n", "5", "taskset", "-c", "0-3", "prlimit", "--as=1073741824", "--",
+                "/opt/madx"), MadxBinImpl.command("/opt/madx", limits, true));
+    }
+
+    @Test
+    public void limitsAreIgnoredOnOtherSystems() {
+        ProcessLimits limits = new ProcessLimits();
+        limits.setNiceLevel(5);
+        limits.setCpuAffinity("0-3");
+        assertEquals(Arrays.asList("madx.exe"), MadxBinImpl.command("madx.exe", limits, false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidNiceLevelIsRejected() {
+        new ProcessLimits().setNiceLevel(20);
+    }
+}
@@ -25,7 +25,11 @@ package cern.accsoft.steering.jmad.cmd;
 import static org.junit.Assert.assertEquals;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.junit.Test;
 
@@ -39,6 +43,9 @@ import cern.accsoft.steering.jmad.kernel.cmd.BeamCommand;
 import cern.accsoft.steering.jmad.kernel.cmd.CallCommand;
 import cern.accsoft.steering.jmad.kernel.cmd.Command;
 import cern.accsoft.steering.jmad.kernel.cmd.DefineElement;
+import cern.accsoft.steering.jmad.kernel.cmd.SaveCommand;
+import cern.accsoft.steering.jmad.kernel.cmd.SeterrCommand;
+import cern.accsoft.steering.jmad.kernel.cmd.SetListEqual;
 import cern.accsoft.steering.jmad.kernel.cmd.TwissCommand;
 import cern.accsoft.steering.jmad.kernel.cmd.UseCommand;
 import cern.accsoft.steering.jmad.kernel.cmd.ValueCommand;
@@ -168,4 +175,29 @@ public class CommandsTest {
         System.out.println(command.compose());
         assertEquals(command.compose(), "testQuad: quadrupole, k1=1.0;");
     }
+
+    @Test
+    public void testSetListEqual() throws IOException {
+        Map<String, Double> values = new LinkedHashMap<>();
+        values.put("kqf", 0.01);
+        values.put("kqd", -2.5E-5);
+        SetListEqual command = new SetListEqual(values);
+        assertEquals("kqf = 0.01;\nkqd = -2.5E-5;\n", command.compose());
+
+        StringWriter writer = new StringWriter();
+        command.composeTo(writer);
+        assertEquals(command.compose(), writer.toString());
+    }
+
+    @Test
+    public void testSaveAndSeterrCommand() {
+        command = new SaveCommand(file, null, true);
+        assertEquals("save, file=\"" + file.getAbsolutePath() + "\", beam;", command.compose());
+
+        command = new SaveCommand(file, "lhcb1", false);
+        assertEquals("save, sequence=lhcb1, file=\"" + file.getAbsolutePath() + "\";", command.compose());
+
+        command = new SeterrCommand("errtab");
+        assertEquals("seterr, table=errtab;", command.compose());
+    }
 }
@@ -0,0 +1,49 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.domain.elem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+public class ElementNameDictionaryTest {
+
+    private final ElementNameDictionary dictionary = new ElementNameDictionary();
+
+    @Test
+    public void idsAreDenseAndStable() {
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, dictionary.id("MB." + i));
+        }
+        assertEquals(1000, dictionary.size());
+        assertEquals(42, dictionary.id("MB.42"));
+        assertEquals("MB.999", dictionary.name(999));
+    }
+
+    @Test
+    public void spellingsShareTheCanonicalId() {
+        int upper = dictionary.id("MQ.1");
+        int lower = dictionary.id("mq.1");
+        assertNotEquals(upper, lower);
+        assertEquals("mq.1", dictionary.name(lower));
+        assertEquals(upper, dictionary.canonicalId(lower));
+        assertEquals(upper, dictionary.find("Mq.1"));
+        assertEquals(ElementNameDictionary.UNKNOWN, dictionary.find("MQ.2"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void unassignedIdsAreRejected() {
+        dictionary.id("IP1");
+        dictionary.name(1);
+    }
+}
@@ -0,0 +1,259 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.domain.result.tfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.accsoft.steering.jmad.domain.elem.ElementNameDictionary;
+import cern.accsoft.steering.jmad.util.MadxVarType;
+
+public class TfsResultImplTest {
+
+    private TfsResultImpl result;
+
+    @Before
+    public void setUp() {
+        result = new TfsResultImpl();
+        result.createColumn("name");
+        result.createColumn("KEYWORD");
+        result.createColumn("BETX");
+        result.setVarType("NAME", MadxVarType.STRING);
+        result.setVarType("KEYWORD", MadxVarType.STRING);
+        result.setVarType("BETX", MadxVarType.DOUBLE);
+    }
+
+    @Test
+    public void valuesAreReadThroughColumnViews() throws TfsResultException {
+        result.addRow(Arrays.asList("IP1", "MARKER", "0"));
+        result.addRow(Arrays.asList("MQ.1", "QUADRUPOLE", "1.302602123e-16"));
+        result.addRow(Arrays.asList("MQ.2", "QUADRUPOLE", "-inf"));
+        result.convert();
+        result.verify();
+
+        assertEquals(Arrays.asList("NAME", "KEYWORD", "BETX"), result.getKeys());
+        assertEquals(Arrays.asList("MARKER", "QUADRUPOLE", "QUADRUPOLE"), result.getStringData("keyword"));
+        assertEquals(Arrays.asList(0.0, 1.302602123e-16, Double.NEGATIVE_INFINITY), result.getDoubleData("BETX"));
+        /* the text of numbers is kept as written by MadX */
+        assertEquals(Arrays.asList("0", "1.302602123e-16", "-inf"), result.getStringData("BETX"));
+        assertNull(result.getDoubleData("NAME"));
+        assertNull(result.getStringData("ALFX"));
+    }
+
+    @Test
+    public void repeatedTextsAreStoredOnce() {
+        StringColumn column = new StringColumn();
+        for (int i = 0; i < 100; i++) {
+            column.append((i % 2 == 0) ? "DRIFT" : "QUADRUPOLE");
+        }
+        column.compact();
+        column.append("MARKER");
+        assertEquals(3, column.getDistinctCount());
+        assertEquals(101, column.size());
+        assertEquals("QUADRUPOLE", column.getString(99));
+        assertEquals("MARKER", column.getString(100));
+    }
+
+    @Test
+    public void columnsWithoutTypeAreConvertedLater() throws TfsResultException {
+        TfsResultImpl untyped = new TfsResultImpl();
+        untyped.createColumn("X");
+        untyped.addRow(Arrays.asList("0.5"));
+        untyped.setVarType("X", MadxVarType.DOUBLE);
+        untyped.convert();
+        assertEquals(Arrays.asList(0.5), untyped.getDoubleData("X"));
+    }
+
+    @Test(expected = TfsResultException.class)
+    public void invalidNumbersAreRejected() throws TfsResultException {
+        result.addRow(Arrays.asList("IP1", "MARKER", "abc"));
+        result.convert();
+    }
+
+    @Test
+    public void verifyRejectsInvalidNumbers() throws TfsResultException {
+        result.addRow(Arrays.asList("IP1", "MARKER", "1e-3"));
+        result.addRow(Arrays.asList("MQ.1", "QUADRUPOLE", "-inf"));
+        result.addRow(Arrays.asList("MQ.2", "QUADRUPOLE", ".5"));
+        result.finish();
+        result.verify();
+
+        result.addRow(Arrays.asList("MQ.3", "QUADRUPOLE", "nan"));
+        result.finish();
+        try {
+            result.verify();
+            fail("'nan' is not a number.");
+        } catch (TfsResultException e) {
+            assertEquals("Error while converting value 'nan' to Double", e.getCause().getMessage());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void invalidNumbersFailOnFirstAccessIfNotVerified() {
+        result.addRow(Arrays.asList("IP1", "MARKER", "abc"));
+        result.finish();
+        assertEquals(Arrays.asList("abc"), result.getStringData("BETX"));
+        result.getDoubleData("BETX");
+    }
+
+    @Test
+    public void numbersAreConvertedOnFirstAccess() {
+        DoubleColumn column = new DoubleColumn();
+        column.append("1.5");
+        column.append("2");
+        column.compact();
+        assertFalse(column.isConverted());
+        assertEquals(2.0, column.getDouble(1), 0.0);
+        assertTrue(column.isConverted());
+
+        /* appending discards the converted values */
+        column.append("3");
+        assertFalse(column.isConverted());
+        assertEquals(Arrays.asList(1.5, 2.0, 3.0), column.doubleView());
+    }
+
+    @Test
+    public void concurrentFirstAccessSeesAllValues() throws Exception {
+        List<Double> expected = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            result.addRow(Arrays.asList("E" + i, "DRIFT", Integer.toString(i)));
+            expected.add((double) i);
+        }
+        result.finish();
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<List<Double>>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return new ArrayList<>(result.getDoubleData("BETX"));
+                }));
+            }
+            start.countDown();
+            for (Future<List<Double>> future : futures) {
+                assertEquals(expected, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void concurrentReadsWhileTheDictionaryGrows() throws Exception {
+        ElementNameDictionary dictionary = new ElementNameDictionary();
+        TfsResultImpl shared = new TfsResultImpl(dictionary);
+        shared.createColumn("NAME");
+        shared.createColumn("BETX");
+        shared.setVarType("NAME", MadxVarType.STRING);
+        shared.setVarType("BETX", MadxVarType.DOUBLE);
+        int rows = 5000;
+        for (int i = 0; i < rows; i++) {
+            shared.addRow(Arrays.asList("E" + i, Integer.toString(i)));
+        }
+        shared.finish();
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            /* another result of the same model is parsed meanwhile */
+            Future<?> writer = executor.submit(() -> {
+                start.await();
+                TfsResultImpl other = shared.createChunk();
+                for (int i = 0; i < 20000; i++) {
+                    other.addRow(Arrays.asList("M" + i, "1"));
+                }
+                return null;
+            });
+            List<Future<?>> readers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int offset = i;
+                readers.add(executor.submit(() -> {
+                    start.await();
+                    for (int row = offset; row < rows; row += threads) {
+                        assertEquals(row, (int) shared.getElementIndex("e" + row));
+                        assertEquals("E" + row, shared.getStringData("NAME").get(row));
+                        assertEquals(row, shared.getDoubleData("BETX").get(row), 0.0);
+                        assertNull(shared.getElementIndex("M" + row));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            writer.get();
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void elementIndexIsBuiltFromTheNameColumn() throws TfsResultException {
+        result.addRow(Arrays.asList("IP1", "MARKER", "0"));
+        result.addRow(Arrays.asList("MQ.1", "QUADRUPOLE", "1"));
+        assertEquals(1, (int) result.getElementIndex("mq.1"));
+
+        /* the index is updated with further rows, later ones win */
+        result.addRow(Arrays.asList("IP1", "MARKER", "2"));
+        result.convert();
+        assertEquals(2, (int) result.getElementIndex("IP1"));
+        assertNull(result.getElementIndex("MQ.2"));
+    }
+
+    @Test
+    public void resultsWithTheSameDictionaryShareTheNames() {
+        ElementNameDictionary dictionary = new ElementNameDictionary();
+        TfsResultImpl first = new TfsResultImpl(dictionary);
+        TfsResultImpl second = new TfsResultImpl(dictionary);
+        for (TfsResultImpl each : Arrays.asList(first, second)) {
+            each.createColumn("NAME");
+            each.setVarType("NAME", MadxVarType.STRING);
+            each.addRow(Arrays.asList(new String("MQ.1")));
+            each.addRow(Arrays.asList(new String("IP1")));
+        }
+        assertEquals(2, dictionary.size());
+        assertSame(first.getStringData("NAME").get(0), second.getStringData("NAME").get(0));
+        assertEquals(1, (int) second.getElementIndex("ip1"));
+
+        /* names which only other results contain are not found */
+        first.createChunk().addRow(Arrays.asList("MB.1"));
+        assertNull(first.getElementIndex("MB.1"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void viewsAreReadOnly() throws TfsResultException {
+        result.addRow(Arrays.asList("IP1", "MARKER", "0"));
+        result.convert();
+        List<Double> values = result.getDoubleData("BETX");
+        values.set(0, 1.0);
+    }
+}
@@ -0,0 +1,125 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultImpl;
+
+public class ChunkedTfsReaderTest {
+
+    private static final String HEADER = "@ NAME             %05s \"TWISS\"\n" //
+            + "@ Q1               %le   64.31\n" //
+            + "* NAME KEYWORD S BETX\n" //
+            + "$ %s %s %le %le\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parallelParsingGivesTheSameResultAsStreaming() throws IOException, TfsFileParserException {
+        StringBuilder content = new StringBuilder(HEADER);
+        for (int i = 0; i < 1000; i++) {
+            content.append(" \"E.").append(i).append("\" \"").append((i % 3 == 0) ? "DRIFT" : "QUADRUPOLE")
+                    .append("\" ").append(i * 0.5).append("   ").append(-i).append("e-3\r\n");
+        }
+        File file = write(content.toString());
+
+        TfsResultImpl streamed = parse(file, Long.MAX_VALUE);
+        TfsResultImpl chunked = parse(file, 0);
+
+        assertEquals(1000, chunked.getStringData("NAME").size());
+        assertEquals(streamed.getKeys(), chunked.getKeys());
+        for (String key : streamed.getKeys()) {
+            assertEquals(streamed.getStringData(key), chunked.getStringData(key));
+        }
+        assertEquals(streamed.getDoubleData("BETX"), chunked.getDoubleData("BETX"));
+        assertEquals(streamed.getSummary().getDoubleValue("Q1"), chunked.getSummary().getDoubleValue("Q1"));
+        assertEquals(999, (int) chunked.getElementIndex("e.999"));
+    }
+
+    @Test
+    public void charactersSpanningSeveralReadsAreDecoded() throws IOException, TfsFileParserException {
+        StringBuilder content = new StringBuilder(HEADER);
+        for (int i = 0; i < 10000; i++) {
+            content.append(" \"\u00c4.").append(i).append("\" \"DRIFT\" ").append(i).append(" 1.0\n");
+        }
+        File file = write(content.toString());
+
+        TfsResultImpl streamed = parse(file, Long.MAX_VALUE);
+        TfsFileParser parser = new TfsFileParser(file);
+        parser.setParallelThreshold(0);
+        parser.parse();
+
+        assertEquals(streamed.getStringData("NAME"), parser.getResult().getStringData("NAME"));
+        assertTrue("The file must not be held open after parsing.", file.delete());
+    }
+
+    @Test
+    public void fileWithoutRowsHasAnEmptyResult() throws IOException, TfsFileParserException {
+        TfsResultImpl result = parse(write(HEADER), 0);
+        assertEquals(4, result.getColumnCount());
+        assertEquals(0, result.getDoubleData("S").size());
+    }
+
+    @Test(expected = TfsFileParserException.class)
+    public void rowsWithWrongFieldCountAreRejected() throws IOException, TfsFileParserException {
+        StringBuilder content = new StringBuilder(HEADER);
+        for (int i = 0; i < 100; i++) {
+            content.append("\"E\" \"DRIFT\" 1.0 2.0\n");
+        }
+        content.append("\"E\" \"DRIFT\" 1.0\n");
+        parse(write(content.toString()), 0);
+    }
+
+    @Test
+    public void invalidNumbersAreRejectedWhileParsing() throws IOException {
+        StringBuilder content = new StringBuilder(HEADER);
+        for (int i = 0; i < 100; i++) {
+            content.append("\"E\" \"DRIFT\" 1.0 ").append((i == 50) ? "-nan" : "2.0").append('\n');
+        }
+        File file = write(content.toString());
+        for (long parallelThreshold : new long[] { 0, Long.MAX_VALUE }) {
+            try {
+                parse(file, parallelThreshold);
+                fail("'-nan' is not a number.");
+            } catch (TfsFileParserException e) {
+                /* expected, for the chunked as well as for the streamed parsing */
+            }
+        }
+    }
+
+    private File write(String content) throws IOException {
+        File file = folder.newFile("twiss.tfs");
+        Files.write(file.toPath(), content.getBytes(Charset.defaultCharset()));
+        return file;
+    }
+
+    private static TfsResultImpl parse(File file, long parallelThreshold) throws TfsFileParserException {
+        TfsFileParser parser = new TfsFileParser(file);
+        parser.setParallelThreshold(parallelThreshold);
+        parser.setChunkSize(128);
+        parser.parse();
+        return parser.getResult();
+    }
+}
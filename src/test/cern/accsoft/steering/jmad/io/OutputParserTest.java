@@ -26,7 +26,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
 
@@ -78,6 +81,18 @@ public class OutputParserTest {
         assertEquals("4 keys", 4, parser.getResult().getKeys().size());
     }
 
+    @Test
+    public void testParseFromReader() throws TfsFileParserException, IOException {
+        TfsFileParser readerParser = new TfsFileParser(new File(TESTFILE_NAME));
+        try (BufferedReader reader = new BufferedReader(new FileReader(TESTFILE_NAME))) {
+            readerParser.parse(reader);
+        }
+        assertEquals(parser.getResult().getKeys(), readerParser.getResult().getKeys());
+        assertEquals(parser.getResult().getSummary().getKeys(), readerParser.getResult().getSummary().getKeys());
+        String firstKey = parser.getResult().getKeys().get(0);
+        assertEquals(parser.getResult().getStringData(firstKey), readerParser.getResult().getStringData(firstKey));
+    }
+
     @Test
     public void testSplitString() throws TfsFileParserException {
         String testString = "@ ORIGIN           %19s \"MAD-X 3.04.09 Linux\"\n";
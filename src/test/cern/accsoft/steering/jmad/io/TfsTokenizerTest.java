@@ -0,0 +1,187 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import com.google.common.io.Resources;
+
+public class TfsTokenizerTest {
+
+    /**
+     * replaces empty quoted strings for the regex splitting, which fails on them unless they start the line
+     */
+    private static final String EMPTY_STRING_PLACEHOLDER = "\u0000";
+
+    /**
+     * a quote with whitespace on both sides, e.g. closing a string with a trailing space. The regex splitting breaks
+     * such a string apart, so these lines are not compared.
+     */
+    private static final Pattern QUOTE_BETWEEN_WHITESPACE = Pattern.compile("\\s\"(\\s|$)");
+
+    @Test
+    public void quotedTokensKeepTheirWhitespace() throws IOException {
+        TfsTokenizer tokenizer = new TfsTokenizer(new StringReader("@ TITLE %14s \"AMDLH 610104 \"\n"
+                + " \"IP1\"   0.1\t-2e-05 \"\"\r\n\n   \n"));
+        assertTrue(tokenizer.nextLine());
+        assertEquals(Arrays.asList("@", "TITLE", "%14s", "AMDLH 610104 "), new ArrayList<>(tokenizer.getTokens()));
+        assertTrue(tokenizer.nextLine());
+        assertEquals(Arrays.asList("IP1", "0.1", "-2e-05", ""), new ArrayList<>(tokenizer.getTokens()));
+        assertFalse(tokenizer.nextLine());
+        assertEquals(4, tokenizer.getLineCount());
+    }
+
+    @Test
+    public void lastLineWithoutNewlineIsRead() throws IOException {
+        TfsTokenizer tokenizer = new TfsTokenizer(new StringReader("* NAME S\n\"A\" 1"));
+        assertTrue(tokenizer.nextLine());
+        assertTrue(tokenizer.nextLine());
+        assertEquals(2, tokenizer.getTokenCount());
+        assertEquals("1", tokenizer.getToken(1));
+        assertFalse(tokenizer.nextLine());
+        assertEquals(2, tokenizer.getLineCount());
+    }
+
+    @Test
+    public void tokensAreTheSameAsWithTheRegexSplitting() throws IOException, TfsFileParserException {
+        assertSameTokensAsRegexSplitting(twissLikeContent(200));
+    }
+
+    @Test
+    public void tokensOfTwissFileAreTheSameAsWithTheRegexSplitting() throws IOException, TfsFileParserException {
+        assertSameTokensAsRegexSplitting(readResource("twiss-lhcb1.tfs"));
+    }
+
+    @Test
+    public void tokensOfSummaryFileAreTheSameAsWithTheRegexSplitting() throws IOException, TfsFileParserException {
+        assertSameTokensAsRegexSplitting(readResource("summ-lhcb1.tfs"));
+    }
+
+    @Test
+    public void emptyStringsAndTrailingSpacesOfFileAreKept() throws IOException {
+        TfsTokenizer tokenizer = new TfsTokenizer(new StringReader(readResource("summ-lhcb1.tfs")));
+        List<List<String>> lines = new ArrayList<>();
+        while (tokenizer.nextLine()) {
+            lines.add(new ArrayList<>(tokenizer.getTokens()));
+        }
+        assertTrue(lines.contains(Arrays.asList("@", "TITLE", "%29s", "LHC injection optics, beam 1 ")));
+        assertTrue(lines.contains(Arrays.asList("@", "COMMENT", "%00s", "")));
+    }
+
+    private static void assertSameTokensAsRegexSplitting(String content) throws IOException,
+            TfsFileParserException {
+        List<List<String>> expected = new ArrayList<>();
+        for (String line : content.split("\n")) {
+            List<String> fields = legacySplitAllowingEmptyStrings(line.trim());
+            if (!fields.isEmpty()) {
+                expected.add(QUOTE_BETWEEN_WHITESPACE.matcher(line.trim()).find() ? null : fields);
+            }
+        }
+
+        /* small buffers, so that tokens cross the buffer boundaries */
+        for (int bufferSize : new int[] { 1, 7, 64, 1 << 16 }) {
+            TfsTokenizer tokenizer = new TfsTokenizer(new StringReader(content), bufferSize);
+            List<List<String>> actual = new ArrayList<>();
+            while (tokenizer.nextLine()) {
+                actual.add(new ArrayList<>(tokenizer.getTokens()));
+            }
+            assertEquals("buffer size " + bufferSize, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                if (expected.get(i) != null) {
+                    assertEquals("buffer size " + bufferSize + ", line " + i, expected.get(i), actual.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the content of a TFS file next to this class, in the format written by MadX
+     */
+    private static String readResource(String fileName) throws IOException {
+        return Resources.toString(Resources.getResource(TfsTokenizerTest.class, fileName), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the content of a TFS file with the structure of a twiss output of MadX
+     */
+    private static String twissLikeContent(int rows) {
+        Random random = new Random(4711);
+        StringBuilder builder = new StringBuilder();
+        builder.append("@ NAME             %05s \"TWISS\"\n");
+        builder.append("@ TITLE            %14s \"LHC V6.503 b1\"\n");
+        builder.append("@ ORIGIN           %19s \"MAD-X 5.02.08 Linux\"\n");
+        builder.append("@ Q1               %le          64.31\n");
+        builder.append("* NAME KEYWORD S BETX ALFX X PX\n");
+        builder.append("$ %s %s %le %le %le %le %le\n");
+        for (int i = 0; i < rows; i++) {
+            builder.append(" \"MB.A").append(i).append("R1.B1\" \"SBEND\"\t");
+            builder.append(String.format("%18.10g %18.10g", i * 14.3, 100 * random.nextDouble()));
+            builder.append(String.format(" %18.10g %18.10g %18.10g", random.nextGaussian(),
+                    1e-3 * random.nextGaussian(), 1e-16 * random.nextGaussian()));
+            builder.append((i % 2 == 0) ? "\n" : "\r\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * the regex based splitting, which throws an {@link ArrayIndexOutOfBoundsException} for an empty quoted string
+     * that does not start the line. Those are replaced by a placeholder before and restored to empty tokens after the
+     * splitting.
+     */
+    private static List<String> legacySplitAllowingEmptyStrings(String string) throws TfsFileParserException {
+        List<String> fields = legacySplit(string.replace("\"\"", "\"" + EMPTY_STRING_PLACEHOLDER + "\""));
+        fields.replaceAll(field -> EMPTY_STRING_PLACEHOLDER.equals(field) ? "" : field);
+        return fields;
+    }
+
+    /**
+     * the regex based splitting which was used by the TfsFileParser before, including the removal of the quotes
+     */
+    private static List<String> legacySplit(String string) throws TfsFileParserException {
+        List<String> fields = new ArrayList<String>();
+        String[] tokens = string.split("(^|\\s+)\\\"");
+        for (int i = 0; i < tokens.length; i++) {
+            String stringPastQuote = "";
+            if (tokens[i].contains("\"")) {
+                String[] newTokens = tokens[i].split("\\\"");
+                if (newTokens.length > 2) {
+                    throw new TfsFileParserException("Was not able to split string '" + string + "' correctly!");
+                }
+                fields.add(newTokens[0]);
+                if (newTokens.length == 2) {
+                    stringPastQuote = newTokens[1];
+                }
+            } else {
+                stringPastQuote = tokens[i];
+            }
+            for (String field : stringPastQuote.split("[ \t\r]+")) {
+                if (!field.trim().isEmpty()) {
+                    fields.add(field.replace("\"", ""));
+                }
+            }
+        }
+        return fields;
+    }
+}
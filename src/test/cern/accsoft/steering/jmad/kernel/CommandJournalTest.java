@@ -0,0 +1,93 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import cern.accsoft.steering.jmad.kernel.cmd.SetEqual;
+import cern.accsoft.steering.jmad.kernel.cmd.SetListEqual;
+import cern.accsoft.steering.jmad.kernel.cmd.UseCommand;
+import cern.accsoft.steering.jmad.kernel.task.AddFieldErrors;
+
+public class CommandJournalTest {
+
+    private final CommandJournal journal = new CommandJournal();
+
+    @Test
+    public void latestValueWins() {
+        journal.record(new SetEqual("kqf", 0.1));
+        SetEqual kqd = new SetEqual("kqd", 0.2);
+        journal.record(kqd);
+        SetEqual latest = new SetEqual("KQF", 0.3);
+        journal.record(latest);
+
+        /* the replaced value moves to the end */
+        assertEquals(Arrays.asList(kqd, latest), journal.getExecutables());
+    }
+
+    @Test
+    public void listOfValuesIsSplitIntoSingleValues() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        values.put("kqf", 0.1);
+        values.put("kqd", 0.2);
+        journal.record(new SetListEqual(values));
+        SetEqual latest = new SetEqual("kqf", 0.3);
+        journal.record(latest);
+
+        List<JMadExecutable> executables = journal.getExecutables();
+        assertEquals(2, executables.size());
+        assertEquals("kqd = 0.2;", ((SetEqual) executables.get(0)).compose());
+        assertSame(latest, executables.get(1));
+    }
+
+    @Test
+    public void cumulativeEntriesAreKept() {
+        AddFieldErrors first = new AddFieldErrors("mq.1", Arrays.asList(0.0, 0.001));
+        AddFieldErrors second = new AddFieldErrors("mq.1", Arrays.asList(0.0, 0.001));
+        journal.record(first);
+        journal.record(second);
+        assertEquals(Arrays.asList(first, second), journal.getExecutables());
+    }
+
+    @Test
+    public void useIsReplayedAfterEarlierChanges() {
+        AddFieldErrors errors = new AddFieldErrors("mq.1", Arrays.asList(0.0, 0.001));
+        journal.record(new UseCommand("lhcb1"));
+        journal.record(errors);
+        UseCommand use = new UseCommand("lhcb2");
+        journal.record(use);
+        assertEquals(Arrays.asList(errors, use), journal.getExecutables());
+    }
+
+    @Test
+    public void otherExecutablesAreIgnored() {
+        journal.record(new AbstractJMadExecutable() {
+            @Override
+            public String compose() {
+                return "twiss;";
+            }
+        });
+        assertEquals(0, journal.size());
+        journal.record(new SetEqual("kqf", 0.1));
+        journal.clear();
+        assertTrue(journal.getExecutables().isEmpty());
+    }
+}
@@ -22,16 +22,29 @@
 
 package cern.accsoft.steering.jmad.kernel;
 
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
 
 import org.junit.After;
 import org.junit.Test;
 
 import cern.accsoft.steering.jmad.JMadException;
 import cern.accsoft.steering.jmad.bin.MadxBinImpl;
+import cern.accsoft.steering.jmad.kernel.cmd.FreeText;
 import cern.accsoft.steering.jmad.util.JMadPreferences;
 import cern.accsoft.steering.jmad.util.JMadPreferencesImpl;
 import cern.accsoft.steering.jmad.util.TempFileUtilImpl;
@@ -66,6 +79,83 @@ public class JMadKernelTest {
         }
     }
 
+    @Test
+    public void configurationIsCopiedToAnotherKernel() {
+        kernel.setTimeout(1234L);
+        kernel.setCompletionMode(CompletionMode.OUTPUT_SENTINEL);
+        kernel.setThreadMode(ThreadMode.VIRTUAL);
+        kernel.setInputLogEnabled(false);
+        JMadKernelImpl spare = new JMadKernelImpl();
+        assertFalse("the spare was configured differently", kernel.copyConfigurationTo(spare));
+
+        assertEquals(Long.valueOf(1234L), spare.getTimeout());
+        assertEquals(CompletionMode.OUTPUT_SENTINEL, spare.getCompletionMode());
+        assertEquals(ThreadMode.VIRTUAL, spare.getThreadMode());
+        assertFalse(spare.isInputLogEnabled());
+        assertTrue(kernel.copyConfigurationTo(spare));
+
+        kernel.addFatalOutputPattern(Pattern.compile("boom"));
+        assertFalse(kernel.copyConfigurationTo(spare));
+        assertTrue(kernel.copyConfigurationTo(spare));
+    }
+
+    @Test
+    public void listenersAreMovedToAnotherKernel() {
+        JMadKernelListener listener = createMock(JMadKernelListener.class);
+        kernel.addListener(listener);
+        JMadKernel spare = createMock(JMadKernel.class);
+        spare.addListener(listener);
+        replay(listener);
+        replay(spare);
+
+        kernel.moveListenersTo(spare);
+        verify(spare);
+
+        /* the listener is no longer registered at the replaced kernel */
+        JMadKernel other = createMock(JMadKernel.class);
+        replay(other);
+        kernel.moveListenersTo(other);
+        verify(other);
+        verify(listener);
+    }
+
+    @Test
+    public void queuedWorkFailsWhenTheStopTimesOut() throws InterruptedException, TimeoutException {
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        kernel.submit(k -> {
+            running.countDown();
+            try {
+                return blocker.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new JMadException("Interrupted while blocking the kernel.", e);
+            }
+        }, ExecutionPriority.INTERACTIVE);
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Integer> queuedWork = kernel.submit(k -> 42, ExecutionPriority.BATCH);
+        FreeText text = new FreeText();
+        text.setText("value, 1;");
+        CompletableFuture<?> queuedExecutable = kernel.executeAsync(text);
+        try {
+            /* madx is not running, so stopping fails anyway after dropping the queued work */
+            kernel.stopAsync(50, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            /* expected */
+        } finally {
+            blocker.countDown();
+        }
+
+        for (CompletableFuture<?> future : Arrays.asList(queuedWork, queuedExecutable)) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail("The queued work must not be run after the kernel was stopped.");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof KernelStoppedException);
+            }
+        }
+    }
+
     // @Ignore("Takes to long")
     @Test
     public void testEmptyCommands() throws JMadException {
@@ -83,6 +173,34 @@ public class JMadKernelTest {
         assertTrue("madx should have created a file.", file.exists());
     }
 
+    @Test
+    public void readyFileIsTheDefaultCompletionMode() {
+        if (System.getProperty(JMadKernelImpl.PROP_COMPLETION_MODE) == null) {
+            assertEquals(CompletionMode.READY_FILE, new JMadKernelImpl().getCompletionMode());
+        }
+    }
+
+    @Test
+    public void testWaitUntilReadyWithOutputSentinel() throws JMadException {
+        kernel.setCompletionMode(CompletionMode.OUTPUT_SENTINEL);
+        kernel.start();
+        kernel.writeCommand("System \"echo > " + file.getAbsolutePath() + "\";");
+        kernel.waitUntilReady();
+        assertTrue("madx should have created a file.", file.exists());
+    }
+
+    @Test
+    public void outputSentinelIsFlushedByMadx() throws JMadException {
+        /* a sentinel stuck in the output buffer of madx would only arrive with later output, so each one times out */
+        kernel.setCompletionMode(CompletionMode.OUTPUT_SENTINEL);
+        kernel.setTimeout(5000L);
+        kernel.start();
+        for (int i = 0; i < 20; i++) {
+            kernel.writeCommand("jmad_sentinel_test = " + i + ";");
+            kernel.waitUntilReady();
+        }
+    }
+
     @Test(expected = WaitForMadxTimedOutException.class)
     public void testWaitUntilReadyTimeout() throws JMadException {
         kernel.start();
@@ -0,0 +1,146 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.conf.JMadServiceConfiguration;
+import cern.accsoft.steering.jmad.factory.JMadKernelFactory;
+import cern.accsoft.steering.jmad.kernel.cmd.FreeText;
+import cern.accsoft.steering.jmad.kernel.stats.LatencyHistogram;
+import cern.accsoft.steering.jmad.kernel.stats.LatencySnapshot;
+
+/**
+ * Compares the {@link ThreadMode}s for many concurrently running kernels. For each number of kernels and each mode, it
+ * starts the kernels, sends a number of small executables to all of them at once and reports the peak number of live
+ * platform threads of the JVM and the latencies of the executables (from submission to completion).
+ * <p>
+ * This needs a working MadX and is therefore not run as a unit test. Usage:
+ *
+ * <pre>
+ * java ... cern.accsoft.steering.jmad.kernel.KernelThreadModeBenchmark [executionsPerKernel [kernelCount ...]]
+ * </pre>
+ *
+ * The defaults are 20 executions per kernel and 10, 100 and 500 kernels. The virtual mode only differs from the
+ * platform mode, if the benchmark runs on Java 21 or later. Even then, each kernel keeps two platform threads for its
+ * output relays (see {@link ThreadMode}), so the peak number of platform threads still grows with the number of
+ * kernels. No results of this benchmark are recorded yet.
+ */
+public class KernelThreadModeBenchmark {
+
+    private static final int DEFAULT_EXECUTIONS_PER_KERNEL = 20;
+    private static final int[] DEFAULT_KERNEL_COUNTS = { 10, 100, 500 };
+
+    /** the interval in which the number of threads is sampled */
+    private static final long SAMPLE_INTERVAL_MILLIS = 5;
+
+    private final JMadKernelFactory kernelFactory;
+    private final int executionsPerKernel;
+
+    private KernelThreadModeBenchmark(JMadKernelFactory kernelFactory, int executionsPerKernel) {
+        this.kernelFactory = kernelFactory;
+        this.executionsPerKernel = executionsPerKernel;
+    }
+
+    public static void main(String... args) throws Exception {
+        int executionsPerKernel = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_EXECUTIONS_PER_KERNEL;
+        int[] kernelCounts = DEFAULT_KERNEL_COUNTS;
+        if (args.length > 1) {
+            kernelCounts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                kernelCounts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.println("Java " + System.getProperty("java.version") + ", virtual threads available: "
+                + ThreadMode.isVirtualThreadAvailable());
+        System.out.println(String.format("%-8s %8s %12s %12s %12s %12s %12s", "mode", "kernels", "threads(idle)",
+                "threads(peak)", "p50[ms]", "p99[ms]", "max[ms]"));
+
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(
+                JMadServiceConfiguration.class)) {
+            KernelThreadModeBenchmark benchmark = new KernelThreadModeBenchmark(context.getBean(
+                    JMadKernelFactory.class), executionsPerKernel);
+            for (int kernelCount : kernelCounts) {
+                for (ThreadMode mode : ThreadMode.values()) {
+                    benchmark.run(mode, kernelCount);
+                }
+            }
+        }
+    }
+
+    private void run(ThreadMode mode, int kernelCount) throws JMadException, InterruptedException {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        List<JMadKernel> kernels = new ArrayList<>(kernelCount);
+        try {
+            for (int i = 0; i < kernelCount; i++) {
+                JMadKernel kernel = kernelFactory.createKernel();
+                ((JMadKernelImpl) kernel).setThreadMode(mode);
+                kernel.start();
+                kernels.add(kernel);
+            }
+
+            /* let the kernel threads be created by a first execution */
+            for (JMadKernel kernel : kernels) {
+                kernel.execute(command(0));
+            }
+            int idleThreads = threadBean.getThreadCount();
+
+            AtomicInteger peakThreads = new AtomicInteger(idleThreads);
+            ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+            sampler.scheduleAtFixedRate(() -> peakThreads.accumulateAndGet(threadBean.getThreadCount(), Math::max),
+                    0, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+            LatencyHistogram latencies = new LatencyHistogram();
+            List<CompletableFuture<Void>> futures = new ArrayList<>(kernelCount * executionsPerKernel);
+            for (int execution = 1; execution <= executionsPerKernel; execution++) {
+                for (JMadKernel kernel : kernels) {
+                    long submitted = System.nanoTime();
+                    futures.add(kernel.executeAsync(command(execution)).thenRun(
+                            () -> latencies.record(System.nanoTime() - submitted)));
+                }
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).join();
+            sampler.shutdownNow();
+
+            LatencySnapshot snapshot = latencies.snapshot();
+            System.out.println(String.format("%-8s %8d %12d %12d %12.2f %12.2f %12.2f", mode, kernelCount,
+                    idleThreads, peakThreads.get(), millis(snapshot.getP50()), millis(snapshot.getP99()),
+                    millis(snapshot.getMax())));
+        } finally {
+            for (JMadKernel kernel : kernels) {
+                kernel.stop();
+            }
+        }
+    }
+
+    private static JMadExecutable command(int value) {
+        FreeText text = new FreeText();
+        text.setText("jmad_benchmark = " + value + ";");
+        return text;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,75 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.accsoft.steering.jmad.kernel.MadxOutputEvent.Kind;
+
+public class MadxOutputWatchdogTest {
+
+    private List<MadxOutputEvent> events;
+    private MadxOutputWatchdog watchdog;
+
+    @Before
+    public void setUp() {
+        events = new ArrayList<>();
+        watchdog = new MadxOutputWatchdog(Collections.singletonList(Pattern.compile("endless loop")), events::add);
+    }
+
+    @Test
+    public void ordinaryOutputIsIgnored() {
+        watchdog.processNewLine("  enter Twiss module");
+        watchdog.processNewLine("++++++ table: summ");
+        watchdog.processNewLine("return;");
+        assertEquals(0, events.size());
+        assertNull(watchdog.getFatalEvent());
+    }
+
+    @Test
+    public void progressOfMatchingAndTrackingIsReported() {
+        watchdog.processNewLine(" call:        42   Penalty function =   0.12345678E-01");
+        watchdog.processNewLine("   turn:      100");
+        assertEquals(2, events.size());
+        assertEquals(Kind.MATCH_CALL, events.get(0).getKind());
+        assertEquals(42, events.get(0).getValue());
+        assertEquals(Kind.TRACK_TURN, events.get(1).getKind());
+        assertEquals(100, events.get(1).getValue());
+    }
+
+    @Test
+    public void firstFatalErrorIsRemembered() {
+        watchdog.processNewLine("++++++ warning: MBXW.A4L1 undefined, ignored");
+        watchdog.processNewLine("+=+=+= fatal: sequence without beam: lhcb1");
+        watchdog.processNewLine("+=+=+= fatal: another one");
+        assertEquals(3, events.size());
+        assertEquals(Kind.WARNING, events.get(0).getKind());
+        assertEquals(Kind.FATAL, events.get(1).getKind());
+        assertSame(events.get(1), watchdog.getFatalEvent());
+    }
+
+    @Test
+    public void additionalPatternsMarkFatalErrors() {
+        watchdog.processNewLine("macro detected an endless loop");
+        assertEquals(Kind.FATAL, watchdog.getFatalEvent().getKind());
+    }
+}
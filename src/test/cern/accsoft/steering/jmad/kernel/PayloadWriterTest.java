@@ -0,0 +1,69 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PayloadWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void smallPayloadStaysInMemory() throws IOException {
+        File spillFile = new File(folder.getRoot(), "payload.madx");
+        try (PayloadWriter writer = new PayloadWriter(10, spillFile)) {
+            writer.write("a = 1;");
+            writer.write('\n');
+            assertFalse(writer.isSpilled());
+            assertEquals("a = 1;\n", writer.getContent());
+        }
+        assertFalse(spillFile.exists());
+    }
+
+    @Test
+    public void largePayloadIsWrittenToFile() throws IOException {
+        File spillFile = new File(folder.getRoot(), "payload.madx");
+        StringBuilder expected = new StringBuilder();
+        try (PayloadWriter writer = new PayloadWriter(10, spillFile)) {
+            for (int i = 0; i < 100; i++) {
+                String line = "k" + i + " = " + i + ";\n";
+                writer.write(line);
+                expected.append(line);
+            }
+            assertTrue(writer.isSpilled());
+        }
+        assertEquals(expected.toString(), new String(Files.readAllBytes(spillFile.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void negativeThresholdNeverSpills() throws IOException {
+        File spillFile = new File(folder.getRoot(), "payload.madx");
+        try (PayloadWriter writer = new PayloadWriter(-1, spillFile)) {
+            for (int i = 0; i < 1000; i++) {
+                writer.write("k" + i + " = " + i + ";\n");
+            }
+            assertFalse(writer.isSpilled());
+        }
+    }
+}
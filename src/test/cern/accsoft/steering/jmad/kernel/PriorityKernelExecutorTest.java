@@ -0,0 +1,98 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+package cern.accsoft.steering.jmad.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class PriorityKernelExecutorTest {
+
+    @Test
+    public void interactiveWorkOvertakesQueuedBatchWork() throws InterruptedException {
+        PriorityKernelExecutor executor = new PriorityKernelExecutor(Executors.defaultThreadFactory());
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        executor.execute(ExecutionPriority.BATCH, () -> {
+            running.countDown();
+            awaitQuietly(blocker);
+            order.add("running");
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        executor.execute(ExecutionPriority.BATCH, () -> order.add("batch-1"));
+        executor.execute(ExecutionPriority.BATCH, () -> order.add("batch-2"));
+        executor.execute(ExecutionPriority.INTERACTIVE, () -> order.add("interactive"));
+
+        QueueStatistics statistics = executor.getStatistics();
+        assertEquals(2, statistics.getQueueDepth(ExecutionPriority.BATCH));
+        assertEquals(1, statistics.getQueueDepth(ExecutionPriority.INTERACTIVE));
+        assertEquals(3, statistics.getTotalQueueDepth());
+
+        blocker.countDown();
+        assertTrue(executor.shutdown(5000L));
+        assertEquals(Arrays.asList("running", "interactive", "batch-1", "batch-2"), order);
+
+        statistics = executor.getStatistics();
+        assertEquals(0, statistics.getTotalQueueDepth());
+        assertEquals(3, statistics.getWaitTime(ExecutionPriority.BATCH).getCount());
+        assertEquals(1, statistics.getWaitTime(ExecutionPriority.INTERACTIVE).getCount());
+    }
+
+    @Test
+    public void executorThreadIsRecognized() throws InterruptedException {
+        PriorityKernelExecutor executor = new PriorityKernelExecutor(Executors.defaultThreadFactory());
+        List<Boolean> inside = new CopyOnWriteArrayList<>();
+        executor.execute(ExecutionPriority.INTERACTIVE, () -> inside.add(executor.isExecutorThread()));
+        assertTrue(executor.shutdown(5000L));
+        assertEquals(Arrays.asList(true), inside);
+        assertFalse(executor.isExecutorThread());
+    }
+
+    @Test
+    public void droppedWorkIsCancelled() throws InterruptedException {
+        PriorityKernelExecutor executor = new PriorityKernelExecutor(Executors.defaultThreadFactory());
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        List<String> cancelled = new CopyOnWriteArrayList<>();
+
+        executor.execute(ExecutionPriority.INTERACTIVE, () -> {
+            running.countDown();
+            awaitQuietly(blocker);
+        }, () -> cancelled.add("running"));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        executor.execute(ExecutionPriority.BATCH, () -> cancelled.add("run"), () -> cancelled.add("queued"));
+
+        assertFalse(executor.shutdown(50L));
+        blocker.countDown();
+        assertEquals(Arrays.asList("queued"), cancelled);
+        assertEquals(0, executor.getStatistics().getTotalQueueDepth());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
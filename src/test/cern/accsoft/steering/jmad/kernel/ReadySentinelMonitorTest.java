@@ -0,0 +1,63 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import cern.accsoft.steering.jmad.JMadException;
+
+public class ReadySentinelMonitorTest {
+
+    private static final String PREFIX = "jmad-ready-";
+    private static final long WAIT_MILLISEC = 200;
+
+    private final ReadySentinelMonitor monitor = new ReadySentinelMonitor(PREFIX, null);
+
+    @Test
+    public void sentinelLineIsPrefixAndNumber() {
+        assertEquals("jmad-ready-42", monitor.sentinelLine(42));
+    }
+
+    @Test
+    public void waitingTimesOutWithoutSentinel() throws JMadException {
+        assertFalse(monitor.waitForSentinel(1, WAIT_MILLISEC));
+    }
+
+    @Test
+    public void sentinelBeforeWaitingIsRemembered() throws JMadException {
+        monitor.processNewLine("  jmad-ready-1  ");
+        assertTrue(monitor.waitForSentinel(1, WAIT_MILLISEC));
+    }
+
+    @Test
+    public void laterSentinelAlsoReleasesEarlierOnes() throws JMadException {
+        monitor.processNewLine("jmad-ready-3");
+        assertTrue(monitor.waitForSentinel(2, WAIT_MILLISEC));
+        assertFalse(monitor.waitForSentinel(4, WAIT_MILLISEC));
+    }
+
+    @Test
+    public void echoOfCommandIsIgnored() throws JMadException {
+        monitor.processNewLine("print, text=\"jmad-ready-1\"; // wait until ready");
+        assertFalse(monitor.waitForSentinel(1, WAIT_MILLISEC));
+    }
+
+    @Test
+    public void sentinelFromOtherThreadWakesUpWaiter() throws JMadException {
+        new Thread(() -> monitor.processNewLine("jmad-ready-1")).start();
+        assertTrue(monitor.waitForSentinel(1, null));
+    }
+}
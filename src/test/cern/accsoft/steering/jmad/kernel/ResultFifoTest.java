@@ -0,0 +1,107 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResultFifoTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ResultFifo fifo;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        try {
+            fifo = ResultFifo.create(new File(folder.getRoot(), "result.fifo"));
+        } catch (IOException e) {
+            Assume.assumeNoException("named pipes are not supported on this system", e);
+        }
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void linesWrittenToFifoArriveAtReader() throws Exception {
+        Future<Integer> lineCount = fifo.read(executor, ResultFifoTest::countLines);
+        try (Writer writer = new FileWriter(fifo.getFile())) {
+            for (int i = 0; i < 1000; i++) {
+                writer.write("line " + i + "\n");
+            }
+        }
+        assertEquals(1000, (int) fifo.await(lineCount, 1000L));
+    }
+
+    @Test
+    public void readerIsUnblockedIfNobodyWrites() throws Exception {
+        Future<Integer> lineCount = fifo.read(executor, ResultFifoTest::countLines);
+        assertEquals(0, (int) fifo.await(lineCount, 1000L));
+    }
+
+    @Test
+    public void fifoCanBeReusedAfterUnblocking() throws Exception {
+        readerIsUnblockedIfNobodyWrites();
+        linesWrittenToFifoArriveAtReader();
+    }
+
+    @Test
+    public void writerIsNotBrokenIfTheReaderFails() throws Exception {
+        Future<Integer> failure = fifo.read(executor, reader -> {
+            reader.readLine();
+            throw new IOException("parse error");
+        });
+        /* much more than the buffer of the pipe */
+        try (Writer writer = new FileWriter(fifo.getFile())) {
+            for (int i = 0; i < 100000; i++) {
+                writer.write("line " + i + "\n");
+            }
+        }
+        try {
+            fifo.await(failure, 1000L);
+            fail("The failure of the reader function was not reported.");
+        } catch (ExecutionException e) {
+            assertEquals("parse error", e.getCause().getMessage());
+        }
+    }
+
+    private static int countLines(BufferedReader reader) throws IOException {
+        int count = 0;
+        while (reader.readLine() != null) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,50 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ThreadModeTest {
+
+    @Test
+    public void platformThreadsAreNamedDaemons() {
+        Thread thread = ThreadMode.PLATFORM.newThread("jmad-test-0", () -> {
+            /* nothing to do */
+        });
+        assertEquals("jmad-test-0", thread.getName());
+        assertTrue(thread.isDaemon());
+    }
+
+    @Test
+    public void virtualThreadsRunTheirWork() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+        Thread thread = ThreadMode.VIRTUAL.newThread("jmad-test-1", ran::countDown);
+        assertEquals("jmad-test-1", thread.getName());
+        /* virtual threads are always daemons, and so is the fallback on older runtimes */
+        assertTrue(thread.isDaemon());
+        thread.start();
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void modeIsFoundByName() {
+        assertEquals(ThreadMode.VIRTUAL, ThreadMode.fromName(" virtual ", ThreadMode.PLATFORM));
+        assertEquals(ThreadMode.PLATFORM, ThreadMode.fromName("unknown", ThreadMode.PLATFORM));
+        assertEquals(ThreadMode.PLATFORM, ThreadMode.fromName(null, ThreadMode.PLATFORM));
+    }
+}
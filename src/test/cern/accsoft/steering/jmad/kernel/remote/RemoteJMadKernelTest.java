@@ -0,0 +1,406 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.remote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.domain.result.Result;
+import cern.accsoft.steering.jmad.domain.result.ResultType;
+import cern.accsoft.steering.jmad.domain.result.StrengthResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResult;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultImpl;
+import cern.accsoft.steering.jmad.domain.result.tfs.TfsSummaryImpl;
+import cern.accsoft.steering.jmad.domain.knob.strength.SimpleStrength;
+import cern.accsoft.steering.jmad.kernel.AbstractJMadExecutable;
+import cern.accsoft.steering.jmad.kernel.ExecutionPriority;
+import cern.accsoft.steering.jmad.kernel.JMadExecutable;
+import cern.accsoft.steering.jmad.kernel.JMadKernel;
+import cern.accsoft.steering.jmad.kernel.JMadKernelListener;
+import cern.accsoft.steering.jmad.kernel.KernelWork;
+import cern.accsoft.steering.jmad.kernel.MadxTerminatedException;
+import cern.accsoft.steering.jmad.kernel.QueueStatistics;
+import cern.accsoft.steering.jmad.kernel.snapshot.KernelSnapshot;
+import cern.accsoft.steering.jmad.kernel.stats.ExecutionStatistics;
+import cern.accsoft.steering.jmad.util.JMadPreferences;
+import cern.accsoft.steering.jmad.util.JMadPreferencesImpl;
+import cern.accsoft.steering.jmad.util.MadxVarType;
+import cern.accsoft.steering.jmad.util.TempFileUtilImpl;
+
+public class RemoteJMadKernelTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String SECRET = "test-secret";
+
+    private static final String HOST = InetAddress.getLoopbackAddress().getHostAddress();
+
+    private StubKernel stubKernel;
+    private final AtomicInteger createdKernels = new AtomicInteger();
+    private JMadKernelAgent agent;
+    private TempFileUtilImpl fileUtil;
+    private RemoteJMadKernel kernel;
+
+    @Before
+    public void setUp() throws IOException, JMadException {
+        stubKernel = new StubKernel(folder.newFolder("agent-kernel"));
+        agent = new JMadKernelAgent(() -> {
+            createdKernels.incrementAndGet();
+            return stubKernel;
+        }, folder.newFolder("agent"), SECRET);
+        agent.start(0);
+
+        JMadPreferences preferences = new JMadPreferencesImpl();
+        preferences.setOutputPath(folder.newFolder("client").getAbsolutePath());
+        preferences.setRamOutputSizeLimit(0);
+        fileUtil = new TempFileUtilImpl();
+        fileUtil.setPreferences(preferences);
+        fileUtil.init();
+
+        kernel = new RemoteJMadKernel(HOST, agent.getPort(), SECRET);
+        kernel.setFileUtil(fileUtil);
+        kernel.start();
+    }
+
+    @After
+    public void tearDown() {
+        agent.close();
+    }
+
+    @Test
+    public void clientWithWrongSecretIsRejected() throws JMadException {
+        RemoteJMadKernel intruder = new RemoteJMadKernel(HOST, agent.getPort(), "wrong-secret");
+        intruder.setFileUtil(fileUtil);
+        try {
+            intruder.start();
+            fail("The agent must reject a client with the wrong secret.");
+        } catch (JMadException e) {
+            assertFalse(intruder.isMadxRunning());
+        }
+        assertEquals("only the authenticated client must get a kernel", 1, createdKernels.get());
+    }
+
+    @Test(expected = IOException.class)
+    public void negativeLengthIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(-1);
+        RemoteProtocol.readString(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test(expected = IOException.class)
+    public void oversizedBlockIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(Integer.MAX_VALUE);
+        out.writeInt(16);
+        RemoteProtocol.readBlock(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void tfsResultIsIdenticalToTheParsedOne() throws JMadException {
+        TfsResultImpl tfsResult = new TfsResultImpl();
+        tfsResult.createColumn("NAME");
+        tfsResult.setVarType("NAME", MadxVarType.STRING);
+        tfsResult.createColumn("BETX");
+        tfsResult.setVarType("BETX", MadxVarType.DOUBLE);
+        tfsResult.addRow(Arrays.asList("MQ.1", "1.302602123e-16"));
+        tfsResult.addRow(Arrays.asList("MQ.2", "-0.001530097755"));
+        TfsSummaryImpl summary = new TfsSummaryImpl();
+        summary.addValue("Q1", "64.31", MadxVarType.DOUBLE);
+        summary.convert();
+        tfsResult.setTfsSummary(summary);
+        tfsResult.convert();
+        stubKernel.result = tfsResult;
+
+        TfsResult result = (TfsResult) kernel.execute(new TestExecutable("twiss, file=", ResultType.TFS_RESULT));
+        assertEquals(Arrays.asList("NAME", "BETX"), result.getKeys());
+        assertEquals(Arrays.asList("MQ.1", "MQ.2"), result.getStringData("NAME"));
+        assertEquals(Arrays.asList("1.302602123e-16", "-0.001530097755"), result.getStringData("BETX"));
+        assertEquals(-0.001530097755, result.getDoubleData("BETX").get(1), 0.0);
+        assertEquals(Integer.valueOf(1), result.getElementIndex("mq.2"));
+        assertEquals(64.31, result.getSummary().getDoubleValue("Q1"), 0.0);
+    }
+
+    @Test
+    public void strengthResultIsTransferred() throws JMadException {
+        stubKernel.result = new StrengthResult(Arrays.asList(new SimpleStrength("kqf", 0.01, "comment")));
+
+        StrengthResult result = (StrengthResult) kernel.execute(new TestExecutable("value, kqf;",
+                ResultType.VALUES_RESULT));
+        assertEquals("kqf", result.getValues().get(0).getName());
+        assertEquals(Arrays.asList(0.01), result.getDoubleValues());
+    }
+
+    @Test
+    public void outputFileIsReplacedByTheOneOfTheAgent() throws JMadException {
+        kernel.execute(new TestExecutable("twiss, file=", ResultType.NO_RESULT));
+        String composed = stubKernel.composedCommands.get(0);
+        assertEquals("twiss, file=\"" + stubKernel.outputFile.getAbsolutePath() + "\";", composed);
+    }
+
+    @Test
+    public void batchResultsKeepTheOrder() throws JMadException {
+        stubKernel.result = new StrengthResult(new ArrayList<>());
+        List<Result> results = kernel.executeBatch(Arrays.asList(new TestExecutable("a;", ResultType.NO_RESULT),
+                new TestExecutable("b;", ResultType.VALUES_RESULT)));
+        assertNull(results.get(0));
+        assertTrue(results.get(1) instanceof StrengthResult);
+        assertEquals(Arrays.asList("a;", "b;"), stubKernel.composedCommands);
+    }
+
+    @Test
+    public void localFilesAreUploadedAndTranslated() throws IOException, JMadException {
+        File localFile = folder.newFile("strengths.str");
+        Files.write(localFile.toPath(), "kqf = 0.01;".getBytes(StandardCharsets.UTF_8));
+        String command = "call, file=\"" + localFile.getAbsolutePath() + "\";";
+
+        kernel.execute(new TestExecutable(command, ResultType.NO_RESULT));
+        kernel.execute(new TestExecutable(command, ResultType.NO_RESULT));
+
+        for (String composed : stubKernel.composedCommands) {
+            assertFalse(composed.contains(localFile.getAbsolutePath()));
+        }
+        File remoteFile = stubKernel.referencedFiles.get(0);
+        assertEquals("strengths.str", remoteFile.getName());
+        assertEquals("kqf = 0.01;", new String(Files.readAllBytes(remoteFile.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void filesWithTheSameNameInDifferentDirsAreKeptApart() throws IOException, JMadException {
+        File first = new File(folder.newFolder("first"), "strengths.str");
+        Files.write(first.toPath(), "kqf = 0.01;".getBytes(StandardCharsets.UTF_8));
+        File second = new File(folder.newFolder("second"), "strengths.str");
+        Files.write(second.toPath(), "kqf = 0.02;".getBytes(StandardCharsets.UTF_8));
+
+        kernel.execute(new TestExecutable("call, file=\"" + first.getAbsolutePath() + "\"; call, file=\""
+                + second.getAbsolutePath() + "\";", ResultType.NO_RESULT));
+
+        assertEquals(2, stubKernel.referencedFiles.size());
+        assertFalse(stubKernel.referencedFiles.get(0).equals(stubKernel.referencedFiles.get(1)));
+        assertEquals("kqf = 0.01;", new String(Files.readAllBytes(stubKernel.referencedFiles.get(0).toPath()),
+                StandardCharsets.UTF_8));
+        assertEquals("kqf = 0.02;", new String(Files.readAllBytes(stubKernel.referencedFiles.get(1).toPath()),
+                StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void filesWrittenByMadxAreDownloaded() throws IOException, JMadException {
+        File localFile = new File(kernel.getOutputFile().getParentFile(), "saved.madx");
+        stubKernel.fileContent = "ealign, dx=0.001;";
+
+        kernel.execute(new TestExecutable("esave, file=" + localFile.getAbsolutePath() + ";", ResultType.NO_RESULT));
+        assertEquals("ealign, dx=0.001;", new String(Files.readAllBytes(localFile.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void terminatedMadxIsReportedToTheClient() throws JMadException {
+        stubKernel.failure = new MadxTerminatedException("crashed");
+        try {
+            kernel.execute(new TestExecutable("a;", ResultType.NO_RESULT));
+            fail("The termination was not reported.");
+        } catch (MadxTerminatedException e) {
+            assertTrue(e.getMessage().contains("crashed"));
+        }
+        assertFalse(kernel.isMadxRunning());
+    }
+
+    @Test
+    public void stopEndsTheSession() throws Exception {
+        assertTrue(kernel.isMadxRunning());
+        assertEquals(0, kernel.stop());
+        assertFalse(kernel.isMadxRunning());
+        assertFalse(stubKernel.running);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((agent.getSessionCount() > 0) && (System.currentTimeMillis() < deadline)) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(0, agent.getSessionCount());
+    }
+
+    /**
+     * An executable with fixed commands, followed by its output file, if the commands end with "file=".
+     */
+    private static class TestExecutable extends AbstractJMadExecutable {
+        private final String commands;
+        private final ResultType resultType;
+
+        TestExecutable(String commands, ResultType resultType) {
+            this.commands = commands;
+            this.resultType = resultType;
+        }
+
+        @Override
+        public String compose() {
+            if (commands.endsWith("file=")) {
+                return commands + "\"" + getOutputFile().getAbsolutePath() + "\";";
+            }
+            return commands;
+        }
+
+        @Override
+        public ResultType getResultType() {
+            return resultType;
+        }
+    }
+
+    /**
+     * Records the commands it receives instead of running MadX. It writes the given content to all files within the
+     * mirror dir which are referenced by the commands and do not exist yet.
+     */
+    private static class StubKernel implements JMadKernel {
+        private final File outputFile;
+        private final List<String> composedCommands = new CopyOnWriteArrayList<>();
+        private final List<File> referencedFiles = new CopyOnWriteArrayList<>();
+        private volatile Result result;
+        private volatile JMadException failure;
+        private volatile String fileContent;
+        private volatile boolean running = false;
+
+        StubKernel(File dir) {
+            this.outputFile = new File(dir, "result.out");
+        }
+
+        @Override
+        public void start() {
+            running = true;
+        }
+
+        @Override
+        public int stop() {
+            running = false;
+            return 0;
+        }
+
+        @Override
+        public CompletableFuture<Integer> stopAsync(long timeout, TimeUnit unit) {
+            return CompletableFuture.completedFuture(stop());
+        }
+
+        @Override
+        public Result execute(JMadExecutable executable) throws JMadException {
+            if (failure != null) {
+                running = false;
+                throw failure;
+            }
+            executable.setOutputFile(outputFile);
+            String composed = executable.compose();
+            composedCommands.add(composed);
+            for (String token : composed.split("[\"=;\\s]+")) {
+                File file = new File(token);
+                if (token.startsWith("/") && !file.equals(outputFile)) {
+                    referencedFiles.add(file);
+                    if (!file.exists() && (fileContent != null)) {
+                        try {
+                            Files.write(file.toPath(), fileContent.getBytes(StandardCharsets.UTF_8));
+                        } catch (IOException e) {
+                            throw new JMadException("Could not write file.", e);
+                        }
+                    }
+                }
+            }
+            return (ResultType.NO_RESULT == executable.getResultType()) ? null : result;
+        }
+
+        @Override
+        public CompletableFuture<Result> executeAsync(JMadExecutable executable) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Result> executeAsync(JMadExecutable executable, ExecutionPriority priority) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> CompletableFuture<T> submit(KernelWork<T> work, ExecutionPriority priority) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public QueueStatistics getQueueStatistics() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Result> executeBatch(List<? extends JMadExecutable> executables) throws JMadException {
+            List<Result> results = new ArrayList<>();
+            for (JMadExecutable executable : executables) {
+                results.add(execute(executable));
+            }
+            return results;
+        }
+
+        @Override
+        public boolean isMadxRunning() {
+            return running;
+        }
+
+        @Override
+        public void setRecoveryPoint(KernelSnapshot snapshot) {
+            /* not needed */
+        }
+
+        @Override
+        public void addListener(JMadKernelListener listener) {
+            /* not needed */
+        }
+
+        @Override
+        public void removeListener(JMadKernelListener listener) {
+            /* not needed */
+        }
+
+        @Override
+        public ExecutionStatistics getExecutionStatistics() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void resetExecutionStatistics() {
+            /* not needed */
+        }
+
+        @Override
+        public File getOutputFile() {
+            return outputFile;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+package cern.accsoft.steering.jmad.kernel.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import cern.accsoft.steering.jmad.domain.machine.MadxRange;
+
+public class KernelSnapshotTest {
+
+    private static final String STATE = "kqf := 0.01;\nmq: quadrupole, l=1, k1:=kqf;\n";
+    private static final String ERRORS = "@ NAME %05s \"EFIELD\"\n";
+
+    @Test
+    public void snapshotSurvivesSerialization() throws IOException {
+        KernelSnapshot snapshot = new KernelSnapshot("lhcb1", new MadxRange("IP1", "IP5"), compress(STATE),
+                compress(ERRORS));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        snapshot.writeTo(bytes);
+
+        KernelSnapshot copy = KernelSnapshot.readFrom(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals("lhcb1", copy.getSequenceName());
+        assertEquals("IP1/IP5", copy.getRange().getMadxString());
+        assertEquals(STATE, copy.getState());
+        assertEquals(ERRORS, copy.getErrors());
+        assertTrue(copy.hasErrors());
+        assertEquals(snapshot.getCompressedSize(), copy.getCompressedSize());
+    }
+
+    @Test
+    public void snapshotWithoutSequence() throws IOException {
+        KernelSnapshot snapshot = new KernelSnapshot(null, null, compress(STATE), null);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        snapshot.writeTo(bytes);
+
+        KernelSnapshot copy = KernelSnapshot.readFrom(new ByteArrayInputStream(bytes.toByteArray()));
+        assertNull(copy.getSequenceName());
+        assertNull(copy.getRange());
+        assertFalse(copy.hasErrors());
+        assertNull(copy.getErrors());
+    }
+
+    @Test(expected = IOException.class)
+    public void readingGarbageFails() throws IOException {
+        KernelSnapshot.readFrom(new ByteArrayInputStream("no snapshot".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] compress(String content) throws IOException {
+        return KernelSnapshot.compress(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,77 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.kernel.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverAllValues() {
+        for (long value : new long[] { 0, 1, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE }) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(index < LatencyHistogram.BUCKET_COUNT);
+            assertTrue(LatencyHistogram.bucketUpperBound(index) >= value);
+            if (index > 0) {
+                assertTrue(LatencyHistogram.bucketUpperBound(index - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+        LatencySnapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1000, snapshot.getMin());
+        assertEquals(1000000, snapshot.getMax());
+        assertEquals(500500.0, snapshot.getMean(), 1e-9);
+        assertEquals(500000, snapshot.getP50(), 500000 * 0.07);
+        assertEquals(990000, snapshot.getP99(), 990000 * 0.07);
+        assertEquals(1000000, snapshot.getPercentile(100));
+    }
+
+    @Test
+    public void emptySnapshotReportsZero() {
+        LatencySnapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMin());
+        assertEquals(0, snapshot.getP99());
+    }
+
+    @Test
+    public void recorderGroupsByNameAndPhase() {
+        ExecutionTimer timer = new ExecutionTimer();
+        timer.lap(ExecutionPhase.EXECUTE);
+        timer.splitReady(Long.MAX_VALUE);
+        ExecutionTimings timings = timer.getTimings();
+        assertEquals(0, timings.getNanos(ExecutionPhase.EXECUTE));
+        assertEquals(timings.getTotalNanos(), timings.getNanos(ExecutionPhase.READY));
+
+        ExecutionStatisticsRecorder recorder = new ExecutionStatisticsRecorder();
+        recorder.record("TwissTask", timings);
+        recorder.record("TwissTask", timings);
+        ExecutionStatistics statistics = recorder.snapshot();
+        assertEquals(2, statistics.getLatency("TwissTask", ExecutionPhase.PARSE).getCount());
+        assertEquals(2, statistics.getTotalLatency("TwissTask").getCount());
+        assertEquals(0, statistics.getTotalLatency("other").getCount());
+
+        recorder.reset();
+        assertTrue(recorder.snapshot().getExecutableNames().isEmpty());
+    }
+}
@@ -23,13 +23,33 @@
 package cern.accsoft.steering.jmad.model;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import cern.accsoft.steering.jmad.JMadTestCase;
 import cern.accsoft.steering.jmad.domain.ex.JMadModelException;
+import cern.accsoft.steering.jmad.domain.result.Result;
+import cern.accsoft.steering.jmad.domain.result.StrengthResult;
 import cern.accsoft.steering.jmad.domain.result.tfs.TfsResult;
 import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultRequest;
 import cern.accsoft.steering.jmad.domain.result.tfs.TfsResultRequestImpl;
+import cern.accsoft.steering.jmad.domain.var.enums.MadxGlobalVariable;
+import cern.accsoft.steering.jmad.kernel.JMadExecutable;
+import cern.accsoft.steering.jmad.kernel.JMadKernel;
+import cern.accsoft.steering.jmad.kernel.JMadKernelListener;
+import cern.accsoft.steering.jmad.kernel.stats.ExecutionTimings;
+import cern.accsoft.steering.jmad.kernel.cmd.SetEqual;
+import cern.accsoft.steering.jmad.kernel.task.GetValues;
+import cern.accsoft.steering.jmad.kernel.task.RunTwiss;
 import cern.accsoft.steering.jmad.modeldefs.domain.JMadModelDefinition;
 import org.junit.After;
 import org.junit.Before;
@@ -79,4 +99,68 @@ public class JMadModelTest extends JMadTestCase {
         assertEquals(42.42, model.getValue("21*2+0.42"), 1e-12);
     }
 
+    @Test
+    public void pipelinedTwissesGiveSameResultsAsSynchronousOne() throws Exception {
+        TfsResultRequest request = TfsResultRequestImpl.createSummaryOnlyRequest();
+        double expectedQ1 = model.twiss(request).getSummary().getDoubleValue(MadxGlobalVariable.Q1);
+
+        List<CompletableFuture<Result>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(model.getKernel().executeAsync(new RunTwiss(model.getTwissInitialConditions(), request)));
+        }
+        for (CompletableFuture<Result> future : futures) {
+            TfsResult result = (TfsResult) future.get();
+            assertEquals(expectedQ1, result.getSummary().getDoubleValue(MadxGlobalVariable.Q1), 1e-12);
+        }
+    }
+
+    @Test
+    public void batchReturnsOneResultPerExecutable() throws Exception {
+        TfsResultRequest request = TfsResultRequestImpl.createSummaryOnlyRequest();
+        List<Result> results = model.getKernel().executeBatch(Arrays.asList( //
+                new SetEqual("jmad_batch_test", 42.0), //
+                new RunTwiss(model.getTwissInitialConditions(), request), //
+                new GetValues(Collections.singletonList("jmad_batch_test"))));
+
+        assertEquals(3, results.size());
+        assertNull(results.get(0));
+        assertEquals(12.03, ((TfsResult) results.get(1)).getSummary().getDoubleValue(MadxGlobalVariable.Q1), 1e-3);
+        assertEquals(42.0, ((StrengthResult) results.get(2)).getDoubleValues().get(0), 1e-12);
+    }
+
+    @Test
+    public void kernelListenerStillFiresAfterStandbyReset() throws Exception {
+        model.getStartupConfiguration().setWarmStandby(true);
+        try {
+            /* initializes the model again, now with a spare kernel */
+            model.reset();
+            JMadKernel kernel = model.getKernel();
+            List<JMadExecutable> executed = new CopyOnWriteArrayList<>();
+            kernel.addListener(new JMadKernelListener() {
+                @Override
+                public void startedKernel(Process newProcess) {
+                    /* not of interest */
+                }
+
+                @Override
+                public void stoppedKernel() {
+                    /* not of interest */
+                }
+
+                @Override
+                public void executed(JMadExecutable executable, ExecutionTimings timings) {
+                    executed.add(executable);
+                }
+            });
+
+            model.reset();
+            assertNotSame("the spare kernel must have been swapped in", kernel, model.getKernel());
+            executed.clear();
+            model.twiss(TfsResultRequestImpl.createSummaryOnlyRequest());
+            assertFalse(executed.isEmpty());
+        } finally {
+            model.getStartupConfiguration().setWarmStandby(false);
+        }
+    }
+
 }
@@ -0,0 +1,125 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.model;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.domain.machine.RangeDefinition;
+import cern.accsoft.steering.jmad.kernel.JMadKernel;
+import cern.accsoft.steering.jmad.modeldefs.domain.OpticsDefinition;
+
+public class KernelStandbyTest {
+
+    private List<JMadKernel> createdKernels;
+    private List<JMadKernel> configuredKernels;
+    private List<JMadKernel> preparedKernels;
+    private OpticsDefinition opticsDefinition;
+    private RangeDefinition rangeDefinition;
+    private KernelStandby standby;
+
+    @Before
+    public void setUp() {
+        createdKernels = new ArrayList<>();
+        configuredKernels = new ArrayList<>();
+        preparedKernels = new ArrayList<>();
+        opticsDefinition = createNiceMock(OpticsDefinition.class);
+        rangeDefinition = createNiceMock(RangeDefinition.class);
+        standby = new KernelStandby(() -> {
+            JMadKernel kernel = createNiceMock(JMadKernel.class);
+            replay(kernel);
+            createdKernels.add(kernel);
+            return kernel;
+        }, kernel -> {
+            configuredKernels.add(kernel);
+            return null;
+        }, kernel -> {
+            preparedKernels.add(kernel);
+            return null;
+        }, opticsDefinition, rangeDefinition, "test");
+    }
+
+    @After
+    public void tearDown() {
+        standby.close();
+    }
+
+    @Test
+    public void takeReturnsThePreparedKernel() {
+        standby.prepare();
+        JMadKernel spare = standby.take();
+        assertEquals(1, createdKernels.size());
+        assertSame(createdKernels.get(0), spare);
+        assertEquals(createdKernels, configuredKernels);
+        assertEquals(createdKernels, preparedKernels);
+
+        /* only one spare per preparation */
+        assertNull(standby.take());
+    }
+
+    @Test
+    public void prepareKeepsAnExistingSpare() {
+        standby.prepare();
+        standby.prepare();
+        assertSame(standby.take(), createdKernels.get(0));
+        assertEquals(1, createdKernels.size());
+    }
+
+    @Test
+    public void failingPreparationStopsTheKernel() throws JMadException {
+        JMadKernel kernel = createNiceMock(JMadKernel.class);
+        expect(kernel.isMadxRunning()).andReturn(true).anyTimes();
+        expect(kernel.stop()).andReturn(0);
+        replay(kernel);
+
+        KernelStandby failing = new KernelStandby(() -> kernel, k -> null, k -> {
+            throw new JMadException("test");
+        }, opticsDefinition, rangeDefinition, "failing");
+        try {
+            failing.prepare();
+            assertNull(failing.take());
+            verify(kernel);
+        } finally {
+            failing.close();
+        }
+    }
+
+    @Test
+    public void spareOnlyMatchesItsDefinitions() {
+        assertTrue(standby.matches(opticsDefinition, rangeDefinition));
+        assertFalse(standby.matches(opticsDefinition, null));
+        assertFalse(standby.matches(createNiceMock(OpticsDefinition.class), rangeDefinition));
+    }
+
+    @Test
+    public void noSpareAfterClose() {
+        standby.close();
+        standby.prepare();
+        assertNull(standby.take());
+        assertTrue(createdKernels.isEmpty());
+    }
+}
@@ -0,0 +1,240 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.model.pool;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.accsoft.steering.jmad.domain.ex.JMadModelException;
+import cern.accsoft.steering.jmad.kernel.stats.LatencySnapshot;
+import cern.accsoft.steering.jmad.model.JMadModel;
+
+public class HedgedExecutorTest {
+
+    private StubPool pool;
+    private HedgedExecutor executor;
+    private CountDownLatch blocker;
+
+    @Before
+    public void setUp() {
+        pool = new StubPool(2);
+        executor = new HedgedExecutor(pool, 95, 1);
+        blocker = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        blocker.countDown();
+        executor.close();
+    }
+
+    @Test
+    public void fastWorkIsNotHedged() throws JMadModelException, InterruptedException {
+        assertEquals("result", executor.execute("twiss", model -> "result", 5, TimeUnit.SECONDS));
+        HedgingStatistics statistics = executor.getStatistics();
+        assertEquals(1, statistics.getExecutionCount());
+        assertEquals(0, statistics.getHedgeCount());
+        assertEquals(1, executor.getLatency("twiss").getCount());
+        awaitReleased(1);
+    }
+
+    @Test
+    public void slowWorkIsHedgedOnAnIdleModel() throws JMadModelException, InterruptedException {
+        JMadModel slowModel = pool.peekIdle();
+        String result = executor.execute("twiss", model -> {
+            if (model == slowModel) {
+                await(blocker);
+                return "slow";
+            }
+            return "hedge";
+        }, 2, TimeUnit.SECONDS);
+
+        assertEquals("hedge", result);
+        HedgingStatistics statistics = executor.getStatistics();
+        assertEquals(1, statistics.getHedgeCount());
+        assertEquals(1, statistics.getHedgeWinCount());
+        assertEquals(1.0, statistics.getHedgeRate(), 0.0);
+        assertEquals(1, pool.discarded.size());
+        assertTrue(pool.discarded.contains(slowModel));
+        awaitReleased(1);
+
+        /* the winner is timed from the start of the execution and the loser is recorded as censored sample */
+        LatencySnapshot latency = executor.getLatency("twiss");
+        assertEquals(2, latency.getCount());
+        assertTrue(latency.getMin() >= TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void missedDeadlineDiscardsAllAttempts() throws InterruptedException {
+        try {
+            executor.execute("twiss", model -> {
+                await(blocker);
+                return "late";
+            }, 200, TimeUnit.MILLISECONDS);
+            fail("deadline was not reported");
+        } catch (JMadModelException e) {
+            /* expected */
+        }
+        HedgingStatistics statistics = executor.getStatistics();
+        assertEquals(1, statistics.getDeadlineMissCount());
+        assertEquals(1, statistics.getHedgeCount());
+        assertEquals(2, pool.discarded.size());
+        LatencySnapshot latency = executor.getLatency("twiss");
+        assertEquals(2, latency.getCount());
+        assertTrue(latency.getMin() >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    public void modelsAreReleasedAfterClose() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        Thread caller = new Thread(() -> {
+            try {
+                executor.execute("twiss", model -> {
+                    started.countDown();
+                    await(blocker);
+                    return "result";
+                }, 5, TimeUnit.SECONDS);
+            } catch (JMadModelException e) {
+                /* checked below */
+            }
+        });
+        caller.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.close();
+        blocker.countDown();
+        caller.join(5000);
+
+        /* released directly, since the executor can not run the release anymore */
+        assertEquals(1, pool.released.size());
+    }
+
+    @Test
+    public void failureOfAllAttemptsIsReported() throws InterruptedException {
+        try {
+            executor.execute("twiss", model -> {
+                throw new JMadModelException("test");
+            }, 5, TimeUnit.SECONDS);
+            fail("failure was not reported");
+        } catch (JMadModelException e) {
+            assertEquals("test", e.getMessage());
+        }
+        assertEquals(1, executor.getStatistics().getFailureCount());
+        awaitReleased(1);
+    }
+
+    private static void await(CountDownLatch latch) throws JMadModelException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new JMadModelException("interrupted", e);
+        }
+    }
+
+    /** the models are released in the background */
+    private void awaitReleased(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((pool.released.size() < count) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, pool.released.size());
+    }
+
+    /**
+     * A pool with a fixed number of idle models, which never creates new ones
+     */
+    private static class StubPool implements JMadKernelPool {
+        private final Deque<JMadModel> idle = new ConcurrentLinkedDeque<>();
+        private final List<JMadModel> released = new CopyOnWriteArrayList<>();
+        private final List<JMadModel> discarded = new CopyOnWriteArrayList<>();
+
+        StubPool(int size) {
+            List<JMadModel> models = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                models.add(createNiceMock(JMadModel.class));
+            }
+            idle.addAll(models);
+        }
+
+        JMadModel peekIdle() {
+            return idle.peekFirst();
+        }
+
+        @Override
+        public JMadModel lease() {
+            return idle.pollFirst();
+        }
+
+        @Override
+        public JMadModel lease(long timeout, TimeUnit unit) {
+            return idle.pollFirst();
+        }
+
+        @Override
+        public JMadModel tryLeaseIdle() {
+            return idle.pollFirst();
+        }
+
+        @Override
+        public void release(JMadModel model) {
+            released.add(model);
+        }
+
+        @Override
+        public void invalidate(JMadModel model) {
+            released.add(model);
+        }
+
+        @Override
+        public void discard(JMadModel model) {
+            discarded.add(model);
+        }
+
+        @Override
+        public void prestart() {
+            /* nothing to do */
+        }
+
+        @Override
+        public int getSize() {
+            return 2;
+        }
+
+        @Override
+        public int getIdleCount() {
+            return idle.size();
+        }
+
+        @Override
+        public int getLeasedCount() {
+            return 2 - idle.size();
+        }
+
+        @Override
+        public void close() {
+            /* nothing to do */
+        }
+    }
+}
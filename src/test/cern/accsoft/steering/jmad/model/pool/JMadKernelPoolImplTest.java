@@ -0,0 +1,239 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.model.pool;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cern.accsoft.steering.jmad.JMadException;
+import cern.accsoft.steering.jmad.domain.ex.JMadModelException;
+import cern.accsoft.steering.jmad.factory.JMadModelFactory;
+import cern.accsoft.steering.jmad.kernel.JMadExecutable;
+import cern.accsoft.steering.jmad.kernel.JMadKernel;
+import cern.accsoft.steering.jmad.kernel.snapshot.KernelSnapshot;
+import cern.accsoft.steering.jmad.model.JMadModel;
+import cern.accsoft.steering.jmad.modeldefs.domain.JMadModelDefinition;
+
+public class JMadKernelPoolImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<JMadModel> createdModels;
+    private JMadModelFactory modelFactory;
+    private JMadModelDefinition modelDefinition;
+
+    @Before
+    public void setUp() {
+        createdModels = new ArrayList<>();
+        modelDefinition = createNiceMock(JMadModelDefinition.class);
+        replay(modelDefinition);
+        modelFactory = new JMadModelFactory() {
+            @Override
+            public synchronized JMadModel createModel(JMadModelDefinition definition) {
+                /* synchronized, because prestart() creates the models concurrently */
+                JMadModel model = createNiceMock(JMadModel.class);
+                expect(model.isInitialized()).andReturn(true).anyTimes();
+                replay(model);
+                createdModels.add(model);
+                return model;
+            }
+
+            @Override
+            public void createDefaultKnobs(JMadModel model) {
+                /* not needed */
+            }
+        };
+    }
+
+    @Test
+    public void leaseCreatesModelsUpToTheSize() throws JMadModelException {
+        JMadKernelPool pool = new JMadKernelPoolImpl(modelFactory, modelDefinition, null, 2);
+        JMadModel first = pool.lease();
+        JMadModel second = pool.lease();
+        assertNotSame(first, second);
+        assertEquals(2, pool.getLeasedCount());
+        assertNull(pool.lease(10, TimeUnit.MILLISECONDS));
+        assertEquals(2, createdModels.size());
+    }
+
+    @Test
+    public void releasedModelIsReused() throws JMadModelException {
+        JMadKernelPool pool = new JMadKernelPoolImpl(modelFactory, modelDefinition, null, 2);
+        JMadModel model = pool.lease();
+        pool.release(model);
+        assertEquals(1, pool.getIdleCount());
+        assertSame(model, pool.lease());
+        assertEquals(1, createdModels.size());
+    }
+
+    @Test
+    public void kernelSnapshotIsRestoredOnRelease() throws JMadException, IOException {
+        JMadKernel kernel = createNiceMock(JMadKernel.class);
+        expect(kernel.getOutputFile()).andReturn(folder.newFile("madx-output.tfs")).anyTimes();
+        expect(kernel.isMadxRunning()).andReturn(true).anyTimes();
+        expect(kernel.execute((JMadExecutable) anyObject())).andReturn(null).once();
+        replay(kernel);
+
+        JMadModel model = createNiceMock(JMadModel.class);
+        expect(model.isInitialized()).andReturn(true).anyTimes();
+        expect(model.getKernel()).andReturn(kernel).anyTimes();
+        expect(model.createKernelSnapshot()).andReturn(createSnapshot("kqf := 0.01;\n")).anyTimes();
+        /* the snapshot makes a complete re-initialization unnecessary */
+        model.reset();
+        expectLastCall().andThrow(new JMadModelException("model must not be reset")).anyTimes();
+        replay(model);
+
+        JMadKernelPool pool = new JMadKernelPoolImpl(singleModelFactory(model), modelDefinition, null, 1);
+        pool.release(pool.lease());
+        verify(kernel);
+        assertEquals(1, pool.getIdleCount());
+        assertSame(model, pool.lease());
+    }
+
+    @Test
+    public void modelWithoutSnapshotIsReinitializedOnRelease() throws JMadModelException {
+        JMadModel model = createNiceMock(JMadModel.class);
+        expect(model.isInitialized()).andReturn(true).anyTimes();
+        expect(model.createKernelSnapshot()).andThrow(new JMadModelException("no snapshot")).anyTimes();
+        model.reset();
+        expectLastCall().once();
+        replay(model);
+
+        JMadKernelPool pool = new JMadKernelPoolImpl(singleModelFactory(model), modelDefinition, null, 1);
+        pool.release(pool.lease());
+        verify(model);
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void modelIsDiscardedIfRestoreFails() throws JMadModelException {
+        JMadModel brokenModel = createNiceMock(JMadModel.class);
+        expect(brokenModel.isInitialized()).andReturn(true).anyTimes();
+        brokenModel.reset();
+        expectLastCall().andThrow(new JMadModelException("test"));
+        brokenModel.cleanup();
+        replay(brokenModel);
+
+        JMadKernelPool pool = new JMadKernelPoolImpl(singleModelFactory(brokenModel), modelDefinition, null, 1);
+        pool.release(pool.lease());
+        verify(brokenModel);
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(0, pool.getLeasedCount());
+    }
+
+    @Test
+    public void prestartFillsThePool() throws JMadModelException {
+        JMadKernelPool pool = new JMadKernelPoolImpl(modelFactory, modelDefinition, null, 3);
+        pool.prestart();
+        assertEquals(3, pool.getIdleCount());
+        assertEquals(3, createdModels.size());
+        pool.lease();
+        assertEquals(3, createdModels.size());
+    }
+
+    @Test
+    public void tryLeaseIdleDoesNotCreateModels() throws JMadModelException {
+        JMadKernelPool pool = new JMadKernelPoolImpl(modelFactory, modelDefinition, null, 2);
+        assertNull(pool.tryLeaseIdle());
+        JMadModel model = pool.lease();
+        pool.release(model);
+        assertSame(model, pool.tryLeaseIdle());
+        assertEquals(1, pool.getLeasedCount());
+        assertEquals(1, createdModels.size());
+    }
+
+    @Test
+    public void discardedModelIsReplacedOnDemand() throws JMadModelException {
+        JMadKernelPool pool = new JMadKernelPoolImpl(modelFactory, modelDefinition, null, 1);
+        JMadModel model = pool.lease();
+        pool.discard(model);
+        assertEquals(0, pool.getLeasedCount());
+        assertEquals(0, pool.getIdleCount());
+        assertNotSame(model, pool.lease());
+        assertEquals(2, createdModels.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void releasingForeignModelFails() {
+        JMadKernelPool pool = new JMadKernelPoolImpl(modelFactory, modelDefinition, null, 1);
+        pool.release(createNiceMock(JMadModel.class));
+    }
+
+    @Test(expected = JMadModelException.class)
+    public void leaseAfterCloseFails() throws JMadModelException {
+        JMadKernelPool pool = new JMadKernelPoolImpl(modelFactory, modelDefinition, null, 1);
+        pool.release(pool.lease());
+        pool.close();
+        assertEquals(0, pool.getIdleCount());
+        pool.lease();
+    }
+
+    private static JMadModelFactory singleModelFactory(JMadModel model) {
+        return new JMadModelFactory() {
+            @Override
+            public JMadModel createModel(JMadModelDefinition definition) {
+                return model;
+            }
+
+            @Override
+            public void createDefaultKnobs(JMadModel model) {
+                /* not needed */
+            }
+        };
+    }
+
+    /**
+     * creates a snapshot of the given state in the serialized form of {@link KernelSnapshot}, which has no public
+     * constructor.
+     */
+    private static KernelSnapshot createSnapshot(String state) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(state.getBytes(StandardCharsets.UTF_8));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x4a4d5353);
+        out.writeInt(1);
+        out.writeBoolean(false);
+        out.writeBoolean(false);
+        out.writeBoolean(false);
+        out.writeInt(compressed.size());
+        out.write(compressed.toByteArray());
+        out.writeInt(-1);
+        return KernelSnapshot.readFrom(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+}
@@ -7,7 +7,11 @@ package cern.accsoft.steering.jmad.util;
 import static cern.accsoft.steering.jmad.util.FileUtil.tail;
 import static java.util.Collections.emptyList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.nio.file.FileSystemException;
 import java.util.Arrays;
 
 import org.junit.After;
@@ -46,6 +50,14 @@ public class FileUtilTest {
         assertEquals(Arrays.asList("line 0", "line 1", "line 2"), tail(testFile.getFile(), 3));
     }
 
+    @Test
+    public void noSpaceLeftIsRecognized() {
+        assertTrue(FileUtil.isNoSpaceLeft(new IOException("No space left on device")));
+        assertTrue(FileUtil.isNoSpaceLeft(new FileSystemException("/dev/shm/file", null, "No space left on device")));
+        assertTrue(FileUtil.isNoSpaceLeft(new IOException(new IOException("No space left on device"))));
+        assertFalse(FileUtil.isNoSpaceLeft(new IOException("Permission denied")));
+    }
+
     private String lineString(int numberOfLines) {
         StringBuilder builder = new StringBuilder();
         for (int i = 0; i < numberOfLines; i++) {
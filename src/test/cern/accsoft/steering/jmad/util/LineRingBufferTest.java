@@ -0,0 +1,32 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+package cern.accsoft.steering.jmad.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class LineRingBufferTest {
+
+    @Test
+    public void keepsOnlyTheLastLines() {
+        LineRingBuffer buffer = new LineRingBuffer(3);
+        assertEquals(Collections.emptyList(), buffer.getLastLines(10));
+        for (String line : new String[] { "a", "b", "c", "d", "e" }) {
+            buffer.processNewLine(line);
+        }
+        assertEquals(Arrays.asList("c", "d", "e"), buffer.getLastLines(10));
+        assertEquals(Arrays.asList("d", "e"), buffer.getLastLines(2));
+    }
+}
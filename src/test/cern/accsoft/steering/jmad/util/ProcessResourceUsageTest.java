@@ -0,0 +1,62 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ProcessResourceUsageTest {
+
+    private static final String STATUS = "Name:\tmadx\nState:\tS (sleeping)\nVmPeak:\t  204800 kB\n"
+            + "VmRSS:\t   10240 kB\nThreads:\t1\n";
+
+    /* the command name contains a space and a closing parenthesis */
+    private static final String STAT = "4711 (mad x) ) S 1 4711 4711 0 -1 4194304 500 0 0 0 250 50 0 0 20 0 1 0 "
+            + "12345 209715200 2560 18446744073709551615\n";
+
+    @Test
+    public void residentSetSizeIsReadFromStatus() {
+        assertEquals(10240L * 1024, ProcessResourceUsage.parseResidentSetSize(STATUS));
+    }
+
+    @Test
+    public void cpuTimeIsTheSumOfUserAndSystemTime() {
+        assertEquals(TimeUnit.SECONDS.toNanos(3), ProcessResourceUsage.parseCpuTimeNanos(STAT));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void statusWithoutRssIsRejected() {
+        ProcessResourceUsage.parseResidentSetSize("Name:\tmadx\n");
+    }
+
+    @Test
+    public void runningProcessIsSampled() throws IOException, InterruptedException {
+        assumeTrue(OsUtil.isLinux());
+        Process process = new ProcessBuilder("sleep", "10").start();
+        try {
+            ProcessResourceUsage usage = ProcessResourceUsage.sample(process);
+            assertNotNull(usage);
+            assertTrue(usage.getResidentSetSize() > 0);
+        } finally {
+            process.destroyForcibly().waitFor();
+        }
+        assertNull(ProcessResourceUsage.sample(process));
+    }
+}
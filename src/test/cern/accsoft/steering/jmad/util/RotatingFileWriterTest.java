@@ -0,0 +1,62 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+package cern.accsoft.steering.jmad.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.concurrent.Executors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RotatingFileWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rotatesAfterCompleteLines() throws IOException {
+        File file = new File(folder.getRoot(), "test.log");
+        RotatingFileWriter writer = new RotatingFileWriter(file, 10, 1);
+        writer.write("line-one");
+        writer.write("\n");
+        writer.write("line-two\n");
+        writer.write("line-three\n");
+        writer.close();
+
+        assertEquals("line-three\n", read(file));
+        assertEquals("line-one\nline-two\n", read(writer.backupFile(1)));
+        assertFalse(writer.backupFile(2).exists());
+    }
+
+    @Test
+    public void asyncWriterWritesEverythingOnClose() throws IOException {
+        File file = new File(folder.getRoot(), "async.log");
+        Writer writer = new AsyncWriter(new RotatingFileWriter(file, 1000, 1), 100,
+                Executors.defaultThreadFactory());
+        for (int i = 0; i < 10; i++) {
+            writer.write("command " + i + ";\n");
+        }
+        writer.close();
+
+        assertEquals(10, Files.readAllLines(file.toPath()).size());
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()));
+    }
+}
@@ -0,0 +1,171 @@
+// @formatter:off
+/*******************************************************************************
+ * This file is part of JMad. Copyright (c) 2008-2011, CERN. All rights reserved. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS
+ * OF ANY KIND, either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+// @formatter:on
+
+package cern.accsoft.steering.jmad.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TempFileUtilImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File diskDir;
+    private File ramDir;
+    private TempFileUtilImpl fileUtil;
+
+    @Before
+    public void setUp() throws IOException {
+        diskDir = folder.newFolder("disk");
+        ramDir = folder.newFolder("ram");
+
+        JMadPreferences preferences = new JMadPreferencesImpl();
+        preferences.setOutputPath(diskDir.getAbsolutePath());
+        preferences.setRamOutputPath(ramDir.getAbsolutePath());
+        preferences.setRamOutputSizeLimit(100);
+
+        fileUtil = new TempFileUtilImpl();
+        fileUtil.setPreferences(preferences);
+        fileUtil.init();
+    }
+
+    @Test
+    public void filesArePlacedInRamUntilTheLimitIsReached() throws IOException {
+        Object first = new Object();
+        File firstFile = fileUtil.getOutputFile(first, "result.tfs");
+        assertTrue(isBelow(firstFile, ramDir));
+        assertTrue(fileUtil.isInMemory(first));
+
+        Files.write(firstFile.toPath(), new byte[150]);
+        assertEquals(150, fileUtil.getUsage(first));
+
+        /* the file keeps its location, but new files go to disk, also for the same object */
+        assertEquals(firstFile, fileUtil.getOutputFile(first, "result.tfs"));
+        File otherFile = fileUtil.getOutputFile(first, "other.tfs");
+        assertTrue(isBelow(otherFile, diskDir));
+        assertEquals(otherFile, fileUtil.getOutputFile(first, "other.tfs"));
+        Object second = new Object();
+        assertTrue(isBelow(fileUtil.getOutputFile(second, "result.tfs"), diskDir));
+        assertFalse(fileUtil.isInMemory(second));
+
+        /* the usage of the object includes the files on disk */
+        Files.write(otherFile.toPath(), new byte[20]);
+        assertEquals(170, fileUtil.getUsage(first));
+
+        /* after cleaning up, there is space again */
+        fileUtil.cleanup(first);
+        assertFalse(otherFile.exists());
+        assertEquals(0, fileUtil.getUsage(first));
+        assertTrue(isBelow(fileUtil.getOutputFile(new Object(), "result.tfs"), ramDir));
+    }
+
+    @Test
+    public void shrinkingFilesFreeRamAgain() throws IOException {
+        Object object = new Object();
+        File file = fileUtil.getOutputFile(object, "result.tfs");
+        /* the usage is updated, whenever the object asks for one of its files */
+        Files.write(file.toPath(), new byte[150]);
+        assertEquals(file, fileUtil.getOutputFile(object, "result.tfs"));
+        assertTrue(isBelow(fileUtil.getOutputFile(new Object(), "result.tfs"), diskDir));
+
+        Files.write(file.toPath(), new byte[10]);
+        assertEquals(file, fileUtil.getOutputFile(object, "result.tfs"));
+        assertTrue(isBelow(fileUtil.getOutputFile(new Object(), "result.tfs"), ramDir));
+    }
+
+    @Test
+    public void newFilesReserveTheSizeOfTheLargestFileOfTheObject() throws IOException {
+        Object object = new Object();
+        File file = fileUtil.getOutputFile(object, "result.tfs");
+        Files.write(file.toPath(), new byte[40]);
+
+        /* 40 bytes used and 40 reserved */
+        File next = fileUtil.getOutputFile(object, "next.tfs");
+        assertTrue(isBelow(next, ramDir));
+        /* 40 + 40 + 40 would exceed the limit */
+        assertTrue(isBelow(fileUtil.getOutputFile(object, "third.tfs"), diskDir));
+        /* other objects have not written anything yet, so they do not reserve anything */
+        assertTrue(isBelow(fileUtil.getOutputFile(new Object(), "result.tfs"), ramDir));
+    }
+
+    @Test
+    public void deletedFilesAreForgotten() throws IOException {
+        Object object = new Object();
+        for (int i = 0; i < 10; i++) {
+            File file = fileUtil.getOutputFile(object, "result-" + i + ".tfs");
+            assertTrue(isBelow(file, ramDir));
+            Files.write(file.toPath(), new byte[60]);
+            fileUtil.deleteOutputFile(object, "result-" + i + ".tfs");
+            assertFalse(file.exists());
+        }
+        assertEquals(0, fileUtil.getUsage(object));
+    }
+
+    @Test
+    public void onlyFilesInRamCanBeOutOfSpace() {
+        Object object = new Object();
+        assertFalse(fileUtil.isOutOfSpace(fileUtil.getOutputFile(object, "result.tfs")));
+        assertFalse(fileUtil.isOutOfSpace(fileUtil.moveToDisk(object, "result.tfs")));
+    }
+
+    @Test
+    public void filesMovedToDiskStayThere() throws IOException {
+        Object object = new Object();
+        File file = fileUtil.getOutputFile(object, "payload.madx");
+        Files.write(file.toPath(), new byte[10]);
+
+        File diskFile = fileUtil.moveToDisk(object, "payload.madx");
+        assertTrue(isBelow(diskFile, diskDir));
+        assertFalse(file.exists());
+        assertEquals(diskFile, fileUtil.getOutputFile(object, "payload.madx"));
+        assertFalse(fileUtil.isInMemory(object));
+    }
+
+    @Test
+    public void asyncCleanupMovesTheDirOutOfTheWay() throws IOException, InterruptedException, ExecutionException,
+            TimeoutException {
+        Object object = new Object();
+        File file = fileUtil.getOutputFile(object, "result.tfs");
+        Files.write(file.toPath(), new byte[10]);
+        File dir = file.getParentFile();
+
+        fileUtil.cleanupAsync(object).get(5, TimeUnit.SECONDS);
+        assertFalse(dir.exists());
+        assertEquals(0, dir.getParentFile().listFiles().length);
+        assertEquals(0, fileUtil.getUsage(object));
+
+        /* cleaning up twice does not do any harm */
+        fileUtil.cleanupAsync(object).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void filesWithoutObjectAreAlwaysOnDisk() {
+        assertTrue(isBelow(fileUtil.getOutputFile("madx"), diskDir));
+    }
+
+    private static boolean isBelow(File file, File dir) {
+        return file.getAbsolutePath().startsWith(dir.getAbsolutePath() + File.separator);
+    }
+}